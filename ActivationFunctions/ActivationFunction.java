@@ -16,4 +16,122 @@ public interface ActivationFunction {
      * Derivative of the function.
      */
     UnivariateFunction getDerivative();
+
+    /**
+     * Applies the function to a range of an array.
+     * Implementations should override this with a loop that does not call {@link #getFunction()} per entry.
+     * @param x input values
+     * @param xOff start of input range
+     * @param out destination for function values. May be the same range as the input.
+     * @param outOff start of destination range
+     * @param len number of entries
+     */
+    default void apply(double[] x, int xOff, double[] out, int outOff, int len) {
+        UnivariateFunction f = getFunction();
+        for(int i = 0; i < len; i++) {
+            out[outOff + i] = f.value(x[xOff + i]);
+        }
+    }
+
+    /**
+     * Applies the function in place to a range of an array.
+     * @param x values to replace with their function values
+     * @param off start of range
+     * @param len number of entries
+     */
+    default void apply(double[] x, int off, int len) {
+        apply(x, off, x, off, len);
+    }
+
+    /**
+     * Applies the derivative to a range of an array.
+     * Implementations should override this with a loop that does not call {@link #getDerivative()} per entry.
+     * @param x input values
+     * @param xOff start of input range
+     * @param out destination for derivative values. May be the same range as the input.
+     * @param outOff start of destination range
+     * @param len number of entries
+     */
+    default void derivative(double[] x, int xOff, double[] out, int outOff, int len) {
+        UnivariateFunction f = getDerivative();
+        for(int i = 0; i < len; i++) {
+            out[outOff + i] = f.value(x[xOff + i]);
+        }
+    }
+
+    /**
+     * Applies the derivative in place to a range of an array.
+     * @param x values to replace with their derivative values
+     * @param off start of range
+     * @param len number of entries
+     */
+    default void derivative(double[] x, int off, int len) {
+        derivative(x, off, x, off, len);
+    }
+
+    /**
+     * Whether the derivative can be computed from the function's output alone,
+     * which lets back-propagation skip keeping the weighted sums.
+     * @return true if {@link #outputDerivative(double[], int, double[], int, int)} is supported
+     */
+    default boolean hasOutputDerivative() {
+        return false;
+    }
+
+    /**
+     * Applies the derivative to a range of an array, given the function's output
+     * instead of its input.
+     * Only supported when {@link #hasOutputDerivative()} returns true.
+     * @param a function values
+     * @param aOff start of function value range
+     * @param out destination for derivative values. May be the same range as the function values.
+     * @param outOff start of destination range
+     * @param len number of entries
+     */
+    default void outputDerivative(double[] a, int aOff, double[] out, int outOff, int len) {
+        throw new UnsupportedOperationException(getClass().getSimpleName()
+                + " cannot compute its derivative from its output");
+    }
+
+    /**
+     * Single precision version of {@link #apply(double[], int, double[], int, int)}.
+     */
+    default void apply(float[] x, int xOff, float[] out, int outOff, int len) {
+        UnivariateFunction f = getFunction();
+        for(int i = 0; i < len; i++) {
+            out[outOff + i] = (float) f.value(x[xOff + i]);
+        }
+    }
+
+    /**
+     * Single precision version of {@link #apply(double[], int, int)}.
+     */
+    default void apply(float[] x, int off, int len) {
+        apply(x, off, x, off, len);
+    }
+
+    /**
+     * Single precision version of {@link #derivative(double[], int, double[], int, int)}.
+     */
+    default void derivative(float[] x, int xOff, float[] out, int outOff, int len) {
+        UnivariateFunction f = getDerivative();
+        for(int i = 0; i < len; i++) {
+            out[outOff + i] = (float) f.value(x[xOff + i]);
+        }
+    }
+
+    /**
+     * Single precision version of {@link #derivative(double[], int, int)}.
+     */
+    default void derivative(float[] x, int off, int len) {
+        derivative(x, off, x, off, len);
+    }
+
+    /**
+     * Single precision version of {@link #outputDerivative(double[], int, double[], int, int)}.
+     */
+    default void outputDerivative(float[] a, int aOff, float[] out, int outOff, int len) {
+        throw new UnsupportedOperationException(getClass().getSimpleName()
+                + " cannot compute its derivative from its output");
+    }
 }
@@ -0,0 +1,82 @@
+package ActivationFunctions;
+
+/**
+ * Identifies an activation function, such as in a saved model.
+ * Constants are only ever appended so the ordinal of each stays the same.
+ */
+public enum ActivationFunctionEnum {
+    /**
+     * {@link ActivationFunctions.Sigmoid}.
+     */
+    Sigmoid
+
+    /**
+     * {@link ActivationFunctions.TanH}.
+     */
+    ,TanH
+
+    /**
+     * {@link ActivationFunctions.ReLU}.
+     */
+    ,ReLU
+
+    /**
+     * {@link ActivationFunctions.LeakyReLU}, whose parameter is the coefficient.
+     */
+    ,LeakyReLU
+
+    /**
+     * {@link ActivationFunctions.Sinusoid}.
+     */
+    ,Sinusoid;
+
+    /**
+     * Creates the activation function.
+     * @param parameter coefficient of {@link #LeakyReLU}, ignored by the others
+     * @return new activation function
+     */
+    public ActivationFunction create(double parameter) {
+        switch(this) {
+            case Sigmoid:
+                return new ActivationFunctions.Sigmoid();
+            case TanH:
+                return new ActivationFunctions.TanH();
+            case ReLU:
+                return new ActivationFunctions.ReLU();
+            case LeakyReLU:
+                return new ActivationFunctions.LeakyReLU(parameter);
+            default:
+                return new ActivationFunctions.Sinusoid();
+        }
+    }
+
+    /**
+     * Finds the constant identifying an activation function.
+     * @param af activation function
+     * @return its type
+     * @throws IllegalArgumentException if the function is not one of the built-in ones
+     */
+    public static ActivationFunctionEnum of(ActivationFunction af) {
+        if(af instanceof ActivationFunctions.Sigmoid) {
+            return Sigmoid;
+        } else if(af instanceof ActivationFunctions.TanH) {
+            return TanH;
+        } else if(af instanceof ActivationFunctions.LeakyReLU) {
+            return LeakyReLU;
+        } else if(af instanceof ActivationFunctions.ReLU) {
+            return ReLU;
+        } else if(af instanceof ActivationFunctions.Sinusoid) {
+            return Sinusoid;
+        }
+        throw new IllegalArgumentException("No type for activation function " + af.getClass().getName());
+    }
+
+    /**
+     * Parameter needed to recreate an activation function with {@link #create(double)}.
+     * @param af activation function
+     * @return coefficient of a leaky ReLU, otherwise 0
+     */
+    public static double parameter(ActivationFunction af) {
+        return af instanceof ActivationFunctions.LeakyReLU ? ((ActivationFunctions.LeakyReLU) af).getCoefficient() : 0;
+    }
+}
@@ -1,5 +1,6 @@
 package ActivationFunctions;
 
+import Tensor.Kernels;
 import org.apache.commons.math4.legacy.analysis.UnivariateFunction;
 
 /**
@@ -17,15 +18,29 @@ public class LeakyReLU implements ActivationFunction {
      */
     private DerivativeFunction derivative;
 
+    /**
+     * Term applied to input when the input is less than 0.
+     */
+    private double coefficient;
+
     /**
      * Constructor to set coefficient
      * @param coefficient term applied to input when less than 0
      */
     public LeakyReLU(double coefficient) {
+        this.coefficient = coefficient;
         this.function = new Function(coefficient);
         this.derivative = new DerivativeFunction(coefficient);
     }
 
+    /**
+     * Gets the term applied to input when the input is less than 0.
+     * @return coefficient
+     */
+    public double getCoefficient() {
+        return this.coefficient;
+    }
+
     /**
      * Gets the activation function.
      * @return activation function
@@ -42,6 +57,81 @@ public class LeakyReLU implements ActivationFunction {
         return this.derivative;
     }
 
+    /**
+     * Applies the Leaky ReLU function to a range of an array.
+     * @param x input values
+     * @param xOff start of input range
+     * @param out destination. May be the same range as the input.
+     * @param outOff start of destination range
+     * @param len number of entries
+     */
+    public void apply(double[] x, int xOff, double[] out, int outOff, int len) {
+        Kernels.get().leakyRelu(this.coefficient, x, xOff, out, outOff, len);
+    }
+
+    /**
+     * Single precision version of {@link #apply(double[], int, double[], int, int)}.
+     */
+    public void apply(float[] x, int xOff, float[] out, int outOff, int len) {
+        Kernels.get().leakyRelu((float) this.coefficient, x, xOff, out, outOff, len);
+    }
+
+    /**
+     * Applies the derivative of the Leaky ReLU function to a range of an array.
+     * @param x input values
+     * @param xOff start of input range
+     * @param out destination. May be the same range as the input.
+     * @param outOff start of destination range
+     * @param len number of entries
+     */
+    public void derivative(double[] x, int xOff, double[] out, int outOff, int len) {
+        Kernels.get().leakyReluDerivative(this.coefficient, x, xOff, out, outOff, len);
+    }
+
+    /**
+     * Single precision version of {@link #derivative(double[], int, double[], int, int)}.
+     */
+    public void derivative(float[] x, int xOff, float[] out, int outOff, int len) {
+        Kernels.get().leakyReluDerivative((float) this.coefficient, x, xOff, out, outOff, len);
+    }
+
+    /**
+     * With a positive coefficient the output is negative exactly when the input is,
+     * so the derivative can be computed from the output.
+     * @return true if the coefficient is positive
+     */
+    public boolean hasOutputDerivative() {
+        return this.coefficient > 0;
+    }
+
+    /**
+     * Applies the derivative of the Leaky ReLU function to a range of Leaky ReLU values.
+     * Only valid when the coefficient is positive.
+     * @param a Leaky ReLU values
+     * @param aOff start of Leaky ReLU value range
+     * @param out destination. May be the same range as the Leaky ReLU values.
+     * @param outOff start of destination range
+     * @param len number of entries
+     */
+    public void outputDerivative(double[] a, int aOff, double[] out, int outOff, int len) {
+        if(!hasOutputDerivative()) {
+            throw new UnsupportedOperationException("LeakyReLU needs a positive coefficient to compute "
+                    + "its derivative from its output");
+        }
+        Kernels.get().leakyReluDerivative(this.coefficient, a, aOff, out, outOff, len);
+    }
+
+    /**
+     * Single precision version of {@link #outputDerivative(double[], int, double[], int, int)}.
+     */
+    public void outputDerivative(float[] a, int aOff, float[] out, int outOff, int len) {
+        if(!hasOutputDerivative()) {
+            throw new UnsupportedOperationException("LeakyReLU needs a positive coefficient to compute "
+                    + "its derivative from its output");
+        }
+        Kernels.get().leakyReluDerivative((float) this.coefficient, a, aOff, out, outOff, len);
+    }
+
     private class Function implements UnivariateFunction {
         /**
          * Term applied to input when the input is less than 0.
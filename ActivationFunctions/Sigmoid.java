@@ -1,5 +1,6 @@
 package ActivationFunctions;
 
+import Tensor.Kernels;
 import org.apache.commons.math4.legacy.analysis.UnivariateFunction;
 
 /**
@@ -37,6 +38,71 @@ public class Sigmoid implements ActivationFunction {
         return this.derivative;
     }
 
+    /**
+     * Applies the sigmoid function to a range of an array.
+     * @param x input values
+     * @param xOff start of input range
+     * @param out destination. May be the same range as the input.
+     * @param outOff start of destination range
+     * @param len number of entries
+     */
+    public void apply(double[] x, int xOff, double[] out, int outOff, int len) {
+        Kernels.get().sigmoid(x, xOff, out, outOff, len);
+    }
+
+    /**
+     * Single precision version of {@link #apply(double[], int, double[], int, int)}.
+     */
+    public void apply(float[] x, int xOff, float[] out, int outOff, int len) {
+        Kernels.get().sigmoid(x, xOff, out, outOff, len);
+    }
+
+    /**
+     * Applies the derivative of the sigmoid function to a range of an array.
+     * @param x input values
+     * @param xOff start of input range
+     * @param out destination. May be the same range as the input.
+     * @param outOff start of destination range
+     * @param len number of entries
+     */
+    public void derivative(double[] x, int xOff, double[] out, int outOff, int len) {
+        Kernels.get().sigmoidDerivative(x, xOff, out, outOff, len);
+    }
+
+    /**
+     * Single precision version of {@link #derivative(double[], int, double[], int, int)}.
+     */
+    public void derivative(float[] x, int xOff, float[] out, int outOff, int len) {
+        Kernels.get().sigmoidDerivative(x, xOff, out, outOff, len);
+    }
+
+    /**
+     * The sigmoid derivative can be computed from the output as {@code a * (1 - a)}.
+     * @return true
+     */
+    public boolean hasOutputDerivative() {
+        return true;
+    }
+
+    /**
+     * Applies the derivative of the sigmoid function to a range of sigmoid values.
+     * @param a sigmoid values
+     * @param aOff start of sigmoid value range
+     * @param out destination. May be the same range as the sigmoid values.
+     * @param outOff start of destination range
+     * @param len number of entries
+     */
+    public void outputDerivative(double[] a, int aOff, double[] out, int outOff, int len) {
+        Kernels.get().sigmoidOutputDerivative(a, aOff, out, outOff, len);
+    }
+
+    /**
+     * Single precision version of {@link #outputDerivative(double[], int, double[], int, int)}.
+     */
+    public void outputDerivative(float[] a, int aOff, float[] out, int outOff, int len) {
+        Kernels.get().sigmoidOutputDerivative(a, aOff, out, outOff, len);
+    }
+
     private class Function implements UnivariateFunction {
         /**
          * Applies a sigmoid activation function to the input.
@@ -1,5 +1,6 @@
 package ActivationFunctions;
 
+import Tensor.Kernels;
 import org.apache.commons.math4.legacy.analysis.UnivariateFunction;
 
 /**
@@ -16,6 +17,11 @@ public class Sinusoid implements ActivationFunction {
      */
     private DerivativeFunction derivative;
 
+    public Sinusoid() {
+        this.function = new Function();
+        this.derivative = new DerivativeFunction();
+    }
+
     /**
      * Gets the activation function.
      * @return activation function
@@ -32,6 +38,44 @@ public class Sinusoid implements ActivationFunction {
         return this.derivative;
     }
 
+    /**
+     * Applies the sine function to a range of an array.
+     * @param x input values
+     * @param xOff start of input range
+     * @param out destination. May be the same range as the input.
+     * @param outOff start of destination range
+     * @param len number of entries
+     */
+    public void apply(double[] x, int xOff, double[] out, int outOff, int len) {
+        Kernels.get().sin(x, xOff, out, outOff, len);
+    }
+
+    /**
+     * Single precision version of {@link #apply(double[], int, double[], int, int)}.
+     */
+    public void apply(float[] x, int xOff, float[] out, int outOff, int len) {
+        Kernels.get().sin(x, xOff, out, outOff, len);
+    }
+
+    /**
+     * Applies the derivative of the sine function to a range of an array.
+     * @param x input values
+     * @param xOff start of input range
+     * @param out destination. May be the same range as the input.
+     * @param outOff start of destination range
+     * @param len number of entries
+     */
+    public void derivative(double[] x, int xOff, double[] out, int outOff, int len) {
+        Kernels.get().cos(x, xOff, out, outOff, len);
+    }
+
+    /**
+     * Single precision version of {@link #derivative(double[], int, double[], int, int)}.
+     */
+    public void derivative(float[] x, int xOff, float[] out, int outOff, int len) {
+        Kernels.get().cos(x, xOff, out, outOff, len);
+    }
+
     private class Function implements UnivariateFunction {
         /**
          * Applies a sine activation function to the input.
@@ -1,5 +1,6 @@
 package ActivationFunctions;
 
+import Tensor.Kernels;
 import org.apache.commons.math4.legacy.analysis.UnivariateFunction;
 
 /**
@@ -16,6 +17,11 @@ public class TanH implements ActivationFunction {
      */
     private DerivativeFunction derivative;
 
+    public TanH() {
+        this.function = new Function();
+        this.derivative = new DerivativeFunction();
+    }
+
     /**
      * Gets the activation function.
      * @return activation function
@@ -32,6 +38,71 @@ public class TanH implements ActivationFunction {
         return this.derivative;
     }
 
+    /**
+     * Applies the hyperbolic tangent function to a range of an array.
+     * @param x input values
+     * @param xOff start of input range
+     * @param out destination. May be the same range as the input.
+     * @param outOff start of destination range
+     * @param len number of entries
+     */
+    public void apply(double[] x, int xOff, double[] out, int outOff, int len) {
+        Kernels.get().tanh(x, xOff, out, outOff, len);
+    }
+
+    /**
+     * Single precision version of {@link #apply(double[], int, double[], int, int)}.
+     */
+    public void apply(float[] x, int xOff, float[] out, int outOff, int len) {
+        Kernels.get().tanh(x, xOff, out, outOff, len);
+    }
+
+    /**
+     * Applies the derivative of the hyperbolic tangent function to a range of an array.
+     * @param x input values
+     * @param xOff start of input range
+     * @param out destination. May be the same range as the input.
+     * @param outOff start of destination range
+     * @param len number of entries
+     */
+    public void derivative(double[] x, int xOff, double[] out, int outOff, int len) {
+        Kernels.get().tanhDerivative(x, xOff, out, outOff, len);
+    }
+
+    /**
+     * Single precision version of {@link #derivative(double[], int, double[], int, int)}.
+     */
+    public void derivative(float[] x, int xOff, float[] out, int outOff, int len) {
+        Kernels.get().tanhDerivative(x, xOff, out, outOff, len);
+    }
+
+    /**
+     * The hyperbolic tangent derivative can be computed from the output as {@code 1 - a * a}.
+     * @return true
+     */
+    public boolean hasOutputDerivative() {
+        return true;
+    }
+
+    /**
+     * Applies the derivative of the hyperbolic tangent function to a range of hyperbolic tangent values.
+     * @param a hyperbolic tangent values
+     * @param aOff start of hyperbolic tangent value range
+     * @param out destination. May be the same range as the hyperbolic tangent values.
+     * @param outOff start of destination range
+     * @param len number of entries
+     */
+    public void outputDerivative(double[] a, int aOff, double[] out, int outOff, int len) {
+        Kernels.get().tanhOutputDerivative(a, aOff, out, outOff, len);
+    }
+
+    /**
+     * Single precision version of {@link #outputDerivative(double[], int, double[], int, int)}.
+     */
+    public void outputDerivative(float[] a, int aOff, float[] out, int outOff, int len) {
+        Kernels.get().tanhOutputDerivative(a, aOff, out, outOff, len);
+    }
+
     private class Function implements UnivariateFunction {
         /**
          * Applies a hyperbolic tangent activation function to the input.
@@ -0,0 +1,614 @@
+import Layer.FullyConnectedLayer;
+import Metrics.Histogram;
+import Optimizers.Optimizer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Saves a training network to disk every so often without holding up training.
+ *
+ * The trainer calls {@link #checkpoint(long)} between steps. That copies the weights and the optimizer
+ * state into one of two preallocated snapshots and returns; a background thread writes the snapshot out
+ * while training carries on, so the trainer is only blocked for the memory copy. The other snapshot is
+ * free for the next checkpoint. The optimizer state is copied into copies of the optimizer that the writer
+ * makes by serialising it, ahead of time for the optimizer the network has when the checkpointer is created.
+ * If the network is given another optimizer, the first checkpoint after that waits for the writer to copy it. If the writer is still busy when the next checkpoint comes, a snapshot
+ * that was waiting to be written is replaced by the newer one rather than making the trainer wait.
+ *
+ * Each checkpoint is a {@link ModelFile} followed by the step number and the serialised optimizer, so
+ * {@link ModelFile#load(Path)} reads the weights of a checkpoint as it would any model. It is written to a
+ * temporary file, synced and renamed into place, then the directory is synced, so a crash never leaves a
+ * partly written checkpoint under a checkpoint name and does not lose a finished one. Temporary files left
+ * by a crash are deleted when a checkpointer is created. Only the newest {@code keep} checkpoints are kept.
+ *
+ * {@link #restore(Network, Path)} puts the weights and optimizer state of a checkpoint back into a network
+ * of the same shape and precision, after which training continues exactly as it would have from that step.
+ */
+public class Checkpointer implements AutoCloseable {
+
+    /**
+     * First four bytes of the training state following the model, the bytes "CKPT".
+     */
+    private static final int MAGIC = 0x54504B43;
+
+    /**
+     * Version of the training state written after the model.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Length of the training state before the serialised optimizer.
+     */
+    private static final int TRAILER = 20;
+
+    /**
+     * Start of every checkpoint file name.
+     */
+    private static final String PREFIX = "checkpoint-";
+
+    /**
+     * End of every checkpoint file name.
+     */
+    private static final String SUFFIX = ".ckpt";
+
+    /**
+     * End of the name of a checkpoint being written.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Network being trained.
+     */
+    private final Network network;
+
+    /**
+     * Directory the checkpoints are written to.
+     */
+    private final Path directory;
+
+    /**
+     * Number of newest checkpoints kept.
+     */
+    private final int keep;
+
+    /**
+     * The two snapshots the trainer and the writer take turns with.
+     */
+    private final Snapshot[] snapshots = new Snapshot[2];
+
+    /**
+     * Thread writing snapshots to disk.
+     */
+    private final Thread writer;
+
+    /**
+     * Time the trainer spent in {@link #checkpoint(long)}.
+     */
+    private final Histogram blockedNanos = new Histogram();
+
+    /**
+     * Time the writer took per checkpoint.
+     */
+    private final Histogram writeNanos = new Histogram();
+
+    /**
+     * Snapshot waiting to be written, or null. Guarded by this object.
+     */
+    private Snapshot pending;
+
+    /**
+     * Snapshot the writer is writing, or null. Guarded by this object.
+     */
+    private Snapshot writing;
+
+    /**
+     * Optimizer the writer is to make copies of, or null. Guarded by this object.
+     */
+    private Optimizer preparing;
+
+    /**
+     * Optimizer {@link #prepared} are copies of, or null. Guarded by this object.
+     */
+    private Optimizer preparedFrom;
+
+    /**
+     * One copy of {@link #preparedFrom} per snapshot, by snapshot index. Guarded by this object.
+     */
+    private Optimizer[] prepared;
+
+    /**
+     * Number of checkpoints written. Guarded by this object.
+     */
+    private long written;
+
+    /**
+     * Number of snapshots replaced by a newer one before they were written. Guarded by this object.
+     */
+    private long superseded;
+
+    /**
+     * First error of the writer, reported to the trainer. Guarded by this object.
+     */
+    private Throwable failure;
+
+    /**
+     * Whether {@link #close()} has been called. Guarded by this object.
+     */
+    private boolean closed;
+
+    /**
+     * Allocates the snapshots, deletes temporary files left in the directory by a crash and starts the writer,
+     * which first copies the network's optimizer, if any.
+     * @param network network to checkpoint. Its layers must not be replaced while checkpointing.
+     * @param directory directory for the checkpoints, created if missing
+     * @param keep number of newest checkpoints kept, at least 1
+     * @throws IOException if the directory cannot be created or a temporary file cannot be deleted
+     */
+    public Checkpointer(Network network, Path directory, int keep) throws IOException {
+        if(keep < 1) {
+            throw new IllegalArgumentException("Must keep at least one checkpoint but was " + keep);
+        }
+        this.network = network;
+        this.directory = Files.createDirectories(directory);
+        this.keep = keep;
+        for(int i = 0; i < this.snapshots.length; i++) {
+            this.snapshots[i] = new Snapshot(network);
+        }
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory,
+                PREFIX + "*" + SUFFIX + TEMP_SUFFIX)) {
+            for(Path p : stream) {
+                Files.deleteIfExists(p);
+            }
+        }
+        this.preparing = network.getOptimizer();
+
+        this.writer = new Thread(this::write, "checkpoint-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Takes a snapshot of the network and its optimizer and hands it to the writer.
+     * Must be called from the training thread between steps, while nothing changes the weights.
+     * Only copies memory, unless the optimizer was replaced and the writer has to copy the new one first.
+     * @param step training step or epoch the snapshot belongs to, returned by {@link #restore(Network, Path)}
+     * @throws IllegalStateException if writing an earlier checkpoint or copying the optimizer failed, or the
+     * checkpointer is closed
+     */
+    public void checkpoint(long step) {
+        long start = System.nanoTime();
+        Optimizer live = this.network.getOptimizer();
+        Snapshot s;
+        synchronized(this) {
+            if(this.failure != null) {
+                throw new IllegalStateException("Writing a checkpoint failed", this.failure);
+            }
+            if(this.closed) {
+                throw new IllegalStateException("Checkpointer is closed");
+            }
+            s = this.snapshots[0] == this.writing ? this.snapshots[1] : this.snapshots[0];
+            if(this.pending != null) {
+                // s is the only snapshot not being written, so a pending snapshot is s; take it back from the writer
+                this.pending = null;
+                this.superseded++;
+            }
+            if(live != null && live != s.copiedFrom) {
+                s.copy = awaitCopy(live, s == this.snapshots[0] ? 0 : 1);
+                s.copiedFrom = live;
+            }
+        }
+        s.copyFrom(this.network, live, step);
+        synchronized(this) {
+            this.pending = s;
+            notifyAll();
+        }
+        this.blockedNanos.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Gets the copy of an optimizer for a snapshot, having the writer make copies if it has not yet.
+     * Must hold this object's lock.
+     * @param live optimizer of the network
+     * @param index index of the snapshot
+     * @return optimizer of the same class and settings, with any state
+     * @throws IllegalStateException if copying failed or the thread was interrupted
+     */
+    private Optimizer awaitCopy(Optimizer live, int index) {
+        if(this.preparedFrom != live) {
+            this.preparing = live;
+            notifyAll();
+            try {
+                while(this.preparedFrom != live && this.failure == null) {
+                    wait();
+                }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the optimizer to be copied", e);
+            }
+            if(this.failure != null) {
+                throw new IllegalStateException("Copying the optimizer failed", this.failure);
+            }
+        }
+        return this.prepared[index];
+    }
+
+    /**
+     * Writer loop. Copies optimizers and writes snapshots until the checkpointer is closed and nothing is
+     * pending.
+     */
+    private void write() {
+        try {
+            while(true) {
+                Snapshot s;
+                Optimizer live;
+                synchronized(this) {
+                    while(this.pending == null && this.preparing == null && !this.closed) {
+                        wait();
+                    }
+                    live = this.preparing;
+                    s = live == null ? this.pending : null;
+                    if(live == null && s == null) {
+                        return;
+                    }
+                    if(s != null) {
+                        this.pending = null;
+                        this.writing = s;
+                    }
+                }
+                if(live != null) {
+                    // copies before writes, as a trainer may be waiting for them
+                    prepare(live);
+                    continue;
+                }
+                long start = System.nanoTime();
+                save(s);
+                prune();
+                this.writeNanos.record(System.nanoTime() - start);
+                synchronized(this) {
+                    this.writing = null;
+                    this.written++;
+                    notifyAll();
+                }
+            }
+        } catch(Throwable e) {
+            synchronized(this) {
+                this.failure = e;
+                this.pending = null;
+                this.writing = null;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Makes one copy of an optimizer per snapshot for {@link #checkpoint(long)} to copy the state into.
+     * The optimizer may be training meanwhile; the copies get its settings, and their state is overwritten.
+     * @param live optimizer to copy
+     * @throws IOException if the optimizer cannot be serialised
+     */
+    private void prepare(Optimizer live) throws IOException {
+        byte[] bytes = serialize(live);
+        Optimizer[] copies = new Optimizer[this.snapshots.length];
+        for(int i = 0; i < copies.length; i++) {
+            copies[i] = deserialize(bytes);
+        }
+        synchronized(this) {
+            this.prepared = copies;
+            this.preparedFrom = live;
+            if(this.preparing == live) {
+                this.preparing = null;
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Writes a snapshot to a temporary file and renames it to its checkpoint name.
+     * @param s snapshot to write
+     * @throws IOException if the file cannot be written or renamed
+     */
+    private void save(Snapshot s) throws IOException {
+        byte[] optimizer = s.optimizer == null ? new byte[0] : serialize(s.optimizer);
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER).order(ByteOrder.LITTLE_ENDIAN);
+        trailer.putInt(MAGIC);
+        trailer.putInt(VERSION);
+        trailer.putLong(s.step);
+        trailer.putInt(optimizer.length);
+        trailer.flip();
+
+        Path target = this.directory.resolve(String.format("%s%019d%s", PREFIX, s.step, SUFFIX));
+        Path temp = this.directory.resolve(target.getFileName() + TEMP_SUFFIX);
+        try(FileChannel ch = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ModelFile.write(s.network, ch);
+            ModelFile.writeFully(ch, trailer);
+            ModelFile.writeFully(ch, ByteBuffer.wrap(optimizer));
+            ch.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // the rename is only durable once the directory is
+        FileChannel dir;
+        try {
+            dir = FileChannel.open(this.directory, StandardOpenOption.READ);
+        } catch(IOException e) {
+            // some platforms, such as Windows, cannot open a directory; renames there are durable on their own
+            return;
+        }
+        try(dir) {
+            dir.force(true);
+        }
+    }
+
+    /**
+     * Deletes all but the newest {@link #keep} checkpoints.
+     * @throws IOException if the directory cannot be listed or a file cannot be deleted
+     */
+    private void prune() throws IOException {
+        List<Path> files = list(this.directory);
+        for(int i = 0; i < files.size() - this.keep; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    /**
+     * Waits until every checkpoint taken so far has been written.
+     * @throws IllegalStateException if writing a checkpoint failed
+     */
+    public synchronized void flush() {
+        try {
+            while((this.pending != null || this.writing != null) && this.failure == null) {
+                wait();
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for checkpoints to be written", e);
+        }
+        if(this.failure != null) {
+            throw new IllegalStateException("Writing a checkpoint failed", this.failure);
+        }
+    }
+
+    /**
+     * Writes the pending checkpoint, if any, and stops the writer.
+     */
+    @Override
+    public void close() {
+        synchronized(this) {
+            this.closed = true;
+            notifyAll();
+        }
+        try {
+            this.writer.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Time the trainer was blocked per checkpoint, in nanoseconds.
+     * @return live histogram
+     */
+    public Histogram blockedNanos() {
+        return this.blockedNanos;
+    }
+
+    /**
+     * Time taken to write and rename each checkpoint in the background, in nanoseconds.
+     * @return live histogram
+     */
+    public Histogram writeNanos() {
+        return this.writeNanos;
+    }
+
+    /**
+     * Number of checkpoints written.
+     * @return count
+     */
+    public synchronized long written() {
+        return this.written;
+    }
+
+    /**
+     * Number of snapshots replaced by a newer one because the writer was still busy.
+     * @return count
+     */
+    public synchronized long superseded() {
+        return this.superseded;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("checkpoints: %d written, %d superseded%n  blocked %s%n  write %s",
+                written(), superseded(), this.blockedNanos, this.writeNanos);
+    }
+
+    /**
+     * Finds the newest checkpoint in a directory.
+     * @param directory checkpoint directory
+     * @return path of the checkpoint with the highest step, or null if there is none
+     * @throws IOException if the directory cannot be listed
+     */
+    public static Path latest(Path directory) throws IOException {
+        if(!Files.isDirectory(directory)) {
+            return null;
+        }
+        List<Path> files = list(directory);
+        return files.isEmpty() ? null : files.get(files.size() - 1);
+    }
+
+    /**
+     * Puts the weights and optimizer of a checkpoint into a network, which is then in the state it was
+     * in when the checkpoint was taken. The network's optimizer is replaced by the saved one.
+     * @param network network with the same layer sizes and precision as the checkpointed one
+     * @param checkpoint checkpoint file, such as from {@link #latest(Path)}
+     * @return step passed to {@link #checkpoint(long)} for this checkpoint
+     * @throws IOException if the file cannot be read, is not a checkpoint or holds another precision
+     * @throws IllegalArgumentException if the layer sizes do not match
+     */
+    public static long restore(Network network, Path checkpoint) throws IOException {
+        Network saved = ModelFile.load(checkpoint);
+        if(saved.precision() != network.precision()) {
+            // the optimizer state has the storage type of the weights it was saved with
+            throw new IOException(checkpoint + " holds a " + saved.precision() + " network but the network is "
+                    + network.precision());
+        }
+        FullyConnectedLayer[] from = saved.layers();
+        FullyConnectedLayer[] to = network.layers();
+        if(from.length != to.length || saved.inputSize() != network.inputSize()) {
+            throw new IllegalArgumentException(checkpoint + " holds a network of a different shape");
+        }
+        for(int i = 0; i < to.length; i++) {
+            if(from[i].size() != to[i].size()) {
+                throw new IllegalArgumentException(checkpoint + " has " + from[i].size() + " nodes in layer "
+                        + i + " but the network has " + to[i].size());
+            }
+        }
+
+        ByteBuffer buf;
+        long offset = ModelFile.length(saved);
+        try(FileChannel ch = FileChannel.open(checkpoint, StandardOpenOption.READ)) {
+            if(ch.size() < offset + TRAILER) {
+                throw new IOException(checkpoint + " has no training state after the model");
+            }
+            buf = ByteBuffer.allocate((int) (ch.size() - offset)).order(ByteOrder.LITTLE_ENDIAN);
+            while(buf.hasRemaining()) {
+                if(ch.read(buf, offset + buf.position()) < 0) {
+                    throw new IOException(checkpoint + " ended while reading");
+                }
+            }
+            buf.flip();
+        }
+        if(buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+            throw new IOException(checkpoint + " has no training state of a supported version after the model");
+        }
+        long step = buf.getLong();
+        int length = buf.getInt();
+        if(length < 0 || length > buf.remaining()) {
+            throw new IOException(checkpoint + " ends inside the optimizer state");
+        }
+        Optimizer optimizer = null;
+        if(length > 0) {
+            byte[] bytes = new byte[length];
+            buf.get(bytes);
+            optimizer = deserialize(bytes);
+        }
+
+        for(int i = 0; i < to.length; i++) {
+            to[i].getWeights().copyFrom(from[i].getWeights());
+        }
+        network.setOptimizer(optimizer);
+        return step;
+    }
+
+    /**
+     * Checkpoint files of a directory, oldest step first.
+     */
+    private static List<Path> list(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for(Path p : stream) {
+                files.add(p);
+            }
+        }
+        // names hold the step zero padded, so they sort by step
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Serialises an optimizer with its state.
+     */
+    private static byte[] serialize(Optimizer optimizer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(optimizer);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads an optimizer written by {@link #serialize(Optimizer)}.
+     */
+    private static Optimizer deserialize(byte[] bytes) throws IOException {
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (Optimizer) in.readObject();
+        } catch(ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Checkpoint holds an unknown optimizer", e);
+        }
+    }
+
+    /**
+     * Copy of a network's weights and optimizer state at one step, reused from checkpoint to checkpoint.
+     */
+    private static final class Snapshot {
+
+        /**
+         * Network owning copies of the weights, written by {@link ModelFile}.
+         */
+        private final Network network;
+
+        /**
+         * Optimizer written with the snapshot: {@link #copy} with the copied state, or null if the network had none.
+         */
+        private Optimizer optimizer;
+
+        /**
+         * Copy of {@link #copiedFrom} made by the writer, receiving its state.
+         */
+        private Optimizer copy;
+
+        /**
+         * Optimizer {@link #copy} is a copy of.
+         */
+        private Optimizer copiedFrom;
+
+        /**
+         * Step the copy was taken at.
+         */
+        private long step;
+
+        /**
+         * Allocates weights of the same shapes and precision as a network's.
+         * @param source network to copy
+         */
+        private Snapshot(Network source) {
+            this.network = source.copy();
+        }
+
+        /**
+         * Copies the current weights and optimizer state of a network.
+         * @param source network being trained
+         * @param live optimizer of the network, which {@link #copy} must be a copy of, or null
+         * @param step step the copy belongs to
+         */
+        private void copyFrom(Network source, Optimizer live, long step) {
+            FullyConnectedLayer[] from = source.layers();
+            FullyConnectedLayer[] to = this.network.layers();
+            for(int i = 0; i < from.length; i++) {
+                to[i].getWeights().copyFrom(from[i].getWeights());
+            }
+            if(live == null) {
+                this.optimizer = null;
+            } else {
+                this.copy.copyStateFrom(live);
+                this.optimizer = this.copy;
+            }
+            this.step = step;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package Data;
+
+import Tensor.Tensor;
+
+/**
+ * A dataset held in memory as arrays of inputs and expected outputs.
+ */
+public class ArrayDataset implements Dataset {
+
+    /**
+     * Input vectors, indexed as {@code [sample][entry]}.
+     */
+    private final double[][] inputs;
+
+    /**
+     * Expected output vectors, indexed as {@code [sample][entry]}.
+     */
+    private final double[][] expected;
+
+    /**
+     * Wraps arrays of samples without copying them.
+     * @param inputs input vectors, all of the same length
+     * @param expected expected output vectors, all of the same length, one per input
+     */
+    public ArrayDataset(double[][] inputs, double[][] expected) {
+        if(inputs.length != expected.length) {
+            throw new IllegalArgumentException(inputs.length + " inputs but " + expected.length + " expected outputs");
+        }
+        checkRectangular(inputs, "inputs");
+        checkRectangular(expected, "expected outputs");
+        this.inputs = inputs;
+        this.expected = expected;
+    }
+
+    private static void checkRectangular(double[][] m, String name) {
+        for(int i = 1; i < m.length; i++) {
+            if(m[i].length != m[0].length) {
+                throw new IllegalArgumentException("All " + name + " must have length " + m[0].length
+                        + " but sample " + i + " has " + m[i].length);
+            }
+        }
+    }
+
+    /**
+     * Number of samples.
+     * @return size
+     */
+    public int size() {
+        return this.inputs.length;
+    }
+
+    /**
+     * Length of each input vector.
+     * @return input size, or 0 for an empty dataset
+     */
+    public int inputSize() {
+        return this.inputs.length == 0 ? 0 : this.inputs[0].length;
+    }
+
+    /**
+     * Length of each expected output vector.
+     * @return output size, or 0 for an empty dataset
+     */
+    public int outputSize() {
+        return this.expected.length == 0 ? 0 : this.expected[0].length;
+    }
+
+    /**
+     * Copies a selection of samples into batch buffers, one sample per row.
+     * @see Dataset#gather(int[], int, int, Tensor, Tensor)
+     */
+    public void gather(int[] indices, int from, int count, Tensor inputs, Tensor expected) {
+        for(int i = 0; i < count; i++) {
+            int sample = indices[from + i];
+            copyRow(this.inputs[sample], inputs, i);
+            copyRow(this.expected[sample], expected, i);
+        }
+    }
+
+    /**
+     * Copies an array into one row of a tensor of either storage type.
+     * @param src values
+     * @param dst destination tensor
+     * @param row row of the destination
+     */
+    private static void copyRow(double[] src, Tensor dst, int row) {
+        int start = dst.index(row, 0);
+        if(dst.isFloat()) {
+            float[] d = dst.floatData();
+            for(int j = 0; j < src.length; j++) {
+                d[start + j] = (float) src[j];
+            }
+        } else {
+            System.arraycopy(src, 0, dst.data(), start, src.length);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package Data;
+
+import Tensor.PrecisionEnum;
+import Tensor.Tensor;
+
+/**
+ * Preallocated buffers holding one mini-batch of samples, reused for many batches.
+ * Filled by a {@link BatchPrefetcher} producer and read by the training thread.
+ */
+public class Batch {
+
+    /**
+     * Input buffer with room for a full batch.
+     */
+    private final Tensor inputs;
+
+    /**
+     * Expected output buffer with room for a full batch.
+     */
+    private final Tensor expected;
+
+    /**
+     * View of the first {@link #count} rows of {@link #inputs}.
+     */
+    private Tensor inputView;
+
+    /**
+     * View of the first {@link #count} rows of {@link #expected}.
+     */
+    private Tensor expectedView;
+
+    /**
+     * Number of samples currently held.
+     */
+    private int count;
+
+    /**
+     * Epoch the current samples belong to, starting at 1.
+     */
+    private int epoch;
+
+    /**
+     * Position of this batch within its epoch, starting at 0.
+     */
+    private int index;
+
+    /**
+     * Whether this is the final batch of its epoch.
+     */
+    private boolean lastOfEpoch;
+
+    /**
+     * Allocates buffers for one batch.
+     * @param batchSize largest number of samples per batch
+     * @param inputSize length of each input vector
+     * @param outputSize length of each expected output vector
+     * @param precision storage precision of the buffers
+     */
+    Batch(int batchSize, int inputSize, int outputSize, PrecisionEnum precision) {
+        this.inputs = new Tensor(batchSize, inputSize, precision);
+        this.expected = new Tensor(batchSize, outputSize, precision);
+        this.inputView = this.inputs;
+        this.expectedView = this.expected;
+        this.count = batchSize;
+    }
+
+    /**
+     * Gathers samples into the buffers.
+     * @param dataset source of samples
+     * @param order sample indices in the order of the epoch
+     * @param from position in {@code order} of the first sample
+     * @param count number of samples
+     * @param epoch epoch number, starting at 1
+     * @param index position of the batch in its epoch
+     * @param lastOfEpoch whether this is the final batch of its epoch
+     */
+    void fill(Dataset dataset, int[] order, int from, int count, int epoch, int index, boolean lastOfEpoch) {
+        if(count != this.count) {
+            // views change only for the short batch at the end of an epoch
+            this.inputView = count == this.inputs.rows() ? this.inputs : this.inputs.slice(0, count);
+            this.expectedView = count == this.expected.rows() ? this.expected : this.expected.slice(0, count);
+            this.count = count;
+        }
+        dataset.gather(order, from, count, this.inputView, this.expectedView);
+        this.epoch = epoch;
+        this.index = index;
+        this.lastOfEpoch = lastOfEpoch;
+    }
+
+    /**
+     * Inputs of the samples held, one per row.
+     * @return input tensor with {@link #count()} rows
+     */
+    public Tensor inputs() {
+        return this.inputView;
+    }
+
+    /**
+     * Expected outputs of the samples held, one per row.
+     * @return expected output tensor with {@link #count()} rows
+     */
+    public Tensor expected() {
+        return this.expectedView;
+    }
+
+    /**
+     * Number of samples held.
+     * @return count
+     */
+    public int count() {
+        return this.count;
+    }
+
+    /**
+     * Epoch the samples belong to.
+     * @return epoch, starting at 1
+     */
+    public int epoch() {
+        return this.epoch;
+    }
+
+    /**
+     * Position of this batch within its epoch.
+     * @return index, starting at 0
+     */
+    public int index() {
+        return this.index;
+    }
+
+    /**
+     * Whether this is the final batch of its epoch.
+     * @return true for the last batch
+     */
+    public boolean isLastOfEpoch() {
+        return this.lastOfEpoch;
+    }
+}
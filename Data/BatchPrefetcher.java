@@ -0,0 +1,338 @@
+package Data;
+
+import Tensor.PrecisionEnum;
+
+import java.util.Random;
+
+/**
+ * Prepares mini-batches on background threads while the network trains on earlier ones.
+ *
+ * Batches live in a ring of preallocated {@link Batch} buffers. Producer threads claim the next
+ * batch in sequence, gather its samples into a free buffer and publish it. The training thread
+ * takes batches in sequence order; taking a batch hands the previous one back to the producers,
+ * so nothing is copied between threads. With a ring of two buffers this is plain double buffering.
+ *
+ * Each epoch visits the samples in a new random order, shuffled through an index permutation.
+ * Producers wait when every buffer is full (backpressure) and the training thread waits when the
+ * next batch is not ready yet (a stall). Both waits are timed so an undersized pipeline shows up
+ * in {@link #stallNanos()}.
+ */
+public class BatchPrefetcher implements AutoCloseable {
+
+    /**
+     * Source of samples.
+     */
+    private final Dataset dataset;
+
+    /**
+     * Largest number of samples per batch.
+     */
+    private final int batchSize;
+
+    /**
+     * Number of batches in one epoch, including a final short batch.
+     */
+    private final int batchesPerEpoch;
+
+    /**
+     * Number of batches over all epochs.
+     */
+    private final long totalBatches;
+
+    /**
+     * Precision of the batch buffers.
+     */
+    private final PrecisionEnum precision;
+
+    /**
+     * Ring of batch buffers. Sequence number {@code s} uses slot {@code s % ring.length}.
+     */
+    private final Batch[] ring;
+
+    /**
+     * Sequence number held by each slot once filled, or -1 before its first fill.
+     */
+    private final long[] ready;
+
+    /**
+     * Sample orders of the epochs that may be in flight. Epoch {@code e} uses {@code orders[e % orders.length]}.
+     */
+    private final int[][] orders;
+
+    /**
+     * Source of the sample orders. Only used while holding the lock.
+     */
+    private final Random random;
+
+    /**
+     * Producer threads.
+     */
+    private final Thread[] producers;
+
+    /**
+     * Next sequence number a producer will claim.
+     */
+    private long claimed;
+
+    /**
+     * Next sequence number the training thread will take.
+     */
+    private long next;
+
+    /**
+     * Number of sequence numbers whose buffers have been handed back to the producers.
+     */
+    private long released;
+
+    /**
+     * First exception thrown by a producer.
+     */
+    private Throwable failure;
+
+    /**
+     * Whether {@link #close()} has been called.
+     */
+    private boolean closed;
+
+    /**
+     * Time the training thread spent waiting for batches.
+     */
+    private long stallNanos;
+
+    /**
+     * Number of times the training thread had to wait for a batch.
+     */
+    private long stalls;
+
+    /**
+     * Time producers spent waiting for a free buffer.
+     */
+    private long backpressureNanos;
+
+    /**
+     * Time producers spent gathering samples.
+     */
+    private long fillNanos;
+
+    /**
+     * Starts prefetching.
+     * @param dataset source of samples
+     * @param batchSize largest number of samples per batch
+     * @param epochs number of passes over the dataset
+     * @param buffers number of batch buffers in the ring, at least 2
+     * @param threads number of producer threads
+     * @param precision precision of the batch buffers, which should match the network
+     * @param random source of the sample order of each epoch
+     */
+    public BatchPrefetcher(Dataset dataset, int batchSize, int epochs, int buffers, int threads,
+                           PrecisionEnum precision, Random random) {
+        if(batchSize < 1 || epochs < 0 || buffers < 2 || threads < 1) {
+            throw new IllegalArgumentException("Invalid prefetcher configuration: batch size " + batchSize
+                    + ", " + epochs + " epochs, " + buffers + " buffers, " + threads + " threads");
+        }
+        int n = dataset.size();
+        this.dataset = dataset;
+        this.batchSize = Math.min(batchSize, Math.max(n, 1));
+        this.batchesPerEpoch = (n + this.batchSize - 1) / this.batchSize;
+        this.totalBatches = (long) this.batchesPerEpoch * epochs;
+        this.precision = precision;
+        this.random = random;
+
+        this.ring = new Batch[buffers];
+        this.ready = new long[buffers];
+        for(int i = 0; i < buffers; i++) {
+            this.ring[i] = new Batch(this.batchSize, dataset.inputSize(), dataset.outputSize(), precision);
+            this.ready[i] = -1;
+        }
+        // in-flight batches span at most buffers / batchesPerEpoch + 1 epochs besides the one being taken
+        this.orders = new int[Math.max(1, buffers / Math.max(1, this.batchesPerEpoch)) + 2][n];
+        for(int[] order : this.orders) {
+            for(int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+        }
+
+        this.producers = new Thread[threads];
+        for(int i = 0; i < threads; i++) {
+            this.producers[i] = new Thread(this::produce, "batch-prefetch-" + i);
+            this.producers[i].setDaemon(true);
+            this.producers[i].start();
+        }
+    }
+
+    /**
+     * Producer loop. Claims sequence numbers in order and fills their buffers until every batch is done.
+     */
+    private void produce() {
+        try {
+            while(true) {
+                long seq;
+                int[] order;
+                synchronized(this) {
+                    // a slot is free once the batch that used it before has been released
+                    if(!this.closed && this.claimed < this.totalBatches && this.claimed >= this.released + this.ring.length) {
+                        long start = System.nanoTime();
+                        while(!this.closed && this.claimed < this.totalBatches
+                                && this.claimed >= this.released + this.ring.length) {
+                            wait();
+                        }
+                        this.backpressureNanos += System.nanoTime() - start;
+                    }
+                    if(this.closed || this.claimed >= this.totalBatches) {
+                        return;
+                    }
+                    seq = this.claimed++;
+                    int epoch = (int) (seq / this.batchesPerEpoch);
+                    order = this.orders[epoch % this.orders.length];
+                    if(seq % this.batchesPerEpoch == 0) {
+                        Dataset.shuffle(order, this.random);
+                    }
+                }
+
+                long start = System.nanoTime();
+                int epoch = (int) (seq / this.batchesPerEpoch);
+                int index = (int) (seq % this.batchesPerEpoch);
+                int from = index * this.batchSize;
+                int count = Math.min(this.batchSize, this.dataset.size() - from);
+                int slot = (int) (seq % this.ring.length);
+                this.ring[slot].fill(this.dataset, order, from, count, epoch + 1, index,
+                        index == this.batchesPerEpoch - 1);
+                long took = System.nanoTime() - start;
+
+                synchronized(this) {
+                    this.fillNanos += took;
+                    this.ready[slot] = seq;
+                    notifyAll();
+                }
+            }
+        } catch(InterruptedException e) {
+            // closed while waiting
+        } catch(RuntimeException | Error e) {
+            synchronized(this) {
+                if(this.failure == null) {
+                    this.failure = e;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Takes the next batch, waiting for it if a producer has not finished it yet.
+     * The batch previously returned is handed back to the producers and must no longer be used.
+     * @return next batch, or null once every epoch is done
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if a producer failed or the prefetcher was closed
+     */
+    public synchronized Batch take() throws InterruptedException {
+        if(this.released < this.next) {
+            this.released = this.next;
+            notifyAll();
+        }
+        if(this.next >= this.totalBatches) {
+            return null;
+        }
+        int slot = (int) (this.next % this.ring.length);
+        if(this.ready[slot] != this.next) {
+            long start = System.nanoTime();
+            while(this.ready[slot] != this.next && this.failure == null && !this.closed) {
+                wait();
+            }
+            this.stallNanos += System.nanoTime() - start;
+            this.stalls++;
+        }
+        if(this.failure != null) {
+            throw new IllegalStateException("Batch producer failed", this.failure);
+        }
+        if(this.closed) {
+            throw new IllegalStateException("Prefetcher is closed");
+        }
+        this.next++;
+        return this.ring[slot];
+    }
+
+    /**
+     * Stops the producers. Batches already taken must no longer be used.
+     */
+    @Override
+    public void close() {
+        synchronized(this) {
+            this.closed = true;
+            notifyAll();
+        }
+        for(Thread t : this.producers) {
+            t.interrupt();
+        }
+    }
+
+    /**
+     * Source of samples.
+     * @return dataset
+     */
+    public Dataset dataset() {
+        return this.dataset;
+    }
+
+    /**
+     * Largest number of samples per batch.
+     * @return batch size
+     */
+    public int batchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * Precision of the batch buffers.
+     * @return precision
+     */
+    public PrecisionEnum precision() {
+        return this.precision;
+    }
+
+    /**
+     * Time the training thread spent waiting for batches. Zero when preparation fully overlaps training.
+     * @return nanoseconds
+     */
+    public synchronized long stallNanos() {
+        return this.stallNanos;
+    }
+
+    /**
+     * Number of times the training thread had to wait for a batch.
+     * @return stalls
+     */
+    public synchronized long stalls() {
+        return this.stalls;
+    }
+
+    /**
+     * Time producers spent waiting for a free buffer, summed over producers.
+     * High values mean producers are faster than training.
+     * @return nanoseconds
+     */
+    public synchronized long backpressureNanos() {
+        return this.backpressureNanos;
+    }
+
+    /**
+     * Time producers spent gathering samples, summed over producers.
+     * @return nanoseconds
+     */
+    public synchronized long fillNanos() {
+        return this.fillNanos;
+    }
+
+    /**
+     * Number of batches taken by the training thread.
+     * @return batches
+     */
+    public synchronized long taken() {
+        return this.next;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("prefetch: %d batches, %d stalls (%.1f ms), fill %.1f ms, backpressure %.1f ms",
+                this.next, this.stalls, this.stallNanos / 1e6, this.fillNanos / 1e6, this.backpressureNanos / 1e6);
+    }
+}
@@ -0,0 +1,58 @@
+package Data;
+
+import Tensor.Tensor;
+
+import java.util.Random;
+
+/**
+ * A fixed collection of training samples, each an input vector and its expected output vector.
+ * Samples are read by copying them into batch buffers, so a dataset never needs to hold
+ * its samples as a matrix.
+ */
+public interface Dataset {
+
+    /**
+     * Number of samples.
+     * @return size
+     */
+    int size();
+
+    /**
+     * Length of each input vector.
+     * @return input size
+     */
+    int inputSize();
+
+    /**
+     * Length of each expected output vector.
+     * @return output size
+     */
+    int outputSize();
+
+    /**
+     * Copies a selection of samples into batch buffers, one sample per row.
+     * Implementations must allow concurrent calls that write into different buffers.
+     * @param indices sample indices
+     * @param from position in {@code indices} of the first sample to copy
+     * @param count number of samples to copy
+     * @param inputs destination for the inputs, with at least {@code count} rows and {@link #inputSize()} columns
+     * @param expected destination for the expected outputs, with at least {@code count} rows
+     *                 and {@link #outputSize()} columns
+     */
+    void gather(int[] indices, int from, int count, Tensor inputs, Tensor expected);
+
+    /**
+     * Puts sample indices in a random order in place with a Fisher-Yates shuffle, giving every
+     * permutation the same chance.
+     * @param order sample indices to shuffle
+     * @param random source of randomness
+     */
+    static void shuffle(int[] order, Random random) {
+        for(int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+    }
+}
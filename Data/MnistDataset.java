@@ -0,0 +1,246 @@
+package Data;
+
+import Tensor.Tensor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MNIST images and labels read from a pair of IDX files.
+ *
+ * Both files are memory mapped rather than read, so opening a dataset takes the same time and
+ * heap regardless of its size, and the operating system pages in samples as they are used.
+ * Pixels stay as the unsigned bytes of the file and are only normalised to [0, 1] when
+ * copied into a batch. Labels are expanded to one-hot vectors the same way.
+ */
+public class MnistDataset implements Dataset {
+
+    /**
+     * Magic number of an IDX file of unsigned bytes with three dimensions.
+     */
+    private static final int IMAGE_MAGIC = 0x00000803;
+
+    /**
+     * Magic number of an IDX file of unsigned bytes with one dimension.
+     */
+    private static final int LABEL_MAGIC = 0x00000801;
+
+    /**
+     * Number of digit classes, the length of each one-hot label.
+     */
+    public static final int CLASSES = 10;
+
+    /**
+     * Scale from a pixel byte to [0, 1].
+     */
+    private static final double NORMALISE = 1 / 255.0;
+
+    /**
+     * Pixel bytes of every image, one image after another, starting after the header.
+     */
+    private final ByteBuffer pixels;
+
+    /**
+     * Label bytes, starting after the header.
+     */
+    private final ByteBuffer labels;
+
+    /**
+     * Number of samples.
+     */
+    private final int size;
+
+    /**
+     * Rows of pixels per image.
+     */
+    private final int rows;
+
+    /**
+     * Columns of pixels per image.
+     */
+    private final int cols;
+
+    private MnistDataset(ByteBuffer pixels, ByteBuffer labels, int size, int rows, int cols) {
+        this.pixels = pixels;
+        this.labels = labels;
+        this.size = size;
+        this.rows = rows;
+        this.cols = cols;
+    }
+
+    /**
+     * Maps a pair of IDX files, such as {@code train-images-idx3-ubyte} and {@code train-labels-idx1-ubyte}.
+     * Only the headers are read.
+     * @param images path of the image file
+     * @param labels path of the label file
+     * @return dataset backed by the mapped files
+     * @throws IOException if either file cannot be mapped or is not a valid IDX file of the expected kind
+     */
+    public static MnistDataset open(Path images, Path labels) throws IOException {
+        ByteBuffer img = map(images);
+        ByteBuffer lbl = map(labels);
+        checkHeader(img, IMAGE_MAGIC, 16, images);
+        checkHeader(lbl, LABEL_MAGIC, 8, labels);
+
+        int count = img.getInt(4);
+        int rows = img.getInt(8);
+        int cols = img.getInt(12);
+        int labelCount = lbl.getInt(4);
+        if(count < 0) {
+            throw new IOException(images + " declares " + count + " images");
+        }
+        if(rows <= 0 || cols <= 0 || (long) rows * cols > Integer.MAX_VALUE) {
+            throw new IOException(images + " declares images of " + rows + "x" + cols + " pixels");
+        }
+        if(count != labelCount) {
+            throw new IOException(images + " has " + count + " images but " + labels + " has " + labelCount + " labels");
+        }
+        long imageBytes = (long) count * rows * cols;
+        if(img.capacity() - 16 < imageBytes || lbl.capacity() - 8 < count) {
+            throw new IOException("IDX files are shorter than their headers declare");
+        }
+        return new MnistDataset(img.position(16).slice(), lbl.position(8).slice(), count, rows, cols);
+    }
+
+    /**
+     * Maps a whole file read-only in big-endian order, as used by IDX headers.
+     */
+    private static ByteBuffer map(Path path) throws IOException {
+        try(FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            if(ch.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large to map");
+            }
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return buf.order(ByteOrder.BIG_ENDIAN);
+        }
+    }
+
+    /**
+     * Checks that a file is long enough for its header and starts with the magic number of its kind.
+     */
+    private static void checkHeader(ByteBuffer buf, int magic, int headerBytes, Path path) throws IOException {
+        if(buf.capacity() < 4 || buf.getInt(0) != magic) {
+            throw new IOException(path + " is not an IDX file with magic number 0x" + Integer.toHexString(magic));
+        }
+        if(buf.capacity() < headerBytes) {
+            throw new IOException(path + " is shorter than its " + headerBytes + "-byte header");
+        }
+    }
+
+    /**
+     * Number of samples.
+     * @return size
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Pixels per image.
+     * @return rows times columns
+     */
+    public int inputSize() {
+        return this.rows * this.cols;
+    }
+
+    /**
+     * Length of a one-hot label.
+     * @return {@link #CLASSES}
+     */
+    public int outputSize() {
+        return CLASSES;
+    }
+
+    /**
+     * Rows of pixels per image.
+     * @return rows
+     */
+    public int rows() {
+        return this.rows;
+    }
+
+    /**
+     * Columns of pixels per image.
+     * @return columns
+     */
+    public int cols() {
+        return this.cols;
+    }
+
+    /**
+     * Read-only view of the raw pixel bytes of one image, without copying.
+     * @param i sample index
+     * @return unsigned pixel bytes in row-major order
+     */
+    public ByteBuffer image(int i) {
+        checkIndex(i);
+        int length = inputSize();
+        return this.pixels.slice(i * length, length).asReadOnlyBuffer();
+    }
+
+    /**
+     * Normalised value of one pixel.
+     * @param i sample index
+     * @param p pixel index in row-major order
+     * @return value in [0, 1]
+     */
+    public double pixel(int i, int p) {
+        checkIndex(i);
+        return (this.pixels.get(i * inputSize() + p) & 0xFF) * NORMALISE;
+    }
+
+    /**
+     * Digit shown by one image.
+     * @param i sample index
+     * @return label from 0 to 9
+     */
+    public int label(int i) {
+        checkIndex(i);
+        return this.labels.get(i) & 0xFF;
+    }
+
+    /**
+     * Copies a selection of samples into batch buffers, normalising pixels and expanding labels
+     * to one-hot vectors on the way. Safe to call concurrently since the mapped buffers are
+     * only read with absolute positions.
+     * @see Dataset#gather(int[], int, int, Tensor, Tensor)
+     */
+    public void gather(int[] indices, int from, int count, Tensor inputs, Tensor expected) {
+        int length = inputSize();
+        for(int r = 0; r < count; r++) {
+            int i = indices[from + r];
+            checkIndex(i);
+            int src = i * length;
+            int dst = inputs.index(r, 0);
+            if(inputs.isFloat()) {
+                float[] d = inputs.floatData();
+                for(int p = 0; p < length; p++) {
+                    d[dst + p] = (float) ((this.pixels.get(src + p) & 0xFF) * NORMALISE);
+                }
+            } else {
+                double[] d = inputs.data();
+                for(int p = 0; p < length; p++) {
+                    d[dst + p] = (this.pixels.get(src + p) & 0xFF) * NORMALISE;
+                }
+            }
+            int label = this.labels.get(i) & 0xFF;
+            if(label >= CLASSES) {
+                throw new IllegalStateException("Sample " + i + " has label " + label + " outside of 0 to " + (CLASSES - 1));
+            }
+            for(int c = 0; c < CLASSES; c++) {
+                expected.set(r, c, c == label ? 1 : 0);
+            }
+        }
+    }
+
+    private void checkIndex(int i) {
+        if(i < 0 || i >= this.size) {
+            throw new IndexOutOfBoundsException("Sample " + i + " outside of " + this.size);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Loss and throughput of one training epoch.
+ */
+public class EpochReport {
+
+    /**
+     * Epoch number, starting at 1.
+     */
+    private final int epoch;
+
+    /**
+     * Number of samples trained on.
+     */
+    private final int samples;
+
+    /**
+     * Wall clock time of the epoch in nanoseconds.
+     */
+    private final long nanos;
+
+    /**
+     * Average error per output entry over the epoch.
+     */
+    private final double loss;
+
+    /**
+     * Records the results of one epoch.
+     * @param epoch epoch number, starting at 1
+     * @param samples number of samples trained on
+     * @param nanos wall clock time in nanoseconds
+     * @param loss average error per output entry
+     */
+    public EpochReport(int epoch, int samples, long nanos, double loss) {
+        this.epoch = epoch;
+        this.samples = samples;
+        this.nanos = nanos;
+        this.loss = loss;
+    }
+
+    /**
+     * Epoch number, starting at 1.
+     * @return epoch
+     */
+    public int epoch() {
+        return this.epoch;
+    }
+
+    /**
+     * Number of samples trained on.
+     * @return samples
+     */
+    public int samples() {
+        return this.samples;
+    }
+
+    /**
+     * Wall clock time of the epoch.
+     * @return seconds
+     */
+    public double seconds() {
+        return this.nanos / 1e9;
+    }
+
+    /**
+     * Average error per output entry over the epoch.
+     * @return loss
+     */
+    public double loss() {
+        return this.loss;
+    }
+
+    /**
+     * Training throughput.
+     * @return samples per second
+     */
+    public double samplesPerSecond() {
+        return this.samples / seconds();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("epoch %d: loss %.6f, %.0f samples/s (%d samples in %.2fs)",
+                this.epoch, this.loss, samplesPerSecond(), this.samples, seconds());
+    }
+}
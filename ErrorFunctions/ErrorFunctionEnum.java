@@ -0,0 +1,33 @@
+package ErrorFunctions;
+
+/**
+ * Identifies an error function, such as in a saved model.
+ * Constants are only ever appended so the ordinal of each stays the same.
+ */
+public enum ErrorFunctionEnum {
+    /**
+     * {@link ErrorFunctions.MeanSquared}.
+     */
+    MeanSquared;
+
+    /**
+     * Creates the error function.
+     * @return new error function
+     */
+    public ErrorFunction create() {
+        return new ErrorFunctions.MeanSquared();
+    }
+
+    /**
+     * Finds the constant identifying an error function.
+     * @param ef error function
+     * @return its type
+     * @throws IllegalArgumentException if the function is not one of the built-in ones
+     */
+    public static ErrorFunctionEnum of(ErrorFunction ef) {
+        if(ef instanceof ErrorFunctions.MeanSquared) {
+            return MeanSquared;
+        }
+        throw new IllegalArgumentException("No type for error function " + ef.getClass().getName());
+    }
+}
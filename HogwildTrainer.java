@@ -0,0 +1,161 @@
+import Data.Dataset;
+import Tensor.Tensor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous lock-free training of a {@link Network}, known as Hogwild.
+ *
+ * Several threads repeatedly take the next mini-batch of the epoch and run
+ * {@link Network#backPropagation(Tensor, Tensor, Workspace)} on it, updating the shared weights
+ * in place. There are no locks and no barrier between steps, so a thread may compute its gradient
+ * from weights that others are changing, and concurrent updates to the same weight may lose one
+ * of the increments. When each update only touches a small part of the gradient this costs little
+ * accuracy. Threads only wait for each other at the end of an epoch, to report it, so on a machine
+ * with a core per thread the steps of different threads can overlap completely.
+ *
+ * A network with an {@link Optimizers.Optimizer} shares that one optimizer between all threads, and
+ * its state is updated just as racily as the weights: velocities and moment estimates may lose
+ * increments or mix steps of different threads, though the state arrays themselves are created
+ * safely. Adam also counts steps without synchronisation, so the count its bias correction uses
+ * may miss steps and a thread may read it while another advances it. The count only ever falls
+ * behind, which keeps the correction a little larger than intended during the first few thousand
+ * steps, when it matters, and makes no difference once it has decayed away.
+ *
+ * This is opt-in: use {@link ParallelTrainer} when results must match single threaded training.
+ * Doubles are assumed to be written atomically, which holds on 64-bit JVMs.
+ */
+public class HogwildTrainer implements AutoCloseable {
+
+    /**
+     * Network being trained.
+     */
+    private final Network network;
+
+    /**
+     * Number of samples per step of each thread.
+     */
+    private final int batchSize;
+
+    /**
+     * Buffers of each thread.
+     */
+    private final Workspace[] workspaces;
+
+    /**
+     * Worker threads.
+     */
+    private final ExecutorService pool;
+
+    /**
+     * Creates a trainer with its own worker threads.
+     * @param network network to train
+     * @param threads number of threads updating the network at once
+     * @param batchSize number of samples per step of each thread
+     */
+    public HogwildTrainer(Network network, int threads, int batchSize) {
+        if(threads < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Need at least one thread and one sample per batch but got "
+                    + threads + " threads and batches of " + batchSize);
+        }
+        this.network = network;
+        this.batchSize = batchSize;
+        this.workspaces = new Workspace[threads];
+        for(int i = 0; i < threads; i++) {
+            this.workspaces[i] = network.createWorkspace(batchSize);
+        }
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "hogwild");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Trains on a dataset for several epochs.
+     * @param dataset training samples
+     * @param epochs number of passes over the dataset
+     * @param random source of the sample order of each epoch
+     * @param listener receives the report of each epoch as soon as it finishes, or null
+     * @return report of each epoch
+     */
+    public List<EpochReport> train(Dataset dataset, int epochs, Random random, Consumer<EpochReport> listener) {
+        this.network.checkFits(dataset);
+        int n = dataset.size();
+        int[] order = new int[n];
+        for(int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        int batches = (n + this.batchSize - 1) / this.batchSize;
+        AtomicInteger cursor = new AtomicInteger();
+
+        // each thread keeps its gather buffers for the whole run
+        List<Callable<Double>> workers = new ArrayList<>(this.workspaces.length);
+        for(Workspace ws : this.workspaces) {
+            Tensor inputs = new Tensor(this.batchSize, dataset.inputSize(), this.network.precision());
+            Tensor expected = new Tensor(this.batchSize, dataset.outputSize(), this.network.precision());
+            workers.add(() -> {
+                double loss = 0;
+                int b;
+                while((b = cursor.getAndIncrement()) < batches) {
+                    int from = b * this.batchSize;
+                    int count = Math.min(this.batchSize, n - from);
+                    Tensor in = count == this.batchSize ? inputs : inputs.slice(0, count);
+                    Tensor exp = count == this.batchSize ? expected : expected.slice(0, count);
+                    dataset.gather(order, from, count, in, exp);
+                    loss += this.network.backPropagation(in, exp, ws) * count;
+                }
+                return loss;
+            });
+        }
+
+        List<EpochReport> reports = new ArrayList<>(epochs);
+        for(int epoch = 1; epoch <= epochs; epoch++) {
+            Dataset.shuffle(order, random);
+            cursor.set(0);
+            long start = System.nanoTime();
+            double loss = 0;
+            try {
+                for(Future<Double> f : this.pool.invokeAll(workers)) {
+                    loss += f.get();
+                }
+            } catch(ExecutionException e) {
+                throw new IllegalStateException("Hogwild worker failed", e.getCause());
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            EpochReport report = new EpochReport(epoch, n, System.nanoTime() - start, loss / n);
+            reports.add(report);
+            if(listener != null) {
+                listener.accept(report);
+            }
+        }
+        return reports;
+    }
+
+    /**
+     * Number of threads updating the network at once.
+     * @return threads
+     */
+    public int threads() {
+        return this.workspaces.length;
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    @Override
+    public void close() {
+        this.pool.shutdownNow();
+    }
+}
@@ -0,0 +1,231 @@
+import Layer.FullyConnectedLayer;
+import Tensor.PrecisionEnum;
+import Tensor.Tensor;
+
+/**
+ * Read-only copy of a {@link Network}'s weights and biases for serving predictions from many threads.
+ * The weights are copied when the handle is created and never change afterwards, so every thread
+ * sees the same complete set of weights while the network keeps training. To pick up newer weights
+ * take a new handle with {@link Network#snapshot(int)} and swap it in.
+ *
+ * Each calling thread gets its own buffers, created on its first call and reused after that, so
+ * predictions do not allocate and threads never share intermediate values.
+ */
+public class InferenceHandle {
+
+    /**
+     * Copies of the network's hidden layers.
+     */
+    private final FullyConnectedLayer[] layers;
+
+    /**
+     * Number of inputs per sample.
+     */
+    private final int inputSize;
+
+    /**
+     * Largest number of samples per call.
+     */
+    private final int maxBatch;
+
+    /**
+     * Buffers of each calling thread.
+     */
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Creates a handle over layers that are not shared with anything that modifies them.
+     * @param layers hidden layers owned by this handle
+     * @param inputSize number of inputs per sample
+     * @param maxBatch largest number of samples per call
+     */
+    InferenceHandle(FullyConnectedLayer[] layers, int inputSize, int maxBatch) {
+        if(maxBatch < 1) {
+            throw new IllegalArgumentException("Batch size must be positive but was " + maxBatch);
+        }
+        this.layers = layers;
+        this.inputSize = inputSize;
+        this.maxBatch = maxBatch;
+    }
+
+    /**
+     * Computes the output of the network for one sample without allocating.
+     * @param input sample of {@link #inputSize()} values
+     * @param output destination for {@link #outputSize()} values
+     */
+    public void predict(double[] input, double[] output) {
+        if(input.length != this.inputSize || output.length != outputSize()) {
+            throw new IllegalArgumentException("Expected " + this.inputSize + " inputs and " + outputSize()
+                    + " outputs but got " + input.length + " and " + output.length);
+        }
+        Scratch s = this.scratch.get();
+        s.prepare(1);
+        Tensor x = s.inputView;
+        if(x.isFloat()) {
+            float[] d = x.floatData();
+            for(int i = 0; i < input.length; i++) {
+                d[x.offset() + i] = (float) input[i];
+            }
+        } else {
+            System.arraycopy(input, 0, x.data(), x.offset(), input.length);
+        }
+        Tensor y = run(s, x);
+        if(y.isFloat()) {
+            float[] d = y.floatData();
+            for(int i = 0; i < output.length; i++) {
+                output[i] = d[y.offset() + i];
+            }
+        } else {
+            System.arraycopy(y.data(), y.offset(), output, 0, output.length);
+        }
+    }
+
+    /**
+     * Finds the output node with the largest value for one sample without allocating,
+     * which is the predicted class for networks trained on one-hot labels.
+     * @param input sample of {@link #inputSize()} values
+     * @return index of the largest output
+     */
+    public int classify(double[] input) {
+        Scratch s = this.scratch.get();
+        predict(input, s.output);
+        int best = 0;
+        for(int i = 1; i < s.output.length; i++) {
+            if(s.output[i] > s.output[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Computes the outputs of the network for several samples. Does not allocate when the input
+     * already has the storage type of {@link #precision()}.
+     * @param input tensor of at most {@link #maxBatch()} input row vectors
+     * @param output destination with one row per input and {@link #outputSize()} columns, of any precision
+     */
+    public void predict(Tensor input, Tensor output) {
+        int batch = input.rows();
+        if(input.cols() != this.inputSize || output.rows() != batch || output.cols() != outputSize()) {
+            throw new IllegalArgumentException("Expected " + batch + "x" + this.inputSize + " inputs and " + batch
+                    + "x" + outputSize() + " outputs but got " + input.shape() + " and " + output.shape());
+        }
+        Scratch s = this.scratch.get();
+        s.prepare(batch);
+        Tensor x = input;
+        if(input.isFloat() != precision().isFloat()) {
+            x = s.inputView;
+            x.copyFrom(input);
+        }
+        output.copyFrom(run(s, x));
+    }
+
+    /**
+     * Runs the layers over a prepared batch.
+     * @param s buffers of the calling thread, prepared for the batch
+     * @param x inputs with the storage type of this handle's precision
+     * @return activation values of the last layer, held by the buffers
+     */
+    private Tensor run(Scratch s, Tensor x) {
+        for(int i = 0; i < this.layers.length; i++) {
+            this.layers[i].forward(x, null, s.views[i]);
+            x = s.views[i];
+        }
+        return x;
+    }
+
+    /**
+     * Number of inputs per sample.
+     * @return input size
+     */
+    public int inputSize() {
+        return this.inputSize;
+    }
+
+    /**
+     * Number of outputs per sample.
+     * @return size of the last layer
+     */
+    public int outputSize() {
+        return this.layers[this.layers.length - 1].size();
+    }
+
+    /**
+     * Largest number of samples per call.
+     * @return maximum batch size
+     */
+    public int maxBatch() {
+        return this.maxBatch;
+    }
+
+    /**
+     * Precision of the copied weights and intermediate values.
+     * @return precision
+     */
+    public PrecisionEnum precision() {
+        return this.layers[0].precision();
+    }
+
+    /**
+     * Buffers of one calling thread.
+     */
+    private final class Scratch {
+
+        /**
+         * Activation values per layer, sized for {@link #maxBatch} samples.
+         */
+        private final Tensor[] activations = new Tensor[layers.length];
+
+        /**
+         * Views of the first {@link #batch} rows of {@link #activations}.
+         */
+        private final Tensor[] views = new Tensor[layers.length];
+
+        /**
+         * Inputs converted to this handle's precision, sized for {@link #maxBatch} samples.
+         */
+        private final Tensor input = new Tensor(maxBatch, inputSize, precision());
+
+        /**
+         * View of the first {@link #batch} rows of {@link #input}.
+         */
+        private Tensor inputView;
+
+        /**
+         * Output of {@link #classify(double[])}.
+         */
+        private final double[] output = new double[outputSize()];
+
+        /**
+         * Batch size the views were created for.
+         */
+        private int batch = -1;
+
+        /**
+         * Allocates the activation buffers.
+         */
+        private Scratch() {
+            for(int i = 0; i < layers.length; i++) {
+                this.activations[i] = new Tensor(maxBatch, layers[i].size(), precision());
+            }
+        }
+
+        /**
+         * Prepares views for a batch. Views are only recreated when the batch size changes.
+         * @param batch number of samples in the next call
+         */
+        private void prepare(int batch) {
+            if(batch < 1 || batch > maxBatch) {
+                throw new IllegalArgumentException("Batch of " + batch + " does not fit a handle sized for " + maxBatch);
+            }
+            if(batch == this.batch) {
+                return;
+            }
+            this.inputView = this.input.slice(0, batch);
+            for(int i = 0; i < layers.length; i++) {
+                this.views[i] = this.activations[i].slice(0, batch);
+            }
+            this.batch = batch;
+        }
+    }
+}
@@ -13,28 +13,28 @@ public class BiasInitializer {
      * @param inputs number of inputs to the layer
      * @param outputs number of outputs from the layer
      * @param e initialization method
-     * @return vector of initialized biases
+     * @return vector of initialized biases, one per output
      */
     public static double[] generate(int inputs, int outputs, BiasInitializerEnum e) {
         switch(e) {
             case Random:
-                return random(inputs);
+                return random(outputs);
             case Xavier:
                 return xavier(inputs, outputs);
             case KaimingHe:
-                return kaimingHe(inputs);
+                return kaimingHe(inputs, outputs);
             default:
-                return zero(inputs);
+                return zero(outputs);
         }
     }
 
     /**
      * Initializes all biases to be zero.
-     * @param inputs input nodes
+     * @param outputs output nodes
      * @return bias vector
      */
-    private static double[] zero(int inputs) {
-        double[] data = new double[inputs];
+    private static double[] zero(int outputs) {
+        double[] data = new double[outputs];
         return data;
     }
 
@@ -56,18 +56,19 @@ public class BiasInitializer {
     private static double[] xavier(int inputs, int outputs) {
         double mean = 0;
         double stddev = Math.sqrt(2.0 / (inputs + outputs));
-        return normal(inputs, mean, stddev);
+        return normal(outputs, mean, stddev);
     }
 
     /**
      * Initializes biases at random using Kaiming He's initialization technique.
      * @param inputs input nodes
+     * @param outputs output nodes
      * @return bias vector
      */
-    private static double[] kaimingHe(int inputs) {
+    private static double[] kaimingHe(int inputs, int outputs) {
         double mean = 0;
         double stddev = Math.sqrt(2.0 / (inputs));
-        return normal(inputs, mean, stddev);
+        return normal(outputs, mean, stddev);
     }
 
     /**
@@ -1,6 +1,13 @@
 package Layer;
 import ActivationFunctions.ActivationFunction;
-import org.apache.commons.math4.legacy.analysis.UnivariateFunction;
+import Metrics.LayerPhaseEvent;
+import Metrics.PhaseEnum;
+import Metrics.TrainingTelemetry;
+import Tensor.Gemm;
+import Tensor.Kernels;
+import Tensor.PrecisionEnum;
+import Tensor.SparseTensor;
+import Tensor.Tensor;
 import org.apache.commons.math4.legacy.linear.*;
 
 import java.util.Arrays;
@@ -23,17 +30,53 @@ public class FullyConnectedLayer implements Layer {
     private int size;
 
     /**
-     * Weights and bias matrix.
+     * Position of this layer among the hidden layers of its network, starting at 0.
+     */
+    private final int index;
+
+    /**
+     * Weights and bias tensor with {@code previousLayer.size() + 1} rows and {@code size} columns.
      * Weights per node are the column vectors excluding the last row.
-     * Bias per node is the last row in the matrix.
+     * Bias per node is the last row in the tensor.
+     */
+    private Tensor weights;
+
+    /**
+     * View of {@link #weights} without the bias row. Created on first use.
      */
-    private RealMatrix weights;
+    private Tensor weightsWithoutBias;
+
+    /**
+     * View without the bias row of the gradient buffer last passed to {@link #backward}, kept with the buffer.
+     */
+    private GradientView gradientView;
 
     /**
      * Activation function and its derivative.
      */
     private ActivationFunction act;
 
+    /**
+     * Forward pass epilogue adding the bias to a block of weighted sums.
+     * Kept so the forward pass does not allocate it on every call.
+     */
+    private final Gemm.Epilogue biasEpilogue = this::addBias;
+
+    /**
+     * Forward pass epilogue adding the bias and applying the activation function in place.
+     */
+    private final Gemm.Epilogue activationEpilogue = this::addBiasAndActivate;
+
+    /**
+     * Receiver of the time spent in each phase, or null when not measuring.
+     */
+    private TrainingTelemetry telemetry;
+
+    /**
+     * Index of this layer in the telemetry.
+     */
+    private int telemetryIndex;
+
     /**
      * Initializes layer with default weights and biases.
      * @param size number of "neurons"
@@ -44,11 +87,12 @@ public class FullyConnectedLayer implements Layer {
         this.size = size;
         this.previousLayer = previousLayer;
         this.act = act;
+        this.index = previousLayer instanceof FullyConnectedLayer ? ((FullyConnectedLayer) previousLayer).index + 1 : 0;
     }
 
     /**
      * Initializes layer with predefined weights and biases.
-     * Precondition: {@code weights} must have {@code size + 1} rows and {@code previousLayer.size()} columns.
+     * Precondition: {@code weights} must have {@code previousLayer.size() + 1} rows and {@code size} columns.
      * @param size number of "neurons"
      * @param previousLayer reference to previous layer in network
      * @param act activation function
@@ -56,7 +100,25 @@ public class FullyConnectedLayer implements Layer {
      */
     public FullyConnectedLayer(int size, Layer previousLayer, ActivationFunction act, double[][] weights) {
         this(size, previousLayer, act);
-        this.weights = new Array2DRowRealMatrix(weights);
+        this.weights = Tensor.of(weights);
+    }
+
+    /**
+     * Initializes layer with a predefined weights and biases tensor, which the layer uses directly.
+     * The precision of the layer is that of the tensor.
+     * @param size number of "neurons"
+     * @param previousLayer reference to previous layer in network
+     * @param act activation function
+     * @param weights tensor with {@code previousLayer.size() + 1} rows and {@code size} columns
+     */
+    public FullyConnectedLayer(int size, Layer previousLayer, ActivationFunction act, Tensor weights) {
+        this(size, previousLayer, act);
+        if(weights.rows() != previousLayer.size() + 1 || weights.cols() != size) {
+            throw new IllegalArgumentException("Layer of size " + size + " after " + previousLayer.size()
+                    + " inputs needs " + (previousLayer.size() + 1) + "x" + size + " weights but got " + weights.shape());
+        }
+        this.weights = weights;
+        weightsWithoutBias();
     }
 
     /**
@@ -69,13 +131,35 @@ public class FullyConnectedLayer implements Layer {
      */
     public FullyConnectedLayer(int size, Layer previousLayer, ActivationFunction act,
                                WeightInitializerEnum wInit, BiasInitializerEnum bInit) {
+        this(size, previousLayer, act, wInit, bInit, PrecisionEnum.Double);
+    }
+
+    /**
+     * Initializes layer utilizing the provided weight and bias initializer methods,
+     * storing the weights and biases with the given precision.
+     * Inputs passed to the tensor methods of this layer must use the same storage type.
+     * @param size number of "neurons"
+     * @param previousLayer reference to previous layer in network
+     * @param act activation function
+     * @param wInit weight initializer
+     * @param bInit bias initializer
+     * @param precision precision of weights, biases and intermediate values
+     */
+    public FullyConnectedLayer(int size, Layer previousLayer, ActivationFunction act,
+                               WeightInitializerEnum wInit, BiasInitializerEnum bInit, PrecisionEnum precision) {
         this(size, previousLayer, act);
-        double[][] w = WeightInitializer.generate(previousLayer.size(), size, wInit);
-        double[] b = BiasInitializer.generate(previousLayer.size(), size, bInit);
+        int inputs = previousLayer.size();
+        double[][] w = WeightInitializer.generate(inputs, size, wInit);
+        double[] b = BiasInitializer.generate(inputs, size, bInit);
 
-        this.weights = MatrixUtils.createRealMatrix(size + 1, previousLayer.size());
-        this.weights.setSubMatrix(w, 0, 0);
-        this.weights.setRow(size, b);
+        // generated weights are indexed [node][input], stored as [input][node]
+        this.weights = new Tensor(inputs + 1, size, precision);
+        for(int i = 0; i < size; i++) {
+            for(int j = 0; j < inputs; j++) {
+                this.weights.set(j, i, w[i][j]);
+            }
+            this.weights.set(inputs, i, b[i]);
+        }
     }
 
     /**
@@ -85,7 +169,7 @@ public class FullyConnectedLayer implements Layer {
      * @return weighted sums
      */
     public RealVector forwardWeightedSum(RealVector input) {
-        return this.weights.preMultiply(input.append(1));
+        return forwardWeightedSum(Tensor.of(input)).toVector();
     }
 
     /**
@@ -96,8 +180,412 @@ public class FullyConnectedLayer implements Layer {
      * @return output vectors as rows of a matrix containing the weighted sums
      */
     public RealMatrix forwardWeightedSum(RealMatrix input) {
-        RealMatrix inputMod = appendColumnOfOnes(input);
-        return this.weights.preMultiply(inputMod);
+        return forwardWeightedSum(Tensor.of(input)).toMatrix();
+    }
+
+    /**
+     * Uses matrix multiplication to calculate the weighted sum of
+     * multiple inputs simultaneously. Each row of the input is an input vector.
+     * @param input tensor of input row vectors
+     * @return output vectors as rows of a tensor containing the weighted sums
+     */
+    public Tensor forwardWeightedSum(Tensor input) {
+        Tensor z = new Tensor(input.rows(), this.size, precision());
+        Gemm.multiply(input.to(precision()), false, weightsWithoutBias(), false, 1, 0, z, this.biasEpilogue);
+        return z;
+    }
+
+    /**
+     * Calculates the activation values of multiple inputs in a single pass, without
+     * keeping the weighted sums.
+     * @param input tensor of input row vectors
+     * @return activation values as rows of a tensor
+     */
+    public Tensor forward(Tensor input) {
+        Tensor a = new Tensor(input.rows(), this.size, precision());
+        forward(input.to(precision()), null, a);
+        return a;
+    }
+
+    /**
+     * Calculates the weighted sums and activation values of multiple inputs in a single pass.
+     * The bias is added and the activation function applied to each block of the weighted
+     * sums as soon as the block is finished, while it is still in cache.
+     * All tensors must use the storage type of this layer's precision.
+     * @param input tensor of input row vectors
+     * @param z destination for the weighted sums, or null if they are not needed
+     * @param a destination for the activation values. May be the same tensor as {@code z}.
+     */
+    public void forward(Tensor input, Tensor z, Tensor a) {
+        forward(input, z, a, null);
+    }
+
+    /**
+     * Calculates the weighted sums and activation values of multiple inputs in a single pass, reusing an
+     * epilogue for writing the activation values apart from the weighted sums instead of creating one.
+     * All tensors must use the storage type of this layer's precision.
+     * @param input tensor of input row vectors
+     * @param z destination for the weighted sums, or null if they are not needed
+     * @param a destination for the activation values. May be the same tensor as {@code z}.
+     * @param epilogue epilogue of this layer used when {@code z} and {@code a} differ, or null to create one
+     * @see #newActivationEpilogue()
+     */
+    public void forward(Tensor input, Tensor z, Tensor a, ActivationEpilogue epilogue) {
+        // timed as one phase, so measuring does not split the activation function from the product
+        long t = start();
+        LayerPhaseEvent e = event(input.rows());
+        if(z == null || z == a) {
+            Gemm.multiply(input, false, weightsWithoutBias(), false, 1, 0, a, this.activationEpilogue);
+        } else {
+            if(epilogue == null) {
+                epilogue = new ActivationEpilogue();
+            }
+            epilogue.a = a;
+            Gemm.multiply(input, false, weightsWithoutBias(), false, 1, 0, z, epilogue);
+        }
+        lap(PhaseEnum.Forward, t, e);
+    }
+
+    /**
+     * Forward pass epilogue that adds the bias to a block of weighted sums and writes their activation
+     * values into a separate tensor. Callers that keep their buffers between calls, like a training
+     * workspace, keep one per layer so the forward pass does not create it each time.
+     * Not thread safe; each thread needs its own.
+     */
+    public final class ActivationEpilogue implements Gemm.Epilogue {
+
+        /**
+         * Destination for the activation values of the current call.
+         */
+        private Tensor a;
+
+        /**
+         * Created through {@link #newActivationEpilogue()}.
+         */
+        private ActivationEpilogue() {
+        }
+
+        @Override
+        public void apply(Tensor c, int r0, int r1, int c0, int c1) {
+            addBias(c, r0, r1, c0, c1);
+            for(int i = r0; i < r1; i++) {
+                activate(c, c.index(i, c0), this.a, this.a.index(i, c0), c1 - c0);
+            }
+        }
+    }
+
+    /**
+     * Creates an epilogue of this layer for {@link #forward(Tensor, Tensor, Tensor, ActivationEpilogue)}.
+     * @return new epilogue
+     */
+    public ActivationEpilogue newActivationEpilogue() {
+        return new ActivationEpilogue();
+    }
+
+    /**
+     * Weight rows of one gradient buffer that sparse backward passes have written since it was last cleared,
+     * so overwriting it only clears those rows and the bias row rather than the whole buffer. Belongs to one
+     * buffer; whoever writes that buffer by other means calls {@link #reset()}.
+     * Not thread safe; each buffer needs its own.
+     */
+    public final class GradientRows {
+
+        /**
+         * Whether each input's weight row is in {@link #rows}.
+         */
+        private final boolean[] written;
+
+        /**
+         * Inputs whose weight rows were written, in the first {@link #count} entries.
+         */
+        private final int[] rows;
+
+        /**
+         * Number of rows written.
+         */
+        private int count;
+
+        /**
+         * Whether the buffer may hold values outside the recorded rows, so it must be cleared whole.
+         */
+        private boolean unknown = true;
+
+        /**
+         * Created through {@link #newGradientRows()}.
+         */
+        private GradientRows() {
+            int inputs = FullyConnectedLayer.this.weights.rows() - 1;
+            this.written = new boolean[inputs];
+            this.rows = new int[inputs];
+        }
+
+        /**
+         * Forgets the recorded rows, so the next overwrite clears the whole buffer.
+         */
+        public void reset() {
+            forget();
+            this.unknown = true;
+        }
+
+        /**
+         * Zeroes the recorded weight rows and the bias row of the buffer, or all of it if unknown.
+         * @param gradient buffer the rows belong to
+         */
+        private void clear(Tensor gradient) {
+            if(this.unknown) {
+                gradient.fill(0);
+            } else {
+                for(int i = 0; i < this.count; i++) {
+                    zero(gradient, gradient.index(this.rows[i], 0), gradient.cols());
+                }
+                zero(gradient, gradient.index(gradient.rows() - 1, 0), gradient.cols());
+            }
+            forget();
+            this.unknown = false;
+        }
+
+        /**
+         * Records the weight rows of the nonzero inputs of a batch.
+         * @param input sparse input row vectors
+         */
+        private void add(SparseTensor input) {
+            if(input.rows() == 0) {
+                return;
+            }
+            int[] columns = input.columns();
+            for(int k = input.rowStart(0); k < input.rowEnd(input.rows() - 1); k++) {
+                int c = columns[k];
+                if(!this.written[c]) {
+                    this.written[c] = true;
+                    this.rows[this.count++] = c;
+                }
+            }
+        }
+
+        /**
+         * Empties the list of recorded rows.
+         */
+        private void forget() {
+            for(int i = 0; i < this.count; i++) {
+                this.written[this.rows[i]] = false;
+            }
+            this.count = 0;
+        }
+    }
+
+    /**
+     * Creates a record of written gradient rows of this layer for
+     * {@link #backward(Tensor, SparseTensor, Tensor, Tensor, Tensor, boolean, GradientRows)}.
+     * @return new record, which starts out treating the whole buffer as written
+     */
+    public GradientRows newGradientRows() {
+        return new GradientRows();
+    }
+
+    /**
+     * Forward pass for sparse inputs, such as mostly-zero images fed to the first layer. The weighted sums
+     * of each row start from the bias and add only the weight rows of its nonzero inputs, so the cost grows
+     * with the number of nonzeros rather than the number of inputs.
+     * All tensors must use the storage type of this layer's precision.
+     * @param input sparse input row vectors
+     * @param z destination for the weighted sums, or null if they are not needed
+     * @param a destination for the activation values. May be the same tensor as {@code z}.
+     */
+    public void forward(SparseTensor input, Tensor z, Tensor a) {
+        int inputs = this.weights.rows() - 1;
+        if(input.cols() != inputs) {
+            throw new IllegalArgumentException("Expected " + inputs + " inputs but got " + input.shape());
+        }
+        long t = start();
+        LayerPhaseEvent e = event(input.rows());
+        Tensor sums = z == null ? a : z;
+        int biasRow = this.weights.index(inputs, 0);
+        int[] columns = input.columns();
+        double[] values = input.values();
+        for(int i = 0; i < input.rows(); i++) {
+            int row = sums.index(i, 0);
+            if(sums.isFloat()) {
+                System.arraycopy(this.weights.floatData(), biasRow, sums.floatData(), row, this.size);
+            } else {
+                System.arraycopy(this.weights.data(), biasRow, sums.data(), row, this.size);
+            }
+            for(int k = input.rowStart(i); k < input.rowEnd(i); k++) {
+                axpy(values[k], this.weights, this.weights.index(columns[k], 0), sums, row, this.size);
+            }
+        }
+        for(int i = 0; i < input.rows(); i++) {
+            activate(sums, sums.index(i, 0), a, a.index(i, 0), this.size);
+        }
+        lap(PhaseEnum.Forward, t, e);
+    }
+
+    /**
+     * Forward pass for sparse inputs into new storage.
+     * @param input sparse input row vectors
+     * @return activation values, one row per input
+     */
+    public Tensor forward(SparseTensor input) {
+        Tensor a = new Tensor(input.rows(), this.size, precision());
+        forward(input, null, a);
+        return a;
+    }
+
+    /**
+     * Adds the bias of each node to a block of weighted sums, then replaces them with their activation values.
+     * @param z weighted sums
+     * @param r0 first row, inclusive
+     * @param r1 last row, exclusive
+     * @param c0 first column, inclusive
+     * @param c1 last column, exclusive
+     */
+    private void addBiasAndActivate(Tensor z, int r0, int r1, int c0, int c1) {
+        addBias(z, r0, r1, c0, c1);
+        for(int i = r0; i < r1; i++) {
+            activate(z, z.index(i, c0), z, z.index(i, c0), c1 - c0);
+        }
+    }
+
+    /**
+     * Adds the bias of each node to a block of weighted sums.
+     * @param z weighted sums
+     * @param r0 first row, inclusive
+     * @param r1 last row, exclusive
+     * @param c0 first column, inclusive
+     * @param c1 last column, exclusive
+     */
+    private void addBias(Tensor z, int r0, int r1, int c0, int c1) {
+        int bias = this.weights.index(this.weights.rows() - 1, c0);
+        for(int i = r0; i < r1; i++) {
+            axpy(1, this.weights, bias, z, z.index(i, c0), c1 - c0);
+        }
+    }
+
+    /**
+     * Applies the activation function to a range of one tensor, writing into a range of another
+     * with the same storage type.
+     * @param x input tensor
+     * @param xIdx start of input range in the backing array
+     * @param out destination tensor. May be the same range as the input.
+     * @param outIdx start of destination range in the backing array
+     * @param len number of entries
+     */
+    private void activate(Tensor x, int xIdx, Tensor out, int outIdx, int len) {
+        if(x.isFloat()) {
+            this.act.apply(x.floatData(), xIdx, out.floatData(), outIdx, len);
+        } else {
+            this.act.apply(x.data(), xIdx, out.data(), outIdx, len);
+        }
+    }
+
+    /**
+     * Replaces a range of a tensor with the derivative of the activation function.
+     * @param t weighted sums, or activation values when {@code fromOutput} is set
+     * @param idx start of range in the backing array
+     * @param len number of entries
+     * @param fromOutput whether {@code t} holds activation values
+     */
+    private void derive(Tensor t, int idx, int len, boolean fromOutput) {
+        if(t.isFloat()) {
+            float[] d = t.floatData();
+            if(fromOutput) {
+                this.act.outputDerivative(d, idx, d, idx, len);
+            } else {
+                this.act.derivative(d, idx, len);
+            }
+        } else {
+            double[] d = t.data();
+            if(fromOutput) {
+                this.act.outputDerivative(d, idx, d, idx, len);
+            } else {
+                this.act.derivative(d, idx, len);
+            }
+        }
+    }
+
+    /**
+     * Scaled addition between ranges of two tensors with the same storage type, {@code y += alpha * x}.
+     */
+    private static void axpy(double alpha, Tensor x, int xIdx, Tensor y, int yIdx, int len) {
+        if(x.isFloat()) {
+            Kernels.get().axpy((float) alpha, x.floatData(), xIdx, y.floatData(), yIdx, len);
+        } else {
+            Kernels.get().axpy(alpha, x.data(), xIdx, y.data(), yIdx, len);
+        }
+    }
+
+    /**
+     * Sets a range of a tensor to zero.
+     */
+    private static void zero(Tensor y, int yIdx, int len) {
+        if(y.isFloat()) {
+            Arrays.fill(y.floatData(), yIdx, yIdx + len, 0f);
+        } else {
+            Arrays.fill(y.data(), yIdx, yIdx + len, 0);
+        }
+    }
+
+    /**
+     * Element-by-element product between ranges of two tensors with the same storage type, {@code y *= x}.
+     */
+    private static void multiply(Tensor x, int xIdx, Tensor y, int yIdx, int len) {
+        if(x.isFloat()) {
+            Kernels.get().multiply(y.floatData(), yIdx, x.floatData(), xIdx, y.floatData(), yIdx, len);
+        } else {
+            Kernels.get().multiply(y.data(), yIdx, x.data(), xIdx, y.data(), yIdx, len);
+        }
+    }
+
+    /**
+     * View of the weights excluding the bias row.
+     * @return weights with {@code previousLayer.size()} rows
+     */
+    private Tensor weightsWithoutBias() {
+        if(this.weightsWithoutBias == null) {
+            this.weightsWithoutBias = this.weights.slice(0, this.weights.rows() - 1);
+        }
+        return this.weightsWithoutBias;
+    }
+
+    /**
+     * View of a gradient buffer without the bias row, reused while the same buffer is passed again.
+     * Threads passing their own buffers replace each other's view, which stays correct but is created anew.
+     * @param gradient buffer with the shape of {@link #getWeights()}
+     * @return gradient with {@code previousLayer.size()} rows
+     */
+    private Tensor gradientWithoutBias(Tensor gradient) {
+        GradientView view = this.gradientView;
+        if(view == null || view.gradient != gradient) {
+            view = new GradientView(gradient, gradient.slice(0, gradient.rows() - 1));
+            this.gradientView = view;
+        }
+        return view.withoutBias;
+    }
+
+    /**
+     * A gradient buffer with its view without the bias row, replaced as a whole so threads never see a
+     * view paired with another buffer.
+     */
+    private static final class GradientView {
+
+        /**
+         * Gradient buffer.
+         */
+        private final Tensor gradient;
+
+        /**
+         * View of {@link #gradient} without the bias row.
+         */
+        private final Tensor withoutBias;
+
+        /**
+         * Pairs a buffer with its view.
+         * @param gradient gradient buffer
+         * @param withoutBias view without the bias row
+         */
+        private GradientView(Tensor gradient, Tensor withoutBias) {
+            this.gradient = gradient;
+            this.withoutBias = withoutBias;
+        }
     }
 
     /**
@@ -106,7 +594,7 @@ public class FullyConnectedLayer implements Layer {
      * @return activation values vector
      */
     public RealVector forwardActivation(RealVector z) {
-        return z.map(this.act.getFunction());
+        return forwardActivation(Tensor.of(z)).toVector();
     }
 
     /**
@@ -115,7 +603,16 @@ public class FullyConnectedLayer implements Layer {
      * @return activation values matrix
      */
     public RealMatrix forwardActivation(RealMatrix z) {
-        return map(z, this.act.getFunction());
+        return forwardActivation(Tensor.of(z)).toMatrix();
+    }
+
+    /**
+     * Performs the activation function on each entry in the tensor.
+     * @param z weighted sum tensor
+     * @return activation values tensor
+     */
+    public Tensor forwardActivation(Tensor z) {
+        return map(z);
     }
 
 
@@ -130,55 +627,7 @@ public class FullyConnectedLayer implements Layer {
      * @return derivative of cost/loss with respect to previous layer activation
      */
     public RealVector backProp(RealVector dc_da, RealVector a0, RealVector z, double alpha) {
-
-        // derivative of current layer activation with respect to weighted sum
-        RealVector da_dz = weightedSumDerivative(z);
-        // derivative of cost with respect to weighted sum
-        RealVector dc_dz = dc_da.ebeMultiply(da_dz);
-
-        /*
-        //--test prints--
-        System.out.print("da_dz: ");
-        printVector(da_dz);
-        System.out.print("dc_dz: ");
-        printVector(dc_dz);
-
-         */
-
-        // derivative of cost with respect to both weights and bias
-        RealMatrix dc_dw = MatrixUtils.createRealMatrix(this.weights.getRowDimension(),
-                                                        this.weights.getColumnDimension());
-        // set weights
-        dc_dw.setSubMatrix(dc_dz.outerProduct(a0).transpose().getData(), 0, 0); //check this
-        // set bias
-        dc_dw.setRowVector(dc_dw.getRowDimension() - 1, dc_dz);
-
-        /*
-        System.out.println("dc_dw: ");
-        printMatrix(dc_dw);
-        System.out.println();
-
-         */
-
-        // multiply by learning rate
-        dc_dw = dc_dw.scalarMultiply(alpha);
-        // get just weights, no bias
-        RealMatrix w = this.weights.getSubMatrix(0, this.weights.getRowDimension() - 2,
-                                                 0, this.weights.getColumnDimension() - 1);
-        // derivative of cost with respect to previous layer activation values
-        RealVector dc_da0 = w.transpose().preMultiply(dc_dz); // check this
-
-        // adjust weights and biases
-        this.weights = this.weights.subtract(dc_dw);
-
-        /*
-        System.out.println("new weights: ");
-        printMatrix(this.weights);
-        System.out.println();
-
-         */
-
-        return dc_da0;
+        return backProp(Tensor.of(dc_da), Tensor.of(a0), Tensor.of(z), alpha).toVector();
     }
 
     /**
@@ -217,125 +666,396 @@ public class FullyConnectedLayer implements Layer {
      * @return derivative of cost/loss with respect to previous layer activation
      */
     public RealMatrix backProp(RealMatrix dc_da, RealMatrix a0, RealMatrix z, double alpha) {
+        return backProp(Tensor.of(dc_da), Tensor.of(a0), Tensor.of(z), alpha).toMatrix();
+    }
 
-        // derivative of current layer activation with respect to weighted sum
-        RealMatrix da_dz = weightedSumDerivative(z);
-        // derivative of cost with respect to weighted sum
-        RealMatrix dc_dz = ebeMultiply(dc_da, da_dz);
-
-        // AVERAGE derivative of cost with respect to both weights and bias
-        RealMatrix dc_dw = MatrixUtils.createRealMatrix(this.weights.getRowDimension(),
-                                                        this.weights.getColumnDimension());
-        // set weights. Scalar multiply to get averages
-        dc_dw.setSubMatrix(
-                dc_dz.multiply(a0.transpose()).scalarMultiply(1.0 / dc_dz.getRowDimension()).getData(),
-                0, 0);
-
-        // set bias
-        RealVector dc_db = new ArrayRealVector(dc_dz.getColumnDimension());
-        for(int j = 0; j < dc_dz.getColumnDimension(); j++) {
-            // sum over the column
-            double total = 0;
-            for(int i = 0; i < dc_dz.getRowDimension(); i++) {
-                total += dc_dz.getEntry(i,j);
-            }
-            double average = total / dc_dz.getRowDimension();
-            dc_db.setEntry(j, average);
-        }
-        dc_dw.setRowVector(dc_dw.getRowDimension() - 1, dc_db);
+    /**
+     * Updates the weights and biases based on the derivative of the cost/loss
+     * function with respect to each node's activation value for a set of
+     * test cases. Each row of the arguments belongs to one test case.
+     * @param dc_da derivative of cost/loss with respect to activation
+     * @param a0 previous layer activation values
+     * @param z weighted sums
+     * @param alpha learning rate
+     * @return derivative of cost/loss with respect to previous layer activation
+     */
+    public Tensor backProp(Tensor dc_da, Tensor a0, Tensor z, double alpha) {
+        return backProp(dc_da, a0, z, null, alpha);
+    }
 
-        // multiply by learning rate
-        dc_dw = dc_dw.scalarMultiply(alpha);
-        // get just weights, no bias
-        RealMatrix w = this.weights.getSubMatrix(0, this.weights.getRowDimension() - 2,
-                0, this.weights.getColumnDimension() - 1);
-        // derivative of cost with respect to previous layer activation values
-        RealMatrix dc_da0 = w.transpose().preMultiply(dc_dz); // check this
+    /**
+     * Updates the weights and biases based on the derivative of the cost/loss
+     * function with respect to each node's activation value for a set of
+     * test cases. Each row of the arguments belongs to one test case.
+     *
+     * When the activation function can compute its derivative from its output,
+     * the activation values are used and {@code z} may be null.
+     * @param dc_da derivative of cost/loss with respect to activation
+     * @param a0 previous layer activation values
+     * @param z weighted sums, or null if not needed
+     * @param a activation values of this layer, or null to use the weighted sums
+     * @param alpha learning rate
+     * @return derivative of cost/loss with respect to previous layer activation
+     * @see #needsWeightedSums()
+     */
+    public Tensor backProp(Tensor dc_da, Tensor a0, Tensor z, Tensor a, double alpha) {
+        boolean fromOutput = a != null && this.act.hasOutputDerivative();
+        Tensor dc_da0 = new Tensor(dc_da.rows(), a0.cols(), precision());
+        // copy everything the in-place version overwrites
+        backProp(copy(dc_da), a0.to(precision()), fromOutput ? null : copy(z), fromOutput ? copy(a) : null,
+                alpha, dc_da0);
+        return dc_da0;
+    }
 
-        // adjust weights and biases
-        this.weights = this.weights.subtract(dc_dw);
+    /**
+     * Copies a tensor into new storage with this layer's precision.
+     * @param t tensor of any precision
+     * @return copy
+     */
+    private Tensor copy(Tensor t) {
+        Tensor c = new Tensor(t.rows(), t.cols(), precision());
+        c.copyFrom(t);
+        return c;
+    }
 
-        return dc_da0;
+    /**
+     * Updates the weights and biases based on the derivative of the cost/loss
+     * function with respect to each node's activation value for a set of
+     * test cases, without allocating. Each row of the arguments belongs to one test case.
+     *
+     * To avoid temporary storage this overwrites its inputs: {@code dc_da} is replaced with
+     * the derivative of cost/loss with respect to the weighted sums, and the derivative of the
+     * activation function is written over {@code a}, or over {@code z} when the activation
+     * function cannot use its output. All tensors must use the storage type of this layer's precision.
+     * @param dc_da derivative of cost/loss with respect to activation. Overwritten.
+     * @param a0 previous layer activation values
+     * @param z weighted sums, or null if not needed. May be overwritten.
+     * @param a activation values of this layer, or null to use the weighted sums. May be overwritten.
+     * @param alpha learning rate
+     * @param dc_da0 destination for the derivative of cost/loss with respect to previous layer
+     *               activation, or null if it is not needed
+     * @see #needsWeightedSums()
+     */
+    public void backProp(Tensor dc_da, Tensor a0, Tensor z, Tensor a, double alpha, Tensor dc_da0) {
+        int batch = dc_da.rows();
+        int inputs = a0.cols();
+        long t = start();
+        LayerPhaseEvent e = event(batch);
+        Tensor dc_dz = weightedSumDerivative(dc_da, z, a);
+        t = lap(PhaseEnum.Activation, t, e);
+        e = event(batch);
+
+        // derivative of cost with respect to previous layer activation values, before the weights change
+        Tensor w = weightsWithoutBias();
+        if(dc_da0 != null) {
+            Gemm.multiply(dc_dz, false, w, true, 1, 0, dc_da0);
+        }
+        t = lap(PhaseEnum.Gradient, t, e);
+        e = event(batch);
+
+        // adjust weights and biases in place by the AVERAGE gradient, scaled by learning rate
+        double scale = alpha / batch;
+        Gemm.multiply(a0, true, dc_dz, false, -scale, 1, w);
+        int biasRow = this.weights.index(inputs, 0);
+        for(int i = 0; i < batch; i++) {
+            axpy(-scale, dc_dz, dc_dz.index(i, 0), this.weights, biasRow, this.size);
+        }
+        lap(PhaseEnum.Update, t, e);
     }
 
     /**
-     * Calculates the derivative of activation with respect to the weighted sum.
-     * @param z weighted sum vector
-     * @return derivative of activation with respect to weighted sum
+     * Gradient descent step for sparse inputs, like {@link #backProp(Tensor, Tensor, Tensor, Tensor, double, Tensor)}
+     * for a first layer. Only the weight rows of inputs that are nonzero somewhere in the batch and the
+     * bias row are read or written.
+     * @param dc_da derivative of cost/loss with respect to activation. Overwritten.
+     * @param a0 sparse input row vectors
+     * @param z weighted sums, or null if not needed. May be overwritten.
+     * @param a activation values of this layer, or null to use the weighted sums. May be overwritten.
+     * @param alpha learning rate
      */
-    private RealVector weightedSumDerivative(RealVector z) {
-        return z.map(this.act.getDerivative());
+    public void backProp(Tensor dc_da, SparseTensor a0, Tensor z, Tensor a, double alpha) {
+        int batch = dc_da.rows();
+        long t = start();
+        LayerPhaseEvent e = event(batch);
+        Tensor dc_dz = weightedSumDerivative(dc_da, z, a);
+        t = lap(PhaseEnum.Activation, t, e);
+        e = event(batch);
+        double scale = alpha / batch;
+        int biasRow = this.weights.index(this.weights.rows() - 1, 0);
+        int[] columns = a0.columns();
+        double[] values = a0.values();
+        for(int i = 0; i < batch; i++) {
+            int d = dc_dz.index(i, 0);
+            for(int k = a0.rowStart(i); k < a0.rowEnd(i); k++) {
+                axpy(-scale * values[k], dc_dz, d, this.weights, this.weights.index(columns[k], 0), this.size);
+            }
+            axpy(-scale, dc_dz, d, this.weights, biasRow, this.size);
+        }
+        lap(PhaseEnum.Update, t, e);
     }
 
     /**
-     * Calculates the derivative of activation with respect to the weighted sum
-     * for multiple test cases.
-     * @param z wighted sum matrix
-     * @return derivative of activation with respect to weighted sum
+     * Computes the summed gradient for sparse inputs, like
+     * {@link #backward(Tensor, Tensor, Tensor, Tensor, Tensor, boolean, Tensor)} for a first layer.
+     * Only the gradient rows of nonzero inputs and the bias row are added to, but overwriting rather than
+     * accumulating clears the whole buffer first.
+     * @param dc_da derivative of cost/loss with respect to activation. Overwritten.
+     * @param a0 sparse input row vectors
+     * @param z weighted sums, or null if not needed. May be overwritten.
+     * @param a activation values of this layer, or null to use the weighted sums. May be overwritten.
+     * @param gradient buffer with the shape of {@link #getWeights()}. The last row holds the bias gradient.
+     * @param accumulate whether to add to the buffer rather than overwrite it
      */
-    private RealMatrix weightedSumDerivative(RealMatrix z) {
-        return map(z, this.act.getDerivative());
+    public void backward(Tensor dc_da, SparseTensor a0, Tensor z, Tensor a, Tensor gradient, boolean accumulate) {
+        backward(dc_da, a0, z, a, gradient, accumulate, null);
+    }
+
+    /**
+     * Computes the summed gradient for sparse inputs, clearing only the rows written since the buffer was
+     * last overwritten when overwriting it, so a step costs as much as its nonzero inputs.
+     * @param dc_da derivative of cost/loss with respect to activation. Overwritten.
+     * @param a0 sparse input row vectors
+     * @param z weighted sums, or null if not needed. May be overwritten.
+     * @param a activation values of this layer, or null to use the weighted sums. May be overwritten.
+     * @param gradient buffer with the shape of {@link #getWeights()}. The last row holds the bias gradient.
+     * @param accumulate whether to add to the buffer rather than overwrite it
+     * @param rows record of the rows written to this buffer, updated here, or null to clear it whole
+     * @see #backward(Tensor, SparseTensor, Tensor, Tensor, Tensor, boolean)
+     */
+    public void backward(Tensor dc_da, SparseTensor a0, Tensor z, Tensor a, Tensor gradient, boolean accumulate,
+                         GradientRows rows) {
+        Tensor.checkSameShape(gradient, this.weights);
+        long t = start();
+        LayerPhaseEvent e = event(dc_da.rows());
+        Tensor dc_dz = weightedSumDerivative(dc_da, z, a);
+        t = lap(PhaseEnum.Activation, t, e);
+        e = event(dc_da.rows());
+        if(rows == null) {
+            if(!accumulate) {
+                gradient.fill(0);
+            }
+        } else {
+            if(!accumulate) {
+                rows.clear(gradient);
+            }
+            rows.add(a0);
+        }
+        int biasRow = gradient.index(gradient.rows() - 1, 0);
+        int[] columns = a0.columns();
+        double[] values = a0.values();
+        for(int i = 0; i < dc_da.rows(); i++) {
+            int d = dc_dz.index(i, 0);
+            for(int k = a0.rowStart(i); k < a0.rowEnd(i); k++) {
+                axpy(values[k], dc_dz, d, gradient, gradient.index(columns[k], 0), this.size);
+            }
+            axpy(1, dc_dz, d, gradient, biasRow, this.size);
+        }
+        lap(PhaseEnum.Gradient, t, e);
     }
 
     /**
-     * Maps the given matrix to a new matrix with the given function.
+     * Computes the gradient of the cost/loss with respect to the weights and biases for a set of
+     * test cases without changing the weights, so several threads may run it at once on the same layer.
+     * The gradient is the SUM over the test cases; {@link #applyUpdate(Tensor, double)} applies it.
+     * Overwrites the gradient buffer.
      *
-     * Returns a new matrix and does not modify instance data.
-     * @param m matrix to map.
-     * @param f Function to apply to each entry.
-     * @return a new matrix.
+     * Like {@link #backProp(Tensor, Tensor, Tensor, Tensor, double, Tensor)} this overwrites
+     * {@code dc_da} and either {@code a} or {@code z}.
+     * @param dc_da derivative of cost/loss with respect to activation. Overwritten.
+     * @param a0 previous layer activation values
+     * @param z weighted sums, or null if not needed. May be overwritten.
+     * @param a activation values of this layer, or null to use the weighted sums. May be overwritten.
+     * @param gradient destination with the shape of {@link #getWeights()}. The last row receives the bias gradient.
+     * @param dc_da0 destination for the derivative of cost/loss with respect to previous layer
+     *               activation, or null if it is not needed
+     */
+    public void backward(Tensor dc_da, Tensor a0, Tensor z, Tensor a, Tensor gradient, Tensor dc_da0) {
+        backward(dc_da, a0, z, a, gradient, false, dc_da0);
+    }
+
+    /**
+     * Computes the gradient of the cost/loss with respect to the weights and biases for a set of
+     * test cases, optionally adding it to the gradient already in the buffer. Accumulating over
+     * several micro-batches before one {@link #applyUpdate(Tensor, double)} gives the update of
+     * their combined batch while only holding one micro-batch in memory.
+     * @param dc_da derivative of cost/loss with respect to activation. Overwritten.
+     * @param a0 previous layer activation values
+     * @param z weighted sums, or null if not needed. May be overwritten.
+     * @param a activation values of this layer, or null to use the weighted sums. May be overwritten.
+     * @param gradient buffer with the shape of {@link #getWeights()}. The last row holds the bias gradient.
+     * @param accumulate whether to add to the buffer rather than overwrite it
+     * @param dc_da0 destination for the derivative of cost/loss with respect to previous layer
+     *               activation, or null if it is not needed
      */
-    private RealMatrix map(RealMatrix m, UnivariateFunction f) {
-        int rows = m.getRowDimension();
-        int cols = m.getColumnDimension();
-        RealMatrix r = MatrixUtils.createRealMatrix(rows,cols);
+    public void backward(Tensor dc_da, Tensor a0, Tensor z, Tensor a, Tensor gradient, boolean accumulate,
+                         Tensor dc_da0) {
+        Tensor.checkSameShape(gradient, this.weights);
+        int batch = dc_da.rows();
+        int inputs = a0.cols();
+        long t = start();
+        LayerPhaseEvent e = event(batch);
+        Tensor dc_dz = weightedSumDerivative(dc_da, z, a);
+        t = lap(PhaseEnum.Activation, t, e);
+        e = event(batch);
+        if(dc_da0 != null) {
+            Gemm.multiply(dc_dz, false, weightsWithoutBias(), true, 1, 0, dc_da0);
+        }
 
-        for(int i = 0; i < rows; i++) {
-            for(int j = 0; j < cols; j++) {
-                r.setEntry(i, j, f.value(m.getEntry(i,j)));
+        Gemm.multiply(a0, true, dc_dz, false, 1, accumulate ? 1 : 0, gradientWithoutBias(gradient));
+        int biasRow = gradient.index(inputs, 0);
+        if(!accumulate) {
+            zero(gradient, biasRow, this.size);
+        }
+        for(int i = 0; i < batch; i++) {
+            axpy(1, dc_dz, dc_dz.index(i, 0), gradient, biasRow, this.size);
+        }
+        lap(PhaseEnum.Gradient, t, e);
+    }
+
+    /**
+     * Adds a scaled gradient to the weights and biases, {@code weights += scale * gradient}.
+     * For gradient descent the scale is the negative learning rate divided by the number of test cases.
+     * @param gradient gradient with the shape of {@link #getWeights()}
+     * @param scale factor applied to the gradient
+     */
+    public void applyUpdate(Tensor gradient, double scale) {
+        Tensor.checkSameShape(gradient, this.weights);
+        long t = start();
+        LayerPhaseEvent e = event(0);
+        if(gradient.isContiguous() && this.weights.isContiguous()) {
+            axpy(scale, gradient, gradient.index(0, 0), this.weights, this.weights.index(0, 0),
+                    this.weights.rows() * this.size);
+        } else {
+            for(int i = 0; i < this.weights.rows(); i++) {
+                axpy(scale, gradient, gradient.index(i, 0), this.weights, this.weights.index(i, 0), this.size);
             }
         }
-        return r;
+        lap(PhaseEnum.Update, t, e);
     }
 
     /**
-     * Element-by-element multiplies two matrices.
+     * Attaches telemetry that receives the time this layer spends in each phase of training, or detaches it.
+     * Must not be called while another thread is using the layer.
+     * @param telemetry receiver of the timings, or null to stop measuring
+     * @param index index of this layer in the telemetry
+     */
+    public void setTelemetry(TrainingTelemetry telemetry, int index) {
+        if(telemetry != null && (index < 0 || index >= telemetry.layers())) {
+            throw new IllegalArgumentException("Layer index " + index + " is outside telemetry for "
+                    + telemetry.layers() + " layers");
+        }
+        this.telemetry = telemetry;
+        this.telemetryIndex = index;
+    }
+
+    /**
+     * Starts timing a phase, when telemetry is attached or a recording takes layer phase events.
+     * @return start of the phase from {@link System#nanoTime()}, or 0 when nothing measures the layer
+     */
+    private long start() {
+        return this.telemetry == null && !LayerPhaseEvent.enabled() ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Starts a flight recorder event for a phase, only when a recording takes layer phase events.
+     * @param batch number of samples
+     * @return started event, or null
+     */
+    private LayerPhaseEvent event(int batch) {
+        return LayerPhaseEvent.enabled()
+                ? LayerPhaseEvent.start(this.index, batch, this.previousLayer.size(), this.size) : null;
+    }
+
+    /**
+     * Ends a phase, recording it in the telemetry and the flight recorder.
+     * @param phase phase that just finished
+     * @param start start of the phase from {@link #start()}, or 0 when nothing measures the layer
+     * @param event event started with the phase, or null
+     * @return end of the phase, which starts the next one, or 0 when nothing measures the layer
+     */
+    private long lap(PhaseEnum phase, long start, LayerPhaseEvent event) {
+        if(start == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        if(event != null) {
+            event.finish(phase);
+        }
+        if(this.telemetry != null) {
+            this.telemetry.record(this.telemetryIndex, phase, now - start);
+        }
+        return now;
+    }
+
+    /**
+     * Replaces the derivative of cost with respect to activation with the derivative with respect
+     * to the weighted sums. The derivative of the activation function is written over its source first.
+     * @param dc_da derivative of cost/loss with respect to activation. Overwritten.
+     * @param z weighted sums, or null if not needed. May be overwritten.
+     * @param a activation values of this layer, or null to use the weighted sums. May be overwritten.
+     * @return {@code dc_da}, now holding the derivative with respect to the weighted sums
+     */
+    private Tensor weightedSumDerivative(Tensor dc_da, Tensor z, Tensor a) {
+        boolean fromOutput = a != null && this.act.hasOutputDerivative();
+        Tensor da_dz = fromOutput ? a : z;
+        for(int i = 0; i < dc_da.rows(); i++) {
+            int row = da_dz.index(i, 0);
+            derive(da_dz, row, this.size, fromOutput);
+            multiply(da_dz, row, dc_da, dc_da.index(i, 0), this.size);
+        }
+        return dc_da;
+    }
+
+    /**
+     * Whether {@link #backProp(Tensor, Tensor, Tensor, Tensor, double, Tensor)} needs the weighted sums.
+     * When false, the activation values are enough and the weighted sums need not be kept.
+     * @return true if the weighted sums are needed
+     */
+    public boolean needsWeightedSums() {
+        return !this.act.hasOutputDerivative();
+    }
+
+    /**
+     * Maps the given tensor to a new tensor with the activation function.
      *
-     * Precondition: both matrices must have the same dimensions.
-     * @param a first matrix
-     * @param b second matrix
-     * @return a new matrix
-     */
-    private RealMatrix ebeMultiply(RealMatrix a, RealMatrix b) {
-        int rows = a.getRowDimension();
-        int cols = a.getColumnDimension();
-        RealMatrix r = MatrixUtils.createRealMatrix(rows, cols);
+     * Returns a new tensor and does not modify instance data.
+     * @param m tensor to map.
+     * @return a new tensor.
+     */
+    private Tensor map(Tensor m) {
+        int rows = m.rows();
+        int cols = m.cols();
+        Tensor r = new Tensor(rows, cols, m.precision());
+
         for(int i = 0; i < rows; i++) {
-            for(int j = 0; j < cols; j++) {
-                r.setEntry(i, j, a.getEntry(i,j) * b.getEntry(i,j));
-            }
+            activate(m, m.index(i, 0), r, i * cols, cols);
         }
         return r;
     }
 
     /**
-     * Helper function to append a column consisting of ones to the end
-     * of a matrix.
-     * @param m any matrix
-     * @return copy of m with a column of ones appended to the end
+     * Gets the weights and biases of this layer.
+     * Rows {@code 0} to {@code previousLayer.size() - 1} hold the weights and the last row holds the biases.
+     * @return weights and bias tensor backing this layer
      */
-    public RealMatrix appendColumnOfOnes(RealMatrix m) {
-        // Create new matrix with an additional column
-        RealMatrix m2 = MatrixUtils.createRealMatrix(m.getRowDimension(), m.getColumnDimension() + 1);
-        // Copy data to new matrix
-        m2.setSubMatrix(m.getData(),0,0);
-        // Create array of ones
-        double[] onesColumn = new double[m2.getRowDimension()];
-        Arrays.fill(onesColumn,1.0);
-        // Set the new column to ones
-        m2.setColumn(m2.getColumnDimension() - 1, onesColumn);
+    public Tensor getWeights() {
+        return this.weights;
+    }
 
-        return m2;
+    /**
+     * Gets the activation function applied to the weighted sums of this layer.
+     * @return activation function
+     */
+    public ActivationFunction getActivationFunction() {
+        return this.act;
+    }
+
+    /**
+     * Gets the precision of the weights, biases and values computed by this layer.
+     * @return precision
+     */
+    public PrecisionEnum precision() {
+        return this.weights.precision();
     }
 
     /**
@@ -346,4 +1066,4 @@ public class FullyConnectedLayer implements Layer {
         return this.size;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,193 @@
+package Layer;
+
+import ActivationFunctions.ActivationFunction;
+import Tensor.Kernels;
+import Tensor.Tensor;
+
+import java.util.Arrays;
+
+/**
+ * Inference-only copy of a {@link FullyConnectedLayer} with its weights stored as 8-bit integers.
+ *
+ * Weights are quantized symmetrically per node: the weights into node {@code j} are scaled so the largest
+ * in magnitude maps to {@value #LEVELS}, giving {@code w = scale[j] * q}. Inputs are quantized the same way
+ * with a single scale for the whole layer, chosen from the largest input seen while calibrating; larger
+ * inputs are clamped. Each weighted sum is then an exact sum of 8-bit products in a 32-bit integer, scaled
+ * back to a real number once per node before the bias and activation function are applied in floating point.
+ *
+ * Weights are stored row by row like the layer they came from, so each nonzero input adds one contiguous
+ * row of weights to the sums and inputs that quantize to zero are skipped entirely.
+ */
+public class QuantizedLayer implements Layer {
+
+    /**
+     * Largest quantized magnitude. Values span {@code -LEVELS} to {@code LEVELS}, leaving out -128 so
+     * positive and negative values have the same range.
+     */
+    public static final int LEVELS = 127;
+
+    /**
+     * Number of inputs.
+     */
+    private final int inputs;
+
+    /**
+     * Number of nodes.
+     */
+    private final int size;
+
+    /**
+     * Quantized weights, {@code inputs x size} row by row.
+     */
+    private final byte[] weights;
+
+    /**
+     * Real value of one quantization step of the weights of each node.
+     */
+    private final double[] scales;
+
+    /**
+     * Bias of each node, kept in full precision.
+     */
+    private final double[] bias;
+
+    /**
+     * Real value of one quantization step of the inputs.
+     */
+    private final double inputScale;
+
+    /**
+     * Activation function.
+     */
+    private final ActivationFunction act;
+
+    /**
+     * Quantizes the weights of a layer.
+     * @param layer trained layer. Its weights are copied, so it may keep training afterwards.
+     * @param inputRange largest input magnitude to represent, such as the largest seen on calibration data
+     */
+    public QuantizedLayer(FullyConnectedLayer layer, double inputRange) {
+        Tensor w = layer.getWeights();
+        this.inputs = w.rows() - 1;
+        this.size = layer.size();
+        if((long) this.inputs * LEVELS * LEVELS > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Layer with " + this.inputs + " inputs could overflow 32-bit sums");
+        }
+        if(!(inputRange > 0) || Double.isInfinite(inputRange)) {
+            throw new IllegalArgumentException("Input range must be positive and finite but was " + inputRange);
+        }
+        this.inputScale = inputRange / LEVELS;
+        this.act = layer.getActivationFunction();
+        this.weights = new byte[this.inputs * this.size];
+        this.scales = new double[this.size];
+        this.bias = new double[this.size];
+
+        for(int j = 0; j < this.size; j++) {
+            double max = 0;
+            for(int i = 0; i < this.inputs; i++) {
+                max = Math.max(max, Math.abs(w.get(i, j)));
+            }
+            this.scales[j] = max == 0 ? 1 : max / LEVELS;
+            this.bias[j] = w.get(this.inputs, j);
+        }
+        for(int i = 0; i < this.inputs; i++) {
+            for(int j = 0; j < this.size; j++) {
+                this.weights[i * this.size + j] = (byte) Math.round(w.get(i, j) / this.scales[j]);
+            }
+        }
+    }
+
+    /**
+     * Computes the activation values for several inputs without allocating.
+     * @param input tensor of input row vectors, of any precision
+     * @param output destination with one row per input and {@link #size()} columns, of any precision
+     * @param quantized buffer of at least {@link #inputSize()} entries for the quantized inputs of one row
+     * @param sums buffer of at least {@link #size()} entries for the integer sums of one row
+     */
+    public void forward(Tensor input, Tensor output, byte[] quantized, int[] sums) {
+        if(input.cols() != this.inputs || output.cols() != this.size || output.rows() != input.rows()) {
+            throw new IllegalArgumentException("Expected n x " + this.inputs + " inputs and n x " + this.size
+                    + " outputs but got " + input.shape() + " and " + output.shape());
+        }
+        Kernels k = Kernels.get();
+        double inv = 1 / this.inputScale;
+        for(int r = 0; r < input.rows(); r++) {
+            quantize(input, r, inv, quantized);
+            Arrays.fill(sums, 0, this.size, 0);
+            for(int i = 0; i < this.inputs; i++) {
+                if(quantized[i] != 0) {
+                    k.axpy(quantized[i], this.weights, i * this.size, sums, 0, this.size);
+                }
+            }
+            int o = output.index(r, 0);
+            if(output.isFloat()) {
+                float[] out = output.floatData();
+                for(int j = 0; j < this.size; j++) {
+                    out[o + j] = (float) (sums[j] * this.inputScale * this.scales[j] + this.bias[j]);
+                }
+                this.act.apply(out, o, this.size);
+            } else {
+                double[] out = output.data();
+                for(int j = 0; j < this.size; j++) {
+                    out[o + j] = sums[j] * this.inputScale * this.scales[j] + this.bias[j];
+                }
+                this.act.apply(out, o, this.size);
+            }
+        }
+    }
+
+    /**
+     * Rounds one input row to the nearest quantization steps, clamping values outside the input range.
+     * @param input input tensor
+     * @param row row to quantize
+     * @param inv inverse of the input scale
+     * @param quantized destination
+     */
+    private void quantize(Tensor input, int row, double inv, byte[] quantized) {
+        int idx = input.index(row, 0);
+        if(input.isFloat()) {
+            float[] x = input.floatData();
+            for(int i = 0; i < this.inputs; i++) {
+                quantized[i] = (byte) Math.max(-LEVELS, Math.min(LEVELS, (int) Math.rint(x[idx + i] * inv)));
+            }
+        } else {
+            double[] x = input.data();
+            for(int i = 0; i < this.inputs; i++) {
+                quantized[i] = (byte) Math.max(-LEVELS, Math.min(LEVELS, (int) Math.rint(x[idx + i] * inv)));
+            }
+        }
+    }
+
+    /**
+     * Number of inputs.
+     * @return input size
+     */
+    public int inputSize() {
+        return this.inputs;
+    }
+
+    /**
+     * Number of nodes.
+     * @return output size
+     */
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Real value of one quantization step of the inputs.
+     * @return input scale
+     */
+    public double inputScale() {
+        return this.inputScale;
+    }
+
+    /**
+     * Memory taken by the weights, scales and biases.
+     * @return bytes
+     */
+    public long bytes() {
+        return this.weights.length + (long) (this.scales.length + this.bias.length) * Double.BYTES;
+    }
+}
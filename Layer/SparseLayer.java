@@ -0,0 +1,169 @@
+package Layer;
+
+import ActivationFunctions.ActivationFunction;
+import Tensor.SparseTensor;
+import Tensor.Tensor;
+
+/**
+ * Inference-only copy of a {@link FullyConnectedLayer} that keeps only its nonzero weights, for layers
+ * whose weights were mostly pruned to zero.
+ *
+ * The weights are held in compressed sparse row form with one row per input, the same orientation as the
+ * layer they came from. Each nonzero input adds its surviving weights to the sums of the nodes they lead to,
+ * so the work per sample is proportional to the number of surviving weights of the nonzero inputs rather
+ * than to {@code inputs x size}. Biases are kept for every node.
+ */
+public class SparseLayer implements Layer {
+
+    /**
+     * Nonzero weights, {@code inputs x size}.
+     */
+    private final SparseTensor weights;
+
+    /**
+     * Bias of each node.
+     */
+    private final double[] bias;
+
+    /**
+     * Activation function.
+     */
+    private final ActivationFunction act;
+
+    /**
+     * Copies the nonzero weights of a layer.
+     * @param layer trained and pruned layer. Its weights are copied, so it may keep training afterwards.
+     */
+    public SparseLayer(FullyConnectedLayer layer) {
+        Tensor w = layer.getWeights();
+        int inputs = w.rows() - 1;
+        int size = layer.size();
+        int n = 0;
+        for(int i = 0; i < inputs; i++) {
+            for(int j = 0; j < size; j++) {
+                n += w.get(i, j) != 0 ? 1 : 0;
+            }
+        }
+        int[] rowStart = new int[inputs + 1];
+        int[] columns = new int[n];
+        double[] values = new double[n];
+        n = 0;
+        for(int i = 0; i < inputs; i++) {
+            rowStart[i] = n;
+            for(int j = 0; j < size; j++) {
+                double v = w.get(i, j);
+                if(v != 0) {
+                    columns[n] = j;
+                    values[n] = v;
+                    n++;
+                }
+            }
+        }
+        rowStart[inputs] = n;
+        this.weights = new SparseTensor(inputs, size, rowStart, columns, values);
+        this.bias = w.rowArray(inputs);
+        this.act = layer.getActivationFunction();
+    }
+
+    /**
+     * Computes the activation values for several inputs without allocating.
+     * @param input tensor of input row vectors, of any precision
+     * @param output destination with one row per input and {@link #size()} columns, of any precision
+     * @param sums buffer of at least {@link #size()} entries for the weighted sums of one row
+     */
+    public void forward(Tensor input, Tensor output, double[] sums) {
+        int inputs = inputSize();
+        int size = size();
+        if(input.cols() != inputs || output.cols() != size || output.rows() != input.rows()) {
+            throw new IllegalArgumentException("Expected n x " + inputs + " inputs and n x " + size
+                    + " outputs but got " + input.shape() + " and " + output.shape());
+        }
+        for(int r = 0; r < input.rows(); r++) {
+            System.arraycopy(this.bias, 0, sums, 0, size);
+            int idx = input.index(r, 0);
+            if(input.isFloat()) {
+                float[] x = input.floatData();
+                for(int i = 0; i < inputs; i++) {
+                    if(x[idx + i] != 0) {
+                        scatter(x[idx + i], i, sums);
+                    }
+                }
+            } else {
+                double[] x = input.data();
+                for(int i = 0; i < inputs; i++) {
+                    if(x[idx + i] != 0) {
+                        scatter(x[idx + i], i, sums);
+                    }
+                }
+            }
+            int o = output.index(r, 0);
+            if(output.isFloat()) {
+                float[] out = output.floatData();
+                for(int j = 0; j < size; j++) {
+                    out[o + j] = (float) sums[j];
+                }
+                this.act.apply(out, o, size);
+            } else {
+                System.arraycopy(sums, 0, output.data(), o, size);
+                this.act.apply(output.data(), o, size);
+            }
+        }
+    }
+
+    /**
+     * Adds the surviving weights of one input, scaled by its value, to the sums of the nodes they lead to.
+     * @param x value of the input
+     * @param i index of the input
+     * @param sums weighted sums of the nodes
+     */
+    private void scatter(double x, int i, double[] sums) {
+        int[] columns = this.weights.columns();
+        double[] values = this.weights.values();
+        int end = this.weights.rowEnd(i);
+        for(int k = this.weights.rowStart(i); k < end; k++) {
+            sums[columns[k]] += x * values[k];
+        }
+    }
+
+    /**
+     * Number of inputs.
+     * @return input size
+     */
+    public int inputSize() {
+        return this.weights.rows();
+    }
+
+    /**
+     * Number of nodes.
+     * @return output size
+     */
+    @Override
+    public int size() {
+        return this.weights.cols();
+    }
+
+    /**
+     * Number of weights kept, not counting biases.
+     * @return nonzero weights
+     */
+    public int nonZeros() {
+        return this.weights.nonZeros();
+    }
+
+    /**
+     * Fraction of weights kept, not counting biases.
+     * @return nonzero weights divided by inputs times nodes
+     */
+    public double density() {
+        return this.weights.density();
+    }
+
+    /**
+     * Memory taken by the weights, their indices and the biases.
+     * @return bytes
+     */
+    public long bytes() {
+        return (long) nonZeros() * (Double.BYTES + Integer.BYTES) + (long) (inputSize() + 1) * Integer.BYTES
+                + (long) this.bias.length * Double.BYTES;
+    }
+}
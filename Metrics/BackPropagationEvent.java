@@ -0,0 +1,103 @@
+package Metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event for one training step of a whole network: the forward pass, the error, and the
+ * backward pass with its weight updates. The {@link LayerPhaseEvent}s of the step fall inside it.
+ */
+@Name(BackPropagationEvent.NAME)
+@Label("Back Propagation")
+@Category({"Deep Learning", "Network"})
+@Description("Training step of a network on one batch")
+@StackTrace(false)
+@Threshold("1 ms")
+public class BackPropagationEvent extends Event {
+
+    /**
+     * Name of the event type in recordings.
+     */
+    public static final String NAME = "DeepLearning.BackPropagation";
+
+    /**
+     * Instance asking whether the event type is enabled, which does not depend on the instance.
+     */
+    private static final BackPropagationEvent PROBE = new BackPropagationEvent();
+
+    /**
+     * Number of samples.
+     */
+    @Label("Batch Size")
+    private int batchSize;
+
+    /**
+     * Number of inputs per sample.
+     */
+    @Label("Inputs")
+    private int inputs;
+
+    /**
+     * Number of outputs per sample.
+     */
+    @Label("Outputs")
+    private int outputs;
+
+    /**
+     * Number of hidden layers.
+     */
+    @Label("Layers")
+    private int layers;
+
+    /**
+     * Whether the inputs were sparse.
+     */
+    @Label("Sparse")
+    private boolean sparse;
+
+    /**
+     * Average error of the batch before the step.
+     */
+    @Label("Error")
+    private double error;
+
+    /**
+     * Starts timing a training step if a recording is taking them.
+     * @return started event, or null when disabled
+     */
+    public static BackPropagationEvent start() {
+        if(!PROBE.isEnabled()) {
+            return null;
+        }
+        BackPropagationEvent event = new BackPropagationEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the training step and writes the event if it lasted at least the threshold.
+     * @param batchSize number of samples
+     * @param inputs number of inputs per sample
+     * @param outputs number of outputs per sample
+     * @param layers number of hidden layers
+     * @param sparse whether the inputs were sparse
+     * @param error average error of the batch
+     */
+    public void finish(int batchSize, int inputs, int outputs, int layers, boolean sparse, double error) {
+        end();
+        if(shouldCommit()) {
+            this.batchSize = batchSize;
+            this.inputs = inputs;
+            this.outputs = outputs;
+            this.layers = layers;
+            this.sparse = sparse;
+            this.error = error;
+            commit();
+        }
+    }
+}
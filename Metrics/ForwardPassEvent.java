@@ -0,0 +1,95 @@
+package Metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event for a forward pass of a whole network, as used for inference.
+ * Forward passes made while training are part of the training step's {@link BackPropagationEvent}.
+ */
+@Name(ForwardPassEvent.NAME)
+@Label("Forward Pass")
+@Category({"Deep Learning", "Network"})
+@Description("Forward pass of a batch through every layer of a network")
+@StackTrace(false)
+@Threshold("1 ms")
+public class ForwardPassEvent extends Event {
+
+    /**
+     * Name of the event type in recordings.
+     */
+    public static final String NAME = "DeepLearning.ForwardPass";
+
+    /**
+     * Instance asking whether the event type is enabled, which does not depend on the instance.
+     */
+    private static final ForwardPassEvent PROBE = new ForwardPassEvent();
+
+    /**
+     * Number of samples.
+     */
+    @Label("Batch Size")
+    private int batchSize;
+
+    /**
+     * Number of inputs per sample.
+     */
+    @Label("Inputs")
+    private int inputs;
+
+    /**
+     * Number of outputs per sample.
+     */
+    @Label("Outputs")
+    private int outputs;
+
+    /**
+     * Number of hidden layers.
+     */
+    @Label("Layers")
+    private int layers;
+
+    /**
+     * Whether the inputs were sparse.
+     */
+    @Label("Sparse")
+    private boolean sparse;
+
+    /**
+     * Starts timing a forward pass if a recording is taking them.
+     * @return started event, or null when disabled
+     */
+    public static ForwardPassEvent start() {
+        if(!PROBE.isEnabled()) {
+            return null;
+        }
+        ForwardPassEvent event = new ForwardPassEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the forward pass and writes the event if it lasted at least the threshold.
+     * @param batchSize number of samples
+     * @param inputs number of inputs per sample
+     * @param outputs number of outputs per sample
+     * @param layers number of hidden layers
+     * @param sparse whether the inputs were sparse
+     */
+    public void finish(int batchSize, int inputs, int outputs, int layers, boolean sparse) {
+        end();
+        if(shouldCommit()) {
+            this.batchSize = batchSize;
+            this.inputs = inputs;
+            this.outputs = outputs;
+            this.layers = layers;
+            this.sparse = sparse;
+            commit();
+        }
+    }
+}
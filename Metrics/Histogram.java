@@ -0,0 +1,162 @@
+package Metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non-negative long values such as latencies in nanoseconds, with buckets laid out like
+ * an HDR histogram: values below 128 get a bucket each, and every power of two above that is split into
+ * 64 equal buckets, so any recorded value is known to within about 1.6% over the whole long range
+ * in a fixed 3712 buckets.
+ *
+ * Recording is lock-free and may happen from several threads at once. Reads taken while values are
+ * being recorded see some consistent-enough subset of them, which is fine for monitoring.
+ */
+public class Histogram {
+
+    /**
+     * Number of bits of each value kept exactly, giving {@code 2^SUB_BITS} buckets per power of two.
+     */
+    private static final int SUB_BITS = 6;
+
+    /**
+     * Buckets per power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * Number of buckets needed to cover every non-negative long.
+     */
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    /**
+     * Number of recorded values per bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Number of recorded values.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * Sum of recorded values.
+     */
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * Largest recorded value.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one value. Negative values are recorded as 0.
+     * @param value value to record
+     */
+    public void record(long value) {
+        value = Math.max(value, 0);
+        this.counts.incrementAndGet(bucket(value));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(value);
+        this.max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Value at a percentile of the recorded values, rounded up to the top of its bucket.
+     * @param percentile percentile between 0 and 100
+     * @return value at the percentile, or 0 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        if(percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100 but was " + percentile);
+        }
+        long total = this.count.get();
+        if(total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += this.counts.get(i);
+            if(seen >= rank) {
+                return Math.min(highestEquivalent(i), max());
+            }
+        }
+        return max();
+    }
+
+    /**
+     * Number of recorded values.
+     * @return count
+     */
+    public long count() {
+        return this.count.get();
+    }
+
+    /**
+     * Mean of the recorded values.
+     * @return mean, or 0 if nothing was recorded
+     */
+    public double mean() {
+        long n = this.count.get();
+        return n == 0 ? 0 : (double) this.sum.get() / n;
+    }
+
+    /**
+     * Largest recorded value.
+     * @return maximum, or 0 if nothing was recorded
+     */
+    public long max() {
+        return this.max.get();
+    }
+
+    /**
+     * Forgets every recorded value.
+     */
+    public void reset() {
+        for(int i = 0; i < BUCKETS; i++) {
+            this.counts.set(i, 0);
+        }
+        this.count.set(0);
+        this.sum.set(0);
+        this.max.set(0);
+    }
+
+    /**
+     * Bucket holding a value. Values below {@code 2 * SUB_BUCKETS} map to themselves; larger values keep
+     * their top {@code SUB_BITS + 1} bits and are grouped by the position of the highest one.
+     * @param value non-negative value
+     * @return bucket index
+     */
+    private static int bucket(long value) {
+        if(value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Largest value that falls in a bucket.
+     * @param bucket bucket index
+     * @return top of the bucket
+     */
+    private static long highestEquivalent(int bucket) {
+        if(bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * Summary of the recorded values in microseconds, assuming they are nanoseconds.
+     * @return count, mean and p50, p99, p99.9 and max
+     */
+    @Override
+    public String toString() {
+        return String.format("n %d, mean %.1fus, p50 %.1fus, p99 %.1fus, p99.9 %.1fus, max %.1fus", count(),
+                mean() / 1e3, percentile(50) / 1e3, percentile(99) / 1e3, percentile(99.9) / 1e3, max() / 1e3);
+    }
+}
@@ -0,0 +1,228 @@
+package Metrics;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-layer time breakdown of a flight recording holding {@link LayerPhaseEvent}s, together with the
+ * count, duration and throughput of its {@link ForwardPassEvent}s and {@link BackPropagationEvent}s.
+ * Run as {@code java Metrics.JfrSummary recording.jfr}, for example on a recording made with
+ * {@code -XX:StartFlightRecording=filename=recording.jfr}.
+ *
+ * Layer phases include those of inference as well as training. Only events that lasted at least their
+ * threshold are recorded, 1 ms by default, which leaves out most layer phases; for complete totals record
+ * with the thresholds at 0 ms, such as with {@code Recording.enable(LayerPhaseEvent.class).withThreshold(Duration.ZERO)}.
+ */
+public class JfrSummary {
+
+    /**
+     * Time of each layer and phase, by layer position.
+     */
+    private final Map<Integer, LayerTotals> layers = new TreeMap<>();
+
+    /**
+     * Forward passes of whole networks.
+     */
+    private final Totals forwardPasses = new Totals();
+
+    /**
+     * Training steps of whole networks.
+     */
+    private final Totals backPropagations = new Totals();
+
+    /**
+     * Count, duration and samples of a kind of network event.
+     */
+    private static class Totals {
+
+        /**
+         * Number of events.
+         */
+        private long count;
+
+        /**
+         * Sum of their durations in nanoseconds.
+         */
+        private long nanos;
+
+        /**
+         * Sum of their batch sizes.
+         */
+        private long samples;
+
+        /**
+         * Adds an event.
+         * @param event event with a batch size
+         */
+        private void add(RecordedEvent event) {
+            this.count++;
+            this.nanos += event.getDuration().toNanos();
+            this.samples += event.getInt("batchSize");
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d, %.1f ms, %.1f us each, %.0f samples/s", this.count, this.nanos / 1e6,
+                    this.count == 0 ? 0 : this.nanos / 1e3 / this.count,
+                    this.nanos == 0 ? 0 : this.samples * 1e9 / this.nanos);
+        }
+    }
+
+    /**
+     * Count and duration per phase of one layer.
+     */
+    private static class LayerTotals {
+
+        /**
+         * Number of inputs to the layer.
+         */
+        private int inputs;
+
+        /**
+         * Number of nodes in the layer.
+         */
+        private int outputs;
+
+        /**
+         * Number of events per phase ordinal.
+         */
+        private final long[] counts = new long[PhaseEnum.values().length];
+
+        /**
+         * Nanoseconds per phase ordinal.
+         */
+        private final long[] nanos = new long[PhaseEnum.values().length];
+
+        /**
+         * Total nanoseconds over all phases.
+         * @return nanoseconds
+         */
+        private long total() {
+            long total = 0;
+            for(long n : this.nanos) {
+                total += n;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Reads a recording.
+     * @param recording path of a {@code .jfr} file
+     * @return summary of its deep learning events
+     * @throws IOException if the file cannot be read or is not a recording
+     */
+    public static JfrSummary read(Path recording) throws IOException {
+        JfrSummary summary = new JfrSummary();
+        try(RecordingFile file = new RecordingFile(recording)) {
+            while(file.hasMoreEvents()) {
+                summary.add(file.readEvent());
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Adds an event to the totals, ignoring events of other types.
+     * @param event recorded event
+     */
+    private void add(RecordedEvent event) {
+        switch(event.getEventType().getName()) {
+            case LayerPhaseEvent.NAME: {
+                LayerTotals layer = this.layers.computeIfAbsent(event.getInt("layer"), l -> new LayerTotals());
+                layer.inputs = event.getInt("inputs");
+                layer.outputs = event.getInt("outputs");
+                int phase = PhaseEnum.valueOf(event.getString("phase")).ordinal();
+                layer.counts[phase]++;
+                layer.nanos[phase] += event.getDuration().toNanos();
+                break;
+            }
+            case ForwardPassEvent.NAME:
+                this.forwardPasses.add(event);
+                break;
+            case BackPropagationEvent.NAME:
+                this.backPropagations.add(event);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Time a layer spent in a phase over the whole recording.
+     * @param layer position of the layer among the hidden layers
+     * @param phase phase
+     * @return nanoseconds, 0 if the recording has none
+     */
+    public long nanos(int layer, PhaseEnum phase) {
+        LayerTotals totals = this.layers.get(layer);
+        return totals == null ? 0 : totals.nanos[phase.ordinal()];
+    }
+
+    /**
+     * Time spent in all phases of all layers.
+     * @return nanoseconds
+     */
+    public long totalNanos() {
+        long total = 0;
+        for(LayerTotals layer : this.layers.values()) {
+            total += layer.total();
+        }
+        return total;
+    }
+
+    /**
+     * Number of training steps in the recording.
+     * @return steps
+     */
+    public long steps() {
+        return this.backPropagations.count;
+    }
+
+    /**
+     * Table of the time each layer spent in each phase with its share of all layer time, followed by the
+     * totals of forward passes and training steps.
+     * @return multi-line summary
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        double total = totalNanos();
+        sb.append(String.format("training steps: %s%n", this.backPropagations));
+        sb.append(String.format("forward passes: %s%n", this.forwardPasses));
+        for(Map.Entry<Integer, LayerTotals> entry : this.layers.entrySet()) {
+            LayerTotals layer = entry.getValue();
+            sb.append(String.format("layer %d (%dx%d):", entry.getKey(), layer.inputs, layer.outputs));
+            for(PhaseEnum phase : PhaseEnum.values()) {
+                long nanos = layer.nanos[phase.ordinal()];
+                sb.append(String.format(" %s %.1f ms (%.1f%%)", phase, nanos / 1e6, nanos / total * 100));
+            }
+            sb.append(String.format(", total %.1f ms (%.1f%%)%n", layer.total() / 1e6, layer.total() / total * 100));
+        }
+        if(this.layers.isEmpty()) {
+            sb.append("no layer phases recorded").append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Prints the summary of each recording given.
+     * @param args paths of {@code .jfr} files
+     * @throws IOException if a file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length == 0) {
+            System.err.println("Usage: java Metrics.JfrSummary recording.jfr...");
+            System.exit(1);
+        }
+        for(String arg : args) {
+            System.out.println(arg + ":");
+            System.out.print(read(Path.of(arg)));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package Metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event for one {@link PhaseEnum} of one fully connected layer, with the layer's position,
+ * the batch size and the layer's dimensions. {@link JfrSummary} adds them up per layer and phase.
+ *
+ * Layers only create these while the event is enabled in a recording, checking {@link #enabled()} once
+ * per phase otherwise; a {@link TrainingTelemetry} times phases without them. Phases shorter than the
+ * threshold of the recording's settings, 1 ms unless changed, are timed but not written; lower it to
+ * 0 ms for a complete breakdown.
+ */
+@Name(LayerPhaseEvent.NAME)
+@Label("Layer Phase")
+@Category({"Deep Learning", "Layer"})
+@Description("Time a fully connected layer spent in one phase of a forward or backward pass")
+@StackTrace(false)
+@Threshold("1 ms")
+public class LayerPhaseEvent extends Event {
+
+    /**
+     * Name of the event type in recordings.
+     */
+    public static final String NAME = "DeepLearning.LayerPhase";
+
+    /**
+     * Instance asking whether the event type is enabled, which does not depend on the instance.
+     */
+    private static final LayerPhaseEvent PROBE = new LayerPhaseEvent();
+
+    /**
+     * Position of the layer among the hidden layers, starting at 0.
+     */
+    @Label("Layer")
+    @Description("Position of the layer among the hidden layers, starting at 0")
+    private int layer;
+
+    /**
+     * Name of the phase.
+     */
+    @Label("Phase")
+    private String phase;
+
+    /**
+     * Number of samples, or 0 for updates, which apply a gradient already summed over the batch.
+     */
+    @Label("Batch Size")
+    private int batchSize;
+
+    /**
+     * Number of inputs to the layer.
+     */
+    @Label("Inputs")
+    private int inputs;
+
+    /**
+     * Number of nodes in the layer.
+     */
+    @Label("Outputs")
+    private int outputs;
+
+    /**
+     * Whether a recording is currently taking layer phases.
+     * @return true if enabled
+     */
+    public static boolean enabled() {
+        return PROBE.isEnabled();
+    }
+
+    /**
+     * Starts timing a phase. Only called while {@link #enabled()}.
+     * @param layer position of the layer among the hidden layers
+     * @param batchSize number of samples
+     * @param inputs number of inputs to the layer
+     * @param outputs number of nodes in the layer
+     * @return started event
+     */
+    public static LayerPhaseEvent start(int layer, int batchSize, int inputs, int outputs) {
+        LayerPhaseEvent event = new LayerPhaseEvent();
+        event.layer = layer;
+        event.batchSize = batchSize;
+        event.inputs = inputs;
+        event.outputs = outputs;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the phase and writes the event if it lasted at least the threshold.
+     * @param phase phase that just finished
+     */
+    public void finish(PhaseEnum phase) {
+        end();
+        if(shouldCommit()) {
+            this.phase = phase.name();
+            commit();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package Metrics;
+
+/**
+ * Part of a training step that a layer spends time in, as recorded by {@link TrainingTelemetry}.
+ */
+public enum PhaseEnum {
+    /**
+     * Weighted sums of the inputs plus the biases, with the activation function applied in the same pass.
+     */
+    Forward
+
+    /**
+     * Derivative of the activation function on the way back.
+     */
+    ,Activation
+
+    /**
+     * Gradients with respect to the weights and to the previous layer's activation values.
+     */
+    ,Gradient
+
+    /**
+     * Changing the weights and biases, including steps that compute the weight gradient straight into them.
+     */
+    ,Update
+}
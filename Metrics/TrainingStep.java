@@ -0,0 +1,182 @@
+package Metrics;
+
+import java.util.Arrays;
+
+/**
+ * Timings and allocation of one training step, passed to the listeners of a {@link TrainingTelemetry}.
+ *
+ * Each training thread reuses one instance for all of its steps, so recording does not allocate.
+ * Its values are only meaningful during the listener call; listeners that keep them must copy them.
+ */
+public class TrainingStep {
+
+    /**
+     * Nanoseconds spent per layer and phase in this step, indexed as {@code [layer][phase ordinal]}.
+     */
+    private final long[][] phaseNanos;
+
+    /**
+     * Number of this step among all steps recorded by the telemetry, starting at 1.
+     */
+    private long index;
+
+    /**
+     * Number of samples in the step.
+     */
+    private int samples;
+
+    /**
+     * Time the step started, from {@link System#nanoTime()}.
+     */
+    private long start;
+
+    /**
+     * Wall clock time of the step in nanoseconds.
+     */
+    private long nanos;
+
+    /**
+     * Nanoseconds spent computing the error and its derivative.
+     */
+    private long errorNanos;
+
+    /**
+     * Bytes allocated by the thread when the step started, or -1 if unknown.
+     */
+    private long startBytes;
+
+    /**
+     * Bytes allocated by the thread during the step, or -1 if unknown.
+     */
+    private long allocatedBytes;
+
+    /**
+     * Creates an empty step.
+     * @param layers number of layers timed
+     */
+    TrainingStep(int layers) {
+        this.phaseNanos = new long[layers][PhaseEnum.values().length];
+    }
+
+    /**
+     * Clears the timings and marks the start of a step.
+     * @param bytes bytes allocated by the thread so far, or -1 if unknown
+     */
+    void begin(long bytes) {
+        clear();
+        this.startBytes = bytes;
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Clears the phase and error timings.
+     */
+    void clear() {
+        for(long[] phases : this.phaseNanos) {
+            Arrays.fill(phases, 0);
+        }
+        this.errorNanos = 0;
+    }
+
+    /**
+     * Adds the phase and error timings of another step to this one.
+     * @param other step of a thread that worked on part of this step
+     */
+    void addAll(TrainingStep other) {
+        for(int l = 0; l < this.phaseNanos.length; l++) {
+            for(int p = 0; p < this.phaseNanos[l].length; p++) {
+                this.phaseNanos[l][p] += other.phaseNanos[l][p];
+            }
+        }
+        this.errorNanos += other.errorNanos;
+    }
+
+    /**
+     * Marks the end of a step.
+     * @param index number of the step
+     * @param samples number of samples in the step
+     * @param bytes bytes allocated by the thread so far, or -1 if unknown
+     */
+    void end(long index, int samples, long bytes) {
+        this.nanos = System.nanoTime() - this.start;
+        this.index = index;
+        this.samples = samples;
+        this.allocatedBytes = bytes < 0 || this.startBytes < 0 ? -1 : bytes - this.startBytes;
+    }
+
+    /**
+     * Adds time spent by a layer in a phase.
+     * @param layer index of the layer
+     * @param phase phase
+     * @param nanos nanoseconds spent
+     */
+    void add(int layer, PhaseEnum phase, long nanos) {
+        this.phaseNanos[layer][phase.ordinal()] += nanos;
+    }
+
+    /**
+     * Adds time spent computing the error.
+     * @param nanos nanoseconds spent
+     */
+    void addError(long nanos) {
+        this.errorNanos += nanos;
+    }
+
+    /**
+     * Number of this step among all steps recorded by the telemetry.
+     * @return step number, starting at 1
+     */
+    public long index() {
+        return this.index;
+    }
+
+    /**
+     * Number of samples in the step.
+     * @return samples
+     */
+    public int samples() {
+        return this.samples;
+    }
+
+    /**
+     * Wall clock time of the step.
+     * @return nanoseconds
+     */
+    public long nanos() {
+        return this.nanos;
+    }
+
+    /**
+     * Time a layer spent in a phase during the step.
+     * @param layer index of the hidden layer
+     * @param phase phase
+     * @return nanoseconds
+     */
+    public long nanos(int layer, PhaseEnum phase) {
+        return this.phaseNanos[layer][phase.ordinal()];
+    }
+
+    /**
+     * Time spent computing the error and its derivative.
+     * @return nanoseconds
+     */
+    public long errorNanos() {
+        return this.errorNanos;
+    }
+
+    /**
+     * Bytes allocated by the training thread during the step.
+     * @return bytes, or -1 if the JVM cannot measure them
+     */
+    public long allocatedBytes() {
+        return this.allocatedBytes;
+    }
+
+    /**
+     * Training throughput of the step.
+     * @return samples per second
+     */
+    public double samplesPerSecond() {
+        return this.nanos == 0 ? 0 : this.samples * 1e9 / this.nanos;
+    }
+}
@@ -0,0 +1,327 @@
+package Metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Where training time goes: how long each layer spends in each {@link PhaseEnum} and how long the
+ * error computation takes, as histograms of nanoseconds per step, next to the duration, throughput and
+ * allocation of whole steps. Listeners receive every step as it finishes.
+ *
+ * Layers record their phases once attached to a telemetry, and a network counts a step for every call
+ * to {@code backPropagation} with a workspace. Code that drives {@code computeGradients} and
+ * {@code applyUpdate} itself on one thread can mark steps with {@link #beginStep()} and
+ * {@link #endStep(int)}. When parts of a step run on other threads, as in {@code ParallelTrainer},
+ * each of them brackets its part with {@link #beginShard()} and {@link #endShard(TrainingStep)} to add
+ * its phases to the step of the thread that began it. Phase times are then summed over the threads
+ * and can add up to more than the step, while the step's duration and allocation are those of the
+ * thread that began and ended it.
+ * Nothing is measured while no telemetry is attached and no recording takes {@link LayerPhaseEvent}s;
+ * the layers then only check a null field and the event's enabled flag once per phase. Telemetry times
+ * phases with {@link System#nanoTime()} and does not create events itself. A forward pass is timed
+ * as one {@link PhaseEnum#Forward} phase, so measuring keeps the activation function fused with the
+ * weighted sums and times the layer as it runs unmeasured.
+ *
+ * Several threads may record at once. Allocation is measured per thread with the
+ * {@code com.sun.management} extension of the thread MX bean, and reported as -1 where it is missing.
+ */
+public class TrainingTelemetry {
+
+    /**
+     * All phases, shared because {@link PhaseEnum#values()} copies the array on every call.
+     */
+    private static final PhaseEnum[] PHASES = PhaseEnum.values();
+
+    /**
+     * Number of layers timed.
+     */
+    private final int layers;
+
+    /**
+     * Nanoseconds per step of each layer and phase, indexed as {@code [layer][phase ordinal]}.
+     */
+    private final Histogram[][] phaseNanos;
+
+    /**
+     * Nanoseconds per step spent computing the error.
+     */
+    private final Histogram errorNanos = new Histogram();
+
+    /**
+     * Nanoseconds per step.
+     */
+    private final Histogram stepNanos = new Histogram();
+
+    /**
+     * Bytes allocated per step by the training thread.
+     */
+    private final Histogram allocatedBytes = new Histogram();
+
+    /**
+     * Number of steps recorded.
+     */
+    private final AtomicLong steps = new AtomicLong();
+
+    /**
+     * Number of samples in the recorded steps.
+     */
+    private final AtomicLong samples = new AtomicLong();
+
+    /**
+     * Receivers of each finished step.
+     */
+    private final List<Consumer<TrainingStep>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Step in progress on each thread.
+     */
+    private final ThreadLocal<TrainingStep> current;
+
+    /**
+     * Source of per-thread allocation counts, or null if the JVM does not provide them.
+     */
+    private final com.sun.management.ThreadMXBean threads;
+
+    /**
+     * Creates telemetry for a network.
+     * @param layers number of hidden layers of the network
+     */
+    public TrainingTelemetry(int layers) {
+        if(layers < 1) {
+            throw new IllegalArgumentException("Need at least one layer but got " + layers);
+        }
+        this.layers = layers;
+        this.phaseNanos = new Histogram[layers][PHASES.length];
+        for(Histogram[] phases : this.phaseNanos) {
+            for(int p = 0; p < phases.length; p++) {
+                phases[p] = new Histogram();
+            }
+        }
+        this.current = ThreadLocal.withInitial(() -> new TrainingStep(layers));
+        this.threads = allocationCounter();
+    }
+
+    /**
+     * Gets the thread MX bean if it can count the bytes each thread allocates, turning the count on.
+     * @return thread MX bean, or null
+     */
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        if(!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if(!mx.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        mx.setThreadAllocatedMemoryEnabled(true);
+        return mx;
+    }
+
+    /**
+     * Bytes allocated by the calling thread since it started.
+     * @return bytes, or -1 if unknown
+     */
+    private long allocated() {
+        return this.threads == null ? -1 : this.threads.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Marks the start of a training step on the calling thread.
+     * @return step in progress, which other threads can add their part to with {@link #endShard(TrainingStep)}
+     */
+    public TrainingStep beginStep() {
+        TrainingStep step = this.current.get();
+        step.begin(allocated());
+        return step;
+    }
+
+    /**
+     * Marks the start of the calling thread's part of a step begun on another thread.
+     */
+    public void beginShard() {
+        this.current.get().clear();
+    }
+
+    /**
+     * Marks the end of the calling thread's part of a step, adding the phases it recorded since
+     * {@link #beginShard()} to the step. Several threads may add to the same step at once.
+     * @param step step returned by {@link #beginStep()} on the thread that began it
+     */
+    public void endShard(TrainingStep step) {
+        TrainingStep shard = this.current.get();
+        if(shard == step) {
+            throw new IllegalStateException("A step cannot be its own shard");
+        }
+        synchronized(step) {
+            step.addAll(shard);
+        }
+    }
+
+    /**
+     * Marks the end of the calling thread's training step, records it and passes it to the listeners.
+     * @param samples number of samples trained on in the step
+     */
+    public void endStep(int samples) {
+        TrainingStep step = this.current.get();
+        step.end(this.steps.incrementAndGet(), samples, allocated());
+        this.samples.addAndGet(samples);
+        this.stepNanos.record(step.nanos());
+        if(step.allocatedBytes() >= 0) {
+            this.allocatedBytes.record(step.allocatedBytes());
+        }
+        for(int l = 0; l < this.layers; l++) {
+            for(PhaseEnum phase : PHASES) {
+                this.phaseNanos[l][phase.ordinal()].record(step.nanos(l, phase));
+            }
+        }
+        this.errorNanos.record(step.errorNanos());
+        for(Consumer<TrainingStep> listener : this.listeners) {
+            listener.accept(step);
+        }
+    }
+
+    /**
+     * Adds time spent by a layer in a phase to the calling thread's step.
+     * @param layer index of the hidden layer
+     * @param phase phase
+     * @param nanos nanoseconds spent
+     */
+    public void record(int layer, PhaseEnum phase, long nanos) {
+        this.current.get().add(layer, phase, nanos);
+    }
+
+    /**
+     * Adds time spent computing the error to the calling thread's step.
+     * @param nanos nanoseconds spent
+     */
+    public void recordError(long nanos) {
+        this.current.get().addError(nanos);
+    }
+
+    /**
+     * Subscribes to finished steps. Listeners run on the training thread at the end of each step, so
+     * slow listeners slow training down.
+     * @param listener receives each step, which is only valid during the call
+     */
+    public void addListener(Consumer<TrainingStep> listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Unsubscribes a listener.
+     * @param listener listener previously added
+     */
+    public void removeListener(Consumer<TrainingStep> listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Number of layers timed.
+     * @return layers
+     */
+    public int layers() {
+        return this.layers;
+    }
+
+    /**
+     * Time per step a layer spent in a phase.
+     * @param layer index of the hidden layer
+     * @param phase phase
+     * @return histogram of nanoseconds
+     */
+    public Histogram phaseNanos(int layer, PhaseEnum phase) {
+        return this.phaseNanos[layer][phase.ordinal()];
+    }
+
+    /**
+     * Time per step spent computing the error and its derivative.
+     * @return histogram of nanoseconds
+     */
+    public Histogram errorNanos() {
+        return this.errorNanos;
+    }
+
+    /**
+     * Wall clock time per step.
+     * @return histogram of nanoseconds
+     */
+    public Histogram stepNanos() {
+        return this.stepNanos;
+    }
+
+    /**
+     * Bytes allocated per step by the training thread. Empty if the JVM cannot measure them.
+     * @return histogram of bytes
+     */
+    public Histogram allocatedBytes() {
+        return this.allocatedBytes;
+    }
+
+    /**
+     * Number of steps recorded.
+     * @return steps
+     */
+    public long steps() {
+        return this.steps.get();
+    }
+
+    /**
+     * Number of samples in the recorded steps.
+     * @return samples
+     */
+    public long samples() {
+        return this.samples.get();
+    }
+
+    /**
+     * Training throughput over the recorded steps, not counting time between steps.
+     * @return samples per second
+     */
+    public double samplesPerSecond() {
+        double seconds = this.stepNanos.mean() * this.stepNanos.count() / 1e9;
+        return seconds == 0 ? 0 : samples() / seconds;
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public void reset() {
+        for(Histogram[] phases : this.phaseNanos) {
+            for(Histogram h : phases) {
+                h.reset();
+            }
+        }
+        this.errorNanos.reset();
+        this.stepNanos.reset();
+        this.allocatedBytes.reset();
+        this.steps.set(0);
+        this.samples.set(0);
+    }
+
+    /**
+     * Table of the mean time per step of each layer and phase with its share of the step, followed by
+     * the step totals.
+     * @return multi-line summary
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        double step = this.stepNanos.mean();
+        sb.append(String.format("%d steps, %.0f samples/s, step %s%n", steps(), samplesPerSecond(), this.stepNanos));
+        for(int l = 0; l < this.layers; l++) {
+            sb.append("layer ").append(l).append(':');
+            for(PhaseEnum phase : PHASES) {
+                double mean = phaseNanos(l, phase).mean();
+                sb.append(String.format(" %s %.1fus (%.1f%%)", phase, mean / 1e3, step == 0 ? 0 : mean / step * 100));
+            }
+            sb.append(System.lineSeparator());
+        }
+        sb.append(String.format("error %.1fus (%.1f%%), allocated %.0f bytes/step (max %d)",
+                this.errorNanos.mean() / 1e3, step == 0 ? 0 : this.errorNanos.mean() / step * 100,
+                this.allocatedBytes.mean(), this.allocatedBytes.max()));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,393 @@
+import Metrics.Histogram;
+import Tensor.PrecisionEnum;
+import Tensor.Tensor;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serves single-sample predictions by gathering concurrent requests into batches.
+ *
+ * Callers {@link #submit(double[])} one sample at a time and get a future for its output. A dispatcher
+ * thread waits for the first request and then collects more until either {@code maxBatch} requests are
+ * queued or the oldest has waited {@code maxWaitNanos}, whichever comes first. It runs them as one
+ * batched forward pass through an {@link InferenceHandle} and completes each future with its own row of
+ * the output. Under light load a request waits at most {@code maxWaitNanos} longer than it would alone;
+ * under heavy load batches fill before the deadline and the per-sample cost drops to that of a large batch.
+ *
+ * Queue depth, batch sizes, time spent queued and end-to-end latency are recorded as the batcher runs.
+ */
+public class MicroBatcher implements AutoCloseable {
+
+    /**
+     * Largest number of requests per batch.
+     */
+    private final int maxBatch;
+
+    /**
+     * Longest time the oldest queued request waits for the batch to fill.
+     */
+    private final long maxWaitNanos;
+
+    /**
+     * Weights the batches are run with. Replaced by {@link #setHandle(InferenceHandle)}.
+     */
+    private volatile InferenceHandle handle;
+
+    /**
+     * Guards the queue and the statistics. A lock rather than the object's monitor, since
+     * {@link Object#wait(long, int)} rounds waits up to whole milliseconds and the batch deadline is finer.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Signalled when the dispatcher should look at the queue again.
+     */
+    private final Condition changed = this.lock.newCondition();
+
+    /**
+     * Requests waiting for a batch, oldest first. Guarded by {@link #lock}.
+     */
+    private final ArrayDeque<Request> queue = new ArrayDeque<>();
+
+    /**
+     * Input rows of a batch in the handle's precision.
+     */
+    private final Tensor inputs;
+
+    /**
+     * Output rows of a batch.
+     */
+    private final Tensor outputs;
+
+    /**
+     * Views of the first {@code n} rows of {@link #inputs}, indexed by {@code n} and created on first use.
+     */
+    private final Tensor[] inputViews;
+
+    /**
+     * Views of the first {@code n} rows of {@link #outputs}, indexed by {@code n} and created on first use.
+     */
+    private final Tensor[] outputViews;
+
+    /**
+     * Thread collecting and running batches.
+     */
+    private final Thread dispatcher;
+
+    /**
+     * Number of batches of each size, indexed by size.
+     */
+    private final long[] batchSizes;
+
+    /**
+     * Time from submission to the start of the request's batch.
+     */
+    private final Histogram queueNanos = new Histogram();
+
+    /**
+     * Time from submission to completion of the request's future.
+     */
+    private final Histogram latencyNanos = new Histogram();
+
+    /**
+     * Largest number of requests queued at once.
+     */
+    private int maxQueueDepth;
+
+    /**
+     * Whether {@link #close()} has been called.
+     */
+    private boolean closed;
+
+    /**
+     * Starts the dispatcher.
+     * @param handle weights to run batches with
+     * @param maxBatch largest number of requests per batch, at most {@code handle.maxBatch()}
+     * @param maxWaitNanos longest time the oldest request waits for the batch to fill
+     */
+    public MicroBatcher(InferenceHandle handle, int maxBatch, long maxWaitNanos) {
+        if(maxBatch < 1 || maxBatch > handle.maxBatch() || maxWaitNanos < 0) {
+            throw new IllegalArgumentException("Invalid batcher configuration: batch size " + maxBatch
+                    + " for a handle sized for " + handle.maxBatch() + ", wait " + maxWaitNanos + " ns");
+        }
+        this.handle = handle;
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = maxWaitNanos;
+        this.inputs = new Tensor(maxBatch, handle.inputSize(), handle.precision());
+        this.outputs = new Tensor(maxBatch, handle.outputSize(), PrecisionEnum.Double);
+        this.inputViews = new Tensor[maxBatch + 1];
+        this.outputViews = new Tensor[maxBatch + 1];
+        this.batchSizes = new long[maxBatch + 1];
+
+        this.dispatcher = new Thread(this::dispatch, "micro-batcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Queues one sample for prediction.
+     * @param input sample of {@code inputSize} values. Must not be changed until the future completes.
+     * @return future completed with the network's output for the sample, or exceptionally if the batch failed
+     * @throws IllegalStateException if the batcher is closed
+     */
+    public CompletableFuture<double[]> submit(double[] input) {
+        if(input.length != this.inputs.cols()) {
+            throw new IllegalArgumentException("Expected " + this.inputs.cols() + " inputs but got " + input.length);
+        }
+        Request r = new Request(input);
+        this.lock.lock();
+        try {
+            if(this.closed) {
+                throw new IllegalStateException("Batcher is closed");
+            }
+            this.queue.addLast(r);
+            int depth = this.queue.size();
+            this.maxQueueDepth = Math.max(this.maxQueueDepth, depth);
+            // the dispatcher only needs waking for its first request and for a full batch
+            if(depth == 1 || depth == this.maxBatch) {
+                this.changed.signal();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        return r.future;
+    }
+
+    /**
+     * Dispatcher loop. Collects batches until the batcher is closed and the queue is empty.
+     */
+    private void dispatch() {
+        Request[] batch = new Request[this.maxBatch];
+        try {
+            while(true) {
+                int count;
+                this.lock.lock();
+                try {
+                    while(this.queue.isEmpty() && !this.closed) {
+                        this.changed.await();
+                    }
+                    if(this.queue.isEmpty()) {
+                        return;
+                    }
+                    long deadline = this.queue.peekFirst().submitted + this.maxWaitNanos;
+                    while(this.queue.size() < this.maxBatch && !this.closed) {
+                        long left = deadline - System.nanoTime();
+                        if(left <= 0) {
+                            break;
+                        }
+                        this.changed.awaitNanos(left);
+                    }
+                    count = Math.min(this.queue.size(), this.maxBatch);
+                    for(int i = 0; i < count; i++) {
+                        batch[i] = this.queue.pollFirst();
+                    }
+                    this.batchSizes[count]++;
+                } finally {
+                    this.lock.unlock();
+                }
+                run(batch, count);
+            }
+        } catch(InterruptedException e) {
+            abandon(new IllegalStateException("Batcher was interrupted"));
+        } catch(Error e) {
+            abandon(new IllegalStateException("Batcher failed", e));
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the batcher after the dispatcher stopped early, failing the requests still queued.
+     * @param cause exception the queued futures complete with
+     */
+    private void abandon(Throwable cause) {
+        this.lock.lock();
+        try {
+            this.closed = true;
+            for(Request r : this.queue) {
+                r.future.completeExceptionally(cause);
+            }
+            this.queue.clear();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Runs one batch and completes its futures, exceptionally if the batch fails. Errors are rethrown
+     * once the batch's futures are completed, stopping the dispatcher.
+     * @param batch requests, of which the first {@code count} are used and then cleared
+     * @param count number of requests
+     */
+    private void run(Request[] batch, int count) {
+        if(this.inputViews[count] == null) {
+            this.inputViews[count] = this.inputs.slice(0, count);
+            this.outputViews[count] = this.outputs.slice(0, count);
+        }
+        Tensor x = this.inputViews[count];
+        Tensor y = this.outputViews[count];
+        long start = System.nanoTime();
+        for(int i = 0; i < count; i++) {
+            double[] input = batch[i].input;
+            int row = x.index(i, 0);
+            if(x.isFloat()) {
+                float[] d = x.floatData();
+                for(int j = 0; j < input.length; j++) {
+                    d[row + j] = (float) input[j];
+                }
+            } else {
+                System.arraycopy(input, 0, x.data(), row, input.length);
+            }
+            this.queueNanos.record(start - batch[i].submitted);
+        }
+        try {
+            this.handle.predict(x, y);
+        } catch(Throwable e) {
+            for(int i = 0; i < count; i++) {
+                batch[i].future.completeExceptionally(e);
+                batch[i] = null;
+            }
+            if(e instanceof Error) {
+                throw (Error) e;
+            }
+            return;
+        }
+        for(int i = 0; i < count; i++) {
+            double[] output = y.rowArray(i);
+            this.latencyNanos.record(System.nanoTime() - batch[i].submitted);
+            batch[i].future.complete(output);
+            batch[i] = null;
+        }
+    }
+
+    /**
+     * Replaces the weights used from the next batch on, such as with a newer {@link Network#snapshot(int)}.
+     * @param handle weights with the same input and output sizes, sized for at least this batcher's batch size
+     */
+    public void setHandle(InferenceHandle handle) {
+        if(handle.inputSize() != this.inputs.cols() || handle.outputSize() != this.outputs.cols()
+                || handle.maxBatch() < this.maxBatch || handle.precision().isFloat() != this.inputs.isFloat()) {
+            throw new IllegalArgumentException("Handle does not match the batcher's sizes and storage type");
+        }
+        this.handle = handle;
+    }
+
+    /**
+     * Stops accepting requests, runs the ones already queued and waits for the dispatcher to finish.
+     */
+    @Override
+    public void close() {
+        this.lock.lock();
+        try {
+            this.closed = true;
+            this.changed.signal();
+        } finally {
+            this.lock.unlock();
+        }
+        try {
+            this.dispatcher.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Number of requests waiting for a batch.
+     * @return queue depth
+     */
+    public int queueDepth() {
+        this.lock.lock();
+        try {
+            return this.queue.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Largest number of requests that have waited for a batch at once.
+     * @return maximum queue depth
+     */
+    public int maxQueueDepth() {
+        this.lock.lock();
+        try {
+            return this.maxQueueDepth;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Number of batches run of each size.
+     * @return copy of the counts, indexed by batch size
+     */
+    public long[] batchSizes() {
+        this.lock.lock();
+        try {
+            return this.batchSizes.clone();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Time requests spent queued before their batch started, in nanoseconds.
+     * @return live histogram
+     */
+    public Histogram queueNanos() {
+        return this.queueNanos;
+    }
+
+    /**
+     * Time from submission to completion of each request, in nanoseconds.
+     * @return live histogram
+     */
+    public Histogram latencyNanos() {
+        return this.latencyNanos;
+    }
+
+    @Override
+    public String toString() {
+        long[] sizes = batchSizes();
+        long batches = 0;
+        long requests = 0;
+        for(int i = 1; i < sizes.length; i++) {
+            batches += sizes[i];
+            requests += i * sizes[i];
+        }
+        return String.format("batcher: %d requests in %d batches (mean %.1f), max queue depth %d%n  queued %s%n  latency %s",
+                requests, batches, batches == 0 ? 0 : (double) requests / batches, maxQueueDepth(),
+                this.queueNanos, this.latencyNanos);
+    }
+
+    /**
+     * One queued sample and the future for its output.
+     */
+    private static final class Request {
+
+        /**
+         * Sample to predict.
+         */
+        private final double[] input;
+
+        /**
+         * Completed with the output.
+         */
+        private final CompletableFuture<double[]> future = new CompletableFuture<>();
+
+        /**
+         * Time of submission, from {@link System#nanoTime()}.
+         */
+        private final long submitted = System.nanoTime();
+
+        /**
+         * Creates a request.
+         * @param input sample to predict
+         */
+        private Request(double[] input) {
+            this.input = input;
+        }
+    }
+}
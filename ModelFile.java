@@ -0,0 +1,293 @@
+import ActivationFunctions.ActivationFunction;
+import ActivationFunctions.ActivationFunctionEnum;
+import ErrorFunctions.ErrorFunctionEnum;
+import Layer.FullyConnectedLayer;
+import Layer.InputLayer;
+import Layer.Layer;
+import Tensor.PrecisionEnum;
+import Tensor.Tensor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compact binary file holding a network's shape and weights.
+ *
+ * Everything is little-endian, the byte order of the machines that load models, so weight blocks
+ * are copied into tensors in bulk without converting each value. The file starts with a header:
+ * <pre>
+ *  0  int     magic number 0x4E4E4C44, the bytes "DLNN"
+ *  4  int     format version
+ *  8  byte    precision, as a {@link PrecisionEnum} ordinal
+ *  9  byte    activation function, as an {@link ActivationFunctionEnum} ordinal
+ * 10  byte    error function, as an {@link ErrorFunctionEnum} ordinal
+ * 11  byte    reserved, 0
+ * 12  int     number of hidden layers, L
+ * 16  double  activation function parameter, see {@link ActivationFunctionEnum#parameter(ActivationFunction)}
+ * 24  double  learning rate
+ * 32  int     input size
+ * 36  int[L]  hidden layer sizes
+ * </pre>
+ * followed by one weight block per hidden layer, each starting at a multiple of {@link #ALIGNMENT} bytes.
+ * A block holds the {@code (inputs + 1) x size} weights and biases of the layer row by row, as doubles
+ * for {@link PrecisionEnum#Double} and as floats otherwise.
+ *
+ * Loading maps the file and reads only the header value by value; the weight blocks are copied
+ * straight from the mapped pages into the tensors. Anything after the last block is ignored, which
+ * lets {@link Checkpointer} append training state.
+ */
+public class ModelFile {
+
+    /**
+     * First four bytes of every model file.
+     */
+    private static final int MAGIC = 0x4E4E4C44;
+
+    /**
+     * Version written by {@link #save(Network, Path)}. Files of other versions are rejected.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Alignment of each weight block in bytes, one cache line.
+     */
+    private static final int ALIGNMENT = 64;
+
+    /**
+     * Length of the fixed part of the header, before the layer sizes.
+     */
+    private static final int HEADER = 36;
+
+    private ModelFile() {
+    }
+
+    /**
+     * Writes a network to a file, replacing any existing file.
+     * Must not be called while another thread is changing the weights.
+     * @param network network to save
+     * @param path destination
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if the network uses an activation or error function without a type
+     */
+    public static void save(Network network, Path path) throws IOException {
+        try(FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(network, ch);
+        }
+    }
+
+    /**
+     * Writes a network at the current position of a channel, so other data can follow it in the same file.
+     * @param network network to write
+     * @param ch destination
+     * @return number of bytes written, always {@link #length(Network)}
+     * @throws IOException if the channel cannot be written
+     */
+    static long write(Network network, FileChannel ch) throws IOException {
+        FullyConnectedLayer[] layers = network.layers();
+        ActivationFunction af = network.activationFunction();
+        ByteBuffer header = ByteBuffer.allocate((int) blockOffset(layers.length)).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.put((byte) network.precision().ordinal());
+        header.put((byte) ActivationFunctionEnum.of(af).ordinal());
+        header.put((byte) ErrorFunctionEnum.of(network.errorFunction()).ordinal());
+        header.put((byte) 0);
+        header.putInt(layers.length);
+        header.putDouble(ActivationFunctionEnum.parameter(af));
+        header.putDouble(network.learnRate());
+        header.putInt(network.inputSize());
+        for(FullyConnectedLayer l : layers) {
+            header.putInt(l.size());
+        }
+        header.clear();
+
+        long written = writeFully(ch, header);
+        for(FullyConnectedLayer l : layers) {
+            Tensor w = l.getWeights();
+            if(!w.isContiguous()) {
+                w = w.copy();
+            }
+            int n = w.rows() * w.cols();
+            ByteBuffer block = ByteBuffer.allocate((int) align((long) n * (w.isFloat() ? Float.BYTES : Double.BYTES)))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if(w.isFloat()) {
+                block.asFloatBuffer().put(w.floatData(), w.offset(), n);
+            } else {
+                block.asDoubleBuffer().put(w.data(), w.offset(), n);
+            }
+            written += writeFully(ch, block);
+        }
+        return written;
+    }
+
+    /**
+     * Length of the model file of a network, which is where any data following it in the same file starts.
+     * @param network network
+     * @return bytes, a multiple of {@link #ALIGNMENT}
+     */
+    static long length(Network network) {
+        FullyConnectedLayer[] layers = network.layers();
+        long length = blockOffset(layers.length);
+        for(FullyConnectedLayer l : layers) {
+            Tensor w = l.getWeights();
+            length += align((long) w.rows() * w.cols() * (w.isFloat() ? Float.BYTES : Double.BYTES));
+        }
+        return length;
+    }
+
+    /**
+     * Reads a network for training or inference.
+     * @param path model file
+     * @return network with the saved shape, functions, learning rate and weights
+     * @throws IOException if the file cannot be read or is not a valid model file
+     */
+    public static Network load(Path path) throws IOException {
+        Contents c = read(path);
+        return new Network(c.af, c.errorFunction.create(), c.learnRate, c.input, c.layers);
+    }
+
+    /**
+     * Reads a network straight into an inference handle, without the copy a
+     * {@link Network#snapshot(int)} of a loaded network would make.
+     * @param path model file
+     * @param maxBatch largest number of samples per prediction call
+     * @return inference handle over the saved weights
+     * @throws IOException if the file cannot be read or is not a valid model file
+     */
+    public static InferenceHandle loadHandle(Path path, int maxBatch) throws IOException {
+        Contents c = read(path);
+        return new InferenceHandle(c.layers, c.input.size(), maxBatch);
+    }
+
+    /**
+     * Maps a model file, checks its header and copies out the weight blocks.
+     */
+    private static Contents read(Path path) throws IOException {
+        ByteBuffer buf;
+        try(FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            if(ch.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large to map");
+            }
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if(buf.capacity() < HEADER || buf.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not a model file");
+        }
+        if(buf.getInt(4) != VERSION) {
+            throw new IOException(path + " has format version " + buf.getInt(4) + " but only version "
+                    + VERSION + " is supported");
+        }
+        PrecisionEnum precision = constant(PrecisionEnum.values(), buf.get(8), "precision", path);
+        ActivationFunctionEnum activation = constant(ActivationFunctionEnum.values(), buf.get(9), "activation function", path);
+        ErrorFunctionEnum error = constant(ErrorFunctionEnum.values(), buf.get(10), "error function", path);
+        int count = buf.getInt(12);
+        // bound the count before computing with it, so a corrupt one cannot overflow the offsets
+        if(count < 1 || count > (buf.capacity() - HEADER) / Integer.BYTES || blockOffset(count) > buf.capacity()) {
+            throw new IOException(path + " declares " + count + " layers but is too short to hold them");
+        }
+
+        Contents c = new Contents();
+        c.af = activation.create(buf.getDouble(16));
+        c.errorFunction = error;
+        c.learnRate = buf.getDouble(24);
+        c.input = new InputLayer(buf.getInt(32));
+        c.layers = new FullyConnectedLayer[count];
+        Layer prev = c.input;
+        long offset = blockOffset(count);
+        for(int i = 0; i < count; i++) {
+            int size = buf.getInt(HEADER + i * Integer.BYTES);
+            if(size < 1 || prev.size() < 1) {
+                throw new IOException(path + " has a layer of size " + Math.min(size, prev.size()));
+            }
+            // check the weights are in the file before allocating room for them
+            long n = ((long) prev.size() + 1) * size;
+            long bytes = n * (precision.isFloat() ? Float.BYTES : Double.BYTES);
+            if(offset + bytes > buf.capacity()) {
+                throw new IOException(path + " ends inside the weights of layer " + i);
+            }
+            Tensor w = new Tensor(prev.size() + 1, size, precision);
+            ByteBuffer block = buf.slice((int) offset, (int) bytes).order(ByteOrder.LITTLE_ENDIAN);
+            if(w.isFloat()) {
+                block.asFloatBuffer().get(w.floatData(), 0, (int) n);
+            } else {
+                block.asDoubleBuffer().get(w.data(), 0, (int) n);
+            }
+            c.layers[i] = new FullyConnectedLayer(size, prev, c.af, w);
+            prev = c.layers[i];
+            offset += align(bytes);
+        }
+        return c;
+    }
+
+    /**
+     * Looks up an enum constant by the ordinal stored in the header.
+     */
+    private static <E extends Enum<E>> E constant(E[] values, byte ordinal, String what, Path path) throws IOException {
+        if(ordinal < 0 || ordinal >= values.length) {
+            throw new IOException(path + " has unknown " + what + " " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    /**
+     * Offset of the first weight block in a file with the given number of layers.
+     */
+    private static long blockOffset(int layers) {
+        return align(HEADER + (long) layers * Integer.BYTES);
+    }
+
+    /**
+     * Rounds a length up to a multiple of {@link #ALIGNMENT}.
+     */
+    private static long align(long bytes) {
+        return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * Writes a whole buffer, which a single channel write does not guarantee.
+     * @return number of bytes written
+     */
+    static int writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+        int n = buf.remaining();
+        while(buf.hasRemaining()) {
+            ch.write(buf);
+        }
+        return n;
+    }
+
+    /**
+     * Everything read from a model file.
+     */
+    private static final class Contents {
+
+        /**
+         * Activation function of every layer.
+         */
+        private ActivationFunction af;
+
+        /**
+         * Type of the error function.
+         */
+        private ErrorFunctionEnum errorFunction;
+
+        /**
+         * Learning rate.
+         */
+        private double learnRate;
+
+        /**
+         * Input placeholder.
+         */
+        private InputLayer input;
+
+        /**
+         * Hidden layers holding the loaded weights.
+         */
+        private FullyConnectedLayer[] layers;
+    }
+}
@@ -1,14 +1,31 @@
 import ActivationFunctions.ActivationFunction;
+import Data.Batch;
+import Data.BatchPrefetcher;
+import Data.Dataset;
 import ErrorFunctions.ErrorFunction;
 import Layer.FullyConnectedLayer;
 import Layer.InputLayer;
 import Layer.Layer;
 import Layer.WeightInitializerEnum;
 import Layer.BiasInitializerEnum;
+import Metrics.BackPropagationEvent;
+import Metrics.ForwardPassEvent;
+import Metrics.LayerPhaseEvent;
+import Metrics.PhaseEnum;
+import Metrics.TrainingTelemetry;
+import Optimizers.Optimizer;
+import Tensor.PrecisionEnum;
+import Tensor.SparseTensor;
+import Tensor.Tensor;
 import org.apache.commons.math4.legacy.linear.RealMatrix;
 import org.apache.commons.math4.legacy.linear.RealVector;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
 
 public class Network implements Serializable {
 
@@ -18,6 +35,21 @@ public class Network implements Serializable {
     private ErrorFunction ef;
     private double learnRate;
 
+    /**
+     * Training buffers of each thread calling {@link #backPropagation(Tensor, Tensor)}.
+     */
+    private transient ThreadLocal<Workspace> workspaces;
+
+    /**
+     * Update rule applied to the gradients, or null for plain gradient descent with {@link #learnRate}.
+     */
+    private Optimizer optimizer;
+
+    /**
+     * Receiver of training timings, or null when not measuring.
+     */
+    private transient TrainingTelemetry telemetry;
+
     /**
      *
      * @param af
@@ -42,6 +74,17 @@ public class Network implements Serializable {
 
     public Network(ActivationFunction af, ErrorFunction ef, double learnRate, int inputSize, int[] layerSizes,
                    WeightInitializerEnum wInit, BiasInitializerEnum bInit) {
+        this(af, ef, learnRate, inputSize, layerSizes, wInit, bInit, PrecisionEnum.Double);
+    }
+
+    /**
+     * Creates a network whose weights, biases and intermediate values use the given precision.
+     * {@link PrecisionEnum#Float} halves memory traffic and doubles the width of vector kernels,
+     * {@link PrecisionEnum#Mixed} keeps that storage but accumulates matrix products in double.
+     * @param precision precision of every layer
+     */
+    public Network(ActivationFunction af, ErrorFunction ef, double learnRate, int inputSize, int[] layerSizes,
+                   WeightInitializerEnum wInit, BiasInitializerEnum bInit, PrecisionEnum precision) {
         this.af = af;
         this.ef = ef;
         this.learnRate = learnRate;
@@ -52,11 +95,24 @@ public class Network implements Serializable {
         Layer prev = this.inL;
 
         for(int i = 0; i < layerSizes.length; i++) {
-            this.hL[i] = new FullyConnectedLayer(layerSizes[i], prev, af, wInit, bInit);
+            this.hL[i] = new FullyConnectedLayer(layerSizes[i], prev, af, wInit, bInit, precision);
             prev = this.hL[i];
         }
     }
 
+    /**
+     * Creates a network around existing layers, such as ones read by {@link ModelFile}.
+     * @param inL input placeholder of the first layer
+     * @param hL hidden layers, each built on the one before
+     */
+    Network(ActivationFunction af, ErrorFunction ef, double learnRate, InputLayer inL, FullyConnectedLayer[] hL) {
+        this.af = af;
+        this.ef = ef;
+        this.learnRate = learnRate;
+        this.inL = inL;
+        this.hL = hL;
+    }
+
     /**
      * Feed an input into the network.
      * This method retains none of the information needed to perform
@@ -65,13 +121,7 @@ public class Network implements Serializable {
      * @return activation values of the final layer
      */
     public RealVector forwardPass(RealVector input) {
-        RealVector prevAct = input.copy();
-        for(int i = 0; i < this.hL.length; i++) {
-            RealVector z = hL[i].forwardWeightedSum(prevAct);
-            RealVector a = hL[i].forwardActivation(z);
-            prevAct = a;
-        }
-        return prevAct;
+        return forwardPass(Tensor.of(input)).toVector();
     }
 
     /**
@@ -82,15 +132,64 @@ public class Network implements Serializable {
      * @return activation values of the final layer per input
      */
     public RealMatrix forwardPass(RealMatrix input) {
-        RealMatrix prevAct = input.copy();
+        return forwardPass(Tensor.of(input)).toMatrix();
+    }
+
+    /**
+     * Feed several inputs into the network.
+     * This method retains none of the information needed to perform
+     * back-propagation on this input data.
+     * Not safe to call while another thread trains the network; use {@link #snapshot(int)} for that.
+     * @param input tensor of input row vectors. Must have inputSize columns.
+     * @return activation values of the final layer per input
+     */
+    public Tensor forwardPass(Tensor input) {
+        ForwardPassEvent event = ForwardPassEvent.start();
+        Tensor prevAct = input;
         for(int i = 0; i < this.hL.length; i++) {
-            RealMatrix z = hL[i].forwardWeightedSum(prevAct);
-            RealMatrix a = hL[i].forwardActivation(z);
-            prevAct = a;
+            prevAct = hL[i].forward(prevAct);
+        }
+        if(event != null) {
+            event.finish(input.rows(), input.cols(), prevAct.cols(), this.hL.length, false);
+        }
+        return prevAct;
+    }
+
+    /**
+     * Feed several sparse inputs into the network. Only the first layer uses the sparsity;
+     * its outputs are dense.
+     * @param input sparse input row vectors. Must have inputSize columns.
+     * @return activation values of the final layer per input
+     */
+    public Tensor forwardPass(SparseTensor input) {
+        ForwardPassEvent event = ForwardPassEvent.start();
+        Tensor prevAct = hL[0].forward(input);
+        for(int i = 1; i < this.hL.length; i++) {
+            prevAct = hL[i].forward(prevAct);
+        }
+        if(event != null) {
+            event.finish(input.rows(), input.cols(), prevAct.cols(), this.hL.length, true);
         }
         return prevAct;
     }
 
+    /**
+     * Copies the current weights and biases into a handle that many threads can predict with,
+     * each using its own buffers, while this network keeps training.
+     * Must not be called while another thread is changing the weights.
+     * @param maxBatch largest number of samples per prediction call
+     * @return inference handle over a copy of the weights
+     */
+    public InferenceHandle snapshot(int maxBatch) {
+        FullyConnectedLayer[] layers = new FullyConnectedLayer[this.hL.length];
+        Layer prev = new InputLayer(this.inL.size());
+        for(int i = 0; i < layers.length; i++) {
+            layers[i] = new FullyConnectedLayer(hL[i].size(), prev, this.af, hL[i].getWeights().copy());
+            prev = layers[i];
+        }
+        return new InferenceHandle(layers, this.inL.size(), maxBatch);
+    }
+
     /**
      * Given a single test input, perform stochastic gradient descent.
      * Updates all weights and biases of all hidden layers.
@@ -99,104 +198,539 @@ public class Network implements Serializable {
      * @return total error of the input
      */
     public double backPropagation(RealVector input, RealVector expected) {
-        int sz = hL.length + 1;
-        RealVector[] activations = new RealVector[sz];
-        RealVector[] weightedSums = new RealVector[sz];
+        return backPropagation(Tensor.of(input), Tensor.of(expected));
+    }
+
+    /**
+     * Given a multiple test inputs, perform stochastic gradient descent.
+     * Updates all weights and biases of all hidden layers.
+     * @param input matrix of input row vectors. Must have inputSize columns.
+     * @param expected matrix of expected value row vectors. Must have inputSize columns.
+     * @return average error of the inputs
+     */
+    public double backPropagation(RealMatrix input, RealMatrix expected) {
+        return backPropagation(Tensor.of(input), Tensor.of(expected));
+    }
 
-        activations[0] = input.copy();
+    /**
+     * Given a multiple test inputs, perform stochastic gradient descent.
+     * Updates all weights and biases of all hidden layers.
+     * @param input tensor of input row vectors. Must have inputSize columns.
+     * @param expected tensor of expected value row vectors. Must have as many columns as the output layer.
+     * @return average error of the inputs
+     */
+    public double backPropagation(Tensor input, Tensor expected) {
+        if(this.workspaces == null) {
+            this.workspaces = new ThreadLocal<>();
+        }
+        Workspace ws = this.workspaces.get();
+        if(ws == null || ws.maxBatch() < input.rows()) {
+            ws = createWorkspace(input.rows());
+            this.workspaces.set(ws);
+        }
+        return backPropagation(input, expected, ws);
+    }
 
-        // forward pass
-        for(int i = 0; i < this.hL.length; i++) {
-            RealVector z = hL[i].forwardWeightedSum(activations[i]);
-            RealVector a = hL[i].forwardActivation(z);
-            weightedSums[i + 1] = z;
-            activations[i + 1] = a;
+    /**
+     * Given a multiple test inputs, perform stochastic gradient descent using preallocated buffers.
+     * Updates all weights and biases of all hidden layers in place without allocating,
+     * apart from the tasks {@code Gemm} forks for products above its parallel threshold,
+     * as long as the input already has the storage type of the network's precision.
+     * @param input tensor of input row vectors. Must have inputSize columns.
+     * @param expected tensor of expected value row vectors. Must have as many columns as the output layer.
+     * @param ws buffers sized for at least {@code input.rows()} inputs
+     * @return average error of the inputs
+     */
+    public double backPropagation(Tensor input, Tensor expected, Workspace ws) {
+        TrainingTelemetry t = this.telemetry;
+        BackPropagationEvent event = BackPropagationEvent.start();
+        if(t == null && event == null) {
+            return descend(input, expected, ws);
+        }
+        if(t != null) {
+            t.beginStep();
+        }
+        double error = descend(input, expected, ws);
+        if(t != null) {
+            t.endStep(input.rows());
         }
+        if(event != null) {
+            event.finish(input.rows(), input.cols(), expected.cols(), this.hL.length, false, error);
+        }
+        return error;
+    }
 
-        // calculate error
-        RealVector dc_da = errorDerivative(expected, activations[sz - 1]);
-        double totalError = 0;
-        for(int i = 0; i < dc_da.getDimension(); i++) {
-            totalError += dc_da.getEntry(i);
+    /**
+     * Training step of {@link #backPropagation(Tensor, Tensor, Workspace)}.
+     */
+    private double descend(Tensor input, Tensor expected, Workspace ws) {
+        if(this.optimizer != null) {
+            double totalError = computeGradients(input, expected, ws, false);
+            applyUpdate(ws);
+            return totalError;
         }
-        totalError /= dc_da.getDimension();
+        input = input.to(precision());
+        double totalError = forwardWithError(input, expected, ws);
 
-        // backwards pass
+        // backwards pass. The first layer does not need the derivative with respect to the input.
         for(int i = this.hL.length - 1; i >= 0; i--) {
-            dc_da = hL[i].backProp(dc_da, activations[i], weightedSums[i + 1], this.learnRate);
+            Tensor a0 = i == 0 ? input : ws.activation(i);
+            Tensor dc_da0 = i == 0 ? null : ws.delta(i);
+            hL[i].backProp(ws.delta(i + 1), a0, ws.weightedSum(i + 1), ws.activation(i + 1), this.learnRate, dc_da0);
+        }
+
+        return totalError;
+    }
+
+    /**
+     * Given multiple sparse test inputs, perform stochastic gradient descent using preallocated buffers.
+     * Without an optimizer the first layer only reads and updates the weights of inputs that are nonzero
+     * somewhere in the batch. An optimizer still updates every weight, since its state changes every step
+     * whatever the gradient.
+     * @param input sparse input row vectors. Must have inputSize columns.
+     * @param expected tensor of expected value row vectors. Must have as many columns as the output layer.
+     * @param ws buffers sized for at least {@code input.rows()} inputs
+     * @return average error of the inputs
+     */
+    public double backPropagation(SparseTensor input, Tensor expected, Workspace ws) {
+        TrainingTelemetry t = this.telemetry;
+        BackPropagationEvent event = BackPropagationEvent.start();
+        if(t == null && event == null) {
+            return descend(input, expected, ws);
+        }
+        if(t != null) {
+            t.beginStep();
+        }
+        double error = descend(input, expected, ws);
+        if(t != null) {
+            t.endStep(input.rows());
+        }
+        if(event != null) {
+            event.finish(input.rows(), input.cols(), expected.cols(), this.hL.length, true, error);
         }
+        return error;
+    }
 
+    /**
+     * Training step of {@link #backPropagation(SparseTensor, Tensor, Workspace)}.
+     */
+    private double descend(SparseTensor input, Tensor expected, Workspace ws) {
+        if(this.optimizer != null) {
+            double totalError = computeGradients(input, expected, ws, false);
+            applyUpdate(ws);
+            return totalError;
+        }
+        double totalError = forwardWithError(input, expected, ws);
+        for(int i = this.hL.length - 1; i > 0; i--) {
+            hL[i].backProp(ws.delta(i + 1), ws.activation(i), ws.weightedSum(i + 1), ws.activation(i + 1),
+                    this.learnRate, ws.delta(i));
+        }
+        hL[0].backProp(ws.delta(1), input, ws.weightedSum(1), ws.activation(1), this.learnRate);
+        return totalError;
+    }
 
+    /**
+     * Given multiple sparse test inputs, computes the gradients of all weights and biases into the workspace.
+     * @param input sparse input row vectors. Must have inputSize columns.
+     * @param expected tensor of expected value row vectors. Must have as many columns as the output layer.
+     * @param ws buffers sized for at least {@code input.rows()} inputs, which receive the summed gradients
+     * @param accumulate whether to add to the gradients in the workspace rather than overwrite them
+     * @return average error of the inputs
+     * @see #computeGradients(Tensor, Tensor, Workspace, boolean)
+     */
+    public double computeGradients(SparseTensor input, Tensor expected, Workspace ws, boolean accumulate) {
+        double totalError = forwardWithError(input, expected, ws);
+        for(int i = this.hL.length - 1; i > 0; i--) {
+            hL[i].backward(ws.delta(i + 1), ws.activation(i), ws.weightedSum(i + 1), ws.activation(i + 1),
+                    ws.gradient(i + 1), accumulate, ws.delta(i));
+        }
+        hL[0].backward(ws.delta(1), input, ws.weightedSum(1), ws.activation(1), ws.gradient(1), accumulate,
+                ws.gradientRows());
+        ws.countGradientSamples(input.rows(), accumulate);
         return totalError;
     }
 
     /**
-     * Given a multiple test inputs, perform stochastic gradient descent.
-     * Updates all weights and biases of all hidden layers.
-     * @param input matrix of input row vectors. Must have inputSize columns.
-     * @param expected matrix of expected value row vectors. Must have inputSize columns.
+     * Given multiple test inputs, computes the gradients of all weights and biases into the
+     * workspace without changing them. Several threads may compute gradients at once, each
+     * with its own workspace.
+     *
+     * With {@code accumulate} set the gradients are added to those already in the workspace, so
+     * several micro-batches can make up one large batch whose memory use is that of a micro-batch.
+     * @param input tensor of input row vectors. Must have inputSize columns.
+     * @param expected tensor of expected value row vectors. Must have as many columns as the output layer.
+     * @param ws buffers sized for at least {@code input.rows()} inputs, which receive the summed gradients
+     * @param accumulate whether to add to the gradients in the workspace rather than overwrite them
      * @return average error of the inputs
+     * @see #applyUpdate(Workspace)
      */
-    public double backPropagation(RealMatrix input, RealMatrix expected) {
-        int sz = hL.length + 1;
-        RealMatrix[] activations = new RealMatrix[sz];
-        RealMatrix[] weightedSums = new RealMatrix[sz];
+    public double computeGradients(Tensor input, Tensor expected, Workspace ws, boolean accumulate) {
+        input = input.to(precision());
+        double totalError = forwardWithError(input, expected, ws);
+        for(int i = this.hL.length - 1; i >= 0; i--) {
+            Tensor a0 = i == 0 ? input : ws.activation(i);
+            Tensor dc_da0 = i == 0 ? null : ws.delta(i);
+            hL[i].backward(ws.delta(i + 1), a0, ws.weightedSum(i + 1), ws.activation(i + 1), ws.gradient(i + 1),
+                    accumulate, dc_da0);
+        }
+        ws.gradientsWritten();
+        ws.countGradientSamples(input.rows(), accumulate);
+        return totalError;
+    }
 
-        activations[0] = input.copy();
+    /**
+     * Takes a gradient descent step with the gradients held by a workspace, using
+     * the average gradient over every test case summed into it since the last update.
+     * The step is taken by the optimizer if one is set.
+     * @param ws workspace holding gradients
+     */
+    public void applyUpdate(Workspace ws) {
+        if(ws.gradientSamples() == 0) {
+            throw new IllegalStateException("No gradients have been computed since the last update");
+        }
+        if(this.optimizer != null) {
+            double scale = 1.0 / ws.gradientSamples();
+            this.optimizer.beginStep();
+            for(int i = 0; i < this.hL.length; i++) {
+                long start = this.telemetry == null ? 0 : System.nanoTime();
+                LayerPhaseEvent event = LayerPhaseEvent.enabled()
+                        ? LayerPhaseEvent.start(i, 0, hL[i].getWeights().rows() - 1, hL[i].size()) : null;
+                this.optimizer.update(i, hL[i].getWeights(), ws.gradient(i + 1), scale);
+                if(event != null) {
+                    event.finish(PhaseEnum.Update);
+                }
+                if(start != 0) {
+                    this.telemetry.record(i, PhaseEnum.Update, System.nanoTime() - start);
+                }
+            }
+        } else {
+            double scale = -this.learnRate / ws.gradientSamples();
+            for(int i = 0; i < this.hL.length; i++) {
+                hL[i].applyUpdate(ws.gradient(i + 1), scale);
+            }
+        }
+        ws.countGradientSamples(0, false);
+    }
 
-        // forward pass
-        for(int i = 0; i < this.hL.length; i++) {
-            RealMatrix z = hL[i].forwardWeightedSum(activations[i]);
-            RealMatrix a = hL[i].forwardActivation(z);
-            weightedSums[i + 1] = z;
-            activations[i + 1] = a;
+    /**
+     * Forward pass into the workspace, followed by the derivative of the error
+     * with respect to the output, which is left in the last delta buffer.
+     * @param input tensor of input row vectors in this network's precision
+     * @param expected tensor of expected value row vectors
+     * @param ws buffers sized for at least {@code input.rows()} inputs
+     * @return average error of the inputs
+     */
+    private double forwardWithError(Tensor input, Tensor expected, Workspace ws) {
+        ws.prepare(input.rows());
+        hL[0].forward(input, ws.weightedSum(1), ws.activation(1), ws.epilogue(1));
+        return forwardWithError(expected, ws);
+    }
+
+    /**
+     * Forward pass of sparse inputs into the workspace, followed by the derivative of the error.
+     * @see #forwardWithError(Tensor, Tensor, Workspace)
+     */
+    private double forwardWithError(SparseTensor input, Tensor expected, Workspace ws) {
+        ws.prepare(input.rows());
+        hL[0].forward(input, ws.weightedSum(1), ws.activation(1));
+        return forwardWithError(expected, ws);
+    }
+
+    /**
+     * Rest of the forward pass once the first layer's output is in the workspace,
+     * followed by the derivative of the error.
+     * @param expected tensor of expected value row vectors
+     * @param ws workspace prepared for the batch, holding the first layer's output
+     * @return average error of the inputs
+     */
+    private double forwardWithError(Tensor expected, Workspace ws) {
+        int sz = hL.length + 1;
+
+        // forward pass, keeping weighted sums only for layers that need them
+        Tensor prevAct = ws.activation(1);
+        for(int i = 1; i < this.hL.length; i++) {
+            hL[i].forward(prevAct, ws.weightedSum(i + 1), ws.activation(i + 1), ws.epilogue(i + 1));
+            prevAct = ws.activation(i + 1);
         }
 
         // calculate error
-        RealMatrix dc_da = errorDerivative(expected, activations[sz - 1]);
-        double totalError = 0;
-        for(int i = 0; i < dc_da.getRowDimension(); i++) {
-            for(int j = 0; j < dc_da.getColumnDimension(); j++) {
-                totalError += dc_da.getEntry(i,j);
+        long start = this.telemetry == null ? 0 : System.nanoTime();
+        Tensor dc_da = ws.delta(sz - 1);
+        double totalError = errorDerivative(expected, prevAct, dc_da);
+        if(this.telemetry != null) {
+            this.telemetry.recordError(System.nanoTime() - start);
+        }
+        return totalError / (dc_da.rows() * dc_da.cols());
+    }
+
+    /**
+     * Trains on a dataset for several epochs of mini-batch gradient descent, printing a report per epoch.
+     * The next batch is prepared on a background thread while the current one trains.
+     * @param dataset training samples
+     * @param epochs number of passes over the dataset
+     * @param batchSize number of samples per gradient step
+     * @return report of each epoch
+     */
+    public List<EpochReport> train(Dataset dataset, int epochs, int batchSize) {
+        return train(dataset, epochs, batchSize, new Random(), System.out::println);
+    }
+
+    /**
+     * Trains on a dataset for several epochs of mini-batch gradient descent.
+     *
+     * Each epoch visits the samples in a new random order. Only an array of sample indices is
+     * shuffled; the samples themselves are gathered batch by batch on a background thread into
+     * buffers that are allocated once, so the dataset is never copied and an epoch does not allocate
+     * per batch. The last batch of an epoch holds the remaining samples and may be smaller.
+     * @param dataset training samples
+     * @param epochs number of passes over the dataset
+     * @param batchSize number of samples per gradient step
+     * @param random source of the sample order
+     * @param listener receives the report of each epoch as soon as it finishes, or null
+     * @return report of each epoch. Training stops early if the thread is interrupted.
+     */
+    public List<EpochReport> train(Dataset dataset, int epochs, int batchSize, Random random,
+                                   Consumer<EpochReport> listener) {
+        checkFits(dataset);
+        try(BatchPrefetcher batches = new BatchPrefetcher(dataset, batchSize, epochs, 2, 1, precision(), random)) {
+            return train(batches, listener);
+        }
+    }
+
+    /**
+     * Trains on batches prepared in the background by a prefetcher, until it runs out of batches.
+     * Each batch is trained on directly from the prefetcher's buffers.
+     * @param batches prefetcher with buffers in this network's precision
+     * @param listener receives the report of each epoch as soon as it finishes, or null
+     * @return report of each finished epoch. Training stops early if the thread is interrupted.
+     */
+    public List<EpochReport> train(BatchPrefetcher batches, Consumer<EpochReport> listener) {
+        checkFits(batches);
+        Workspace ws = createWorkspace(batches.batchSize());
+        return train(batches, listener, batch -> backPropagation(batch.inputs(), batch.expected(), ws));
+    }
+
+    /**
+     * Trains with gradient accumulation: gradients of {@code microBatches} consecutive batches are
+     * summed before one update, giving an effective batch size of {@code microBatches} times the
+     * prefetcher's batch size at the memory cost of a single batch. The last update of an epoch
+     * uses whatever batches remain.
+     * @param batches prefetcher with buffers in this network's precision
+     * @param microBatches number of batches per update
+     * @param listener receives the report of each epoch as soon as it finishes, or null
+     * @return report of each finished epoch. Training stops early if the thread is interrupted.
+     */
+    public List<EpochReport> train(BatchPrefetcher batches, int microBatches, Consumer<EpochReport> listener) {
+        checkFits(batches);
+        if(microBatches < 1) {
+            throw new IllegalArgumentException("Need at least one micro-batch per update but got " + microBatches);
+        }
+        Workspace ws = createWorkspace(batches.batchSize());
+        return train(batches, listener, batch -> {
+            double error = computeGradients(batch.inputs(), batch.expected(), ws, batch.index() % microBatches != 0);
+            if(batch.index() % microBatches == microBatches - 1 || batch.isLastOfEpoch()) {
+                applyUpdate(ws);
             }
+            return error;
+        });
+    }
+
+    /**
+     * Runs a training step on every batch of a prefetcher, reporting each epoch.
+     * @param batches source of batches
+     * @param listener receives the report of each epoch as soon as it finishes, or null
+     * @param step trains on one batch and returns its average error
+     * @return report of each finished epoch. Training stops early if the thread is interrupted.
+     */
+    static List<EpochReport> train(BatchPrefetcher batches, Consumer<EpochReport> listener,
+                                   ToDoubleFunction<Batch> step) {
+        List<EpochReport> reports = new ArrayList<>();
+        long start = System.nanoTime();
+        double loss = 0;
+        int samples = 0;
+        try {
+            Batch batch;
+            while((batch = batches.take()) != null) {
+                loss += step.applyAsDouble(batch) * batch.count();
+                samples += batch.count();
+                if(batch.isLastOfEpoch()) {
+                    long now = System.nanoTime();
+                    EpochReport report = new EpochReport(batch.epoch(), samples, now - start, loss / samples);
+                    reports.add(report);
+                    if(listener != null) {
+                        listener.accept(report);
+                    }
+                    start = now;
+                    loss = 0;
+                    samples = 0;
+                }
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        totalError /= (dc_da.getRowDimension() * dc_da.getColumnDimension());
+        return reports;
+    }
 
-        // backwards pass
-        for(int i = this.hL.length - 1; i >= 0; i--) {
-            dc_da = hL[i].backProp(dc_da, activations[i], weightedSums[i + 1], this.learnRate);
+    /**
+     * Checks a prefetcher produces batches this network can train on.
+     * @param batches source of batches
+     */
+    void checkFits(BatchPrefetcher batches) {
+        checkFits(batches.dataset());
+        if(batches.precision() != precision()) {
+            throw new IllegalArgumentException("Batches in " + batches.precision() + " precision do not match a "
+                    + precision() + " network");
+        }
+    }
+
+    /**
+     * Checks a dataset has the input and output sizes of this network.
+     * @param dataset training samples
+     */
+    void checkFits(Dataset dataset) {
+        int outputs = this.hL[this.hL.length - 1].size();
+        if(dataset.inputSize() != this.inL.size() || dataset.outputSize() != outputs) {
+            throw new IllegalArgumentException("Dataset with " + dataset.inputSize() + " inputs and "
+                    + dataset.outputSize() + " outputs does not fit a network with " + this.inL.size()
+                    + " inputs and " + outputs + " outputs");
         }
+    }
 
-        return totalError;
+    /**
+     * Creates training buffers for this network.
+     * @param maxBatch largest number of inputs that will be passed per call
+     * @return new workspace
+     */
+    public Workspace createWorkspace(int maxBatch) {
+        return new Workspace(this.hL, maxBatch);
     }
 
     /**
-     * Use error function to determine error vector.
-     * @param y expected values
-     * @param z actual values
-     * @return error
+     * Sets the rule turning gradients into weight changes. With an optimizer set,
+     * {@link #backPropagation(Tensor, Tensor, Workspace)} computes the gradients before updating
+     * instead of updating each layer as soon as its gradient is known, and the learning rate given
+     * to the constructor is no longer used.
+     * @param optimizer update rule, or null to go back to plain gradient descent
+     */
+    public void setOptimizer(Optimizer optimizer) {
+        this.optimizer = optimizer;
+    }
+
+    /**
+     * Rule turning gradients into weight changes.
+     * @return optimizer, or null for plain gradient descent
+     */
+    public Optimizer getOptimizer() {
+        return this.optimizer;
+    }
+
+    /**
+     * Starts or stops measuring where training time goes. Attached telemetry times each layer's phases
+     * and the error computation, and counts a step for every call to
+     * {@link #backPropagation(Tensor, Tensor, Workspace)}. Must not be called while training.
+     * @param telemetry receiver of the timings, with one entry per hidden layer, or null to stop measuring
+     */
+    public void setTelemetry(TrainingTelemetry telemetry) {
+        if(telemetry != null && telemetry.layers() != this.hL.length) {
+            throw new IllegalArgumentException("Telemetry is for " + telemetry.layers() + " layers but the network has "
+                    + this.hL.length);
+        }
+        this.telemetry = telemetry;
+        for(int i = 0; i < this.hL.length; i++) {
+            this.hL[i].setTelemetry(telemetry, i);
+        }
+    }
+
+    /**
+     * Telemetry receiving training timings.
+     * @return telemetry, or null when not measuring
+     */
+    public TrainingTelemetry getTelemetry() {
+        return this.telemetry;
+    }
+
+    /**
+     * Precision of the weights, biases and values computed by this network.
+     * @return precision
+     */
+    public PrecisionEnum precision() {
+        return this.hL[0].precision();
+    }
+
+    /**
+     * Hidden layers, backing this network.
+     * @return layers
+     */
+    FullyConnectedLayer[] layers() {
+        return this.hL;
+    }
+
+    /**
+     * Activation function of every layer.
+     * @return activation function
+     */
+    ActivationFunction activationFunction() {
+        return this.af;
+    }
+
+    /**
+     * Error function minimised by training.
+     * @return error function
      */
-    private RealVector errorDerivative(RealVector y, RealVector z) {
-        RealVector r = z.copy();
-        for(int i = 0; i < r.getDimension(); i++) {
-            r.setEntry(i, ef.derivative(y.getEntry(i), z.getEntry(i)));
+    ErrorFunction errorFunction() {
+        return this.ef;
+    }
+
+    /**
+     * Step size of plain gradient descent.
+     * @return learning rate
+     */
+    double learnRate() {
+        return this.learnRate;
+    }
+
+    /**
+     * Number of inputs per sample.
+     * @return input size
+     */
+    int inputSize() {
+        return this.inL.size();
+    }
+
+    /**
+     * Creates a network with copies of this one's weights and no optimizer, so it can be trained or
+     * changed without affecting this one. Must not be called while another thread is changing the weights.
+     * @return independent copy
+     */
+    Network copy() {
+        FullyConnectedLayer[] copies = new FullyConnectedLayer[this.hL.length];
+        InputLayer input = new InputLayer(this.inL.size());
+        Layer prev = input;
+        for(int i = 0; i < this.hL.length; i++) {
+            copies[i] = new FullyConnectedLayer(this.hL[i].size(), prev, this.af, this.hL[i].getWeights().copy());
+            prev = copies[i];
         }
-        return r;
+        return new Network(this.af, this.ef, this.learnRate, input, copies);
     }
 
     /**
-     * Use error function to determine error matrix.
+     * Use error function to determine error tensor.
      * @param y expected values
      * @param z actual values
-     * @return error
+     * @param r destination for the derivative of the error
+     * @return sum of the error
      */
-    private RealMatrix errorDerivative(RealMatrix y, RealMatrix z) {
-        RealMatrix r = z.copy();
-        for(int i = 0; i < r.getRowDimension(); i++) {
-            for(int j = 0; j < r.getColumnDimension(); j++) {
-                r.setEntry(i,j, ef.derivative(y.getEntry(i,j), z.getEntry(i,j)));
+    private double errorDerivative(Tensor y, Tensor z, Tensor r) {
+        Tensor.checkSameShape(y, z);
+        double total = 0;
+        for(int i = 0; i < r.rows(); i++) {
+            for(int j = 0; j < r.cols(); j++) {
+                double yij = y.get(i, j);
+                double zij = z.get(i, j);
+                r.set(i, j, ef.derivative(yij, zij));
+                total += ef.value(yij, zij);
             }
         }
-        return r;
+        return total;
     }
 }
@@ -0,0 +1,136 @@
+package Optimizers;
+
+import Tensor.Tensor;
+
+/**
+ * Adam. Keeps decaying averages of the gradient and of the squared gradient,
+ * {@code m = beta1 * m + (1 - beta1) * g} and {@code v = beta2 * v + (1 - beta2) * g * g},
+ * corrects both for their zero initialisation and steps by
+ * {@code p -= learningRate * m' / (sqrt(v') + epsilon)}.
+ */
+public class Adam implements Optimizer {
+
+    /**
+     * Version of the serialized form.
+     */
+    private static final long serialVersionUID = 2312518082851742183L;
+
+    /**
+     * Step size.
+     */
+    private final double learningRate;
+
+    /**
+     * Decay of the gradient average.
+     */
+    private final double beta1;
+
+    /**
+     * Decay of the squared gradient average.
+     */
+    private final double beta2;
+
+    /**
+     * Term keeping the denominator away from zero.
+     */
+    private final double epsilon;
+
+    /**
+     * Number of steps taken, used to correct the averages for their zero initialisation.
+     */
+    private int t;
+
+    /**
+     * Gradient average and squared gradient average of each parameter.
+     */
+    private final StateBuffers state = new StateBuffers(2);
+
+    /**
+     * Creates the optimizer with the usual betas of 0.9 and 0.999 and epsilon of 1e-8.
+     * @param learningRate step size, usually around 0.001
+     */
+    public Adam(double learningRate) {
+        this(learningRate, 0.9, 0.999, 1e-8);
+    }
+
+    /**
+     * Creates the optimizer.
+     * @param learningRate step size
+     * @param beta1 decay of the gradient average
+     * @param beta2 decay of the squared gradient average
+     * @param epsilon term keeping the denominator away from zero
+     */
+    public Adam(double learningRate, double beta1, double beta2, double epsilon) {
+        this.learningRate = learningRate;
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+    }
+
+    /**
+     * Advances the step count used by the bias correction.
+     */
+    public void beginStep() {
+        this.t++;
+    }
+
+    /**
+     * Updates both averages and the parameters, in one pass.
+     * @see Optimizer#update(int, Tensor, Tensor, double)
+     */
+    public void update(int slot, Tensor params, Tensor gradient, double gradientScale) {
+        int n = StateBuffers.check(params, gradient);
+        int po = params.offset();
+        int go = gradient.offset();
+        int step = Math.max(this.t, 1);
+        // bias corrections folded into constants so the loop is a plain multiply-add chain
+        double c1 = 1 / (1 - Math.pow(this.beta1, step));
+        double c2 = 1 / (1 - Math.pow(this.beta2, step));
+        if(params.isFloat()) {
+            float[] p = params.floatData();
+            float[] g = gradient.floatData();
+            float[][] s = this.state.floats(slot, params);
+            float[] m = s[0];
+            float[] v = s[1];
+            float b1 = (float) this.beta1;
+            float b2 = (float) this.beta2;
+            float lr = (float) (this.learningRate * c1);
+            float vc = (float) c2;
+            float eps = (float) this.epsilon;
+            float gs = (float) gradientScale;
+            for(int i = 0; i < n; i++) {
+                float gi = gs * g[go + i];
+                float mi = b1 * m[i] + (1 - b1) * gi;
+                float vi = b2 * v[i] + (1 - b2) * gi * gi;
+                m[i] = mi;
+                v[i] = vi;
+                p[po + i] -= lr * mi / ((float) Math.sqrt(vi * vc) + eps);
+            }
+        } else {
+            double[] p = params.data();
+            double[] g = gradient.data();
+            double[][] s = this.state.doubles(slot, params);
+            double[] m = s[0];
+            double[] v = s[1];
+            double lr = this.learningRate * c1;
+            for(int i = 0; i < n; i++) {
+                double gi = gradientScale * g[go + i];
+                double mi = this.beta1 * m[i] + (1 - this.beta1) * gi;
+                double vi = this.beta2 * v[i] + (1 - this.beta2) * gi * gi;
+                m[i] = mi;
+                v[i] = vi;
+                p[po + i] -= lr * mi / (Math.sqrt(vi * c2) + this.epsilon);
+            }
+        }
+    }
+
+    /**
+     * Copies the other optimizer's averages and step count.
+     * @see Optimizer#copyStateFrom(Optimizer)
+     */
+    public void copyStateFrom(Optimizer other) {
+        Adam o = StateBuffers.sameClass(this, other);
+        this.state.copyFrom(o.state);
+        this.t = o.t;
+    }
+}
@@ -0,0 +1,80 @@
+package Optimizers;
+
+import Tensor.Tensor;
+
+/**
+ * Gradient descent with classical momentum. A velocity accumulates past gradients,
+ * {@code v = momentum * v + g}, and the parameters move along it, {@code p -= learningRate * v}.
+ */
+public class Momentum implements Optimizer {
+
+    /**
+     * Version of the serialized form.
+     */
+    private static final long serialVersionUID = 3187232073006443480L;
+
+    /**
+     * Step size.
+     */
+    private final double learningRate;
+
+    /**
+     * Fraction of the velocity kept from one step to the next.
+     */
+    private final double momentum;
+
+    /**
+     * Velocity of each parameter.
+     */
+    private final StateBuffers state = new StateBuffers(1);
+
+    /**
+     * Creates the optimizer.
+     * @param learningRate step size
+     * @param momentum fraction of the velocity kept per step, usually 0.9
+     */
+    public Momentum(double learningRate, double momentum) {
+        this.learningRate = learningRate;
+        this.momentum = momentum;
+    }
+
+    /**
+     * Updates the velocity and moves the parameters along it, in one pass.
+     * @see Optimizer#update(int, Tensor, Tensor, double)
+     */
+    public void update(int slot, Tensor params, Tensor gradient, double gradientScale) {
+        int n = StateBuffers.check(params, gradient);
+        int po = params.offset();
+        int go = gradient.offset();
+        if(params.isFloat()) {
+            float[] p = params.floatData();
+            float[] g = gradient.floatData();
+            float[] v = this.state.floats(slot, params)[0];
+            float mu = (float) this.momentum;
+            float lr = (float) this.learningRate;
+            float gs = (float) gradientScale;
+            for(int i = 0; i < n; i++) {
+                float vi = mu * v[i] + gs * g[go + i];
+                v[i] = vi;
+                p[po + i] -= lr * vi;
+            }
+        } else {
+            double[] p = params.data();
+            double[] g = gradient.data();
+            double[] v = this.state.doubles(slot, params)[0];
+            for(int i = 0; i < n; i++) {
+                double vi = this.momentum * v[i] + gradientScale * g[go + i];
+                v[i] = vi;
+                p[po + i] -= this.learningRate * vi;
+            }
+        }
+    }
+
+    /**
+     * Copies the other optimizer's velocities.
+     * @see Optimizer#copyStateFrom(Optimizer)
+     */
+    public void copyStateFrom(Optimizer other) {
+        this.state.copyFrom(StateBuffers.sameClass(this, other).state);
+    }
+}
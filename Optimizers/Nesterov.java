@@ -0,0 +1,83 @@
+package Optimizers;
+
+import Tensor.Tensor;
+
+/**
+ * Gradient descent with Nesterov momentum. The velocity is updated as with classical momentum,
+ * {@code v = momentum * v + g}, but the parameters step from the look-ahead position,
+ * {@code p -= learningRate * (g + momentum * v)}.
+ */
+public class Nesterov implements Optimizer {
+
+    /**
+     * Version of the serialized form.
+     */
+    private static final long serialVersionUID = -6597908657048636531L;
+
+    /**
+     * Step size.
+     */
+    private final double learningRate;
+
+    /**
+     * Fraction of the velocity kept from one step to the next.
+     */
+    private final double momentum;
+
+    /**
+     * Velocity of each parameter.
+     */
+    private final StateBuffers state = new StateBuffers(1);
+
+    /**
+     * Creates the optimizer.
+     * @param learningRate step size
+     * @param momentum fraction of the velocity kept per step, usually 0.9
+     */
+    public Nesterov(double learningRate, double momentum) {
+        this.learningRate = learningRate;
+        this.momentum = momentum;
+    }
+
+    /**
+     * Updates the velocity and takes the look-ahead step, in one pass.
+     * @see Optimizer#update(int, Tensor, Tensor, double)
+     */
+    public void update(int slot, Tensor params, Tensor gradient, double gradientScale) {
+        int n = StateBuffers.check(params, gradient);
+        int po = params.offset();
+        int go = gradient.offset();
+        if(params.isFloat()) {
+            float[] p = params.floatData();
+            float[] g = gradient.floatData();
+            float[] v = this.state.floats(slot, params)[0];
+            float mu = (float) this.momentum;
+            float lr = (float) this.learningRate;
+            float gs = (float) gradientScale;
+            for(int i = 0; i < n; i++) {
+                float gi = gs * g[go + i];
+                float vi = mu * v[i] + gi;
+                v[i] = vi;
+                p[po + i] -= lr * (gi + mu * vi);
+            }
+        } else {
+            double[] p = params.data();
+            double[] g = gradient.data();
+            double[] v = this.state.doubles(slot, params)[0];
+            for(int i = 0; i < n; i++) {
+                double gi = gradientScale * g[go + i];
+                double vi = this.momentum * v[i] + gi;
+                v[i] = vi;
+                p[po + i] -= this.learningRate * (gi + this.momentum * vi);
+            }
+        }
+    }
+
+    /**
+     * Copies the other optimizer's velocities.
+     * @see Optimizer#copyStateFrom(Optimizer)
+     */
+    public void copyStateFrom(Optimizer other) {
+        this.state.copyFrom(StateBuffers.sameClass(this, other).state);
+    }
+}
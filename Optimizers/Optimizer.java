@@ -0,0 +1,42 @@
+package Optimizers;
+
+import Tensor.Tensor;
+
+import java.io.Serializable;
+
+/**
+ * Rule that turns gradients into changes of a network's weights and biases.
+ * Implementations keep any per-parameter state in flat primitive arrays owned by the optimizer
+ * and update the parameters in place, so a step does not allocate once the state exists.
+ * The state is serialised with the optimizer, so a network saved with its optimizer resumes training exactly.
+ * Implementations declare a fixed {@code serialVersionUID} so checkpoints stay readable after recompiling.
+ */
+public interface Optimizer extends Serializable {
+
+    /**
+     * Called once before the parameters of every layer are updated for one training step.
+     * Optimizers that depend on the step count advance it here.
+     */
+    default void beginStep() {
+    }
+
+    /**
+     * Updates one parameter tensor in place.
+     * @param slot index identifying the parameter tensor, such as its layer number, used to find its state
+     * @param params parameters to update. Must be contiguous.
+     * @param gradient SUMMED gradient of the cost with respect to the parameters, with the same shape
+     * @param gradientScale factor turning the summed gradient into the average gradient, usually one over the batch size
+     */
+    void update(int slot, Tensor params, Tensor gradient, double gradientScale);
+
+    /**
+     * Makes this optimizer's state equal to that of another optimizer of the same class and settings,
+     * such as to snapshot it for a checkpoint. Arrays already of the right length are reused, so repeated
+     * copies into the same optimizer do not allocate. Optimizers without state keep this default.
+     * @param other optimizer to copy the state of. Must not be updated during the copy.
+     * @throws IllegalArgumentException if the other optimizer is of a different class
+     */
+    default void copyStateFrom(Optimizer other) {
+        StateBuffers.sameClass(this, other);
+    }
+}
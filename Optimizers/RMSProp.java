@@ -0,0 +1,99 @@
+package Optimizers;
+
+import Tensor.Tensor;
+
+/**
+ * RMSProp. Keeps a decaying average of squared gradients, {@code s = decay * s + (1 - decay) * g * g},
+ * and divides each step by its root, {@code p -= learningRate * g / (sqrt(s) + epsilon)}, so every
+ * parameter gets a step size suited to the scale of its gradient.
+ */
+public class RMSProp implements Optimizer {
+
+    /**
+     * Version of the serialized form.
+     */
+    private static final long serialVersionUID = -4061572126990608989L;
+
+    /**
+     * Step size.
+     */
+    private final double learningRate;
+
+    /**
+     * Fraction of the squared gradient average kept from one step to the next.
+     */
+    private final double decay;
+
+    /**
+     * Term keeping the denominator away from zero.
+     */
+    private final double epsilon;
+
+    /**
+     * Average squared gradient of each parameter.
+     */
+    private final StateBuffers state = new StateBuffers(1);
+
+    /**
+     * Creates the optimizer with the usual decay of 0.9 and epsilon of 1e-8.
+     * @param learningRate step size, usually around 0.001
+     */
+    public RMSProp(double learningRate) {
+        this(learningRate, 0.9, 1e-8);
+    }
+
+    /**
+     * Creates the optimizer.
+     * @param learningRate step size
+     * @param decay fraction of the squared gradient average kept per step
+     * @param epsilon term keeping the denominator away from zero
+     */
+    public RMSProp(double learningRate, double decay, double epsilon) {
+        this.learningRate = learningRate;
+        this.decay = decay;
+        this.epsilon = epsilon;
+    }
+
+    /**
+     * Updates the squared gradient average and the parameters, in one pass.
+     * @see Optimizer#update(int, Tensor, Tensor, double)
+     */
+    public void update(int slot, Tensor params, Tensor gradient, double gradientScale) {
+        int n = StateBuffers.check(params, gradient);
+        int po = params.offset();
+        int go = gradient.offset();
+        if(params.isFloat()) {
+            float[] p = params.floatData();
+            float[] g = gradient.floatData();
+            float[] s = this.state.floats(slot, params)[0];
+            float rho = (float) this.decay;
+            float lr = (float) this.learningRate;
+            float eps = (float) this.epsilon;
+            float gs = (float) gradientScale;
+            for(int i = 0; i < n; i++) {
+                float gi = gs * g[go + i];
+                float si = rho * s[i] + (1 - rho) * gi * gi;
+                s[i] = si;
+                p[po + i] -= lr * gi / ((float) Math.sqrt(si) + eps);
+            }
+        } else {
+            double[] p = params.data();
+            double[] g = gradient.data();
+            double[] s = this.state.doubles(slot, params)[0];
+            for(int i = 0; i < n; i++) {
+                double gi = gradientScale * g[go + i];
+                double si = this.decay * s[i] + (1 - this.decay) * gi * gi;
+                s[i] = si;
+                p[po + i] -= this.learningRate * gi / (Math.sqrt(si) + this.epsilon);
+            }
+        }
+    }
+
+    /**
+     * Copies the other optimizer's mean squared gradients.
+     * @see Optimizer#copyStateFrom(Optimizer)
+     */
+    public void copyStateFrom(Optimizer other) {
+        this.state.copyFrom(StateBuffers.sameClass(this, other).state);
+    }
+}
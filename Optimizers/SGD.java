@@ -0,0 +1,50 @@
+package Optimizers;
+
+import Tensor.Kernels;
+import Tensor.Tensor;
+
+/**
+ * Plain stochastic gradient descent, {@code p -= learningRate * g}.
+ */
+public class SGD implements Optimizer {
+
+    /**
+     * Version of the serialized form.
+     */
+    private static final long serialVersionUID = -7558769594576343762L;
+
+    /**
+     * Step size.
+     */
+    private final double learningRate;
+
+    /**
+     * Creates the optimizer.
+     * @param learningRate step size
+     */
+    public SGD(double learningRate) {
+        this.learningRate = learningRate;
+    }
+
+    /**
+     * Subtracts the scaled gradient from the parameters.
+     * @see Optimizer#update(int, Tensor, Tensor, double)
+     */
+    public void update(int slot, Tensor params, Tensor gradient, double gradientScale) {
+        int n = StateBuffers.check(params, gradient);
+        double step = -this.learningRate * gradientScale;
+        if(params.isFloat()) {
+            Kernels.get().axpy((float) step, gradient.floatData(), gradient.offset(), params.floatData(), params.offset(), n);
+        } else {
+            Kernels.get().axpy(step, gradient.data(), gradient.offset(), params.data(), params.offset(), n);
+        }
+    }
+
+    /**
+     * Step size.
+     * @return learning rate
+     */
+    public double getLearningRate() {
+        return this.learningRate;
+    }
+}
@@ -0,0 +1,186 @@
+package Optimizers;
+
+import Tensor.Tensor;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Per-parameter state of an optimizer, such as velocities or moment estimates.
+ * Each parameter tensor gets a fixed number of zero initialised arrays of its own length and
+ * storage type, created the first time the tensor is updated.
+ */
+class StateBuffers implements Serializable {
+
+    /**
+     * Version of the serialized form.
+     */
+    private static final long serialVersionUID = -6127968744499022097L;
+
+    /**
+     * Number of state arrays per parameter tensor.
+     */
+    private final int perSlot;
+
+    /**
+     * Double precision state, indexed as {@code [slot][array]}.
+     */
+    private double[][][] doubles = new double[0][][];
+
+    /**
+     * Single precision state, indexed as {@code [slot][array]}.
+     */
+    private float[][][] floats = new float[0][][];
+
+    /**
+     * Creates empty state.
+     * @param perSlot number of state arrays per parameter tensor
+     */
+    StateBuffers(int perSlot) {
+        this.perSlot = perSlot;
+    }
+
+    /**
+     * Gets the double precision state of a parameter tensor, creating it on first use.
+     * @param slot parameter tensor index
+     * @param params parameter tensor
+     * @return state arrays of the tensor's length
+     */
+    synchronized double[][] doubles(int slot, Tensor params) {
+        if(slot >= this.doubles.length) {
+            this.doubles = Arrays.copyOf(this.doubles, slot + 1);
+        }
+        if(this.doubles[slot] == null) {
+            this.doubles[slot] = new double[this.perSlot][length(params)];
+        }
+        return this.doubles[slot];
+    }
+
+    /**
+     * Gets the single precision state of a parameter tensor, creating it on first use.
+     * @param slot parameter tensor index
+     * @param params parameter tensor
+     * @return state arrays of the tensor's length
+     */
+    synchronized float[][] floats(int slot, Tensor params) {
+        if(slot >= this.floats.length) {
+            this.floats = Arrays.copyOf(this.floats, slot + 1);
+        }
+        if(this.floats[slot] == null) {
+            this.floats[slot] = new float[this.perSlot][length(params)];
+        }
+        return this.floats[slot];
+    }
+
+    /**
+     * Makes this state equal to another, copying into the existing arrays where their lengths match.
+     * @param other state with the same number of arrays per parameter tensor
+     */
+    synchronized void copyFrom(StateBuffers other) {
+        synchronized(other) {
+            this.doubles = copy(this.doubles, other.doubles);
+            this.floats = copy(this.floats, other.floats);
+        }
+    }
+
+    /**
+     * Copies double precision state into a destination, reusing its arrays where possible.
+     * @return the destination, or a replacement if it had too few slots
+     */
+    private static double[][][] copy(double[][][] dst, double[][][] src) {
+        if(dst.length != src.length) {
+            dst = Arrays.copyOf(dst, src.length);
+        }
+        for(int slot = 0; slot < src.length; slot++) {
+            if(src[slot] == null) {
+                dst[slot] = null;
+                continue;
+            }
+            if(dst[slot] == null || dst[slot][0].length != src[slot][0].length) {
+                dst[slot] = new double[src[slot].length][src[slot][0].length];
+            }
+            for(int a = 0; a < src[slot].length; a++) {
+                System.arraycopy(src[slot][a], 0, dst[slot][a], 0, src[slot][a].length);
+            }
+        }
+        return dst;
+    }
+
+    /**
+     * Copies single precision state into a destination, reusing its arrays where possible.
+     * @return the destination, or a replacement if it had too few slots
+     */
+    private static float[][][] copy(float[][][] dst, float[][][] src) {
+        if(dst.length != src.length) {
+            dst = Arrays.copyOf(dst, src.length);
+        }
+        for(int slot = 0; slot < src.length; slot++) {
+            if(src[slot] == null) {
+                dst[slot] = null;
+                continue;
+            }
+            if(dst[slot] == null || dst[slot][0].length != src[slot][0].length) {
+                dst[slot] = new float[src[slot].length][src[slot][0].length];
+            }
+            for(int a = 0; a < src[slot].length; a++) {
+                System.arraycopy(src[slot][a], 0, dst[slot][a], 0, src[slot][a].length);
+            }
+        }
+        return dst;
+    }
+
+    /**
+     * Writes the state while holding its lock, so it can be serialised while the optimizer is in use
+     * without seeing a slot array being grown.
+     * @param out stream to write to
+     * @throws IOException if writing fails
+     */
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+    }
+
+    /**
+     * Checks two optimizers are of the same class before copying state between them.
+     * @param self optimizer receiving the state
+     * @param other optimizer the state comes from
+     * @return the other optimizer as the receiving optimizer's class
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Optimizer> T sameClass(T self, Optimizer other) {
+        if(other.getClass() != self.getClass()) {
+            throw new IllegalArgumentException("Cannot copy the state of " + other.getClass().getSimpleName()
+                    + " into " + self.getClass().getSimpleName());
+        }
+        return (T) other;
+    }
+
+    /**
+     * Number of parameters in a tensor, checking the optimizer can treat it as one flat range.
+     * @param params parameter tensor
+     * @return rows times columns
+     */
+    static int length(Tensor params) {
+        if(!params.isContiguous()) {
+            throw new IllegalArgumentException("Optimizers need contiguous parameters but got a view with stride "
+                    + params.stride() + " and shape " + params.shape());
+        }
+        return params.rows() * params.cols();
+    }
+
+    /**
+     * Checks a gradient matches its parameters and can be read as one flat range.
+     * @param params parameter tensor
+     * @param gradient gradient tensor
+     * @return number of parameters
+     */
+    static int check(Tensor params, Tensor gradient) {
+        Tensor.checkSameShape(params, gradient);
+        if(params.isFloat() != gradient.isFloat()) {
+            throw new IllegalArgumentException("Parameters and gradient must use the same storage type");
+        }
+        length(gradient);
+        return length(params);
+    }
+}
@@ -0,0 +1,185 @@
+import Data.BatchPrefetcher;
+import Metrics.TrainingStep;
+import Metrics.TrainingTelemetry;
+import Tensor.Tensor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Synchronous data-parallel training of a {@link Network}.
+ *
+ * Each mini-batch is split into contiguous shards, one per worker thread. Every worker runs the
+ * forward and backward pass of its shard against the shared weights, which are only read, and
+ * sums its gradients into its own workspace. The gradients are then added pairwise in a tree,
+ * taking {@code log2(workers)} rounds in which independent pairs run in parallel, and a single
+ * update is applied. The result matches training on the whole batch on one thread, up to
+ * rounding from the order of the sums.
+ *
+ * Telemetry attached to the network counts one step per call to {@link #step(Tensor, Tensor)}. The
+ * phases of every worker are added to it, so they are summed over the workers, while the step's
+ * duration and allocation are measured on the calling thread.
+ */
+public class ParallelTrainer implements AutoCloseable {
+
+    /**
+     * Network being trained.
+     */
+    private final Network network;
+
+    /**
+     * Buffers of each worker, including their gradients.
+     */
+    private final Workspace[] workspaces;
+
+    /**
+     * Worker threads.
+     */
+    private final ExecutorService pool;
+
+    /**
+     * Creates a trainer with its own worker threads.
+     * @param network network to train
+     * @param workers number of worker threads, usually the number of cores
+     * @param maxBatch largest mini-batch that will be passed to {@link #step(Tensor, Tensor)}
+     */
+    public ParallelTrainer(Network network, int workers, int maxBatch) {
+        if(workers < 1) {
+            throw new IllegalArgumentException("Need at least one worker but got " + workers);
+        }
+        this.network = network;
+        this.workspaces = new Workspace[workers];
+        int shard = (maxBatch + workers - 1) / workers;
+        for(int i = 0; i < workers; i++) {
+            this.workspaces[i] = network.createWorkspace(shard);
+        }
+        this.pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "parallel-trainer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Trains on one mini-batch using every worker, then updates the weights once.
+     * @param input tensor of input row vectors
+     * @param expected tensor of expected value row vectors
+     * @return average error of the inputs
+     */
+    public double step(Tensor input, Tensor expected) {
+        int batch = input.rows();
+        int active = Math.min(this.workspaces.length, batch);
+        TrainingTelemetry telemetry = this.network.getTelemetry();
+        TrainingStep step = telemetry == null ? null : telemetry.beginStep();
+
+        // forward and backward passes, one shard per worker
+        List<Callable<Double>> shards = new ArrayList<>(active);
+        for(int w = 0; w < active; w++) {
+            int from = (int) ((long) batch * w / active);
+            int to = (int) ((long) batch * (w + 1) / active);
+            Workspace ws = this.workspaces[w];
+            Tensor in = input.slice(from, to);
+            Tensor exp = expected.slice(from, to);
+            shards.add(() -> {
+                if(telemetry == null) {
+                    return this.network.computeGradients(in, exp, ws, false) * (to - from);
+                }
+                telemetry.beginShard();
+                try {
+                    return this.network.computeGradients(in, exp, ws, false) * (to - from);
+                } finally {
+                    telemetry.endShard(step);
+                }
+            });
+        }
+        double error = 0;
+        for(Future<Double> f : run(shards)) {
+            error += join(f);
+        }
+
+        // tree reduction into the first worker's gradients
+        for(int stride = 1; stride < active; stride *= 2) {
+            List<Callable<Double>> pairs = new ArrayList<>();
+            for(int w = 0; w + stride < active; w += 2 * stride) {
+                Workspace dst = this.workspaces[w];
+                Workspace src = this.workspaces[w + stride];
+                pairs.add(() -> {
+                    dst.addGradients(src);
+                    return 0.0;
+                });
+            }
+            for(Future<Double> f : run(pairs)) {
+                join(f);
+            }
+        }
+
+        this.network.applyUpdate(this.workspaces[0]);
+        if(telemetry != null) {
+            telemetry.endStep(batch);
+        }
+        return error / batch;
+    }
+
+    /**
+     * Trains on batches prepared in the background by a prefetcher, until it runs out of batches.
+     * @param batches prefetcher with buffers in the network's precision
+     * @param listener receives the report of each epoch as soon as it finishes, or null
+     * @return report of each finished epoch
+     */
+    public List<EpochReport> train(BatchPrefetcher batches, Consumer<EpochReport> listener) {
+        this.network.checkFits(batches);
+        int shard = (batches.batchSize() + this.workspaces.length - 1) / this.workspaces.length;
+        if(shard > this.workspaces[0].maxBatch()) {
+            throw new IllegalArgumentException("Batches of " + batches.batchSize() + " are larger than this trainer was created for");
+        }
+        return Network.train(batches, listener, batch -> step(batch.inputs(), batch.expected()));
+    }
+
+    /**
+     * Runs tasks on the workers and waits for all of them.
+     */
+    private List<Future<Double>> run(List<Callable<Double>> tasks) {
+        try {
+            return this.pool.invokeAll(tasks);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during a training step", e);
+        }
+    }
+
+    /**
+     * Gets the result of a finished task, rethrowing its failure.
+     */
+    private static double join(Future<Double> f) {
+        try {
+            return f.get();
+        } catch(ExecutionException e) {
+            throw new IllegalStateException("Training worker failed", e.getCause());
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during a training step", e);
+        }
+    }
+
+    /**
+     * Number of worker threads.
+     * @return workers
+     */
+    public int workers() {
+        return this.workspaces.length;
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    @Override
+    public void close() {
+        this.pool.shutdownNow();
+    }
+}
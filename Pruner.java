@@ -0,0 +1,343 @@
+import Data.BatchPrefetcher;
+import Data.Dataset;
+import Layer.FullyConnectedLayer;
+import Tensor.PrecisionEnum;
+import Tensor.Tensor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Magnitude pruning of a trained {@link Network}: sets the weights smallest in magnitude to zero and
+ * keeps them there while the rest are fine-tuned. Biases are never pruned.
+ *
+ * Pruning is either global, with one magnitude threshold for the weights of every layer, or per layer,
+ * with every layer losing the same fraction of its weights. Pruned weights are remembered, so pruning
+ * again to a higher sparsity only removes more weights and {@link #applyMasks()} can zero them again after
+ * training steps move them. Once pruned, {@link SparseNetwork#of(Network, int)} makes a copy for inference
+ * that skips the pruned weights.
+ */
+public class Pruner {
+
+    /**
+     * Network being pruned.
+     */
+    private final Network network;
+
+    /**
+     * Which weights of each layer are pruned, {@code inputs x size} row by row.
+     */
+    private final boolean[][] pruned;
+
+    /**
+     * Prepares to prune a network, with no weights pruned yet.
+     * @param network trained network, whose weights are changed in place
+     */
+    public Pruner(Network network) {
+        this.network = network;
+        FullyConnectedLayer[] hL = network.layers();
+        this.pruned = new boolean[hL.length][];
+        for(int l = 0; l < hL.length; l++) {
+            this.pruned[l] = new boolean[weightCount(hL[l])];
+        }
+    }
+
+    /**
+     * Number of weights of a layer, not counting biases.
+     */
+    private static int weightCount(FullyConnectedLayer layer) {
+        return (layer.getWeights().rows() - 1) * layer.size();
+    }
+
+    /**
+     * Sets the weights smallest in magnitude to zero until the given fraction of weights is pruned.
+     * Weights pruned before stay pruned, so asking for a lower sparsity than already reached prunes nothing.
+     * @param sparsity fraction of weights to prune, from 0 to 1
+     * @param global whether to rank the weights of all layers together rather than each layer on its own
+     * @return number of weights newly pruned
+     */
+    public int prune(double sparsity, boolean global) {
+        if(!(sparsity >= 0 && sparsity <= 1)) {
+            throw new IllegalArgumentException("Sparsity must be between 0 and 1 but was " + sparsity);
+        }
+        if(global) {
+            return prune(sparsity, 0, this.pruned.length);
+        }
+        int count = 0;
+        for(int l = 0; l < this.pruned.length; l++) {
+            count += prune(sparsity, l, l + 1);
+        }
+        return count;
+    }
+
+    /**
+     * Prunes a range of layers together down to a sparsity.
+     * @param sparsity fraction of the weights of the range to prune
+     * @param from first layer
+     * @param to layer after the last
+     * @return number of weights newly pruned
+     */
+    private int prune(double sparsity, int from, int to) {
+        FullyConnectedLayer[] hL = this.network.layers();
+        int total = 0;
+        for(int l = from; l < to; l++) {
+            total += this.pruned[l].length;
+        }
+        int target = (int) Math.round(sparsity * total);
+        if(target == 0) {
+            return 0;
+        }
+        // pruned weights rank below every other weight, including ones that happen to be zero
+        double[] magnitudes = new double[total];
+        int n = 0;
+        for(int l = from; l < to; l++) {
+            Tensor w = hL[l].getWeights();
+            int size = hL[l].size();
+            for(int k = 0; k < this.pruned[l].length; k++) {
+                magnitudes[n++] = this.pruned[l][k] ? -1 : Math.abs(w.get(k / size, k % size));
+            }
+        }
+        Arrays.sort(magnitudes);
+        double threshold = magnitudes[target - 1];
+        int ties = target - lowerBound(magnitudes, threshold);
+
+        int count = 0;
+        for(int l = from; l < to; l++) {
+            Tensor w = hL[l].getWeights();
+            int size = hL[l].size();
+            for(int k = 0; k < this.pruned[l].length; k++) {
+                if(this.pruned[l][k]) {
+                    continue;
+                }
+                double m = Math.abs(w.get(k / size, k % size));
+                if(m < threshold || (m == threshold && ties-- > 0)) {
+                    this.pruned[l][k] = true;
+                    w.set(k / size, k % size, 0);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Number of values in a sorted array smaller than a key.
+     */
+    private static int lowerBound(double[] sorted, double key) {
+        int lo = 0;
+        int hi = sorted.length;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(sorted[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Sets every pruned weight back to zero, undoing whatever training did to them.
+     * Must not be called while another thread is changing the weights.
+     */
+    public void applyMasks() {
+        FullyConnectedLayer[] hL = this.network.layers();
+        for(int l = 0; l < hL.length; l++) {
+            Tensor w = hL[l].getWeights();
+            boolean[] mask = this.pruned[l];
+            int size = hL[l].size();
+            for(int i = 0; i < w.rows() - 1; i++) {
+                int idx = w.index(i, 0);
+                int m = i * size;
+                if(w.isFloat()) {
+                    float[] data = w.floatData();
+                    for(int j = 0; j < size; j++) {
+                        if(mask[m + j]) {
+                            data[idx + j] = 0;
+                        }
+                    }
+                } else {
+                    double[] data = w.data();
+                    for(int j = 0; j < size; j++) {
+                        if(mask[m + j]) {
+                            data[idx + j] = 0;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Trains the network further with its pruned weights held at zero, to win back accuracy lost by
+     * pruning. The masks are applied after every step. An optimizer with momentum keeps pushing on pruned
+     * weights, but they are zero again before the next batch reads them.
+     * @param data training samples
+     * @param epochs number of passes over the dataset
+     * @param batchSize number of samples per gradient step
+     * @param random source of the sample order
+     * @param listener receives the report of each epoch as soon as it finishes, or null
+     * @return report of each finished epoch
+     */
+    public List<EpochReport> fineTune(Dataset data, int epochs, int batchSize, Random random,
+                                     Consumer<EpochReport> listener) {
+        Workspace ws = this.network.createWorkspace(batchSize);
+        try(BatchPrefetcher batches = new BatchPrefetcher(data, batchSize, epochs, 2, 1,
+                this.network.precision(), random)) {
+            return Network.train(batches, listener, batch -> {
+                double error = this.network.backPropagation(batch.inputs(), batch.expected(), ws);
+                applyMasks();
+                return error;
+            });
+        }
+    }
+
+    /**
+     * Fraction of the network's weights that are pruned, not counting biases.
+     * @return sparsity between 0 and 1
+     */
+    public double sparsity() {
+        long count = 0;
+        long total = 0;
+        for(boolean[] mask : this.pruned) {
+            count += count(mask);
+            total += mask.length;
+        }
+        return (double) count / total;
+    }
+
+    /**
+     * Fraction of a layer's weights that are pruned, not counting biases.
+     * @param layer index of the hidden layer
+     * @return sparsity between 0 and 1
+     */
+    public double sparsity(int layer) {
+        return (double) count(this.pruned[layer]) / this.pruned[layer].length;
+    }
+
+    /**
+     * Number of set entries of a mask.
+     */
+    private static int count(boolean[] mask) {
+        int count = 0;
+        for(boolean b : mask) {
+            count += b ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * Measures what pruning costs in accuracy and gains in prediction time at several sparsities.
+     * Each sparsity starts from its own copy of the trained network, which is pruned, fine-tuned and
+     * copied into a {@link SparseNetwork}. Single-sample prediction time of that sparse network is timed
+     * against an {@link InferenceHandle} over the unpruned weights.
+     * @param trained trained network, left unchanged
+     * @param training samples for fine-tuning
+     * @param test labelled samples with one-hot expected outputs, for accuracy and timing
+     * @param sparsities fractions of weights to prune
+     * @param global whether to prune all layers against one threshold rather than each layer on its own
+     * @param epochs fine-tuning epochs per sparsity, or 0 to skip fine-tuning
+     * @param batchSize samples per fine-tuning step
+     * @param calls timed predictions of each kind per sparsity, after as many warm-up calls
+     * @return report of each sparsity, in the given order
+     */
+    public static List<PruningReport> sweep(Network trained, Dataset training, Dataset test, double[] sparsities,
+                                            boolean global, int epochs, int batchSize, int calls) {
+        int batch = 256;
+        double accuracy = accuracy(test, trained.precision(), batch, (x, y) -> y.copyFrom(trained.forwardPass(x)));
+        InferenceHandle dense = trained.snapshot(1);
+        Tensor in = new Tensor(1, test.inputSize());
+        Tensor expected = new Tensor(1, test.outputSize());
+        double[][] samples = new double[Math.min(test.size(), 1000)][];
+        for(int i = 0; i < samples.length; i++) {
+            test.gather(new int[] {i}, 0, 1, in, expected);
+            samples[i] = in.rowArray(0);
+        }
+
+        List<PruningReport> reports = new ArrayList<>(sparsities.length);
+        for(double s : sparsities) {
+            Network n = trained.copy();
+            Pruner pruner = new Pruner(n);
+            pruner.prune(s, global);
+            double prunedAccuracy = accuracy(test, n.precision(), batch, (x, y) -> y.copyFrom(n.forwardPass(x)));
+            if(epochs > 0) {
+                pruner.fineTune(training, epochs, batchSize, new Random(1), null);
+            }
+            SparseNetwork sparse = SparseNetwork.of(n, batch);
+            double tunedAccuracy = accuracy(test, n.precision(), batch, sparse::predict);
+
+            double[] out = new double[sparse.outputSize()];
+            long denseNanos = 0;
+            long sparseNanos = 0;
+            for(int i = -calls; i < calls; i++) {
+                double[] sample = samples[Math.floorMod(i, samples.length)];
+                long t0 = System.nanoTime();
+                dense.predict(sample, out);
+                long t1 = System.nanoTime();
+                sparse.predict(sample, out);
+                long t2 = System.nanoTime();
+                if(i >= 0) {
+                    denseNanos += t1 - t0;
+                    sparseNanos += t2 - t1;
+                }
+            }
+            reports.add(new PruningReport(pruner.sparsity(), global, accuracy, prunedAccuracy, tunedAccuracy,
+                    (double) denseNanos / calls, (double) sparseNanos / calls, bytes(trained), sparse.bytes()));
+        }
+        return reports;
+    }
+
+    /**
+     * Fraction of a dataset classified correctly.
+     * @param data labelled samples with one-hot expected outputs
+     * @param precision precision of the input buffer
+     * @param batch samples per call of {@code predict}
+     * @param predict writes the outputs for a batch of inputs into its second argument
+     * @return accuracy between 0 and 1
+     */
+    private static double accuracy(Dataset data, PrecisionEnum precision, int batch,
+                                   BiConsumer<Tensor, Tensor> predict) {
+        int samples = data.size();
+        int[] indices = new int[batch];
+        Tensor inputs = new Tensor(batch, data.inputSize(), precision);
+        Tensor expected = new Tensor(batch, data.outputSize(), PrecisionEnum.Double);
+        Tensor outputs = new Tensor(batch, data.outputSize(), PrecisionEnum.Double);
+        int correct = 0;
+        for(int from = 0; from < samples; from += batch) {
+            int count = Math.min(batch, samples - from);
+            for(int i = 0; i < count; i++) {
+                indices[i] = from + i;
+            }
+            data.gather(indices, 0, count, inputs, expected);
+            Tensor y = outputs.slice(0, count);
+            predict.accept(inputs.slice(0, count), y);
+            for(int i = 0; i < count; i++) {
+                int label = 0;
+                int predicted = 0;
+                for(int j = 1; j < y.cols(); j++) {
+                    label = expected.get(i, j) > expected.get(i, label) ? j : label;
+                    predicted = y.get(i, j) > y.get(i, predicted) ? j : predicted;
+                }
+                correct += label == predicted ? 1 : 0;
+            }
+        }
+        return samples == 0 ? 0 : (double) correct / samples;
+    }
+
+    /**
+     * Memory taken by the weights and biases of a network.
+     */
+    private static long bytes(Network network) {
+        long bytes = 0;
+        for(FullyConnectedLayer l : network.layers()) {
+            Tensor w = l.getWeights();
+            bytes += (long) w.rows() * w.cols() * (w.isFloat() ? Float.BYTES : Double.BYTES);
+        }
+        return bytes;
+    }
+}
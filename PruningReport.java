@@ -0,0 +1,173 @@
+/**
+ * Accuracy and prediction time of a network pruned to one sparsity by {@link Pruner#sweep}, next to the
+ * network it was pruned from.
+ */
+public class PruningReport {
+
+    /**
+     * Fraction of weights pruned, not counting biases.
+     */
+    private final double sparsity;
+
+    /**
+     * Whether all layers were pruned against one threshold.
+     */
+    private final boolean global;
+
+    /**
+     * Fraction of test samples the unpruned network classified correctly.
+     */
+    private final double accuracy;
+
+    /**
+     * Fraction classified correctly right after pruning.
+     */
+    private final double prunedAccuracy;
+
+    /**
+     * Fraction classified correctly by the sparse network after fine-tuning.
+     */
+    private final double tunedAccuracy;
+
+    /**
+     * Mean single-sample prediction time of the unpruned network, in nanoseconds.
+     */
+    private final double denseNanos;
+
+    /**
+     * Mean single-sample prediction time of the sparse network, in nanoseconds.
+     */
+    private final double sparseNanos;
+
+    /**
+     * Memory taken by the unpruned weights and biases.
+     */
+    private final long bytes;
+
+    /**
+     * Memory taken by the surviving weights, their indices and the biases.
+     */
+    private final long sparseBytes;
+
+    /**
+     * Records the results of pruning to one sparsity.
+     * @param sparsity fraction of weights pruned
+     * @param global whether all layers were pruned against one threshold
+     * @param accuracy accuracy of the unpruned network
+     * @param prunedAccuracy accuracy right after pruning
+     * @param tunedAccuracy accuracy of the sparse network after fine-tuning
+     * @param denseNanos mean prediction time of the unpruned network
+     * @param sparseNanos mean prediction time of the sparse network
+     * @param bytes memory of the unpruned weights
+     * @param sparseBytes memory of the sparse weights
+     */
+    public PruningReport(double sparsity, boolean global, double accuracy, double prunedAccuracy, double tunedAccuracy,
+                         double denseNanos, double sparseNanos, long bytes, long sparseBytes) {
+        this.sparsity = sparsity;
+        this.global = global;
+        this.accuracy = accuracy;
+        this.prunedAccuracy = prunedAccuracy;
+        this.tunedAccuracy = tunedAccuracy;
+        this.denseNanos = denseNanos;
+        this.sparseNanos = sparseNanos;
+        this.bytes = bytes;
+        this.sparseBytes = sparseBytes;
+    }
+
+    /**
+     * Fraction of weights pruned, not counting biases.
+     * @return sparsity between 0 and 1
+     */
+    public double sparsity() {
+        return this.sparsity;
+    }
+
+    /**
+     * Whether all layers were pruned against one threshold rather than each on its own.
+     * @return true for global pruning
+     */
+    public boolean global() {
+        return this.global;
+    }
+
+    /**
+     * Fraction of test samples the unpruned network classified correctly.
+     * @return accuracy between 0 and 1
+     */
+    public double accuracy() {
+        return this.accuracy;
+    }
+
+    /**
+     * Fraction of test samples classified correctly right after pruning, before fine-tuning.
+     * @return accuracy between 0 and 1
+     */
+    public double prunedAccuracy() {
+        return this.prunedAccuracy;
+    }
+
+    /**
+     * Fraction of test samples the sparse network classified correctly after fine-tuning.
+     * @return accuracy between 0 and 1
+     */
+    public double tunedAccuracy() {
+        return this.tunedAccuracy;
+    }
+
+    /**
+     * Change in accuracy caused by pruning and fine-tuning, negative when the sparse network is worse.
+     * @return tuned accuracy minus original accuracy
+     */
+    public double accuracyDelta() {
+        return this.tunedAccuracy - this.accuracy;
+    }
+
+    /**
+     * Mean single-sample prediction time of the unpruned network.
+     * @return nanoseconds per sample
+     */
+    public double denseNanos() {
+        return this.denseNanos;
+    }
+
+    /**
+     * Mean single-sample prediction time of the sparse network.
+     * @return nanoseconds per sample
+     */
+    public double sparseNanos() {
+        return this.sparseNanos;
+    }
+
+    /**
+     * How many times faster the sparse network predicts.
+     * @return dense time divided by sparse time
+     */
+    public double speedup() {
+        return this.denseNanos / this.sparseNanos;
+    }
+
+    /**
+     * Memory taken by the unpruned weights and biases.
+     * @return bytes
+     */
+    public long bytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Memory taken by the surviving weights, their indices and the biases.
+     * @return bytes
+     */
+    public long sparseBytes() {
+        return this.sparseBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s sparsity %.1f%%: accuracy %.2f%% -> pruned %.2f%% -> tuned %.2f%% (delta %+.2f%%), "
+                        + "latency %.1f us -> %.1f us (%.2fx), weights %d KB -> %d KB",
+                this.global ? "global" : "per layer", this.sparsity * 100, this.accuracy * 100,
+                this.prunedAccuracy * 100, this.tunedAccuracy * 100, accuracyDelta() * 100, this.denseNanos / 1e3,
+                this.sparseNanos / 1e3, speedup(), this.bytes >> 10, this.sparseBytes >> 10);
+    }
+}
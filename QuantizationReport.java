@@ -0,0 +1,148 @@
+/**
+ * Accuracy and size of a {@link QuantizedNetwork} next to the network it was quantized from.
+ */
+public class QuantizationReport {
+
+    /**
+     * Number of samples compared.
+     */
+    private final int samples;
+
+    /**
+     * Fraction of samples the original network classified correctly.
+     */
+    private final double accuracy;
+
+    /**
+     * Fraction of samples the quantized network classified correctly.
+     */
+    private final double quantizedAccuracy;
+
+    /**
+     * Fraction of samples both networks put in the same class.
+     */
+    private final double agreement;
+
+    /**
+     * Mean absolute difference between the outputs of the two networks.
+     */
+    private final double meanError;
+
+    /**
+     * Largest absolute difference between the outputs of the two networks.
+     */
+    private final double maxError;
+
+    /**
+     * Memory taken by the original weights and biases.
+     */
+    private final long bytes;
+
+    /**
+     * Memory taken by the quantized weights, scales and biases.
+     */
+    private final long quantizedBytes;
+
+    /**
+     * Records the results of a comparison.
+     * @param samples number of samples compared
+     * @param accuracy fraction classified correctly by the original network
+     * @param quantizedAccuracy fraction classified correctly by the quantized network
+     * @param agreement fraction put in the same class by both
+     * @param meanError mean absolute output difference
+     * @param maxError largest absolute output difference
+     * @param bytes memory of the original weights
+     * @param quantizedBytes memory of the quantized weights
+     */
+    public QuantizationReport(int samples, double accuracy, double quantizedAccuracy, double agreement,
+                              double meanError, double maxError, long bytes, long quantizedBytes) {
+        this.samples = samples;
+        this.accuracy = accuracy;
+        this.quantizedAccuracy = quantizedAccuracy;
+        this.agreement = agreement;
+        this.meanError = meanError;
+        this.maxError = maxError;
+        this.bytes = bytes;
+        this.quantizedBytes = quantizedBytes;
+    }
+
+    /**
+     * Number of samples compared.
+     * @return samples
+     */
+    public int samples() {
+        return this.samples;
+    }
+
+    /**
+     * Fraction of samples the original network classified correctly.
+     * @return accuracy between 0 and 1
+     */
+    public double accuracy() {
+        return this.accuracy;
+    }
+
+    /**
+     * Fraction of samples the quantized network classified correctly.
+     * @return accuracy between 0 and 1
+     */
+    public double quantizedAccuracy() {
+        return this.quantizedAccuracy;
+    }
+
+    /**
+     * Change in accuracy caused by quantization, negative when the quantized network is worse.
+     * @return quantized accuracy minus original accuracy
+     */
+    public double accuracyDelta() {
+        return this.quantizedAccuracy - this.accuracy;
+    }
+
+    /**
+     * Fraction of samples both networks put in the same class.
+     * @return agreement between 0 and 1
+     */
+    public double agreement() {
+        return this.agreement;
+    }
+
+    /**
+     * Mean absolute difference between the outputs of the two networks.
+     * @return mean error
+     */
+    public double meanError() {
+        return this.meanError;
+    }
+
+    /**
+     * Largest absolute difference between the outputs of the two networks.
+     * @return maximum error
+     */
+    public double maxError() {
+        return this.maxError;
+    }
+
+    /**
+     * Memory taken by the original weights and biases.
+     * @return bytes
+     */
+    public long bytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Memory taken by the quantized weights, scales and biases.
+     * @return bytes
+     */
+    public long quantizedBytes() {
+        return this.quantizedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("int8 over %d samples: accuracy %.2f%% -> %.2f%% (delta %+.2f%%), agreement %.2f%%, "
+                        + "output error mean %.5f max %.5f, weights %d KB -> %d KB",
+                this.samples, this.accuracy * 100, this.quantizedAccuracy * 100, accuracyDelta() * 100,
+                this.agreement * 100, this.meanError, this.maxError, this.bytes >> 10, this.quantizedBytes >> 10);
+    }
+}
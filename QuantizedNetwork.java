@@ -0,0 +1,343 @@
+import Data.Dataset;
+import Layer.FullyConnectedLayer;
+import Layer.QuantizedLayer;
+import Tensor.PrecisionEnum;
+import Tensor.Tensor;
+
+/**
+ * Read-only copy of a {@link Network} with 8-bit weights for serving predictions, made by
+ * {@link #quantize(Network, Dataset, int, int)}. Holds roughly an eighth of the memory of a double
+ * precision network, and each layer reads that much less weight data per prediction.
+ *
+ * Like {@link InferenceHandle}, each calling thread gets its own buffers, so predictions do not allocate
+ * and many threads may predict at once.
+ */
+public class QuantizedNetwork {
+
+    /**
+     * Quantized copies of the network's hidden layers.
+     */
+    private final QuantizedLayer[] layers;
+
+    /**
+     * Largest number of samples per call.
+     */
+    private final int maxBatch;
+
+    /**
+     * Buffers of each calling thread.
+     */
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Creates a network from quantized layers.
+     * @param layers quantized layers, each taking the previous one's outputs
+     * @param maxBatch largest number of samples per call
+     */
+    QuantizedNetwork(QuantizedLayer[] layers, int maxBatch) {
+        if(maxBatch < 1) {
+            throw new IllegalArgumentException("Batch size must be positive but was " + maxBatch);
+        }
+        this.layers = layers;
+        this.maxBatch = maxBatch;
+    }
+
+    /**
+     * Quantizes a trained network. Weight scales come from the weights themselves; the input scale
+     * of each layer comes from the largest input the layer sees on a sample of calibration data.
+     * Must not be called while another thread is changing the weights.
+     * @param network trained network
+     * @param calibration samples representative of what will be predicted
+     * @param samples number of calibration samples to run, from the start of the dataset
+     * @param maxBatch largest number of samples per prediction call
+     * @return quantized copy of the network
+     */
+    public static QuantizedNetwork quantize(Network network, Dataset calibration, int samples, int maxBatch) {
+        FullyConnectedLayer[] hL = network.layers();
+        if(calibration.inputSize() != network.inputSize()) {
+            throw new IllegalArgumentException("Calibration data has " + calibration.inputSize()
+                    + " inputs but the network takes " + network.inputSize());
+        }
+        samples = Math.min(samples, calibration.size());
+        if(samples < 1) {
+            throw new IllegalArgumentException("Need at least one calibration sample");
+        }
+        double[] range = new double[hL.length];
+        int batch = Math.min(samples, 256);
+        int[] indices = new int[batch];
+        Tensor inputs = new Tensor(batch, calibration.inputSize(), network.precision());
+        Tensor expected = new Tensor(batch, calibration.outputSize(), network.precision());
+        for(int from = 0; from < samples; from += batch) {
+            int count = Math.min(batch, samples - from);
+            for(int i = 0; i < count; i++) {
+                indices[i] = from + i;
+            }
+            calibration.gather(indices, 0, count, inputs, expected);
+            Tensor x = inputs.slice(0, count);
+            for(int l = 0; l < hL.length; l++) {
+                range[l] = Math.max(range[l], maxAbs(x));
+                x = hL[l].forward(x);
+            }
+        }
+
+        QuantizedLayer[] layers = new QuantizedLayer[hL.length];
+        for(int l = 0; l < hL.length; l++) {
+            // a layer whose inputs were all zero still needs a usable scale
+            layers[l] = new QuantizedLayer(hL[l], range[l] > 0 ? range[l] : 1);
+        }
+        return new QuantizedNetwork(layers, maxBatch);
+    }
+
+    /**
+     * Largest magnitude in a tensor.
+     */
+    private static double maxAbs(Tensor x) {
+        double max = 0;
+        for(int i = 0; i < x.rows(); i++) {
+            for(int j = 0; j < x.cols(); j++) {
+                max = Math.max(max, Math.abs(x.get(i, j)));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Computes the output of the network for one sample without allocating.
+     * @param input sample of {@link #inputSize()} values
+     * @param output destination for {@link #outputSize()} values
+     */
+    public void predict(double[] input, double[] output) {
+        if(input.length != inputSize() || output.length != outputSize()) {
+            throw new IllegalArgumentException("Expected " + inputSize() + " inputs and " + outputSize()
+                    + " outputs but got " + input.length + " and " + output.length);
+        }
+        Scratch s = this.scratch.get();
+        s.prepare(1);
+        System.arraycopy(input, 0, s.input.data(), 0, input.length);
+        Tensor y = run(s, s.input);
+        System.arraycopy(y.data(), y.offset(), output, 0, output.length);
+    }
+
+    /**
+     * Finds the output node with the largest value for one sample without allocating.
+     * @param input sample of {@link #inputSize()} values
+     * @return index of the largest output
+     */
+    public int classify(double[] input) {
+        Scratch s = this.scratch.get();
+        predict(input, s.output);
+        return argMax(s.output, 0, s.output.length);
+    }
+
+    /**
+     * Computes the outputs of the network for several samples without allocating.
+     * @param input tensor of at most {@link #maxBatch()} input row vectors, of any precision
+     * @param output destination with one row per input and {@link #outputSize()} columns, of any precision
+     */
+    public void predict(Tensor input, Tensor output) {
+        int batch = input.rows();
+        if(input.cols() != inputSize() || output.rows() != batch || output.cols() != outputSize()) {
+            throw new IllegalArgumentException("Expected " + batch + "x" + inputSize() + " inputs and " + batch
+                    + "x" + outputSize() + " outputs but got " + input.shape() + " and " + output.shape());
+        }
+        Scratch s = this.scratch.get();
+        s.prepare(batch);
+        output.copyFrom(run(s, input));
+    }
+
+    /**
+     * Runs the layers over a prepared batch.
+     * @param s buffers of the calling thread, prepared for the batch
+     * @param x inputs
+     * @return activation values of the last layer, held by the buffers
+     */
+    private Tensor run(Scratch s, Tensor x) {
+        for(int i = 0; i < this.layers.length; i++) {
+            this.layers[i].forward(x, s.views[i], s.quantized, s.sums);
+            x = s.views[i];
+        }
+        return x;
+    }
+
+    /**
+     * Measures how far the quantized outputs are from those of the network they came from.
+     * Must not be called while another thread is changing the network's weights.
+     * @param network network this was quantized from
+     * @param data labelled samples with one-hot expected outputs
+     * @param samples number of samples to compare, from the start of the dataset
+     * @return accuracy of both networks and the differences between their outputs
+     */
+    public QuantizationReport compare(Network network, Dataset data, int samples) {
+        samples = Math.min(samples, data.size());
+        int batch = Math.min(this.maxBatch, Math.max(samples, 1));
+        int[] indices = new int[batch];
+        Tensor inputs = new Tensor(batch, inputSize(), network.precision());
+        Tensor expected = new Tensor(batch, outputSize(), PrecisionEnum.Double);
+        Tensor quantized = new Tensor(batch, outputSize(), PrecisionEnum.Double);
+        int exactCorrect = 0;
+        int quantizedCorrect = 0;
+        int agree = 0;
+        double errorSum = 0;
+        double maxError = 0;
+        for(int from = 0; from < samples; from += batch) {
+            int count = Math.min(batch, samples - from);
+            for(int i = 0; i < count; i++) {
+                indices[i] = from + i;
+            }
+            data.gather(indices, 0, count, inputs, expected);
+            Tensor x = inputs.slice(0, count);
+            Tensor q = quantized.slice(0, count);
+            Tensor y = network.forwardPass(x);
+            predict(x, q);
+            for(int i = 0; i < count; i++) {
+                int label = argMax(expected.data(), expected.index(i, 0), outputSize());
+                int exactClass = 0;
+                int quantizedClass = 0;
+                for(int j = 0; j < outputSize(); j++) {
+                    double error = Math.abs(y.get(i, j) - q.get(i, j));
+                    errorSum += error;
+                    maxError = Math.max(maxError, error);
+                    if(y.get(i, j) > y.get(i, exactClass)) {
+                        exactClass = j;
+                    }
+                    if(q.get(i, j) > q.get(i, quantizedClass)) {
+                        quantizedClass = j;
+                    }
+                }
+                exactCorrect += exactClass == label ? 1 : 0;
+                quantizedCorrect += quantizedClass == label ? 1 : 0;
+                agree += exactClass == quantizedClass ? 1 : 0;
+            }
+        }
+        long exactBytes = 0;
+        for(FullyConnectedLayer l : network.layers()) {
+            Tensor w = l.getWeights();
+            exactBytes += (long) w.rows() * w.cols() * (w.isFloat() ? Float.BYTES : Double.BYTES);
+        }
+        return new QuantizationReport(samples, (double) exactCorrect / samples, (double) quantizedCorrect / samples,
+                (double) agree / samples, errorSum / ((double) samples * outputSize()), maxError, exactBytes, bytes());
+    }
+
+    /**
+     * Index of the largest value in a range.
+     */
+    private static int argMax(double[] values, int off, int len) {
+        int best = 0;
+        for(int i = 1; i < len; i++) {
+            if(values[off + i] > values[off + best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Number of inputs per sample.
+     * @return input size
+     */
+    public int inputSize() {
+        return this.layers[0].inputSize();
+    }
+
+    /**
+     * Number of outputs per sample.
+     * @return size of the last layer
+     */
+    public int outputSize() {
+        return this.layers[this.layers.length - 1].size();
+    }
+
+    /**
+     * Largest number of samples per call.
+     * @return maximum batch size
+     */
+    public int maxBatch() {
+        return this.maxBatch;
+    }
+
+    /**
+     * Memory taken by the weights, scales and biases of every layer.
+     * @return bytes
+     */
+    public long bytes() {
+        long bytes = 0;
+        for(QuantizedLayer l : this.layers) {
+            bytes += l.bytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Buffers of one calling thread.
+     */
+    private final class Scratch {
+
+        /**
+         * Activation values per layer, sized for {@link #maxBatch} samples. Kept in double precision,
+         * since each layer quantizes its inputs again anyway.
+         */
+        private final Tensor[] activations = new Tensor[layers.length];
+
+        /**
+         * Views of the first {@link #batch} rows of {@link #activations}.
+         */
+        private final Tensor[] views = new Tensor[layers.length];
+
+        /**
+         * Single sample input of {@link #predict(double[], double[])}.
+         */
+        private final Tensor input = new Tensor(1, inputSize(), PrecisionEnum.Double);
+
+        /**
+         * Quantized inputs of one row, sized for the widest layer input.
+         */
+        private final byte[] quantized;
+
+        /**
+         * Integer sums of one row, sized for the widest layer.
+         */
+        private final int[] sums;
+
+        /**
+         * Output of {@link #classify(double[])}.
+         */
+        private final double[] output = new double[outputSize()];
+
+        /**
+         * Batch size the views were created for.
+         */
+        private int batch = -1;
+
+        /**
+         * Allocates the buffers.
+         */
+        private Scratch() {
+            int widestInput = 0;
+            int widest = 0;
+            for(int i = 0; i < layers.length; i++) {
+                this.activations[i] = new Tensor(maxBatch, layers[i].size(), PrecisionEnum.Double);
+                widestInput = Math.max(widestInput, layers[i].inputSize());
+                widest = Math.max(widest, layers[i].size());
+            }
+            this.quantized = new byte[widestInput];
+            this.sums = new int[widest];
+        }
+
+        /**
+         * Prepares views for a batch. Views are only recreated when the batch size changes.
+         * @param batch number of samples in the next call
+         */
+        private void prepare(int batch) {
+            if(batch < 1 || batch > maxBatch) {
+                throw new IllegalArgumentException("Batch of " + batch + " does not fit a network sized for " + maxBatch);
+            }
+            if(batch == this.batch) {
+                return;
+            }
+            for(int i = 0; i < layers.length; i++) {
+                this.views[i] = this.activations[i].slice(0, batch);
+            }
+            this.batch = batch;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+import Layer.FullyConnectedLayer;
+import Layer.SparseLayer;
+import Tensor.PrecisionEnum;
+import Tensor.Tensor;
+
+/**
+ * Read-only copy of a pruned {@link Network} that stores and multiplies only the weights that survived
+ * pruning, made by {@link #of(Network, int)}. Its outputs match the network's to rounding, and each
+ * prediction does work in proportion to the surviving weights instead of all of them.
+ *
+ * Like {@link InferenceHandle}, each calling thread gets its own buffers, so predictions do not allocate
+ * and many threads may predict at once.
+ */
+public class SparseNetwork {
+
+    /**
+     * Sparse copies of the network's hidden layers.
+     */
+    private final SparseLayer[] layers;
+
+    /**
+     * Largest number of samples per call.
+     */
+    private final int maxBatch;
+
+    /**
+     * Buffers of each calling thread.
+     */
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Creates a network from sparse layers.
+     * @param layers sparse layers, each taking the previous one's outputs
+     * @param maxBatch largest number of samples per call
+     */
+    SparseNetwork(SparseLayer[] layers, int maxBatch) {
+        if(maxBatch < 1) {
+            throw new IllegalArgumentException("Batch size must be positive but was " + maxBatch);
+        }
+        this.layers = layers;
+        this.maxBatch = maxBatch;
+    }
+
+    /**
+     * Copies the nonzero weights of a network, typically one pruned by a {@link Pruner}.
+     * Must not be called while another thread is changing the weights.
+     * @param network trained network
+     * @param maxBatch largest number of samples per prediction call
+     * @return sparse copy of the network
+     */
+    public static SparseNetwork of(Network network, int maxBatch) {
+        FullyConnectedLayer[] hL = network.layers();
+        SparseLayer[] layers = new SparseLayer[hL.length];
+        for(int l = 0; l < hL.length; l++) {
+            layers[l] = new SparseLayer(hL[l]);
+        }
+        return new SparseNetwork(layers, maxBatch);
+    }
+
+    /**
+     * Computes the output of the network for one sample without allocating.
+     * @param input sample of {@link #inputSize()} values
+     * @param output destination for {@link #outputSize()} values
+     */
+    public void predict(double[] input, double[] output) {
+        if(input.length != inputSize() || output.length != outputSize()) {
+            throw new IllegalArgumentException("Expected " + inputSize() + " inputs and " + outputSize()
+                    + " outputs but got " + input.length + " and " + output.length);
+        }
+        Scratch s = this.scratch.get();
+        s.prepare(1);
+        System.arraycopy(input, 0, s.input.data(), 0, input.length);
+        Tensor y = run(s, s.input);
+        System.arraycopy(y.data(), y.offset(), output, 0, output.length);
+    }
+
+    /**
+     * Finds the output node with the largest value for one sample without allocating.
+     * @param input sample of {@link #inputSize()} values
+     * @return index of the largest output
+     */
+    public int classify(double[] input) {
+        Scratch s = this.scratch.get();
+        predict(input, s.output);
+        int best = 0;
+        for(int i = 1; i < s.output.length; i++) {
+            if(s.output[i] > s.output[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Computes the outputs of the network for several samples without allocating.
+     * @param input tensor of at most {@link #maxBatch()} input row vectors, of any precision
+     * @param output destination with one row per input and {@link #outputSize()} columns, of any precision
+     */
+    public void predict(Tensor input, Tensor output) {
+        int batch = input.rows();
+        if(input.cols() != inputSize() || output.rows() != batch || output.cols() != outputSize()) {
+            throw new IllegalArgumentException("Expected " + batch + "x" + inputSize() + " inputs and " + batch
+                    + "x" + outputSize() + " outputs but got " + input.shape() + " and " + output.shape());
+        }
+        Scratch s = this.scratch.get();
+        s.prepare(batch);
+        output.copyFrom(run(s, input));
+    }
+
+    /**
+     * Runs the layers over a prepared batch.
+     * @param s buffers of the calling thread, prepared for the batch
+     * @param x inputs
+     * @return activation values of the last layer, held by the buffers
+     */
+    private Tensor run(Scratch s, Tensor x) {
+        for(int i = 0; i < this.layers.length; i++) {
+            this.layers[i].forward(x, s.views[i], s.sums);
+            x = s.views[i];
+        }
+        return x;
+    }
+
+    /**
+     * Number of inputs per sample.
+     * @return input size
+     */
+    public int inputSize() {
+        return this.layers[0].inputSize();
+    }
+
+    /**
+     * Number of outputs per sample.
+     * @return size of the last layer
+     */
+    public int outputSize() {
+        return this.layers[this.layers.length - 1].size();
+    }
+
+    /**
+     * Largest number of samples per call.
+     * @return maximum batch size
+     */
+    public int maxBatch() {
+        return this.maxBatch;
+    }
+
+    /**
+     * Fraction of weights kept over all layers, not counting biases.
+     * @return nonzero weights divided by all weights
+     */
+    public double density() {
+        long kept = 0;
+        long total = 0;
+        for(SparseLayer l : this.layers) {
+            kept += l.nonZeros();
+            total += (long) l.inputSize() * l.size();
+        }
+        return (double) kept / total;
+    }
+
+    /**
+     * Memory taken by the weights, indices and biases of every layer.
+     * @return bytes
+     */
+    public long bytes() {
+        long bytes = 0;
+        for(SparseLayer l : this.layers) {
+            bytes += l.bytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Buffers of one calling thread.
+     */
+    private final class Scratch {
+
+        /**
+         * Activation values per layer, sized for {@link #maxBatch} samples.
+         */
+        private final Tensor[] activations = new Tensor[layers.length];
+
+        /**
+         * Views of the first {@link #batch} rows of {@link #activations}.
+         */
+        private final Tensor[] views = new Tensor[layers.length];
+
+        /**
+         * Single sample input of {@link #predict(double[], double[])}.
+         */
+        private final Tensor input = new Tensor(1, inputSize(), PrecisionEnum.Double);
+
+        /**
+         * Weighted sums of one row, sized for the widest layer.
+         */
+        private final double[] sums;
+
+        /**
+         * Output of {@link #classify(double[])}.
+         */
+        private final double[] output = new double[outputSize()];
+
+        /**
+         * Batch size the views were created for.
+         */
+        private int batch = -1;
+
+        /**
+         * Allocates the buffers.
+         */
+        private Scratch() {
+            int widest = 0;
+            for(int i = 0; i < layers.length; i++) {
+                this.activations[i] = new Tensor(maxBatch, layers[i].size(), PrecisionEnum.Double);
+                widest = Math.max(widest, layers[i].size());
+            }
+            this.sums = new double[widest];
+        }
+
+        /**
+         * Prepares views for a batch. Views are only recreated when the batch size changes.
+         * @param batch number of samples in the next call
+         */
+        private void prepare(int batch) {
+            if(batch < 1 || batch > maxBatch) {
+                throw new IllegalArgumentException("Batch of " + batch + " does not fit a network sized for " + maxBatch);
+            }
+            if(batch == this.batch) {
+                return;
+            }
+            for(int i = 0; i < layers.length; i++) {
+                this.views[i] = this.activations[i].slice(0, batch);
+            }
+            this.batch = batch;
+        }
+    }
+}
@@ -0,0 +1,773 @@
+package Tensor;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * General matrix multiplication, {@code C = alpha * op(A) * op(B) + beta * C}, where
+ * {@code op(X)} is either {@code X} or its transpose. Transposed operands are read in
+ * place and never materialized.
+ *
+ * The product is computed in cache sized blocks. When {@code B} is read row by row, each row of C
+ * is built from vectorised {@link Kernels#axpy} calls over rows of {@code B}, a block of {@code B}
+ * at a time so the block stays in cache across the rows of C. Otherwise panels of {@code op(A)} and
+ * {@code op(B)} are packed into contiguous buffers so that a register blocked micro-kernel can stream
+ * through them. Large products are partitioned into blocks of {@code C} that run in parallel on the
+ * common {@link ForkJoinPool}.
+ *
+ * All three operands must share a storage type. Float tensors use single precision panels;
+ * the accumulators of the micro-kernel are {@code float} when C is {@link PrecisionEnum#Float}
+ * and {@code double} when it is {@link PrecisionEnum#Mixed}.
+ *
+ * Products with fewer than {@link #SMALL_M} rows and an untransposed B skip the zero entries of
+ * {@code op(A)}, which pays off for single mostly-zero inputs such as MNIST images. There an infinite
+ * or NaN entry of B facing a zero of A does not make C NaN; every other path propagates it.
+ */
+public class Gemm {
+
+    /**
+     * Rows of C computed by one call of the micro-kernel.
+     */
+    private static final int MR = 4;
+
+    /**
+     * Columns of C computed by one call of the micro-kernel.
+     */
+    private static final int NR = 4;
+
+    /**
+     * Rows of op(A) packed at once. Sized so the packed panel stays in L2 cache.
+     */
+    private static final int MC = 64;
+
+    /**
+     * Shared dimension packed at once.
+     */
+    private static final int KC = 256;
+
+    /**
+     * Columns of op(B) packed at once. Sized so the packed panel stays in L3 cache.
+     */
+    private static final int NC = 512;
+
+    /**
+     * Products with fewer multiply-adds than this run on the calling thread.
+     */
+    private static final long PARALLEL_THRESHOLD = 1L << 18;
+
+    /**
+     * Smallest number of rows or columns a parallel block is split into.
+     */
+    private static final int GRAIN = 16;
+
+    /**
+     * Products with fewer rows than this skip packing and use a direct row-by-row kernel.
+     */
+    private static final int SMALL_M = MR;
+
+    /**
+     * Products with a transposed B of at most this many entries compute each entry of C as one
+     * vectorised dot product instead of packing. Larger ones no longer fit in cache and are packed.
+     */
+    private static final long DOT_KERNEL_MAX_B = 1L << 18;
+
+    /**
+     * Per-thread packing buffers, reused between calls.
+     */
+    private static final ThreadLocal<double[][]> PACK = ThreadLocal.withInitial(
+            () -> new double[][] {new double[MC * KC], new double[KC * NC]});
+
+    /**
+     * Per-thread packing buffers for single precision operands, reused between calls.
+     */
+    private static final ThreadLocal<float[][]> FLOAT_PACK = ThreadLocal.withInitial(
+            () -> new float[][] {new float[MC * KC], new float[KC * NC]});
+
+    /**
+     * Per-thread row of double accumulators for mixed precision products with few rows.
+     */
+    private static final ThreadLocal<double[][]> MIXED_ROW = ThreadLocal.withInitial(() -> new double[1][0]);
+
+    private Gemm() {
+    }
+
+    /**
+     * Work applied to a finished block of C while it is still in cache, such as
+     * adding a bias and applying an activation function.
+     * Blocks do not overlap and may be processed concurrently.
+     */
+    public interface Epilogue {
+        /**
+         * Processes a finished block of C.
+         * @param c output tensor
+         * @param r0 first row of the block, inclusive
+         * @param r1 last row of the block, exclusive
+         * @param c0 first column of the block, inclusive
+         * @param c1 last column of the block, exclusive
+         */
+        void apply(Tensor c, int r0, int r1, int c0, int c1);
+    }
+
+    /**
+     * Computes {@code C = alpha * op(A) * op(B) + beta * C}.
+     * @param a left operand
+     * @param transA whether to use the transpose of {@code a}
+     * @param b right operand
+     * @param transB whether to use the transpose of {@code b}
+     * @param alpha scale applied to the product
+     * @param beta scale applied to the existing contents of {@code c}. When zero, {@code c} is overwritten.
+     * @param c output with shape rows(op(A)) x cols(op(B))
+     */
+    public static void multiply(Tensor a, boolean transA, Tensor b, boolean transB,
+                                double alpha, double beta, Tensor c) {
+        multiply(a, transA, b, transB, alpha, beta, c, null);
+    }
+
+    /**
+     * Computes {@code C = alpha * op(A) * op(B) + beta * C}, then runs an epilogue on each
+     * finished block of C.
+     * @param a left operand
+     * @param transA whether to use the transpose of {@code a}
+     * @param b right operand
+     * @param transB whether to use the transpose of {@code b}
+     * @param alpha scale applied to the product
+     * @param beta scale applied to the existing contents of {@code c}. When zero, {@code c} is overwritten.
+     * @param c output with shape rows(op(A)) x cols(op(B))
+     * @param epilogue work applied to each finished block of C, or null
+     */
+    public static void multiply(Tensor a, boolean transA, Tensor b, boolean transB,
+                                double alpha, double beta, Tensor c, Epilogue epilogue) {
+        int m = transA ? a.cols() : a.rows();
+        int k = transA ? a.rows() : a.cols();
+        int kb = transB ? b.cols() : b.rows();
+        int n = transB ? b.rows() : b.cols();
+        if(k != kb || c.rows() != m || c.cols() != n) {
+            throw new IllegalArgumentException("Cannot multiply " + a.shape() + (transA ? "^T" : "")
+                    + " by " + b.shape() + (transB ? "^T" : "") + " into " + c.shape());
+        }
+        if(a.isFloat() != c.isFloat() || b.isFloat() != c.isFloat()) {
+            throw new IllegalArgumentException("Cannot multiply " + a.precision() + " by " + b.precision()
+                    + " into " + c.precision() + ", convert the operands with Tensor.to first");
+        }
+        if(m == 0 || n == 0) {
+            return;
+        }
+
+        if((long) m * n * k < PARALLEL_THRESHOLD || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            // small enough for this thread, skip creating tasks
+            leaf(a, transA, b, transB, alpha, beta, c, epilogue, 0, m, 0, n, k);
+        } else {
+            ForkJoinPool.commonPool().invoke(new Block(a, transA, b, transB, alpha, beta, c, epilogue, 0, m, 0, n, k));
+        }
+    }
+
+    /**
+     * A rectangular block of C. Blocks split in half along their longer
+     * dimension until the work in each falls below the parallel threshold.
+     */
+    private static class Block extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Tensor a;
+        private final boolean transA;
+        private final Tensor b;
+        private final boolean transB;
+        private final double alpha;
+        private final double beta;
+        private final Tensor c;
+        private final Epilogue epilogue;
+        private final int r0;
+        private final int r1;
+        private final int c0;
+        private final int c1;
+        private final int k;
+
+        Block(Tensor a, boolean transA, Tensor b, boolean transB, double alpha, double beta, Tensor c,
+              Epilogue epilogue, int r0, int r1, int c0, int c1, int k) {
+            this.a = a;
+            this.transA = transA;
+            this.b = b;
+            this.transB = transB;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.c = c;
+            this.epilogue = epilogue;
+            this.r0 = r0;
+            this.r1 = r1;
+            this.c0 = c0;
+            this.c1 = c1;
+            this.k = k;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = r1 - r0;
+            int cols = c1 - c0;
+            long work = (long) rows * cols * k;
+            boolean splitRows = rows >= 2 * GRAIN;
+            boolean splitCols = cols >= 2 * GRAIN;
+            if(work >= PARALLEL_THRESHOLD && (splitRows || splitCols)) {
+                // split the longer side, keeping both halves aligned to the micro-kernel
+                if(splitRows && (!splitCols || rows >= cols)) {
+                    int mid = r0 + align(rows / 2);
+                    invokeAll(split(r0, mid, c0, c1), split(mid, r1, c0, c1));
+                } else {
+                    int mid = c0 + align(cols / 2);
+                    invokeAll(split(r0, r1, c0, mid), split(r0, r1, mid, c1));
+                }
+                return;
+            }
+            leaf(a, transA, b, transB, alpha, beta, c, epilogue, r0, r1, c0, c1, k);
+        }
+
+        private Block split(int r0, int r1, int c0, int c1) {
+            return new Block(a, transA, b, transB, alpha, beta, c, epilogue, r0, r1, c0, c1, k);
+        }
+
+        private static int align(int x) {
+            return Math.max(GRAIN, (x / GRAIN) * GRAIN);
+        }
+    }
+
+    /**
+     * Computes one block of C on the calling thread.
+     */
+    private static void leaf(Tensor a, boolean transA, Tensor b, boolean transB, double alpha, double beta,
+                             Tensor c, Epilogue epilogue, int r0, int r1, int c0, int c1, int k) {
+        scale(c, r0, r1, c0, c1, beta);
+        // the scalar micro-kernel only beats the vectorised row kernels when accumulating floats in
+        // double, or when a transposed B is too large to stay in cache
+        boolean small = r1 - r0 < SMALL_M || (transB && (long) k * (c1 - c0) <= DOT_KERNEL_MAX_B);
+        if(c.isFloat()) {
+            boolean mixed = c.precision() == PrecisionEnum.Mixed;
+            if(r1 - r0 < SMALL_M || (small && !mixed)) {
+                smallKernelFloat(a, transA, b, transB, alpha, c, r0, r1, c0, c1, k);
+            } else if(!transB && !mixed) {
+                rowKernelFloat(a, transA, b, alpha, c, r0, r1, c0, c1, k);
+            } else {
+                blockedKernelFloat(a, transA, b, transB, alpha, c, r0, r1, c0, c1, k);
+            }
+        } else if(small) {
+            smallKernel(a, transA, b, transB, alpha, c, r0, r1, c0, c1, k);
+        } else if(!transB) {
+            rowKernel(a, transA, b, alpha, c, r0, r1, c0, c1, k);
+        } else {
+            blockedKernel(a, transA, b, transB, alpha, c, r0, r1, c0, c1, k);
+        }
+        if(epilogue != null) {
+            epilogue.apply(c, r0, r1, c0, c1);
+        }
+    }
+
+    /**
+     * Applies {@code beta} to a block of C.
+     */
+    private static void scale(Tensor c, int r0, int r1, int c0, int c1, double beta) {
+        if(beta == 1) {
+            return;
+        }
+        if(c.isFloat()) {
+            float[] cd = c.floatData();
+            for(int i = r0; i < r1; i++) {
+                int row = c.index(i, 0);
+                for(int j = c0; j < c1; j++) {
+                    cd[row + j] = beta == 0 ? 0 : (float) (beta * cd[row + j]);
+                }
+            }
+            return;
+        }
+        double[] cd = c.data();
+        for(int i = r0; i < r1; i++) {
+            int row = c.index(i, 0);
+            for(int j = c0; j < c1; j++) {
+                cd[row + j] = beta == 0 ? 0 : beta * cd[row + j];
+            }
+        }
+    }
+
+    /**
+     * Unpacked kernel for products with very few rows, such as a single input vector.
+     * Works along contiguous rows of B, or contiguous rows of both operands when B is transposed.
+     */
+    private static void smallKernel(Tensor a, boolean transA, Tensor b, boolean transB, double alpha,
+                                    Tensor c, int r0, int r1, int c0, int c1, int k) {
+        Kernels kernels = Kernels.get();
+        double[] ad = a.data();
+        double[] bd = b.data();
+        double[] cd = c.data();
+        for(int i = r0; i < r1; i++) {
+            int cRow = c.index(i, 0);
+            if(transB && !transA) {
+                int aRow = a.index(i, 0);
+                for(int j = c0; j < c1; j++) {
+                    cd[cRow + j] += alpha * kernels.dot(ad, aRow, bd, b.index(j, 0), k);
+                }
+            } else if(transB) {
+                for(int j = c0; j < c1; j++) {
+                    int bRow = b.index(j, 0);
+                    double sum = 0;
+                    for(int p = 0; p < k; p++) {
+                        sum += ad[a.index(p, i)] * bd[bRow + p];
+                    }
+                    cd[cRow + j] += alpha * sum;
+                }
+            } else {
+                for(int p = 0; p < k; p++) {
+                    double aip = alpha * elementA(a, ad, transA, i, p);
+                    if(aip == 0) {
+                        continue;
+                    }
+                    kernels.axpy(aip, bd, b.index(p, c0), cd, cRow + c0, c1 - c0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Unpacked kernel for a block of C with B read row by row. Each row of C is accumulated with
+     * vectorised axpy calls over rows of B, working through B in blocks of {@code KC x NC} so a block
+     * is reused from cache by every row of C before moving on to the next.
+     */
+    private static void rowKernel(Tensor a, boolean transA, Tensor b, double alpha,
+                                  Tensor c, int r0, int r1, int c0, int c1, int k) {
+        Kernels kernels = Kernels.get();
+        double[] ad = a.data();
+        double[] bd = b.data();
+        double[] cd = c.data();
+        for(int jc = c0; jc < c1; jc += NC) {
+            int nc = Math.min(NC, c1 - jc);
+            for(int pc = 0; pc < k; pc += KC) {
+                int pEnd = Math.min(pc + KC, k);
+                for(int i = r0; i < r1; i++) {
+                    int cRow = c.index(i, jc);
+                    for(int p = pc; p < pEnd; p++) {
+                        double aip = alpha * elementA(a, ad, transA, i, p);
+                        kernels.axpy(aip, bd, b.index(p, jc), cd, cRow, nc);
+                    }
+                }
+            }
+        }
+    }
+
+    private static double elementA(Tensor a, double[] ad, boolean transA, int i, int p) {
+        return transA ? ad[a.index(p, i)] : ad[a.index(i, p)];
+    }
+
+    /**
+     * Packed and register blocked kernel for a block of C.
+     */
+    private static void blockedKernel(Tensor a, boolean transA, Tensor b, boolean transB, double alpha,
+                                      Tensor c, int r0, int r1, int c0, int c1, int k) {
+        double[][] buffers = PACK.get();
+        double[] packA = buffers[0];
+        double[] packB = buffers[1];
+
+        for(int jc = c0; jc < c1; jc += NC) {
+            int nc = Math.min(NC, c1 - jc);
+            for(int pc = 0; pc < k; pc += KC) {
+                int kc = Math.min(KC, k - pc);
+                packB(b, transB, pc, kc, jc, nc, packB);
+                for(int ic = r0; ic < r1; ic += MC) {
+                    int mc = Math.min(MC, r1 - ic);
+                    packA(a, transA, ic, mc, pc, kc, packA);
+                    for(int jr = 0; jr < nc; jr += NR) {
+                        int nr = Math.min(NR, nc - jr);
+                        for(int ir = 0; ir < mc; ir += MR) {
+                            int mr = Math.min(MR, mc - ir);
+                            microKernel(kc, alpha, packA, ir * kc, packB, jr * kc, c, ic + ir, mr, jc + jr, nr);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Packs an mc x kc block of op(A) into micro-panels of MR rows, each stored column by column.
+     * Rows beyond the edge of the matrix are padded with zeros.
+     */
+    private static void packA(Tensor a, boolean transA, int i0, int mc, int p0, int kc, double[] dst) {
+        double[] ad = a.data();
+        int stride = a.stride();
+        int off = a.offset();
+        int idx = 0;
+        for(int ir = 0; ir < mc; ir += MR) {
+            int mr = Math.min(MR, mc - ir);
+            for(int p = 0; p < kc; p++) {
+                for(int r = 0; r < MR; r++) {
+                    if(r < mr) {
+                        int i = i0 + ir + r;
+                        int col = p0 + p;
+                        dst[idx++] = transA ? ad[off + col * stride + i] : ad[off + i * stride + col];
+                    } else {
+                        dst[idx++] = 0;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Packs a kc x nc block of op(B) into micro-panels of NR columns, each stored row by row.
+     * Columns beyond the edge of the matrix are padded with zeros.
+     */
+    private static void packB(Tensor b, boolean transB, int p0, int kc, int j0, int nc, double[] dst) {
+        double[] bd = b.data();
+        int stride = b.stride();
+        int off = b.offset();
+        int idx = 0;
+        for(int jr = 0; jr < nc; jr += NR) {
+            int nr = Math.min(NR, nc - jr);
+            for(int p = 0; p < kc; p++) {
+                int row = p0 + p;
+                for(int r = 0; r < NR; r++) {
+                    if(r < nr) {
+                        int j = j0 + jr + r;
+                        dst[idx++] = transB ? bd[off + j * stride + row] : bd[off + row * stride + j];
+                    } else {
+                        dst[idx++] = 0;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes an MR x NR tile of C from packed panels, holding the tile in registers.
+     */
+    private static void microKernel(int kc, double alpha, double[] pa, int ai, double[] pb, int bi,
+                                    Tensor c, int i, int mr, int j, int nr) {
+        double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+
+        int aEnd = ai + kc * MR;
+        for(; ai < aEnd; ai += MR, bi += NR) {
+            double a0 = pa[ai], a1 = pa[ai + 1], a2 = pa[ai + 2], a3 = pa[ai + 3];
+            double b0 = pb[bi], b1 = pb[bi + 1], b2 = pb[bi + 2], b3 = pb[bi + 3];
+            c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+            c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+            c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+            c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+        }
+
+        double[] cd = c.data();
+        if(mr == MR && nr == NR) {
+            int row = c.index(i, j);
+            int stride = c.stride();
+            cd[row] += alpha * c00; cd[row + 1] += alpha * c01; cd[row + 2] += alpha * c02; cd[row + 3] += alpha * c03;
+            row += stride;
+            cd[row] += alpha * c10; cd[row + 1] += alpha * c11; cd[row + 2] += alpha * c12; cd[row + 3] += alpha * c13;
+            row += stride;
+            cd[row] += alpha * c20; cd[row + 1] += alpha * c21; cd[row + 2] += alpha * c22; cd[row + 3] += alpha * c23;
+            row += stride;
+            cd[row] += alpha * c30; cd[row + 1] += alpha * c31; cd[row + 2] += alpha * c32; cd[row + 3] += alpha * c33;
+        } else {
+            // partial tile at the edge of C
+            int stride = c.stride();
+            int row = c.index(i, j);
+            storeRow(cd, row, nr, alpha, c00, c01, c02, c03);
+            if(mr > 1) {
+                storeRow(cd, row + stride, nr, alpha, c10, c11, c12, c13);
+            }
+            if(mr > 2) {
+                storeRow(cd, row + 2 * stride, nr, alpha, c20, c21, c22, c23);
+            }
+            if(mr > 3) {
+                storeRow(cd, row + 3 * stride, nr, alpha, c30, c31, c32, c33);
+            }
+        }
+    }
+
+    /**
+     * Adds the first {@code nr} values of one row of a micro-kernel tile to C.
+     */
+    private static void storeRow(double[] cd, int row, int nr, double alpha,
+                                 double v0, double v1, double v2, double v3) {
+        cd[row] += alpha * v0;
+        if(nr > 1) {
+            cd[row + 1] += alpha * v1;
+        }
+        if(nr > 2) {
+            cd[row + 2] += alpha * v2;
+        }
+        if(nr > 3) {
+            cd[row + 3] += alpha * v3;
+        }
+    }
+
+    /**
+     * Single precision version of {@link #smallKernel}. Mixed precision products accumulate
+     * each row of C in doubles before rounding it back to floats.
+     */
+    private static void smallKernelFloat(Tensor a, boolean transA, Tensor b, boolean transB, double alpha,
+                                         Tensor c, int r0, int r1, int c0, int c1, int k) {
+        Kernels kernels = Kernels.get();
+        boolean mixed = c.precision() == PrecisionEnum.Mixed;
+        float[] ad = a.floatData();
+        float[] bd = b.floatData();
+        float[] cd = c.floatData();
+        double[] acc = mixed ? mixedRow(c1 - c0) : null;
+        for(int i = r0; i < r1; i++) {
+            int cRow = c.index(i, 0);
+            if(transB && !transA) {
+                int aRow = a.index(i, 0);
+                for(int j = c0; j < c1; j++) {
+                    int bRow = b.index(j, 0);
+                    double dot = mixed ? dotMixed(ad, aRow, bd, bRow, k) : kernels.dot(ad, aRow, bd, bRow, k);
+                    cd[cRow + j] += (float) (alpha * dot);
+                }
+            } else if(transB) {
+                for(int j = c0; j < c1; j++) {
+                    int bRow = b.index(j, 0);
+                    double sum = 0;
+                    for(int p = 0; p < k; p++) {
+                        sum += ad[a.index(p, i)] * bd[bRow + p];
+                    }
+                    cd[cRow + j] += (float) (alpha * sum);
+                }
+            } else if(mixed) {
+                int n = c1 - c0;
+                for(int j = 0; j < n; j++) {
+                    acc[j] = cd[cRow + c0 + j];
+                }
+                for(int p = 0; p < k; p++) {
+                    double aip = alpha * (transA ? ad[a.index(p, i)] : ad[a.index(i, p)]);
+                    if(aip == 0) {
+                        continue;
+                    }
+                    int bRow = b.index(p, c0);
+                    for(int j = 0; j < n; j++) {
+                        acc[j] += aip * bd[bRow + j];
+                    }
+                }
+                for(int j = 0; j < n; j++) {
+                    cd[cRow + c0 + j] = (float) acc[j];
+                }
+            } else {
+                for(int p = 0; p < k; p++) {
+                    float aip = (float) (alpha * (transA ? ad[a.index(p, i)] : ad[a.index(i, p)]));
+                    if(aip == 0) {
+                        continue;
+                    }
+                    kernels.axpy(aip, bd, b.index(p, c0), cd, cRow + c0, c1 - c0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Single precision version of {@link #rowKernel}.
+     */
+    private static void rowKernelFloat(Tensor a, boolean transA, Tensor b, double alpha,
+                                       Tensor c, int r0, int r1, int c0, int c1, int k) {
+        Kernels kernels = Kernels.get();
+        float[] ad = a.floatData();
+        float[] bd = b.floatData();
+        float[] cd = c.floatData();
+        for(int jc = c0; jc < c1; jc += NC) {
+            int nc = Math.min(NC, c1 - jc);
+            for(int pc = 0; pc < k; pc += KC) {
+                int pEnd = Math.min(pc + KC, k);
+                for(int i = r0; i < r1; i++) {
+                    int cRow = c.index(i, jc);
+                    for(int p = pc; p < pEnd; p++) {
+                        float aip = (float) (alpha * (transA ? ad[a.index(p, i)] : ad[a.index(i, p)]));
+                        kernels.axpy(aip, bd, b.index(p, jc), cd, cRow, nc);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Dot product of two float ranges accumulated in double.
+     */
+    private static double dotMixed(float[] a, int aOff, float[] b, int bOff, int len) {
+        double sum = 0;
+        for(int i = 0; i < len; i++) {
+            sum += (double) a[aOff + i] * b[bOff + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Gets this thread's row of double accumulators, growing it if needed.
+     */
+    private static double[] mixedRow(int length) {
+        double[][] holder = MIXED_ROW.get();
+        if(holder[0].length < length) {
+            holder[0] = new double[length];
+        }
+        return holder[0];
+    }
+
+    /**
+     * Single precision version of {@link #blockedKernel}.
+     */
+    private static void blockedKernelFloat(Tensor a, boolean transA, Tensor b, boolean transB, double alpha,
+                                           Tensor c, int r0, int r1, int c0, int c1, int k) {
+        float[][] buffers = FLOAT_PACK.get();
+        float[] packA = buffers[0];
+        float[] packB = buffers[1];
+        boolean mixed = c.precision() == PrecisionEnum.Mixed;
+
+        for(int jc = c0; jc < c1; jc += NC) {
+            int nc = Math.min(NC, c1 - jc);
+            for(int pc = 0; pc < k; pc += KC) {
+                int kc = Math.min(KC, k - pc);
+                packB(b, transB, pc, kc, jc, nc, packB);
+                for(int ic = r0; ic < r1; ic += MC) {
+                    int mc = Math.min(MC, r1 - ic);
+                    packA(a, transA, ic, mc, pc, kc, packA);
+                    for(int jr = 0; jr < nc; jr += NR) {
+                        int nr = Math.min(NR, nc - jr);
+                        for(int ir = 0; ir < mc; ir += MR) {
+                            int mr = Math.min(MR, mc - ir);
+                            if(mixed) {
+                                microKernelMixed(kc, alpha, packA, ir * kc, packB, jr * kc, c, ic + ir, mr, jc + jr, nr);
+                            } else {
+                                microKernelFloat(kc, alpha, packA, ir * kc, packB, jr * kc, c, ic + ir, mr, jc + jr, nr);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Single precision version of {@link #packA(Tensor, boolean, int, int, int, int, double[])}.
+     */
+    private static void packA(Tensor a, boolean transA, int i0, int mc, int p0, int kc, float[] dst) {
+        float[] ad = a.floatData();
+        int stride = a.stride();
+        int off = a.offset();
+        int idx = 0;
+        for(int ir = 0; ir < mc; ir += MR) {
+            int mr = Math.min(MR, mc - ir);
+            for(int p = 0; p < kc; p++) {
+                for(int r = 0; r < MR; r++) {
+                    if(r < mr) {
+                        int i = i0 + ir + r;
+                        int col = p0 + p;
+                        dst[idx++] = transA ? ad[off + col * stride + i] : ad[off + i * stride + col];
+                    } else {
+                        dst[idx++] = 0;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Single precision version of {@link #packB(Tensor, boolean, int, int, int, int, double[])}.
+     */
+    private static void packB(Tensor b, boolean transB, int p0, int kc, int j0, int nc, float[] dst) {
+        float[] bd = b.floatData();
+        int stride = b.stride();
+        int off = b.offset();
+        int idx = 0;
+        for(int jr = 0; jr < nc; jr += NR) {
+            int nr = Math.min(NR, nc - jr);
+            for(int p = 0; p < kc; p++) {
+                int row = p0 + p;
+                for(int r = 0; r < NR; r++) {
+                    if(r < nr) {
+                        int j = j0 + jr + r;
+                        dst[idx++] = transB ? bd[off + j * stride + row] : bd[off + row * stride + j];
+                    } else {
+                        dst[idx++] = 0;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes an MR x NR tile of C from packed single precision panels with float accumulators.
+     */
+    private static void microKernelFloat(int kc, double alpha, float[] pa, int ai, float[] pb, int bi,
+                                         Tensor c, int i, int mr, int j, int nr) {
+        float c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        float c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        float c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        float c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+
+        int aEnd = ai + kc * MR;
+        for(; ai < aEnd; ai += MR, bi += NR) {
+            float a0 = pa[ai], a1 = pa[ai + 1], a2 = pa[ai + 2], a3 = pa[ai + 3];
+            float b0 = pb[bi], b1 = pb[bi + 1], b2 = pb[bi + 2], b3 = pb[bi + 3];
+            c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+            c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+            c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+            c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+        }
+        storeTile(c, i, mr, j, nr, alpha, c00, c01, c02, c03, c10, c11, c12, c13,
+                c20, c21, c22, c23, c30, c31, c32, c33);
+    }
+
+    /**
+     * Computes an MR x NR tile of C from packed single precision panels with double accumulators.
+     */
+    private static void microKernelMixed(int kc, double alpha, float[] pa, int ai, float[] pb, int bi,
+                                         Tensor c, int i, int mr, int j, int nr) {
+        double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+
+        int aEnd = ai + kc * MR;
+        for(; ai < aEnd; ai += MR, bi += NR) {
+            double a0 = pa[ai], a1 = pa[ai + 1], a2 = pa[ai + 2], a3 = pa[ai + 3];
+            double b0 = pb[bi], b1 = pb[bi + 1], b2 = pb[bi + 2], b3 = pb[bi + 3];
+            c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+            c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+            c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+            c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+        }
+        storeTile(c, i, mr, j, nr, alpha, c00, c01, c02, c03, c10, c11, c12, c13,
+                c20, c21, c22, c23, c30, c31, c32, c33);
+    }
+
+    /**
+     * Adds the first {@code mr} rows and {@code nr} columns of a micro-kernel tile to a float C.
+     */
+    private static void storeTile(Tensor c, int i, int mr, int j, int nr, double alpha,
+                                  double c00, double c01, double c02, double c03,
+                                  double c10, double c11, double c12, double c13,
+                                  double c20, double c21, double c22, double c23,
+                                  double c30, double c31, double c32, double c33) {
+        float[] cd = c.floatData();
+        int stride = c.stride();
+        int row = c.index(i, j);
+        storeRow(cd, row, nr, alpha, c00, c01, c02, c03);
+        if(mr > 1) {
+            storeRow(cd, row + stride, nr, alpha, c10, c11, c12, c13);
+        }
+        if(mr > 2) {
+            storeRow(cd, row + 2 * stride, nr, alpha, c20, c21, c22, c23);
+        }
+        if(mr > 3) {
+            storeRow(cd, row + 3 * stride, nr, alpha, c30, c31, c32, c33);
+        }
+    }
+
+    /**
+     * Adds the first {@code nr} values of one row of a micro-kernel tile to a float C.
+     */
+    private static void storeRow(float[] cd, int row, int nr, double alpha,
+                                 double v0, double v1, double v2, double v3) {
+        cd[row] += (float) (alpha * v0);
+        if(nr > 1) {
+            cd[row + 1] += (float) (alpha * v1);
+        }
+        if(nr > 2) {
+            cd[row + 2] += (float) (alpha * v2);
+        }
+        if(nr > 3) {
+            cd[row + 3] += (float) (alpha * v3);
+        }
+    }
+}
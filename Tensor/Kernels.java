@@ -0,0 +1,251 @@
+package Tensor;
+
+/**
+ * Element-wise and reduction loops over ranges of primitive arrays.
+ *
+ * Two implementations exist. {@link ScalarKernels} is plain Java and always available.
+ * {@link SimdKernels} uses the incubating Vector API and is selected at startup when the
+ * {@code jdk.incubator.vector} module is present (run with {@code --add-modules jdk.incubator.vector}).
+ * Setting the system property {@code kernels.simd=false} forces the scalar implementation.
+ * The choice is logged at startup, with the reason when the SIMD implementation could not be loaded.
+ */
+public abstract class Kernels {
+
+    /**
+     * Implementation chosen at class initialization.
+     */
+    private static final Kernels INSTANCE = select();
+
+    /**
+     * Gets the kernels selected for this JVM.
+     * @return kernels
+     */
+    public static Kernels get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Picks the SIMD implementation when it is enabled and can be loaded, otherwise the scalar one.
+     * @return kernels
+     */
+    private static Kernels select() {
+        System.Logger log = System.getLogger(Kernels.class.getName());
+        Kernels kernels;
+        if(!Boolean.parseBoolean(System.getProperty("kernels.simd", "true"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            kernels = new ScalarKernels();
+        } else {
+            try {
+                kernels = (Kernels) Class.forName("Tensor.SimdKernels").getDeclaredConstructor().newInstance();
+            } catch(ReflectiveOperationException | LinkageError e) {
+                log.log(System.Logger.Level.WARNING, "SIMD kernels failed to load, falling back to scalar", e);
+                kernels = new ScalarKernels();
+            }
+        }
+        log.log(System.Logger.Level.INFO, "Using {0} kernels", kernels);
+        return kernels;
+    }
+
+    /**
+     * Dot product of two ranges.
+     * @param a first array
+     * @param aOff start of first range
+     * @param b second array
+     * @param bOff start of second range
+     * @param len number of elements
+     * @return sum of products
+     */
+    public abstract double dot(double[] a, int aOff, double[] b, int bOff, int len);
+
+    /**
+     * Scaled addition, {@code y += alpha * x}.
+     * @param alpha scale applied to {@code x}
+     * @param x source array
+     * @param xOff start of source range
+     * @param y destination array
+     * @param yOff start of destination range
+     * @param len number of elements
+     */
+    public abstract void axpy(double alpha, double[] x, int xOff, double[] y, int yOff, int len);
+
+    /**
+     * Element-by-element product, {@code out = a * b}.
+     * @param a first array
+     * @param aOff start of first range
+     * @param b second array
+     * @param bOff start of second range
+     * @param out destination array. May be the same range as either input.
+     * @param outOff start of destination range
+     * @param len number of elements
+     */
+    public abstract void multiply(double[] a, int aOff, double[] b, int bOff, double[] out, int outOff, int len);
+
+    /**
+     * Logistic sigmoid, {@code out = 1 / (1 + exp(-x))}.
+     * @param x source array
+     * @param xOff start of source range
+     * @param out destination array. May be the same range as the source.
+     * @param outOff start of destination range
+     * @param len number of elements
+     */
+    public abstract void sigmoid(double[] x, int xOff, double[] out, int outOff, int len);
+
+    /**
+     * Derivative of the sigmoid with respect to its input.
+     * @see #sigmoid(double[], int, double[], int, int)
+     */
+    public abstract void sigmoidDerivative(double[] x, int xOff, double[] out, int outOff, int len);
+
+    /**
+     * Derivative of the sigmoid computed from its output, {@code out = a * (1 - a)}.
+     * @param a sigmoid values
+     * @param aOff start of source range
+     * @param out destination array. May be the same range as the source.
+     * @param outOff start of destination range
+     * @param len number of elements
+     */
+    public abstract void sigmoidOutputDerivative(double[] a, int aOff, double[] out, int outOff, int len);
+
+    /**
+     * Hyperbolic tangent.
+     * @see #sigmoid(double[], int, double[], int, int)
+     */
+    public abstract void tanh(double[] x, int xOff, double[] out, int outOff, int len);
+
+    /**
+     * Derivative of the hyperbolic tangent with respect to its input.
+     * @see #sigmoid(double[], int, double[], int, int)
+     */
+    public abstract void tanhDerivative(double[] x, int xOff, double[] out, int outOff, int len);
+
+    /**
+     * Derivative of the hyperbolic tangent computed from its output, {@code out = 1 - a * a}.
+     * @see #sigmoidOutputDerivative(double[], int, double[], int, int)
+     */
+    public abstract void tanhOutputDerivative(double[] a, int aOff, double[] out, int outOff, int len);
+
+    /**
+     * Rectified linear unit, {@code out = max(0, x)}.
+     * @see #sigmoid(double[], int, double[], int, int)
+     */
+    public abstract void relu(double[] x, int xOff, double[] out, int outOff, int len);
+
+    /**
+     * Derivative of the rectified linear unit with respect to its input.
+     * @see #sigmoid(double[], int, double[], int, int)
+     */
+    public abstract void reluDerivative(double[] x, int xOff, double[] out, int outOff, int len);
+
+    /**
+     * Leaky rectified linear unit, {@code out = x < 0 ? coefficient * x : x}.
+     * @param coefficient term applied to negative inputs
+     * @see #sigmoid(double[], int, double[], int, int)
+     */
+    public abstract void leakyRelu(double coefficient, double[] x, int xOff, double[] out, int outOff, int len);
+
+    /**
+     * Derivative of the leaky rectified linear unit with respect to its input.
+     * @param coefficient term applied to negative inputs
+     * @see #sigmoid(double[], int, double[], int, int)
+     */
+    public abstract void leakyReluDerivative(double coefficient, double[] x, int xOff, double[] out, int outOff, int len);
+
+    /**
+     * Sine.
+     * @see #sigmoid(double[], int, double[], int, int)
+     */
+    public abstract void sin(double[] x, int xOff, double[] out, int outOff, int len);
+
+    /**
+     * Cosine, the derivative of the sine.
+     * @see #sigmoid(double[], int, double[], int, int)
+     */
+    public abstract void cos(double[] x, int xOff, double[] out, int outOff, int len);
+
+    /**
+     * Single precision version of {@link #dot(double[], int, double[], int, int)}.
+     */
+    public abstract float dot(float[] a, int aOff, float[] b, int bOff, int len);
+
+    /**
+     * Single precision version of {@link #axpy(double, double[], int, double[], int, int)}.
+     */
+    public abstract void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int len);
+
+    /**
+     * Single precision version of {@link #multiply(double[], int, double[], int, double[], int, int)}.
+     */
+    public abstract void multiply(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int len);
+
+    /**
+     * Single precision version of {@link #sigmoid(double[], int, double[], int, int)}.
+     */
+    public abstract void sigmoid(float[] x, int xOff, float[] out, int outOff, int len);
+
+    /**
+     * Single precision version of {@link #sigmoidDerivative(double[], int, double[], int, int)}.
+     */
+    public abstract void sigmoidDerivative(float[] x, int xOff, float[] out, int outOff, int len);
+
+    /**
+     * Single precision version of {@link #sigmoidOutputDerivative(double[], int, double[], int, int)}.
+     */
+    public abstract void sigmoidOutputDerivative(float[] x, int xOff, float[] out, int outOff, int len);
+
+    /**
+     * Single precision version of {@link #tanh(double[], int, double[], int, int)}.
+     */
+    public abstract void tanh(float[] x, int xOff, float[] out, int outOff, int len);
+
+    /**
+     * Single precision version of {@link #tanhDerivative(double[], int, double[], int, int)}.
+     */
+    public abstract void tanhDerivative(float[] x, int xOff, float[] out, int outOff, int len);
+
+    /**
+     * Single precision version of {@link #tanhOutputDerivative(double[], int, double[], int, int)}.
+     */
+    public abstract void tanhOutputDerivative(float[] x, int xOff, float[] out, int outOff, int len);
+
+    /**
+     * Single precision version of {@link #relu(double[], int, double[], int, int)}.
+     */
+    public abstract void relu(float[] x, int xOff, float[] out, int outOff, int len);
+
+    /**
+     * Single precision version of {@link #reluDerivative(double[], int, double[], int, int)}.
+     */
+    public abstract void reluDerivative(float[] x, int xOff, float[] out, int outOff, int len);
+
+    /**
+     * Single precision version of {@link #leakyRelu(double, double[], int, double[], int, int)}.
+     */
+    public abstract void leakyRelu(float coefficient, float[] x, int xOff, float[] out, int outOff, int len);
+
+    /**
+     * Single precision version of {@link #leakyReluDerivative(double, double[], int, double[], int, int)}.
+     */
+    public abstract void leakyReluDerivative(float coefficient, float[] x, int xOff, float[] out, int outOff, int len);
+
+    /**
+     * Single precision version of {@link #sin(double[], int, double[], int, int)}.
+     */
+    public abstract void sin(float[] x, int xOff, float[] out, int outOff, int len);
+
+    /**
+     * Single precision version of {@link #cos(double[], int, double[], int, int)}.
+     */
+    public abstract void cos(float[] x, int xOff, float[] out, int outOff, int len);
+
+    /**
+     * Integer scaled addition of bytes into ints, {@code y += alpha * x}, for 8-bit weights summed
+     * in 32 bits. The caller keeps the sums small enough not to overflow.
+     * @param alpha scale applied to {@code x}
+     * @param x source array
+     * @param xOff start of source range
+     * @param y destination array
+     * @param yOff start of destination range
+     * @param len number of elements
+     */
+    public abstract void axpy(int alpha, byte[] x, int xOff, int[] y, int yOff, int len);
+}
@@ -0,0 +1,26 @@
+package Tensor;
+
+public enum PrecisionEnum {
+    /**
+     * Stores values as {@code double}.
+     */
+    Double
+
+    /**
+     * Stores values as {@code float} and accumulates matrix products in {@code float}.
+     */
+    ,Float
+
+    /**
+     * Stores values as {@code float} but accumulates matrix products in {@code double}.
+     */
+    ,Mixed;
+
+    /**
+     * Whether tensors of this precision store their values as {@code float}.
+     * @return true for {@link #Float} and {@link #Mixed}
+     */
+    public boolean isFloat() {
+        return this != Double;
+    }
+}
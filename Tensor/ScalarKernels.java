@@ -0,0 +1,243 @@
+package Tensor;
+
+/**
+ * Plain Java kernels. Used when the Vector API is unavailable or disabled.
+ */
+public class ScalarKernels extends Kernels {
+
+    @Override
+    public double dot(double[] a, int aOff, double[] b, int bOff, int len) {
+        double sum = 0;
+        for(int i = 0; i < len; i++) {
+            sum += a[aOff + i] * b[bOff + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOff, double[] y, int yOff, int len) {
+        for(int i = 0; i < len; i++) {
+            y[yOff + i] += alpha * x[xOff + i];
+        }
+    }
+
+    @Override
+    public void multiply(double[] a, int aOff, double[] b, int bOff, double[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            out[outOff + i] = a[aOff + i] * b[bOff + i];
+        }
+    }
+
+    @Override
+    public void sigmoid(double[] x, int xOff, double[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            out[outOff + i] = 1 / (1 + Math.exp(-x[xOff + i]));
+        }
+    }
+
+    @Override
+    public void sigmoidDerivative(double[] x, int xOff, double[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            double fx = 1 / (1 + Math.exp(-x[xOff + i]));
+            out[outOff + i] = fx * (1 - fx);
+        }
+    }
+
+    @Override
+    public void sigmoidOutputDerivative(double[] a, int aOff, double[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            double fx = a[aOff + i];
+            out[outOff + i] = fx * (1 - fx);
+        }
+    }
+
+    @Override
+    public void tanh(double[] x, int xOff, double[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            out[outOff + i] = Math.tanh(x[xOff + i]);
+        }
+    }
+
+    @Override
+    public void tanhDerivative(double[] x, int xOff, double[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            double fx = Math.tanh(x[xOff + i]);
+            out[outOff + i] = 1 - (fx * fx);
+        }
+    }
+
+    @Override
+    public void tanhOutputDerivative(double[] a, int aOff, double[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            double fx = a[aOff + i];
+            out[outOff + i] = 1 - (fx * fx);
+        }
+    }
+
+    @Override
+    public void relu(double[] x, int xOff, double[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            out[outOff + i] = Math.max(0, x[xOff + i]);
+        }
+    }
+
+    @Override
+    public void reluDerivative(double[] x, int xOff, double[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            out[outOff + i] = x[xOff + i] < 0 ? 0 : 1;
+        }
+    }
+
+    @Override
+    public void leakyRelu(double coefficient, double[] x, int xOff, double[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            double v = x[xOff + i];
+            out[outOff + i] = v < 0 ? coefficient * v : v;
+        }
+    }
+
+    @Override
+    public void leakyReluDerivative(double coefficient, double[] x, int xOff, double[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            out[outOff + i] = x[xOff + i] < 0 ? coefficient : 1;
+        }
+    }
+
+    @Override
+    public void sin(double[] x, int xOff, double[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            out[outOff + i] = Math.sin(x[xOff + i]);
+        }
+    }
+
+    @Override
+    public void cos(double[] x, int xOff, double[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            out[outOff + i] = Math.cos(x[xOff + i]);
+        }
+    }
+
+    @Override
+    public float dot(float[] a, int aOff, float[] b, int bOff, int len) {
+        float sum = 0;
+        for(int i = 0; i < len; i++) {
+            sum += a[aOff + i] * b[bOff + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int len) {
+        for(int i = 0; i < len; i++) {
+            y[yOff + i] += alpha * x[xOff + i];
+        }
+    }
+
+    @Override
+    public void multiply(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            out[outOff + i] = a[aOff + i] * b[bOff + i];
+        }
+    }
+
+    @Override
+    public void sigmoid(float[] x, int xOff, float[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            out[outOff + i] = 1 / (1 + (float) Math.exp(-x[xOff + i]));
+        }
+    }
+
+    @Override
+    public void sigmoidDerivative(float[] x, int xOff, float[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            float fx = 1 / (1 + (float) Math.exp(-x[xOff + i]));
+            out[outOff + i] = fx * (1 - fx);
+        }
+    }
+
+    @Override
+    public void sigmoidOutputDerivative(float[] a, int aOff, float[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            float fx = a[aOff + i];
+            out[outOff + i] = fx * (1 - fx);
+        }
+    }
+
+    @Override
+    public void tanh(float[] x, int xOff, float[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            out[outOff + i] = (float) Math.tanh(x[xOff + i]);
+        }
+    }
+
+    @Override
+    public void tanhDerivative(float[] x, int xOff, float[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            float fx = (float) Math.tanh(x[xOff + i]);
+            out[outOff + i] = 1 - (fx * fx);
+        }
+    }
+
+    @Override
+    public void tanhOutputDerivative(float[] a, int aOff, float[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            float fx = a[aOff + i];
+            out[outOff + i] = 1 - (fx * fx);
+        }
+    }
+
+    @Override
+    public void relu(float[] x, int xOff, float[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            out[outOff + i] = Math.max(0, x[xOff + i]);
+        }
+    }
+
+    @Override
+    public void reluDerivative(float[] x, int xOff, float[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            out[outOff + i] = x[xOff + i] < 0 ? 0 : 1;
+        }
+    }
+
+    @Override
+    public void leakyRelu(float coefficient, float[] x, int xOff, float[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            float v = x[xOff + i];
+            out[outOff + i] = v < 0 ? coefficient * v : v;
+        }
+    }
+
+    @Override
+    public void leakyReluDerivative(float coefficient, float[] x, int xOff, float[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            out[outOff + i] = x[xOff + i] < 0 ? coefficient : 1;
+        }
+    }
+
+    @Override
+    public void sin(float[] x, int xOff, float[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            out[outOff + i] = (float) Math.sin(x[xOff + i]);
+        }
+    }
+
+    @Override
+    public void cos(float[] x, int xOff, float[] out, int outOff, int len) {
+        for(int i = 0; i < len; i++) {
+            out[outOff + i] = (float) Math.cos(x[xOff + i]);
+        }
+    }
+
+    @Override
+    public void axpy(int alpha, byte[] x, int xOff, int[] y, int yOff, int len) {
+        for(int i = 0; i < len; i++) {
+            y[yOff + i] += alpha * x[xOff + i];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,395 @@
+package Tensor;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels written with the incubating Vector API, using the widest vector shape the CPU supports.
+ * Each loop processes whole vectors and finishes the remaining tail with scalar code.
+ *
+ * Only loaded reflectively by {@link Kernels}, so the rest of the code runs without the
+ * {@code jdk.incubator.vector} module.
+ */
+public class SimdKernels extends Kernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED;
+
+    /**
+     * Bytes filling a quarter of a vector, which widen to one full vector of ints, but at least 64 bits,
+     * the narrowest shape there is. On 128-bit hardware they widen to two vectors of ints.
+     */
+    private static final VectorSpecies<Byte> BYTE_SPECIES = VectorSpecies.of(byte.class,
+            VectorShape.forBitSize(Math.max(64, INT_SPECIES.vectorBitSize() / 4)));
+
+    /**
+     * Number of int vectors one vector of {@link #BYTE_SPECIES} widens to.
+     */
+    private static final int BYTE_PARTS = BYTE_SPECIES.length() / INT_SPECIES.length();
+
+    /**
+     * Scalar kernels used for the tail of each range.
+     */
+    private final ScalarKernels tail = new ScalarKernels();
+
+    @Override
+    public double dot(double[] a, int aOff, double[] b, int bOff, int len) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, aOff + i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOff + i);
+            acc = va.fma(vb, acc);
+        }
+        return acc.reduceLanes(VectorOperators.ADD) + tail.dot(a, aOff + i, b, bOff + i, len - i);
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOff, double[] y, int yOff, int len) {
+        DoubleVector va = DoubleVector.broadcast(SPECIES, alpha);
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOff + i);
+            DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOff + i);
+            vx.fma(va, vy).intoArray(y, yOff + i);
+        }
+        tail.axpy(alpha, x, xOff + i, y, yOff + i, len - i);
+    }
+
+    @Override
+    public void multiply(double[] a, int aOff, double[] b, int bOff, double[] out, int outOff, int len) {
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, aOff + i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOff + i);
+            va.mul(vb).intoArray(out, outOff + i);
+        }
+        tail.multiply(a, aOff + i, b, bOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void sigmoid(double[] x, int xOff, double[] out, int outOff, int len) {
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += SPECIES.length()) {
+            sigmoid(DoubleVector.fromArray(SPECIES, x, xOff + i)).intoArray(out, outOff + i);
+        }
+        tail.sigmoid(x, xOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void sigmoidDerivative(double[] x, int xOff, double[] out, int outOff, int len) {
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += SPECIES.length()) {
+            DoubleVector fx = sigmoid(DoubleVector.fromArray(SPECIES, x, xOff + i));
+            fx.mul(fx.neg().add(1)).intoArray(out, outOff + i);
+        }
+        tail.sigmoidDerivative(x, xOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void sigmoidOutputDerivative(double[] a, int aOff, double[] out, int outOff, int len) {
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += SPECIES.length()) {
+            DoubleVector fx = DoubleVector.fromArray(SPECIES, a, aOff + i);
+            fx.mul(fx.neg().add(1)).intoArray(out, outOff + i);
+        }
+        tail.sigmoidOutputDerivative(a, aOff + i, out, outOff + i, len - i);
+    }
+
+    private static DoubleVector sigmoid(DoubleVector v) {
+        DoubleVector one = DoubleVector.broadcast(SPECIES, 1);
+        return one.div(v.neg().lanewise(VectorOperators.EXP).add(1));
+    }
+
+    @Override
+    public void tanh(double[] x, int xOff, double[] out, int outOff, int len) {
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, x, xOff + i).lanewise(VectorOperators.TANH).intoArray(out, outOff + i);
+        }
+        tail.tanh(x, xOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void tanhDerivative(double[] x, int xOff, double[] out, int outOff, int len) {
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += SPECIES.length()) {
+            DoubleVector fx = DoubleVector.fromArray(SPECIES, x, xOff + i).lanewise(VectorOperators.TANH);
+            fx.mul(fx).neg().add(1).intoArray(out, outOff + i);
+        }
+        tail.tanhDerivative(x, xOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void tanhOutputDerivative(double[] a, int aOff, double[] out, int outOff, int len) {
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += SPECIES.length()) {
+            DoubleVector fx = DoubleVector.fromArray(SPECIES, a, aOff + i);
+            fx.mul(fx).neg().add(1).intoArray(out, outOff + i);
+        }
+        tail.tanhOutputDerivative(a, aOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void relu(double[] x, int xOff, double[] out, int outOff, int len) {
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, x, xOff + i).max(0).intoArray(out, outOff + i);
+        }
+        tail.relu(x, xOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void reluDerivative(double[] x, int xOff, double[] out, int outOff, int len) {
+        leakyReluDerivative(0, x, xOff, out, outOff, len);
+    }
+
+    @Override
+    public void leakyRelu(double coefficient, double[] x, int xOff, double[] out, int outOff, int len) {
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += SPECIES.length()) {
+            DoubleVector v = DoubleVector.fromArray(SPECIES, x, xOff + i);
+            VectorMask<Double> negative = v.compare(VectorOperators.LT, 0);
+            v.blend(v.mul(coefficient), negative).intoArray(out, outOff + i);
+        }
+        tail.leakyRelu(coefficient, x, xOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void leakyReluDerivative(double coefficient, double[] x, int xOff, double[] out, int outOff, int len) {
+        DoubleVector one = DoubleVector.broadcast(SPECIES, 1);
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += SPECIES.length()) {
+            VectorMask<Double> negative = DoubleVector.fromArray(SPECIES, x, xOff + i).compare(VectorOperators.LT, 0);
+            one.blend(coefficient, negative).intoArray(out, outOff + i);
+        }
+        tail.leakyReluDerivative(coefficient, x, xOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void sin(double[] x, int xOff, double[] out, int outOff, int len) {
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, x, xOff + i).lanewise(VectorOperators.SIN).intoArray(out, outOff + i);
+        }
+        tail.sin(x, xOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void cos(double[] x, int xOff, double[] out, int outOff, int len) {
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, x, xOff + i).lanewise(VectorOperators.COS).intoArray(out, outOff + i);
+        }
+        tail.cos(x, xOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public float dot(float[] a, int aOff, float[] b, int bOff, int len) {
+        FloatVector acc = FloatVector.zero(FLOAT_SPECIES);
+        int bound = FLOAT_SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(FLOAT_SPECIES, a, aOff + i);
+            FloatVector vb = FloatVector.fromArray(FLOAT_SPECIES, b, bOff + i);
+            acc = va.fma(vb, acc);
+        }
+        return acc.reduceLanes(VectorOperators.ADD) + tail.dot(a, aOff + i, b, bOff + i, len - i);
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int len) {
+        FloatVector va = FloatVector.broadcast(FLOAT_SPECIES, alpha);
+        int bound = FLOAT_SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector vx = FloatVector.fromArray(FLOAT_SPECIES, x, xOff + i);
+            FloatVector vy = FloatVector.fromArray(FLOAT_SPECIES, y, yOff + i);
+            vx.fma(va, vy).intoArray(y, yOff + i);
+        }
+        tail.axpy(alpha, x, xOff + i, y, yOff + i, len - i);
+    }
+
+    @Override
+    public void multiply(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int len) {
+        int bound = FLOAT_SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(FLOAT_SPECIES, a, aOff + i);
+            FloatVector vb = FloatVector.fromArray(FLOAT_SPECIES, b, bOff + i);
+            va.mul(vb).intoArray(out, outOff + i);
+        }
+        tail.multiply(a, aOff + i, b, bOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void sigmoid(float[] x, int xOff, float[] out, int outOff, int len) {
+        int bound = FLOAT_SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += FLOAT_SPECIES.length()) {
+            sigmoid(FloatVector.fromArray(FLOAT_SPECIES, x, xOff + i)).intoArray(out, outOff + i);
+        }
+        tail.sigmoid(x, xOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void sigmoidDerivative(float[] x, int xOff, float[] out, int outOff, int len) {
+        int bound = FLOAT_SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector fx = sigmoid(FloatVector.fromArray(FLOAT_SPECIES, x, xOff + i));
+            fx.mul(fx.neg().add(1)).intoArray(out, outOff + i);
+        }
+        tail.sigmoidDerivative(x, xOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void sigmoidOutputDerivative(float[] a, int aOff, float[] out, int outOff, int len) {
+        int bound = FLOAT_SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector fx = FloatVector.fromArray(FLOAT_SPECIES, a, aOff + i);
+            fx.mul(fx.neg().add(1)).intoArray(out, outOff + i);
+        }
+        tail.sigmoidOutputDerivative(a, aOff + i, out, outOff + i, len - i);
+    }
+
+    private static FloatVector sigmoid(FloatVector v) {
+        FloatVector one = FloatVector.broadcast(FLOAT_SPECIES, 1);
+        return one.div(v.neg().lanewise(VectorOperators.EXP).add(1));
+    }
+
+    @Override
+    public void tanh(float[] x, int xOff, float[] out, int outOff, int len) {
+        int bound = FLOAT_SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector.fromArray(FLOAT_SPECIES, x, xOff + i).lanewise(VectorOperators.TANH).intoArray(out, outOff + i);
+        }
+        tail.tanh(x, xOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void tanhDerivative(float[] x, int xOff, float[] out, int outOff, int len) {
+        int bound = FLOAT_SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector fx = FloatVector.fromArray(FLOAT_SPECIES, x, xOff + i).lanewise(VectorOperators.TANH);
+            fx.mul(fx).neg().add(1).intoArray(out, outOff + i);
+        }
+        tail.tanhDerivative(x, xOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void tanhOutputDerivative(float[] a, int aOff, float[] out, int outOff, int len) {
+        int bound = FLOAT_SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector fx = FloatVector.fromArray(FLOAT_SPECIES, a, aOff + i);
+            fx.mul(fx).neg().add(1).intoArray(out, outOff + i);
+        }
+        tail.tanhOutputDerivative(a, aOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void relu(float[] x, int xOff, float[] out, int outOff, int len) {
+        int bound = FLOAT_SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector.fromArray(FLOAT_SPECIES, x, xOff + i).max(0).intoArray(out, outOff + i);
+        }
+        tail.relu(x, xOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void reluDerivative(float[] x, int xOff, float[] out, int outOff, int len) {
+        leakyReluDerivative(0, x, xOff, out, outOff, len);
+    }
+
+    @Override
+    public void leakyRelu(float coefficient, float[] x, int xOff, float[] out, int outOff, int len) {
+        int bound = FLOAT_SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector v = FloatVector.fromArray(FLOAT_SPECIES, x, xOff + i);
+            VectorMask<Float> negative = v.compare(VectorOperators.LT, 0);
+            v.blend(v.mul(coefficient), negative).intoArray(out, outOff + i);
+        }
+        tail.leakyRelu(coefficient, x, xOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void leakyReluDerivative(float coefficient, float[] x, int xOff, float[] out, int outOff, int len) {
+        FloatVector one = FloatVector.broadcast(FLOAT_SPECIES, 1);
+        int bound = FLOAT_SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += FLOAT_SPECIES.length()) {
+            VectorMask<Float> negative = FloatVector.fromArray(FLOAT_SPECIES, x, xOff + i).compare(VectorOperators.LT, 0);
+            one.blend(coefficient, negative).intoArray(out, outOff + i);
+        }
+        tail.leakyReluDerivative(coefficient, x, xOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void sin(float[] x, int xOff, float[] out, int outOff, int len) {
+        int bound = FLOAT_SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector.fromArray(FLOAT_SPECIES, x, xOff + i).lanewise(VectorOperators.SIN).intoArray(out, outOff + i);
+        }
+        tail.sin(x, xOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void cos(float[] x, int xOff, float[] out, int outOff, int len) {
+        int bound = FLOAT_SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector.fromArray(FLOAT_SPECIES, x, xOff + i).lanewise(VectorOperators.COS).intoArray(out, outOff + i);
+        }
+        tail.cos(x, xOff + i, out, outOff + i, len - i);
+    }
+
+    @Override
+    public void axpy(int alpha, byte[] x, int xOff, int[] y, int yOff, int len) {
+        int bound = BYTE_SPECIES.loopBound(len);
+        int i = 0;
+        for(; i < bound; i += BYTE_SPECIES.length()) {
+            ByteVector bx = ByteVector.fromArray(BYTE_SPECIES, x, xOff + i);
+            for(int part = 0; part < BYTE_PARTS; part++) {
+                int j = yOff + i + part * INT_SPECIES.length();
+                IntVector vx = (IntVector) bx.convertShape(VectorOperators.B2I, INT_SPECIES, part);
+                vx.mul(alpha).add(IntVector.fromArray(INT_SPECIES, y, j)).intoArray(y, j);
+            }
+        }
+        tail.axpy(alpha, x, xOff + i, y, yOff + i, len - i);
+    }
+
+    @Override
+    public String toString() {
+        return "simd-" + SPECIES.vectorBitSize();
+    }
+}
@@ -0,0 +1,227 @@
+package Tensor;
+
+import java.util.Arrays;
+
+/**
+ * A two dimensional tensor holding only its nonzero entries, in compressed sparse row (CSR) form.
+ * The nonzeros of row {@code i} are at positions {@code rowStart[i]} to {@code rowStart[i + 1] - 1}
+ * of {@code columns} and {@code values}, in increasing column order. A single sample is a tensor with
+ * one row, which is the same as a pair of index and value arrays.
+ *
+ * Meant for inputs that are mostly zero, such as images on a blank background, so a layer can skip the
+ * weights of every zero input. Values are stored as doubles whatever the precision of the layer reading them.
+ */
+public class SparseTensor {
+
+    /**
+     * Number of columns.
+     */
+    private final int cols;
+
+    /**
+     * Number of rows.
+     */
+    private int rows;
+
+    /**
+     * Start of each row in {@link #columns} and {@link #values}, with one extra entry marking the end of the last row.
+     */
+    private int[] rowStart;
+
+    /**
+     * Column of each nonzero.
+     */
+    private int[] columns;
+
+    /**
+     * Value of each nonzero.
+     */
+    private double[] values;
+
+    /**
+     * Creates an empty tensor with no rows, to be filled by {@link #compress(Tensor)}.
+     * @param cols number of columns
+     */
+    public SparseTensor(int cols) {
+        this(0, cols, new int[1], new int[0], new double[0]);
+    }
+
+    /**
+     * Wraps arrays in compressed sparse row form without copying them.
+     * @param rows number of rows
+     * @param cols number of columns
+     * @param rowStart start of each row in the other arrays, {@code rows + 1} entries starting at 0
+     * @param columns column of each nonzero, increasing within each row
+     * @param values value of each nonzero
+     */
+    public SparseTensor(int rows, int cols, int[] rowStart, int[] columns, double[] values) {
+        if(rows < 0 || cols < 0 || rowStart.length < rows + 1 || rowStart[0] != 0
+                || columns.length < rowStart[rows] || values.length < rowStart[rows]) {
+            throw new IllegalArgumentException("Invalid sparse tensor of " + rows + "x" + cols + " with "
+                    + rowStart.length + " row starts, " + columns.length + " columns and " + values.length + " values");
+        }
+        for(int i = 0; i < rows; i++) {
+            for(int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+                if(columns[k] < 0 || columns[k] >= cols || (k > rowStart[i] && columns[k] <= columns[k - 1])) {
+                    throw new IllegalArgumentException("Row " + i + " has column " + columns[k]
+                            + " out of order or outside 0 to " + (cols - 1));
+                }
+            }
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.rowStart = rowStart;
+        this.columns = columns;
+        this.values = values;
+    }
+
+    /**
+     * Creates a single row from the indices and values of its nonzeros.
+     * @param cols length of the row
+     * @param indices column of each nonzero, increasing
+     * @param values value of each nonzero
+     * @return tensor with one row, sharing the given arrays
+     */
+    public static SparseTensor vector(int cols, int[] indices, double[] values) {
+        if(indices.length != values.length) {
+            throw new IllegalArgumentException("Got " + indices.length + " indices but " + values.length + " values");
+        }
+        return new SparseTensor(1, cols, new int[] {0, indices.length}, indices, values);
+    }
+
+    /**
+     * Creates the sparse form of a dense tensor.
+     * @param dense tensor of any precision
+     * @return new tensor holding the nonzeros of {@code dense}
+     */
+    public static SparseTensor of(Tensor dense) {
+        return new SparseTensor(dense.cols()).compress(dense);
+    }
+
+    /**
+     * Replaces the contents of this tensor with the nonzeros of a dense tensor. The arrays are reused and
+     * only grow when a batch has more rows or nonzeros than any before, so a training loop compressing
+     * each batch into the same tensor stops allocating once it has seen its densest batch.
+     * @param dense tensor of any precision with the same number of columns
+     * @return this tensor
+     */
+    public SparseTensor compress(Tensor dense) {
+        if(dense.cols() != this.cols) {
+            throw new IllegalArgumentException("Expected " + this.cols + " columns but got " + dense.shape());
+        }
+        int rows = dense.rows();
+        if(this.rowStart.length < rows + 1) {
+            this.rowStart = new int[rows + 1];
+        }
+        int n = 0;
+        for(int i = 0; i < rows; i++) {
+            this.rowStart[i] = n;
+            int idx = dense.index(i, 0);
+            for(int j = 0; j < this.cols; j++) {
+                double v = dense.isFloat() ? dense.floatData()[idx + j] : dense.data()[idx + j];
+                if(v != 0) {
+                    if(n == this.columns.length) {
+                        int capacity = Math.max(16, Math.min(n * 2, rows * this.cols));
+                        this.columns = Arrays.copyOf(this.columns, capacity);
+                        this.values = Arrays.copyOf(this.values, capacity);
+                    }
+                    this.columns[n] = j;
+                    this.values[n] = v;
+                    n++;
+                }
+            }
+        }
+        this.rowStart[rows] = n;
+        this.rows = rows;
+        return this;
+    }
+
+    /**
+     * Creates the dense form of this tensor.
+     * @param precision precision of the result
+     * @return new dense tensor
+     */
+    public Tensor toDense(PrecisionEnum precision) {
+        Tensor t = new Tensor(this.rows, this.cols, precision);
+        for(int i = 0; i < this.rows; i++) {
+            for(int k = this.rowStart[i]; k < this.rowStart[i + 1]; k++) {
+                t.set(i, this.columns[k], this.values[k]);
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Number of rows.
+     * @return rows
+     */
+    public int rows() {
+        return this.rows;
+    }
+
+    /**
+     * Number of columns.
+     * @return columns
+     */
+    public int cols() {
+        return this.cols;
+    }
+
+    /**
+     * Number of stored nonzeros.
+     * @return nonzeros over all rows
+     */
+    public int nonZeros() {
+        return this.rowStart[this.rows];
+    }
+
+    /**
+     * Fraction of entries that are stored.
+     * @return nonzeros divided by rows times columns
+     */
+    public double density() {
+        return this.rows == 0 || this.cols == 0 ? 0 : (double) nonZeros() / ((long) this.rows * this.cols);
+    }
+
+    /**
+     * Position of the first nonzero of a row in {@link #columns()} and {@link #values()}.
+     * @param i row
+     * @return start of the row
+     */
+    public int rowStart(int i) {
+        return this.rowStart[i];
+    }
+
+    /**
+     * Position after the last nonzero of a row in {@link #columns()} and {@link #values()}.
+     * @param i row
+     * @return end of the row, exclusive
+     */
+    public int rowEnd(int i) {
+        return this.rowStart[i + 1];
+    }
+
+    /**
+     * Gets the backing column indices. Only positions before {@link #nonZeros()} are meaningful.
+     * @return column of each nonzero
+     */
+    public int[] columns() {
+        return this.columns;
+    }
+
+    /**
+     * Gets the backing values. Only positions before {@link #nonZeros()} are meaningful.
+     * @return value of each nonzero
+     */
+    public double[] values() {
+        return this.values;
+    }
+
+    /**
+     * Describes the shape and number of nonzeros, for error messages.
+     * @return shape string
+     */
+    public String shape() {
+        return this.rows + "x" + this.cols + " (" + nonZeros() + " nonzeros)";
+    }
+}
@@ -0,0 +1,467 @@
+package Tensor;
+
+import org.apache.commons.math4.legacy.linear.Array2DRowRealMatrix;
+import org.apache.commons.math4.legacy.linear.ArrayRealVector;
+import org.apache.commons.math4.legacy.linear.RealMatrix;
+import org.apache.commons.math4.legacy.linear.RealVector;
+
+import java.util.Arrays;
+
+/**
+ * A two dimensional tensor backed by a flat row-major {@code double[]}, or a {@code float[]}
+ * when its precision is {@link PrecisionEnum#Float} or {@link PrecisionEnum#Mixed}.
+ * Entry (i, j) is stored at {@code data[offset + i * stride + j]}, so a tensor
+ * may also be a view into a larger block of memory shared with other tensors.
+ * A vector is represented as a tensor with a single row.
+ */
+public class Tensor {
+
+    /**
+     * Double precision storage. May be shared with other tensors. Null when values are stored as floats.
+     */
+    private final double[] data;
+
+    /**
+     * Single precision storage. May be shared with other tensors. Null when values are stored as doubles.
+     */
+    private final float[] floatData;
+
+    /**
+     * How values are stored and how products written into this tensor accumulate.
+     */
+    private final PrecisionEnum precision;
+
+    /**
+     * Number of rows.
+     */
+    private final int rows;
+
+    /**
+     * Number of columns.
+     */
+    private final int cols;
+
+    /**
+     * Distance in the backing array between the start of two consecutive rows.
+     */
+    private final int stride;
+
+    /**
+     * Index in the backing array of entry (0, 0).
+     */
+    private final int offset;
+
+    /**
+     * Creates a zero filled double precision tensor with its own contiguous storage.
+     * @param rows number of rows
+     * @param cols number of columns
+     */
+    public Tensor(int rows, int cols) {
+        this(new double[rows * cols], rows, cols, cols, 0);
+    }
+
+    /**
+     * Creates a zero filled tensor with its own contiguous storage.
+     * @param rows number of rows
+     * @param cols number of columns
+     * @param precision how values are stored
+     */
+    public Tensor(int rows, int cols, PrecisionEnum precision) {
+        this(precision.isFloat() ? null : new double[rows * cols],
+                precision.isFloat() ? new float[rows * cols] : null,
+                precision, rows, cols, cols, 0);
+    }
+
+    /**
+     * Wraps existing double storage without copying it.
+     * @param data backing array
+     * @param rows number of rows
+     * @param cols number of columns
+     * @param stride distance between the start of two consecutive rows
+     * @param offset index of entry (0, 0)
+     */
+    public Tensor(double[] data, int rows, int cols, int stride, int offset) {
+        this(data, null, PrecisionEnum.Double, rows, cols, stride, offset);
+    }
+
+    /**
+     * Wraps existing float storage without copying it.
+     * @param data backing array
+     * @param rows number of rows
+     * @param cols number of columns
+     * @param stride distance between the start of two consecutive rows
+     * @param offset index of entry (0, 0)
+     * @param precision {@link PrecisionEnum#Float} or {@link PrecisionEnum#Mixed}
+     */
+    public Tensor(float[] data, int rows, int cols, int stride, int offset, PrecisionEnum precision) {
+        this(null, data, precision, rows, cols, stride, offset);
+    }
+
+    private Tensor(double[] data, float[] floatData, PrecisionEnum precision, int rows, int cols, int stride, int offset) {
+        if(precision.isFloat() != (floatData != null)) {
+            throw new IllegalArgumentException(precision + " precision does not match the backing array type");
+        }
+        int length = floatData != null ? floatData.length : data.length;
+        if(rows < 0 || cols < 0 || stride < cols || offset < 0) {
+            throw new IllegalArgumentException("Invalid shape " + rows + "x" + cols
+                    + " with stride " + stride + " and offset " + offset);
+        }
+        if(rows > 0 && offset + (rows - 1) * stride + cols > length) {
+            throw new IllegalArgumentException("Backing array of length " + length
+                    + " is too small for shape " + rows + "x" + cols);
+        }
+        this.data = data;
+        this.floatData = floatData;
+        this.precision = precision;
+        this.rows = rows;
+        this.cols = cols;
+        this.stride = stride;
+        this.offset = offset;
+    }
+
+    /**
+     * Copies a two dimensional array into a new tensor.
+     * @param m rectangular array indexed as {@code m[row][column]}
+     * @return new tensor
+     */
+    public static Tensor of(double[][] m) {
+        int cols = m.length == 0 ? 0 : m[0].length;
+        Tensor t = new Tensor(m.length, cols);
+        for(int i = 0; i < m.length; i++) {
+            System.arraycopy(m[i], 0, t.data, i * cols, cols);
+        }
+        return t;
+    }
+
+    /**
+     * Copies a matrix into a new tensor.
+     * @param m any matrix
+     * @return new tensor with the same shape as {@code m}
+     */
+    public static Tensor of(RealMatrix m) {
+        int rows = m.getRowDimension();
+        int cols = m.getColumnDimension();
+        Tensor t = new Tensor(rows, cols);
+        for(int i = 0; i < rows; i++) {
+            for(int j = 0; j < cols; j++) {
+                t.data[i * cols + j] = m.getEntry(i, j);
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Copies a vector into a new single row tensor.
+     * @param v any vector
+     * @return new tensor with one row
+     */
+    public static Tensor of(RealVector v) {
+        double[] d = v.toArray();
+        return new Tensor(d, 1, d.length, d.length, 0);
+    }
+
+    /**
+     * Gets this tensor in another precision. No copy is made when the storage type already
+     * matches; a {@link PrecisionEnum#Float} tensor viewed as {@link PrecisionEnum#Mixed} shares its storage.
+     * @param precision wanted precision
+     * @return this tensor, a view of it, or a converted copy
+     */
+    public Tensor to(PrecisionEnum precision) {
+        if(precision == this.precision) {
+            return this;
+        }
+        if(precision.isFloat() && isFloat()) {
+            return new Tensor(null, this.floatData, precision, this.rows, this.cols, this.stride, this.offset);
+        }
+        Tensor t = new Tensor(this.rows, this.cols, precision);
+        t.copyFrom(this);
+        return t;
+    }
+
+    /**
+     * Copies this tensor into a new matrix.
+     * @return matrix with the same shape and entries
+     */
+    public RealMatrix toMatrix() {
+        return new Array2DRowRealMatrix(toArray(), false);
+    }
+
+    /**
+     * Copies this single row tensor into a new vector.
+     * @return vector holding the only row
+     */
+    public RealVector toVector() {
+        if(this.rows != 1) {
+            throw new IllegalStateException("Expected a single row but tensor has " + this.rows);
+        }
+        return new ArrayRealVector(rowArray(0), false);
+    }
+
+    /**
+     * Copies this tensor into a new two dimensional array.
+     * @return array indexed as {@code [row][column]}
+     */
+    public double[][] toArray() {
+        double[][] r = new double[this.rows][];
+        for(int i = 0; i < this.rows; i++) {
+            r[i] = rowArray(i);
+        }
+        return r;
+    }
+
+    /**
+     * Copies one row into a new array.
+     * @param i row index
+     * @return copy of the row
+     */
+    public double[] rowArray(int i) {
+        int start = index(i, 0);
+        if(isFloat()) {
+            double[] r = new double[this.cols];
+            for(int j = 0; j < this.cols; j++) {
+                r[j] = this.floatData[start + j];
+            }
+            return r;
+        }
+        return Arrays.copyOfRange(this.data, start, start + this.cols);
+    }
+
+    /**
+     * Gets a single entry.
+     * @param i row
+     * @param j column
+     * @return value
+     */
+    public double get(int i, int j) {
+        return isFloat() ? this.floatData[index(i, j)] : this.data[index(i, j)];
+    }
+
+    /**
+     * Sets a single entry.
+     * @param i row
+     * @param j column
+     * @param value new value, rounded to the nearest float when stored as floats
+     */
+    public void set(int i, int j, double value) {
+        if(isFloat()) {
+            this.floatData[index(i, j)] = (float) value;
+        } else {
+            this.data[index(i, j)] = value;
+        }
+    }
+
+    /**
+     * Position of an entry in the backing array.
+     * @param i row
+     * @param j column
+     * @return index into {@link #data()} or {@link #floatData()}
+     */
+    public int index(int i, int j) {
+        return this.offset + i * this.stride + j;
+    }
+
+    /**
+     * Creates a view of a contiguous range of rows. The view shares storage with this tensor.
+     * @param from first row, inclusive
+     * @param to last row, exclusive
+     * @return view of the rows
+     */
+    public Tensor slice(int from, int to) {
+        if(from < 0 || to > this.rows || from > to) {
+            throw new IndexOutOfBoundsException("Row range [" + from + ", " + to + ") outside of " + this.rows);
+        }
+        return new Tensor(this.data, this.floatData, this.precision,
+                to - from, this.cols, this.stride, this.offset + from * this.stride);
+    }
+
+    /**
+     * Creates a view of a single row. The view shares storage with this tensor.
+     * @param i row index
+     * @return single row view
+     */
+    public Tensor row(int i) {
+        return slice(i, i + 1);
+    }
+
+    /**
+     * Deep copy into new contiguous storage of the same precision.
+     * @return copy of this tensor
+     */
+    public Tensor copy() {
+        Tensor t = new Tensor(this.rows, this.cols, this.precision);
+        t.copyFrom(this);
+        return t;
+    }
+
+    /**
+     * Copies every entry of another tensor with the same shape into this one,
+     * converting between floats and doubles when the storage types differ.
+     * @param src source tensor
+     */
+    public void copyFrom(Tensor src) {
+        checkSameShape(this, src);
+        for(int i = 0; i < this.rows; i++) {
+            int s = src.index(i, 0);
+            int d = index(i, 0);
+            if(!isFloat() && !src.isFloat()) {
+                System.arraycopy(src.data, s, this.data, d, this.cols);
+            } else if(isFloat() && src.isFloat()) {
+                System.arraycopy(src.floatData, s, this.floatData, d, this.cols);
+            } else if(isFloat()) {
+                for(int j = 0; j < this.cols; j++) {
+                    this.floatData[d + j] = (float) src.data[s + j];
+                }
+            } else {
+                for(int j = 0; j < this.cols; j++) {
+                    this.data[d + j] = src.floatData[s + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets every entry to the same value.
+     * @param value new value
+     */
+    public void fill(double value) {
+        for(int i = 0; i < this.rows; i++) {
+            int start = index(i, 0);
+            if(isFloat()) {
+                Arrays.fill(this.floatData, start, start + this.cols, (float) value);
+            } else {
+                Arrays.fill(this.data, start, start + this.cols, value);
+            }
+        }
+    }
+
+    /**
+     * Creates the transpose in new storage of the same precision.
+     * @return transposed copy
+     */
+    public Tensor transpose() {
+        Tensor t = new Tensor(this.cols, this.rows, this.precision);
+        for(int i = 0; i < this.rows; i++) {
+            int row = index(i, 0);
+            for(int j = 0; j < this.cols; j++) {
+                if(isFloat()) {
+                    t.floatData[j * this.rows + i] = this.floatData[row + j];
+                } else {
+                    t.data[j * this.rows + i] = this.data[row + j];
+                }
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Standard matrix product {@code a * b}.
+     * @param a left operand with shape m x k
+     * @param b right operand with shape k x n
+     * @return new tensor with shape m x n and the precision of {@code a}
+     * @see Gemm
+     */
+    public static Tensor multiply(Tensor a, Tensor b) {
+        Tensor c = new Tensor(a.rows, b.cols, a.precision);
+        Gemm.multiply(a, false, b, false, 1, 0, c);
+        return c;
+    }
+
+    /**
+     * Checks two tensors have identical shapes.
+     * @param a first tensor
+     * @param b second tensor
+     */
+    public static void checkSameShape(Tensor a, Tensor b) {
+        if(a.rows != b.rows || a.cols != b.cols) {
+            throw new IllegalArgumentException("Shape mismatch: " + a.shape() + " and " + b.shape());
+        }
+    }
+
+    /**
+     * Whether the rows follow each other in the backing array without gaps.
+     * @return true if contiguous
+     */
+    public boolean isContiguous() {
+        return this.stride == this.cols || this.rows <= 1;
+    }
+
+    /**
+     * Whether values are stored in {@link #floatData()} rather than {@link #data()}.
+     * @return true for float storage
+     */
+    public boolean isFloat() {
+        return this.floatData != null;
+    }
+
+    /**
+     * How values are stored and how products written into this tensor accumulate.
+     * @return precision
+     */
+    public PrecisionEnum precision() {
+        return this.precision;
+    }
+
+    /**
+     * Double precision backing array. Writes through it are visible in this tensor.
+     * @return backing array
+     * @throws IllegalStateException if values are stored as floats
+     */
+    public double[] data() {
+        if(this.data == null) {
+            throw new IllegalStateException("Tensor stores " + this.precision + " values, use floatData()");
+        }
+        return this.data;
+    }
+
+    /**
+     * Single precision backing array. Writes through it are visible in this tensor.
+     * @return backing array
+     * @throws IllegalStateException if values are stored as doubles
+     */
+    public float[] floatData() {
+        if(this.floatData == null) {
+            throw new IllegalStateException("Tensor stores " + this.precision + " values, use data()");
+        }
+        return this.floatData;
+    }
+
+    /**
+     * Number of rows.
+     * @return rows
+     */
+    public int rows() {
+        return this.rows;
+    }
+
+    /**
+     * Number of columns.
+     * @return columns
+     */
+    public int cols() {
+        return this.cols;
+    }
+
+    /**
+     * Distance between the start of two consecutive rows in the backing array.
+     * @return stride
+     */
+    public int stride() {
+        return this.stride;
+    }
+
+    /**
+     * Index of entry (0, 0) in the backing array.
+     * @return offset
+     */
+    public int offset() {
+        return this.offset;
+    }
+
+    /**
+     * Human readable shape, used in error messages.
+     * @return shape as "rows x cols"
+     */
+    public String shape() {
+        return this.rows + "x" + this.cols;
+    }
+}
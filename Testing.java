@@ -1,15 +1,34 @@
 import ActivationFunctions.ActivationFunction;
 import ActivationFunctions.Sigmoid;
+import Data.Dataset;
+import Data.MnistDataset;
 import ErrorFunctions.ErrorFunction;
 import ErrorFunctions.MeanSquared;
 import Layer.BiasInitializerEnum;
 import Layer.FullyConnectedLayer;
 import Layer.InputLayer;
 import Layer.WeightInitializerEnum;
+import Metrics.BackPropagationEvent;
+import Metrics.ForwardPassEvent;
+import Metrics.JfrSummary;
+import Metrics.LayerPhaseEvent;
+import Metrics.TrainingTelemetry;
+import Tensor.SparseTensor;
+import Tensor.Tensor;
 import org.apache.commons.math4.legacy.linear.*;
 
+import java.io.IOException;
+import jdk.jfr.Recording;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
 public class Testing {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         ActivationFunction af = new Sigmoid();
         ErrorFunction ef = new MeanSquared();
         WeightInitializerEnum wInit = WeightInitializerEnum.Xavier;
@@ -19,6 +38,397 @@ public class Testing {
         int[] layerSizes = {200, 80, 10};
 
         Network n = new Network(af, ef, learningRate, inputSize, layerSizes, wInit, bInit);
+
+        // train on MNIST when given the image and label files, e.g. train-images-idx3-ubyte train-labels-idx1-ubyte
+        if(args.length >= 2) {
+            MnistDataset mnist = MnistDataset.open(Path.of(args[0]), Path.of(args[1]));
+            if(args.length >= 3 && args[2].equals("parallel")) {
+                compareParallelTraining(mnist, 3, 32);
+            } else if(args.length >= 3 && args[2].equals("inference")) {
+                n.train(mnist, 1, 32);
+                for(int threads = 1; threads <= 16; threads *= 4) {
+                    benchmarkInference(n, mnist, threads, 5000);
+                }
+                for(int clients = 4; clients <= 64; clients *= 4) {
+                    benchmarkBatching(n, mnist, clients, 2000, 32, 200_000);
+                }
+            } else if(args.length >= 3 && args[2].equals("quantize")) {
+                n.train(mnist, 1, 32);
+                benchmarkQuantized(n, mnist, 1000, 5000);
+            } else if(args.length >= 3 && args[2].equals("sparse")) {
+                benchmarkSparse(mnist, 32, 50);
+            } else if(args.length >= 3 && args[2].equals("prune")) {
+                n.train(mnist, 1, 32);
+                comparePruning(n, mnist, new double[] {0.5, 0.8, 0.9, 0.95}, 1, 2000);
+            } else if(args.length >= 3 && args[2].equals("telemetry")) {
+                trainWithTelemetry(n, mnist, 1);
+            } else if(args.length >= 3 && args[2].equals("jfr")) {
+                recordTraining(n, mnist, 1, Path.of("training.jfr"));
+            } else if(args.length >= 3 && args[2].equals("checkpoint")) {
+                trainWithCheckpoints(n, mnist, Path.of("checkpoints"), 5);
+            } else {
+                n.train(mnist, 5, 32);
+            }
+        }
+    }
+
+    /**
+     * Compares throughput and convergence of single threaded, synchronous data-parallel and
+     * Hogwild training for 1, 2, 4, ... threads up to the number of cores.
+     * @param data training samples
+     * @param epochs epochs per run
+     * @param batchSize samples per step. Hogwild threads each take a batch of this size.
+     */
+    public static void compareParallelTraining(Dataset data, int epochs, int batchSize) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("mode        threads  samples/s  speedup  final loss");
+        double base = report("single", 1, newMnistNetwork().train(data, epochs, batchSize, new Random(1), null), 0);
+        for(int threads = 1; threads <= cores; threads *= 2) {
+            Network n = newMnistNetwork();
+            try(ParallelTrainer t = new ParallelTrainer(n, threads, batchSize);
+                Data.BatchPrefetcher batches = new Data.BatchPrefetcher(data, batchSize, epochs, 4, 1,
+                        n.precision(), new Random(1))) {
+                report("synchronous", threads, t.train(batches, null), base);
+            }
+            try(HogwildTrainer t = new HogwildTrainer(newMnistNetwork(), threads, batchSize)) {
+                report("hogwild", threads, t.train(data, epochs, new Random(1), null), base);
+            }
+        }
+    }
+
+    /**
+     * Trains with a checkpoint after every epoch, first resuming from the newest checkpoint in the
+     * directory if there is one. Prints how long each checkpoint held up training.
+     * @param n network to train
+     * @param data training samples
+     * @param directory checkpoint directory
+     * @param epochs total number of epochs, including those done before resuming
+     */
+    public static void trainWithCheckpoints(Network n, Dataset data, Path directory, int epochs) throws IOException {
+        Path latest = Checkpointer.latest(directory);
+        int done = 0;
+        if(latest != null) {
+            done = (int) Checkpointer.restore(n, latest);
+            System.out.println("Resumed from " + latest + " after epoch " + done);
+        }
+        int first = done;
+        try(Checkpointer c = new Checkpointer(n, directory, 3)) {
+            n.train(data, epochs - done, 32, new Random(), r -> {
+                System.out.println(r);
+                c.checkpoint(first + r.epoch());
+            });
+            c.flush();
+            System.out.println(c);
+        }
+    }
+
+    /**
+     * Trains and then predicts the first 10000 samples in batches of 100 while recording the deep learning
+     * events with the flight recorder, and prints the per-layer summary of the recording. The events are
+     * recorded whatever their duration, rather than from their default threshold of 1 ms.
+     * @param n network to train
+     * @param data training samples
+     * @param epochs number of epochs
+     * @param file where to write the recording
+     * @throws IOException if the recording cannot be written or read back
+     */
+    public static void recordTraining(Network n, Dataset data, int epochs, Path file) throws IOException {
+        try(Recording recording = new Recording()) {
+            recording.enable(LayerPhaseEvent.class).withThreshold(Duration.ZERO);
+            recording.enable(ForwardPassEvent.class).withThreshold(Duration.ZERO);
+            recording.enable(BackPropagationEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+            n.train(data, epochs, 32, new Random(), System.out::println);
+            Tensor inputs = new Tensor(100, data.inputSize(), n.precision());
+            Tensor expected = new Tensor(100, data.outputSize(), n.precision());
+            int[] indices = IntStream.range(0, Math.min(10000, data.size())).toArray();
+            for(int from = 0; from + 100 <= indices.length; from += 100) {
+                data.gather(indices, from, 100, inputs, expected);
+                n.forwardPass(inputs);
+            }
+            recording.stop();
+            recording.dump(file);
+        }
+        System.out.println(file + ":");
+        System.out.print(JfrSummary.read(file));
+    }
+
+    /**
+     * Trains with telemetry attached, printing throughput and allocation every 500 steps and the time
+     * spent per layer and phase at the end.
+     * @param n network to train
+     * @param data training samples
+     * @param epochs number of epochs
+     */
+    public static void trainWithTelemetry(Network n, Dataset data, int epochs) {
+        TrainingTelemetry telemetry = new TrainingTelemetry(n.layers().length);
+        telemetry.addListener(step -> {
+            if(step.index() % 500 == 0) {
+                System.out.printf("step %d: %.0f samples/s, %d bytes allocated%n", step.index(),
+                        step.samplesPerSecond(), step.allocatedBytes());
+            }
+        });
+        n.setTelemetry(telemetry);
+        n.train(data, epochs, 32, new Random(), System.out::println);
+        n.setTelemetry(null);
+        System.out.println(telemetry);
+    }
+
+    /**
+     * Quantizes a trained network to 8 bits, prints its accuracy next to the original's and compares
+     * single-sample prediction time with an {@link InferenceHandle} over the original weights.
+     * @param n trained network
+     * @param data samples, the first of which are used for calibration and all for the comparison
+     * @param calibration number of calibration samples
+     * @param calls timed predictions of each kind, after as many warm-up calls
+     */
+    public static void benchmarkQuantized(Network n, Dataset data, int calibration, int calls) {
+        QuantizedNetwork q = QuantizedNetwork.quantize(n, data, calibration, 1);
+        System.out.println(q.compare(n, data, data.size()));
+        InferenceHandle handle = n.snapshot(1);
+        Tensor in = new Tensor(1, data.inputSize());
+        Tensor expected = new Tensor(1, data.outputSize());
+        double[][] samples = new double[Math.min(data.size(), 1000)][];
+        for(int i = 0; i < samples.length; i++) {
+            data.gather(new int[] {i}, 0, 1, in, expected);
+            samples[i] = in.rowArray(0);
+        }
+        double[] out = new double[handle.outputSize()];
+        for(int round = 0; round < 2; round++) {
+            long handleNanos = 0;
+            long quantizedNanos = 0;
+            for(int i = -calls; i < calls; i++) {
+                double[] sample = samples[Math.floorMod(i, samples.length)];
+                long t0 = System.nanoTime();
+                handle.predict(sample, out);
+                long t1 = System.nanoTime();
+                q.predict(sample, out);
+                long t2 = System.nanoTime();
+                if(i >= 0) {
+                    handleNanos += t1 - t0;
+                    quantizedNanos += t2 - t1;
+                }
+            }
+            System.out.printf("%s handle %.1f us/sample, int8 %.1f us/sample%n", n.precision(),
+                    handleNanos / 1e3 / calls, quantizedNanos / 1e3 / calls);
+        }
+    }
+
+    /**
+     * Prunes copies of a trained network to several sparsities, globally and per layer, and prints the
+     * accuracy before and after fine-tuning next to the single-sample prediction time of each sparse copy.
+     * @param n trained network, left unchanged
+     * @param data samples for fine-tuning, accuracy and timing
+     * @param sparsities fractions of weights to prune
+     * @param epochs fine-tuning epochs per sparsity
+     * @param calls timed predictions of each kind per sparsity, after as many warm-up calls
+     */
+    public static void comparePruning(Network n, Dataset data, double[] sparsities, int epochs, int calls) {
+        for(boolean global : new boolean[] {true, false}) {
+            for(PruningReport r : Pruner.sweep(n, data, data, sparsities, global, epochs, 32, calls)) {
+                System.out.println(r);
+            }
+        }
+    }
+
+    /**
+     * Compares training steps and first layer forward passes on dense inputs with the same inputs in
+     * sparse form, starting two networks from the same weights. Prints the input density, the time per
+     * step of each path and how far the weights of the two networks drifted apart.
+     * @param data training samples
+     * @param batchSize samples per step
+     * @param steps timed steps of each kind, after as many warm-up steps
+     */
+    public static void benchmarkSparse(Dataset data, int batchSize, int steps) {
+        Network dense = newMnistNetwork();
+        Network sparse = newMnistNetwork();
+        FullyConnectedLayer[] from = dense.layers();
+        for(int i = 0; i < from.length; i++) {
+            sparse.layers()[i].getWeights().copyFrom(from[i].getWeights());
+        }
+        Tensor[] inputs = new Tensor[steps];
+        Tensor[] expected = new Tensor[steps];
+        SparseTensor[] sparseInputs = new SparseTensor[steps];
+        int[] indices = new int[batchSize];
+        double density = 0;
+        for(int s = 0; s < steps; s++) {
+            inputs[s] = new Tensor(batchSize, data.inputSize());
+            expected[s] = new Tensor(batchSize, data.outputSize());
+            for(int i = 0; i < batchSize; i++) {
+                indices[i] = (s * batchSize + i) % data.size();
+            }
+            data.gather(indices, 0, batchSize, inputs[s], expected[s]);
+            sparseInputs[s] = SparseTensor.of(inputs[s]);
+            density += sparseInputs[s].density() / steps;
+        }
+        Workspace denseWs = dense.createWorkspace(batchSize);
+        Workspace sparseWs = sparse.createWorkspace(batchSize);
+        Tensor out = new Tensor(batchSize, from[0].size());
+        long[] nanos = new long[4];
+        for(int round = 0; round < 2; round++) {
+            Arrays.fill(nanos, 0);
+            for(int s = 0; s < steps; s++) {
+                long t0 = System.nanoTime();
+                dense.backPropagation(inputs[s], expected[s], denseWs);
+                long t1 = System.nanoTime();
+                sparse.backPropagation(sparseInputs[s], expected[s], sparseWs);
+                long t2 = System.nanoTime();
+                from[0].forward(inputs[s], null, out);
+                long t3 = System.nanoTime();
+                from[0].forward(sparseInputs[s], null, out);
+                long t4 = System.nanoTime();
+                nanos[0] += t1 - t0;
+                nanos[1] += t2 - t1;
+                nanos[2] += t3 - t2;
+                nanos[3] += t4 - t3;
+            }
+        }
+        double drift = 0;
+        for(int i = 0; i < from.length; i++) {
+            Tensor a = from[i].getWeights();
+            Tensor b = sparse.layers()[i].getWeights();
+            for(int r = 0; r < a.rows(); r++) {
+                for(int c = 0; c < a.cols(); c++) {
+                    drift = Math.max(drift, Math.abs(a.get(r, c) - b.get(r, c)));
+                }
+            }
+        }
+        System.out.printf("input density %.1f%%: step dense %.0f us, sparse %.0f us; first layer forward dense %.0f us, "
+                        + "sparse %.0f us; weight drift %.1e%n", density * 100, nanos[0] / 1e3 / steps,
+                nanos[1] / 1e3 / steps, nanos[2] / 1e3 / steps, nanos[3] / 1e3 / steps, drift);
+    }
+
+    private static Network newMnistNetwork() {
+        return new Network(new Sigmoid(), new MeanSquared(), 0.5, 784, new int[] {200, 80, 10},
+                WeightInitializerEnum.Xavier, BiasInitializerEnum.Zero);
+    }
+
+    /**
+     * Measures single-sample prediction latency with several threads sharing one network, first through
+     * {@link Network#forwardPass(Tensor)} and then through an {@link InferenceHandle}. Prints throughput,
+     * latency percentiles and bytes allocated per call.
+     * @param n trained network
+     * @param data samples to predict
+     * @param threads number of concurrent callers
+     * @param calls predictions per thread, after as many warm-up calls
+     */
+    public static void benchmarkInference(Network n, Dataset data, int threads, int calls) {
+        InferenceHandle handle = n.snapshot(1);
+        int inputs = data.inputSize();
+        for(int mode = 0; mode < 2; mode++) {
+            boolean useHandle = mode == 1;
+            long[][] latencies = new long[threads][calls];
+            long[] allocated = new long[threads];
+            Thread[] workers = new Thread[threads];
+            long start = System.nanoTime();
+            for(int t = 0; t < threads; t++) {
+                int id = t;
+                workers[t] = new Thread(() -> {
+                    com.sun.management.ThreadMXBean mx =
+                            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+                    Tensor in = new Tensor(1, inputs);
+                    Tensor expected = new Tensor(1, data.outputSize());
+                    double[] sample = new double[inputs];
+                    double[] out = new double[handle.outputSize()];
+                    int[] index = new int[1];
+                    long bytes = 0;
+                    for(int i = -calls; i < calls; i++) {
+                        index[0] = Math.floorMod(i * 31 + id, data.size());
+                        data.gather(index, 0, 1, in, expected);
+                        System.arraycopy(in.data(), in.offset(), sample, 0, inputs);
+                        if(i == 0) {
+                            bytes = mx.getCurrentThreadAllocatedBytes();
+                        }
+                        long t0 = System.nanoTime();
+                        if(useHandle) {
+                            handle.predict(sample, out);
+                        } else {
+                            n.forwardPass(in);
+                        }
+                        if(i >= 0) {
+                            latencies[id][i] = System.nanoTime() - t0;
+                        }
+                    }
+                    allocated[id] = mx.getCurrentThreadAllocatedBytes() - bytes;
+                });
+                workers[t].start();
+            }
+            for(Thread w : workers) {
+                try {
+                    w.join();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long[] all = new long[threads * calls];
+            long bytes = 0;
+            for(int t = 0; t < threads; t++) {
+                System.arraycopy(latencies[t], 0, all, t * calls, calls);
+                bytes += allocated[t];
+            }
+            Arrays.sort(all);
+            System.out.printf("%-11s %3d threads %9.0f calls/s  p50 %6.1fus  p99 %7.1fus  p99.9 %7.1fus  %5d B/call%n",
+                    useHandle ? "handle" : "forwardPass", threads, 2.0 * all.length / seconds,
+                    all[all.length / 2] / 1e3, all[(int) (all.length * 0.99)] / 1e3,
+                    all[(int) (all.length * 0.999)] / 1e3, bytes / all.length);
+        }
+    }
+
+    /**
+     * Measures single-sample predictions through a {@link MicroBatcher}, with every client thread
+     * submitting a sample and waiting for its result before submitting the next.
+     * Prints throughput, the batcher's latency percentiles and its mean batch size.
+     * @param n trained network
+     * @param data samples to predict
+     * @param clients number of concurrent callers
+     * @param calls predictions per client
+     * @param maxBatch largest batch the batcher runs
+     * @param maxWaitNanos longest time a request waits for its batch to fill
+     */
+    public static void benchmarkBatching(Network n, Dataset data, int clients, int calls, int maxBatch,
+                                         long maxWaitNanos) {
+        int inputs = data.inputSize();
+        try(MicroBatcher batcher = new MicroBatcher(n.snapshot(maxBatch), maxBatch, maxWaitNanos)) {
+            Thread[] workers = new Thread[clients];
+            long start = System.nanoTime();
+            for(int t = 0; t < clients; t++) {
+                int id = t;
+                workers[t] = new Thread(() -> {
+                    Tensor in = new Tensor(1, inputs);
+                    Tensor expected = new Tensor(1, data.outputSize());
+                    int[] index = new int[1];
+                    for(int i = 0; i < calls; i++) {
+                        index[0] = Math.floorMod(i * 31 + id, data.size());
+                        data.gather(index, 0, 1, in, expected);
+                        batcher.submit(in.rowArray(0)).join();
+                    }
+                });
+                workers[t].start();
+            }
+            for(Thread w : workers) {
+                try {
+                    w.join();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("batched     %3d clients %9.0f calls/s%n%s%n", clients, clients * calls / seconds, batcher);
+        }
+    }
+
+    /**
+     * Prints one row of {@link #compareParallelTraining(Dataset, int, int)}.
+     * @return throughput of the last epoch
+     */
+    private static double report(String mode, int threads, List<EpochReport> epochs, double base) {
+        EpochReport last = epochs.get(epochs.size() - 1);
+        double rate = last.samplesPerSecond();
+        System.out.printf("%-11s %7d %10.0f %7.2fx %11.6f%n", mode, threads, rate, base == 0 ? 1 : rate / base, last.loss());
+        return rate;
     }
 
     public static void test1() {
@@ -0,0 +1,262 @@
+import Layer.FullyConnectedLayer;
+import Tensor.Kernels;
+import Tensor.PrecisionEnum;
+import Tensor.Tensor;
+
+/**
+ * Preallocated buffers for training a {@link Network}. A workspace is sized once for a
+ * maximum batch size and reused on every step, so a training step does not allocate, as long as
+ * each matrix product is small enough for {@code Gemm} to run it on the calling thread.
+ * Larger products fork tasks onto the common pool, which allocates a few small objects per product.
+ * A workspace is not thread safe; each training thread needs its own.
+ */
+public class Workspace {
+
+    /**
+     * Largest batch the buffers can hold.
+     */
+    private final int maxBatch;
+
+    /**
+     * Activation values per layer. Index {@code i + 1} holds the output of hidden layer {@code i}.
+     */
+    private final Tensor[] activations;
+
+    /**
+     * Weighted sums per layer, null for layers that do not need them during back-propagation.
+     */
+    private final Tensor[] weightedSums;
+
+    /**
+     * Derivatives of cost with respect to each layer's activation values.
+     * Index 0 is unused since the gradient with respect to the input is never needed.
+     */
+    private final Tensor[] deltas;
+
+    /**
+     * Layers the buffers were sized for.
+     */
+    private final FullyConnectedLayer[] layers;
+
+    /**
+     * Gradients of each layer's weights and biases, allocated on first use.
+     */
+    private final Tensor[] gradients;
+
+    /**
+     * Rows of the first layer's gradient written by sparse inputs, created on first use.
+     */
+    private FullyConnectedLayer.GradientRows gradientRows;
+
+    /**
+     * Number of test cases summed into {@link #gradients} since the last update.
+     */
+    private int gradientSamples;
+
+    /**
+     * Batch size the views below were created for.
+     */
+    private int batch = -1;
+
+    /**
+     * Views of the first {@link #batch} rows of {@link #activations}.
+     */
+    private final Tensor[] activationViews;
+
+    /**
+     * Views of the first {@link #batch} rows of {@link #weightedSums}.
+     */
+    private final Tensor[] weightedSumViews;
+
+    /**
+     * Views of the first {@link #batch} rows of {@link #deltas}.
+     */
+    private final Tensor[] deltaViews;
+
+    /**
+     * Forward pass epilogues of the layers that keep weighted sums apart from activation values, null for others.
+     */
+    private final FullyConnectedLayer.ActivationEpilogue[] epilogues;
+
+    /**
+     * Allocates buffers for the given layers.
+     * @param layers hidden layers of the network
+     * @param maxBatch largest batch the workspace must hold
+     */
+    Workspace(FullyConnectedLayer[] layers, int maxBatch) {
+        if(maxBatch < 1) {
+            throw new IllegalArgumentException("Batch size must be positive but was " + maxBatch);
+        }
+        int sz = layers.length + 1;
+        this.maxBatch = maxBatch;
+        this.layers = layers;
+        this.gradients = new Tensor[sz];
+        this.activations = new Tensor[sz];
+        this.weightedSums = new Tensor[sz];
+        this.deltas = new Tensor[sz];
+        for(int i = 0; i < layers.length; i++) {
+            int size = layers[i].size();
+            PrecisionEnum precision = layers[i].precision();
+            this.activations[i + 1] = new Tensor(maxBatch, size, precision);
+            this.deltas[i + 1] = new Tensor(maxBatch, size, precision);
+            if(layers[i].needsWeightedSums()) {
+                this.weightedSums[i + 1] = new Tensor(maxBatch, size, precision);
+            }
+        }
+        this.epilogues = new FullyConnectedLayer.ActivationEpilogue[sz];
+        for(int i = 0; i < layers.length; i++) {
+            if(layers[i].needsWeightedSums()) {
+                this.epilogues[i + 1] = layers[i].newActivationEpilogue();
+            }
+        }
+        this.activationViews = new Tensor[sz];
+        this.weightedSumViews = new Tensor[sz];
+        this.deltaViews = new Tensor[sz];
+    }
+
+    /**
+     * Prepares views for a batch. Views are only recreated when the batch size changes.
+     * @param batch number of rows in the next batch
+     */
+    void prepare(int batch) {
+        if(batch == this.batch) {
+            return;
+        }
+        if(batch < 1 || batch > this.maxBatch) {
+            throw new IllegalArgumentException("Batch of " + batch + " does not fit a workspace sized for "
+                    + this.maxBatch);
+        }
+        for(int i = 1; i < this.activations.length; i++) {
+            this.activationViews[i] = this.activations[i].slice(0, batch);
+            this.deltaViews[i] = this.deltas[i].slice(0, batch);
+            if(this.weightedSums[i] != null) {
+                this.weightedSumViews[i] = this.weightedSums[i].slice(0, batch);
+            }
+        }
+        this.batch = batch;
+    }
+
+    /**
+     * Activation values of a layer for the prepared batch.
+     * @param i layer index, where 1 is the first hidden layer
+     * @return activation values
+     */
+    Tensor activation(int i) {
+        return this.activationViews[i];
+    }
+
+    /**
+     * Weighted sums of a layer for the prepared batch.
+     * @param i layer index, where 1 is the first hidden layer
+     * @return weighted sums, or null if the layer does not need them
+     */
+    Tensor weightedSum(int i) {
+        return this.weightedSumViews[i];
+    }
+
+    /**
+     * Forward pass epilogue of a layer that keeps its weighted sums apart from its activation values.
+     * @param i layer index, where 1 is the first hidden layer
+     * @return epilogue, or null if the layer's weighted sums are not kept
+     */
+    FullyConnectedLayer.ActivationEpilogue epilogue(int i) {
+        return this.epilogues[i];
+    }
+
+    /**
+     * Derivative of cost with respect to a layer's activation values for the prepared batch.
+     * @param i layer index, where 1 is the first hidden layer
+     * @return derivative buffer
+     */
+    Tensor delta(int i) {
+        return this.deltaViews[i];
+    }
+
+    /**
+     * Gradient of a layer's weights and biases, with the shape of {@link FullyConnectedLayer#getWeights()}.
+     * Allocated the first time it is requested, so workspaces that only run
+     * {@link Network#backPropagation(Tensor, Tensor, Workspace)} never hold gradients.
+     * @param i layer index, where 1 is the first hidden layer
+     * @return gradient buffer
+     */
+    Tensor gradient(int i) {
+        if(this.gradients[i] == null) {
+            Tensor w = this.layers[i - 1].getWeights();
+            this.gradients[i] = new Tensor(w.rows(), w.cols(), w.precision());
+        }
+        return this.gradients[i];
+    }
+
+    /**
+     * Rows of the first layer's gradient written by sparse backward passes, for clearing only those.
+     * @return record belonging to {@code gradient(1)}
+     */
+    FullyConnectedLayer.GradientRows gradientRows() {
+        if(this.gradientRows == null) {
+            this.gradientRows = this.layers[0].newGradientRows();
+        }
+        return this.gradientRows;
+    }
+
+    /**
+     * Marks the first layer's gradient as written whole, after a dense backward pass or a sum of gradients.
+     */
+    void gradientsWritten() {
+        if(this.gradientRows != null) {
+            this.gradientRows.reset();
+        }
+    }
+
+    /**
+     * Number of test cases summed into the gradients since they were last applied.
+     * @return sample count
+     */
+    public int gradientSamples() {
+        return this.gradientSamples;
+    }
+
+    /**
+     * Records test cases summed into the gradients.
+     * @param samples number of test cases added, or 0 after the gradients were overwritten
+     * @param accumulate whether the test cases were added to earlier ones
+     */
+    void countGradientSamples(int samples, boolean accumulate) {
+        this.gradientSamples = accumulate ? this.gradientSamples + samples : samples;
+    }
+
+    /**
+     * Adds the gradients of another workspace for the same network to the gradients of this one.
+     * @param other workspace whose gradients are added
+     */
+    void addGradients(Workspace other) {
+        this.gradientSamples += other.gradientSamples;
+        gradientsWritten();
+        Kernels k = Kernels.get();
+        for(int i = 1; i < this.gradients.length; i++) {
+            Tensor dst = gradient(i);
+            Tensor src = other.gradient(i);
+            int len = dst.rows() * dst.cols();
+            if(dst.isFloat()) {
+                k.axpy(1f, src.floatData(), src.offset(), dst.floatData(), dst.offset(), len);
+            } else {
+                k.axpy(1, src.data(), src.offset(), dst.data(), dst.offset(), len);
+            }
+        }
+    }
+
+    /**
+     * Number of layers with buffers in this workspace.
+     * @return layer count
+     */
+    int layers() {
+        return this.layers.length;
+    }
+
+    /**
+     * Largest batch this workspace holds.
+     * @return maximum batch size
+     */
+    public int maxBatch() {
+        return this.maxBatch;
+    }
+}
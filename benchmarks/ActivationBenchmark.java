@@ -0,0 +1,139 @@
+package benchmarks;
+
+import ActivationFunctions.ActivationFunction;
+import ActivationFunctions.ActivationFunctionEnum;
+import org.apache.commons.math4.legacy.analysis.UnivariateFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each {@link ActivationFunction} and its derivative over an array, through the range methods the
+ * layers use and, for comparison, one {@link UnivariateFunction} call per entry.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ActivationBenchmark {
+
+    /**
+     * Activation function under test.
+     */
+    @Param({"Sigmoid", "TanH", "ReLU", "LeakyReLU", "Sinusoid"})
+    public ActivationFunctionEnum function;
+
+    /**
+     * Number of entries per call, from one layer's outputs to a batch of them.
+     */
+    @Param({"200", "6400"})
+    public int length;
+
+    /**
+     * Activation function created from {@link #function}.
+     */
+    private ActivationFunction af;
+
+    /**
+     * Inputs between -4 and 4.
+     */
+    private double[] x;
+
+    /**
+     * Single precision copy of {@link #x}.
+     */
+    private float[] xFloat;
+
+    /**
+     * Destinations.
+     */
+    private double[] out;
+
+    /**
+     * Single precision destination.
+     */
+    private float[] outFloat;
+
+    /**
+     * Creates the function and fills the inputs.
+     */
+    @Setup
+    public void setUp() {
+        this.af = this.function.create(0.01);
+        Random random = new Random(1);
+        this.x = new double[this.length];
+        this.xFloat = new float[this.length];
+        for(int i = 0; i < this.length; i++) {
+            this.x[i] = random.nextDouble() * 8 - 4;
+            this.xFloat[i] = (float) this.x[i];
+        }
+        this.out = new double[this.length];
+        this.outFloat = new float[this.length];
+    }
+
+    /**
+     * Function values in double precision.
+     * @return destination
+     */
+    @Benchmark
+    public double[] apply() {
+        this.af.apply(this.x, 0, this.out, 0, this.length);
+        return this.out;
+    }
+
+    /**
+     * Function values in single precision.
+     * @return destination
+     */
+    @Benchmark
+    public float[] applyFloat() {
+        this.af.apply(this.xFloat, 0, this.outFloat, 0, this.length);
+        return this.outFloat;
+    }
+
+    /**
+     * Derivative values in double precision.
+     * @return destination
+     */
+    @Benchmark
+    public double[] derivative() {
+        this.af.derivative(this.x, 0, this.out, 0, this.length);
+        return this.out;
+    }
+
+    /**
+     * Derivative values in single precision.
+     * @return destination
+     */
+    @Benchmark
+    public float[] derivativeFloat() {
+        this.af.derivative(this.xFloat, 0, this.outFloat, 0, this.length);
+        return this.outFloat;
+    }
+
+    /**
+     * Function values through one {@link UnivariateFunction} call per entry.
+     * @return destination
+     */
+    @Benchmark
+    public double[] applyPerEntry() {
+        UnivariateFunction f = this.af.getFunction();
+        for(int i = 0; i < this.length; i++) {
+            this.out[i] = f.value(this.x[i]);
+        }
+        return this.out;
+    }
+}
@@ -0,0 +1,71 @@
+package benchmarks;
+
+import Tensor.PrecisionEnum;
+import Tensor.Tensor;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+
+/**
+ * Runs the JMH benchmarks of this package: {@link LayerBenchmark}, {@link NetworkBenchmark},
+ * {@link ActivationBenchmark} and {@link InitializerBenchmark}.
+ *
+ * Every benchmark reports throughput, and the GC profiler adds the bytes allocated per operation
+ * ({@code gc.alloc.rate.norm}) and the number of collections. Results are written as JSON to
+ * {@code jmh-result.json} unless {@code -rf} and {@code -rff} say otherwise. Any other JMH option
+ * may be passed too, such as a benchmark regex, {@code -p batchSize=32} to narrow a parameter or
+ * {@code -jvmArgsAppend -Dkernels.simd=false} to measure the scalar kernels.
+ *
+ * The benchmarks are compiled with the rest of the sources from the repository root, with JMH
+ * ({@code jmh-core}, its annotation processor {@code jmh-generator-annprocess} and their dependencies
+ * {@code jopt-simple} and {@code commons-math3}) on the class path next to commons-math:
+ * <pre>
+ * javac --add-modules jdk.incubator.vector -cp "$CP" -d out $(find . -name "*.java")
+ * java --add-modules jdk.incubator.vector -cp "out:$CP" benchmarks.Benchmarks LayerBenchmark -p width=200
+ * </pre>
+ */
+public class Benchmarks {
+
+    /**
+     * Runs the benchmarks selected by the command line.
+     * @param args JMH command line options
+     * @throws CommandLineOptionException if the options cannot be parsed
+     * @throws RunnerException if a benchmark fails
+     */
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(cli)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(cli.getResultFormat().orElse(ResultFormatType.JSON))
+                .result(cli.getResult().orElse("jmh-result.json"))
+                .build();
+        new Runner(options).run();
+    }
+
+    /**
+     * Creates a tensor of values between 0 and 1 that is the same on every run.
+     * @param rows number of rows
+     * @param cols number of columns
+     * @param precision storage type
+     * @param seed seed of the values
+     * @return new tensor
+     */
+    static Tensor random(int rows, int cols, PrecisionEnum precision, long seed) {
+        Random random = new Random(seed);
+        Tensor t = new Tensor(rows, cols, precision);
+        for(int i = 0; i < rows; i++) {
+            for(int j = 0; j < cols; j++) {
+                t.set(i, j, random.nextDouble());
+            }
+        }
+        return t;
+    }
+}
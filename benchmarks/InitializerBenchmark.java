@@ -0,0 +1,71 @@
+package benchmarks;
+
+import Layer.WeightInitializer;
+import Layer.WeightInitializerEnum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link WeightInitializer#generate(int, int, WeightInitializerEnum)} for each initialization method
+ * and the layer shapes of the MNIST network.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InitializerBenchmark {
+
+    /**
+     * Initialization method.
+     */
+    @Param({"Zero", "Random", "Xavier", "KaimingHe"})
+    public WeightInitializerEnum method;
+
+    /**
+     * Inputs and outputs of the layer, as {@code inputs x outputs}.
+     */
+    @Param({"784x200", "200x80", "80x10"})
+    public String shape;
+
+    /**
+     * Number of inputs parsed from {@link #shape}.
+     */
+    private int inputs;
+
+    /**
+     * Number of outputs parsed from {@link #shape}.
+     */
+    private int outputs;
+
+    /**
+     * Parses the shape.
+     */
+    @Setup
+    public void setUp() {
+        String[] parts = this.shape.split("x");
+        this.inputs = Integer.parseInt(parts[0]);
+        this.outputs = Integer.parseInt(parts[1]);
+    }
+
+    /**
+     * Generates the weights of one layer.
+     * @return weights indexed as {@code [output][input]}
+     */
+    @Benchmark
+    public double[][] generate() {
+        return WeightInitializer.generate(this.inputs, this.outputs, this.method);
+    }
+}
@@ -0,0 +1,174 @@
+package benchmarks;
+
+import ActivationFunctions.Sigmoid;
+import Layer.BiasInitializerEnum;
+import Layer.FullyConnectedLayer;
+import Layer.InputLayer;
+import Layer.WeightInitializerEnum;
+import Tensor.PrecisionEnum;
+import Tensor.Tensor;
+import org.apache.commons.math4.legacy.linear.RealMatrix;
+import org.apache.commons.math4.legacy.linear.RealVector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forward and backward passes of a single {@link FullyConnectedLayer} with {@value #INPUTS} inputs,
+ * through its vector, matrix and tensor overloads. The vector overloads take one sample per call
+ * whatever the batch size, so their scores do not change with it.
+ *
+ * Back-propagation updates the weights on every call, with a learning rate small enough that they
+ * barely move over a run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class LayerBenchmark {
+
+    /**
+     * Number of inputs to the layer, the size of an MNIST image.
+     */
+    static final int INPUTS = 784;
+
+    /**
+     * Learning rate of the back-propagation benchmarks.
+     */
+    private static final double ALPHA = 1e-9;
+
+    /**
+     * Samples per call.
+     */
+    @Param({"1", "32", "256"})
+    public int batchSize;
+
+    /**
+     * Number of nodes in the layer.
+     */
+    @Param({"80", "200", "800"})
+    public int width;
+
+    /**
+     * Precision of the layer's weights and values.
+     */
+    @Param({"Double", "Float"})
+    public PrecisionEnum precision;
+
+    /**
+     * Layer under test.
+     */
+    private FullyConnectedLayer layer;
+
+    /**
+     * Inputs, weighted sums, activation values and error derivatives of a batch.
+     */
+    private Tensor input, z, a, dc_da;
+
+    /**
+     * First sample of the batch as vectors.
+     */
+    private RealVector inputVector, zVector, dc_daVector;
+
+    /**
+     * The batch as matrices.
+     */
+    private RealMatrix inputMatrix, zMatrix, dc_daMatrix;
+
+    /**
+     * Creates the layer and fills the batch with values between 0 and 1.
+     */
+    @Setup
+    public void setUp() {
+        this.layer = new FullyConnectedLayer(this.width, new InputLayer(INPUTS), new Sigmoid(),
+                WeightInitializerEnum.Xavier, BiasInitializerEnum.Zero, this.precision);
+        this.input = Benchmarks.random(this.batchSize, INPUTS, this.precision, 1);
+        this.dc_da = Benchmarks.random(this.batchSize, this.width, this.precision, 2);
+        this.z = this.layer.forwardWeightedSum(this.input);
+        this.a = new Tensor(this.batchSize, this.width, this.precision);
+
+        this.inputMatrix = this.input.toMatrix();
+        this.zMatrix = this.z.toMatrix();
+        this.dc_daMatrix = this.dc_da.toMatrix();
+        this.inputVector = this.input.row(0).toVector();
+        this.zVector = this.z.row(0).toVector();
+        this.dc_daVector = this.dc_da.row(0).toVector();
+    }
+
+    /**
+     * Weighted sums of one sample through the vector overload.
+     * @return weighted sums
+     */
+    @Benchmark
+    public RealVector forwardWeightedSumVector() {
+        return this.layer.forwardWeightedSum(this.inputVector);
+    }
+
+    /**
+     * Weighted sums of the batch through the matrix overload.
+     * @return weighted sums
+     */
+    @Benchmark
+    public RealMatrix forwardWeightedSumMatrix() {
+        return this.layer.forwardWeightedSum(this.inputMatrix);
+    }
+
+    /**
+     * Weighted sums of the batch through the tensor overload.
+     * @return weighted sums
+     */
+    @Benchmark
+    public Tensor forwardWeightedSumTensor() {
+        return this.layer.forwardWeightedSum(this.input);
+    }
+
+    /**
+     * Activation values of the batch into preallocated tensors, as a {@link Network} with a
+     * {@link Workspace} runs it.
+     * @return activation values
+     */
+    @Benchmark
+    public Tensor forwardInPlace() {
+        this.layer.forward(this.input, null, this.a);
+        return this.a;
+    }
+
+    /**
+     * Back-propagation of one sample through the vector overload.
+     * @return derivative with respect to the inputs
+     */
+    @Benchmark
+    public RealVector backPropVector() {
+        return this.layer.backProp(this.dc_daVector, this.inputVector, this.zVector, ALPHA);
+    }
+
+    /**
+     * Back-propagation of the batch through the matrix overload.
+     * @return derivative with respect to the inputs
+     */
+    @Benchmark
+    public RealMatrix backPropMatrix() {
+        return this.layer.backProp(this.dc_daMatrix, this.inputMatrix, this.zMatrix, ALPHA);
+    }
+
+    /**
+     * Back-propagation of the batch through the tensor overload.
+     * @return derivative with respect to the inputs
+     */
+    @Benchmark
+    public Tensor backPropTensor() {
+        return this.layer.backProp(this.dc_da, this.input, this.z, ALPHA);
+    }
+}
@@ -0,0 +1,273 @@
+package benchmarks;
+
+import ActivationFunctions.ActivationFunction;
+import ActivationFunctions.Sigmoid;
+import ErrorFunctions.ErrorFunction;
+import ErrorFunctions.MeanSquared;
+import Layer.BiasInitializerEnum;
+import Layer.WeightInitializerEnum;
+import Tensor.PrecisionEnum;
+import Tensor.Tensor;
+import org.apache.commons.math4.legacy.linear.RealMatrix;
+import org.apache.commons.math4.legacy.linear.RealVector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forward passes and training steps of a whole {@code Network} taking MNIST sized inputs, through the
+ * vector, matrix and tensor overloads and through a {@code Workspace}. The vector overload takes one
+ * sample per call whatever the batch size.
+ *
+ * JMH needs benchmarks in a named package, which cannot refer to the network's classes in the default
+ * package, so the network is called through method handles. Being constants, they are inlined like
+ * direct calls.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class NetworkBenchmark {
+
+    /**
+     * The network class.
+     */
+    private static final Class<?> NETWORK = network();
+
+    /**
+     * {@code Network(ActivationFunction, ErrorFunction, double, int, int[], WeightInitializerEnum,
+     * BiasInitializerEnum, PrecisionEnum)}.
+     */
+    private static final MethodHandle NEW = constructor(ActivationFunction.class, ErrorFunction.class,
+            double.class, int.class, int[].class, WeightInitializerEnum.class, BiasInitializerEnum.class,
+            PrecisionEnum.class);
+
+    /**
+     * {@code Network.createWorkspace(int)}, returning the workspace as an object.
+     */
+    private static final MethodHandle CREATE_WORKSPACE = method("createWorkspace",
+            MethodType.methodType(Object.class, int.class));
+
+    /**
+     * {@code Network.forwardPass(RealVector)}.
+     */
+    private static final MethodHandle FORWARD_VECTOR = method("forwardPass",
+            MethodType.methodType(RealVector.class, RealVector.class));
+
+    /**
+     * {@code Network.forwardPass(RealMatrix)}.
+     */
+    private static final MethodHandle FORWARD_MATRIX = method("forwardPass",
+            MethodType.methodType(RealMatrix.class, RealMatrix.class));
+
+    /**
+     * {@code Network.forwardPass(Tensor)}.
+     */
+    private static final MethodHandle FORWARD_TENSOR = method("forwardPass",
+            MethodType.methodType(Tensor.class, Tensor.class));
+
+    /**
+     * {@code Network.backPropagation(RealMatrix, RealMatrix)}.
+     */
+    private static final MethodHandle BACK_MATRIX = method("backPropagation",
+            MethodType.methodType(double.class, RealMatrix.class, RealMatrix.class));
+
+    /**
+     * {@code Network.backPropagation(Tensor, Tensor)}.
+     */
+    private static final MethodHandle BACK_TENSOR = method("backPropagation",
+            MethodType.methodType(double.class, Tensor.class, Tensor.class));
+
+    /**
+     * {@code Network.backPropagation(Tensor, Tensor, Workspace)}, taking the workspace as an object.
+     */
+    private static final MethodHandle BACK_WORKSPACE = method("backPropagation",
+            MethodType.methodType(double.class, Tensor.class, Tensor.class, Object.class));
+
+    /**
+     * Samples per call.
+     */
+    @Param({"1", "32", "256"})
+    public int batchSize;
+
+    /**
+     * Sizes of the hidden and output layers, separated by dashes since JMH splits parameter values at commas.
+     */
+    @Param({"200-80-10", "800-400-10"})
+    public String layers;
+
+    /**
+     * Precision of the network's weights and values.
+     */
+    @Param({"Double", "Float"})
+    public PrecisionEnum precision;
+
+    /**
+     * Network under test.
+     */
+    private Object network;
+
+    /**
+     * Buffers of the allocation-free training step.
+     */
+    private Object workspace;
+
+    /**
+     * Inputs and one-hot expected outputs of a batch.
+     */
+    private Tensor input, expected;
+
+    /**
+     * First sample of the batch as a vector.
+     */
+    private RealVector inputVector;
+
+    /**
+     * The batch as matrices.
+     */
+    private RealMatrix inputMatrix, expectedMatrix;
+
+    /**
+     * Creates the network and fills the batch.
+     * @throws Throwable if the network cannot be created
+     */
+    @Setup
+    public void setUp() throws Throwable {
+        int[] sizes = Arrays.stream(this.layers.split("-")).mapToInt(Integer::parseInt).toArray();
+        this.network = (Object) NEW.invokeExact((ActivationFunction) new Sigmoid(),
+                (ErrorFunction) new MeanSquared(), 1e-9, LayerBenchmark.INPUTS, sizes,
+                WeightInitializerEnum.Xavier, BiasInitializerEnum.Zero, this.precision);
+        this.workspace = (Object) CREATE_WORKSPACE.invokeExact(this.network, this.batchSize);
+        int outputs = sizes[sizes.length - 1];
+        this.input = Benchmarks.random(this.batchSize, LayerBenchmark.INPUTS, this.precision, 1);
+        this.expected = new Tensor(this.batchSize, outputs, this.precision);
+        for(int i = 0; i < this.batchSize; i++) {
+            this.expected.set(i, i % outputs, 1);
+        }
+        this.inputVector = this.input.row(0).toVector();
+        this.inputMatrix = this.input.toMatrix();
+        this.expectedMatrix = this.expected.toMatrix();
+    }
+
+    /**
+     * Output of one sample through the vector overload.
+     * @return output
+     */
+    @Benchmark
+    public RealVector forwardPassVector() throws Throwable {
+        return (RealVector) FORWARD_VECTOR.invokeExact(this.network, this.inputVector);
+    }
+
+    /**
+     * Outputs of the batch through the matrix overload.
+     * @return outputs
+     */
+    @Benchmark
+    public RealMatrix forwardPassMatrix() throws Throwable {
+        return (RealMatrix) FORWARD_MATRIX.invokeExact(this.network, this.inputMatrix);
+    }
+
+    /**
+     * Outputs of the batch through the tensor overload.
+     * @return outputs
+     */
+    @Benchmark
+    public Tensor forwardPassTensor() throws Throwable {
+        return (Tensor) FORWARD_TENSOR.invokeExact(this.network, this.input);
+    }
+
+    /**
+     * Training step on the batch through the matrix overload.
+     * @return error of the batch
+     */
+    @Benchmark
+    public double backPropagationMatrix() throws Throwable {
+        return (double) BACK_MATRIX.invokeExact(this.network, this.inputMatrix, this.expectedMatrix);
+    }
+
+    /**
+     * Training step on the batch through the tensor overload, which allocates its buffers per call.
+     * @return error of the batch
+     */
+    @Benchmark
+    public double backPropagationTensor() throws Throwable {
+        return (double) BACK_TENSOR.invokeExact(this.network, this.input, this.expected);
+    }
+
+    /**
+     * Training step on the batch reusing a workspace, as {@code Network.train} runs it.
+     * @return error of the batch
+     */
+    @Benchmark
+    public double backPropagationWorkspace() throws Throwable {
+        return (double) BACK_WORKSPACE.invokeExact(this.network, this.input, this.expected, this.workspace);
+    }
+
+    /**
+     * Loads the network class from the default package.
+     * @return class
+     */
+    private static Class<?> network() {
+        try {
+            return Class.forName("Network");
+        } catch(ClassNotFoundException e) {
+            throw new IllegalStateException("Network is not on the class path", e);
+        }
+    }
+
+    /**
+     * Finds the network's public constructor, returning the network as an object.
+     * @param parameters parameter types of the constructor
+     * @return handle
+     */
+    private static MethodHandle constructor(Class<?>... parameters) {
+        try {
+            return MethodHandles.publicLookup()
+                    .findConstructor(NETWORK, MethodType.methodType(void.class, parameters))
+                    .asType(MethodType.methodType(Object.class, parameters));
+        } catch(ReflectiveOperationException e) {
+            throw new IllegalStateException("Network has no such constructor", e);
+        }
+    }
+
+    /**
+     * Finds a public method of the network, taking the network as a first argument of type object.
+     * Parameters and results of types in the default package are given as object and converted.
+     * @param name method name
+     * @param type type of the method as called, without the network
+     * @return handle of the given type with the network prepended
+     */
+    private static MethodHandle method(String name, MethodType type) {
+        try {
+            MethodType actual = type;
+            if(type.returnType() == Object.class) {
+                actual = actual.changeReturnType(Class.forName("Workspace"));
+            }
+            for(int i = 0; i < type.parameterCount(); i++) {
+                if(type.parameterType(i) == Object.class) {
+                    actual = actual.changeParameterType(i, Class.forName("Workspace"));
+                }
+            }
+            return MethodHandles.publicLookup().findVirtual(NETWORK, name, actual)
+                    .asType(type.insertParameterTypes(0, Object.class));
+        } catch(ReflectiveOperationException e) {
+            throw new IllegalStateException("Network has no method " + name + type, e);
+        }
+    }
+}